@@ -20,9 +20,9 @@ import javax.ws.rs.core.MediaType;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
-import org.mapdb.Fun.Tuple2;
 
 import controller.Controller;
+import database.BalanceMap;
 import database.QoraDb;
 import database.SortableList;
 import qora.account.Account;
@@ -355,13 +355,13 @@ public class AddressesResource {
 					ApiErrorFactory.ERROR_INVALID_ADDRESS);
 		}
 
-		SortableList<Tuple2<String, Long>, BigDecimal> assetsBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(new Account(address));
+		SortableList<byte[], BigDecimal> assetsBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(new Account(address));
 
 		JSONObject assetsBalancesJSON = new JSONObject();
 		
-		for (Pair<Tuple2<String, Long>, BigDecimal> assetsBalance : assetsBalances) 	
+		for (Pair<byte[], BigDecimal> assetsBalance : assetsBalances) 	
 		{
-			assetsBalancesJSON.put(assetsBalance.getA().b, assetsBalance.getB().toPlainString());
+			assetsBalancesJSON.put(BalanceMap.getAssetKey(assetsBalance.getA()), assetsBalance.getB().toPlainString());
 		}
 		
 		return assetsBalancesJSON.toJSONString();
@@ -382,6 +382,26 @@ public class AddressesResource {
 		return new Account(address).getBalance(confirmations).toPlainString();
 	}
 
+	@GET
+	@Path("balance/{address}/byheight/{height}")
+	public String getBalanceAtHeight(
+			@PathParam("address") String address,
+			@PathParam("height") int height) {
+		// CHECK IF VALID ADDRESS
+		if (!Crypto.getInstance().isValidAddress(address)) {
+			throw ApiErrorFactory.getInstance().createError(
+					ApiErrorFactory.ERROR_INVALID_ADDRESS);
+		}
+
+		// CHECK IF BLOCK EXISTS
+		if (height < 1 || height > Controller.getInstance().getHeight()) {
+			throw ApiErrorFactory.getInstance().createError(
+					ApiErrorFactory.ERROR_BLOCK_NO_EXISTS);
+		}
+
+		return new Account(address).getBalanceAtHeight(height, QoraDb.getInstance()).toPlainString();
+	}
+
 	@SuppressWarnings("unchecked")
 	@POST
 	@Path("sign/{address}")
@@ -11,6 +11,7 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 
 import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
 
 import qora.BlockGenerator;
 import qora.account.Account;
@@ -21,6 +22,7 @@ import qora.crypto.Crypto;
 import utils.APIUtils;
 import utils.Pair;
 import controller.Controller;
+import database.BlockCache;
 import database.QoraDb;
 
 @Path("blocks")
@@ -267,4 +269,23 @@ public class BlocksResource
 		}
 		return block.toJson().toJSONString();
 	}
+	
+	@SuppressWarnings("unchecked")
+	@GET
+	@Path("/cache")
+	public static String getCache() 
+	{
+		BlockCache cache = BlockCache.getInstance();
+		
+		JSONObject json = new JSONObject();
+		json.put("blocks", cache.getBlockCount());
+		json.put("blockBytes", cache.getBlockBytes());
+		json.put("blockHitRate", cache.getBlockHitRate());
+		json.put("headers", cache.getHeaderCount());
+		json.put("headerHitRate", cache.getHeaderHitRate());
+		json.put("validations", cache.getValidationCount());
+		json.put("averageValidationTime", cache.getAverageValidationTime());
+		
+		return json.toJSONString();
+	}
 }
@@ -76,7 +76,7 @@ public class PeersResource
 		 *  PeerMap.addPeer() tests for peer.pingCounter > 1 but after this call
 		 *  peer.pingCounter will only be 1 so there's no difference code-path-wise
 		 *  between pingCounter being 0 or 1.
-		 *  Also creating a new Peer starts a Pinger thread which will increment pingCounter
+		 *  Also creating a new Peer starts a Pinger which will increment pingCounter
 		 *  and call PeerMap.addPeer()
 		 */
 		// was: peer.addPingCounter();
@@ -1,5 +1,7 @@
 package api;
 
+import java.util.Map;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
@@ -14,6 +16,7 @@ import controller.Controller;
 import lang.Lang;
 import settings.Settings;
 import utils.APIUtils;
+import utils.LatencyHistogram;
 
 @Path("qora")
 @Produces(MediaType.APPLICATION_JSON)
@@ -87,6 +90,29 @@ public class QoraResource {
 		return jsonObject.toJSONString();
 	}
 
+	@SuppressWarnings("unchecked")
+	@GET
+	@Path("/messagelatencies")
+	public String getMessageLatencies() {
+		JSONObject jsonObject = new JSONObject();
+
+		for (Map.Entry<Integer, LatencyHistogram> entry : Controller.getInstance().getMessageLatencies().entrySet()) {
+			LatencyHistogram histogram = entry.getValue();
+
+			JSONObject histogramJSON = new JSONObject();
+			histogramJSON.put("count", histogram.getCount());
+			histogramJSON.put("meanMicros", histogram.getMeanMicros());
+			histogramJSON.put("p50Micros", histogram.getPercentileMicros(50));
+			histogramJSON.put("p90Micros", histogram.getPercentileMicros(90));
+			histogramJSON.put("p99Micros", histogram.getPercentileMicros(99));
+			histogramJSON.put("maxMicros", histogram.getMaxMicros());
+
+			jsonObject.put(String.valueOf(entry.getKey()), histogramJSON);
+		}
+
+		return jsonObject.toJSONString();
+	}
+
 	@GET
 	@Path("/notranslate")
 	public String getNoTranslate() {
@@ -19,9 +19,11 @@ import org.apache.logging.log4j.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
+import org.mapdb.Fun.Tuple2;
 
 import controller.Controller;
 import database.QoraDb;
+import database.TransactionFinalMap;
 import qora.account.Account;
 import qora.block.Block;
 import qora.crypto.Base58;
@@ -534,6 +536,34 @@ public class TransactionsResource {
 			return String.valueOf(QoraDb.getInstance().getTransactionFinalMap().findTransactionsCount(address, sender, recipient, minHeight, maxHeight, type, service, desc, offset, limit));
 		}
 		
+		// PAGE FROM CURSOR (NULL FOR FIRST PAGE), RETURNING CURSOR OF NEXT PAGE
+		if (jsonObject.containsKey("cursor")) {
+			Tuple2<Integer, Integer> after = null;
+			if (jsonObject.get("cursor") != null) {
+				try
+				{
+					after = TransactionFinalMap.fromCursor((String) jsonObject.get("cursor"));
+				} catch (IllegalArgumentException | ClassCastException e) {
+					throw ApiErrorFactory.getInstance().createError(
+						ApiErrorFactory.ERROR_JSON);
+				}
+			}
+			
+			TransactionFinalMap transactionFinalMap = QoraDb.getInstance().getTransactionFinalMap();
+			JSONArray transactions = new JSONArray();
+			Tuple2<Integer, Integer> last = null;
+			for(Tuple2<Integer, Integer> key: transactionFinalMap.findTransactionsKeys(address, sender, recipient, minHeight, maxHeight, type, service, after, desc, offset, limit))
+			{
+				transactions.add(transactionFinalMap.getTransaction(key.a, key.b).toJson());
+				last = key;
+			}
+			
+			JSONObject json = new JSONObject();
+			json.put("transactions", transactions);
+			json.put("cursor", last == null || limit == 0 || transactions.size() < limit ? null : TransactionFinalMap.toCursor(last));
+			return json.toJSONString();
+		}
+		
 		JSONArray array = new JSONArray();
 		List<Transaction> txs = QoraDb.getInstance().getTransactionFinalMap().findTransactions(address, sender, recipient, minHeight, maxHeight, type, service, desc, offset, limit);
 		for(Transaction transaction: txs)
@@ -11,13 +11,13 @@ package at;
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import qora.crypto.Crypto;
+
 public class AT_API_Impl implements AT_API {
 
 	private static final Logger LOGGER = LogManager.getLogger(AT_API_Impl.class);
@@ -513,18 +513,11 @@ public class AT_API_Impl implements AT_API {
 		b.put(state.get_A1());
 		b.put(state.get_A2());
 
-		try {
-			MessageDigest md5 = MessageDigest.getInstance("MD5");
-			ByteBuffer mdb = ByteBuffer.wrap(md5.digest(b.array()));
-			mdb.order(ByteOrder.LITTLE_ENDIAN);
-
-			state.set_B1(AT_API_Helper.getByteArray(mdb.getLong(0)));
-			state.set_B1(AT_API_Helper.getByteArray(mdb.getLong(8)));
+		ByteBuffer mdb = ByteBuffer.wrap(Crypto.getInstance().md5(b.array()));
+		mdb.order(ByteOrder.LITTLE_ENDIAN);
 
-		} catch (NoSuchAlgorithmException e) {
-			// not expected to reach that point
-			LOGGER.error(e.getMessage(), e);
-		}
+		state.set_B1(AT_API_Helper.getByteArray(mdb.getLong(0)));
+		state.set_B1(AT_API_Helper.getByteArray(mdb.getLong(8)));
 	}
 
 	@Override
@@ -536,24 +529,15 @@ public class AT_API_Impl implements AT_API {
 		b.put(state.get_A1());
 		b.put(state.get_A2());
 
-		try {
-			MessageDigest md5 = MessageDigest.getInstance("MD5");
-			ByteBuffer mdb = ByteBuffer.wrap(md5.digest(b.array()));
-			mdb.order(ByteOrder.LITTLE_ENDIAN);
-
-			b.clear();
-
-			b.put(state.get_B1());
-			b.put(state.get_B2());
+		ByteBuffer mdb = ByteBuffer.wrap(Crypto.getInstance().md5(b.array()));
+		mdb.order(ByteOrder.LITTLE_ENDIAN);
 
-			return Arrays.equals(b.array(), mdb.array()) ? 1 : 0;
+		b.clear();
 
-		} catch (NoSuchAlgorithmException e) {
-			// not expected to reach that point
-			LOGGER.error(e.getMessage(), e);
-		}
+		b.put(state.get_B1());
+		b.put(state.get_B2());
 
-		return 0;
+		return Arrays.equals(b.array(), mdb.array()) ? 1 : 0;
 	}
 
 	@Override
@@ -566,8 +550,7 @@ public class AT_API_Impl implements AT_API {
 		b.put(state.get_A3());
 		b.put(state.get_A4());
 
-		RIPEMD160 ripemd160 = new RIPEMD160();
-		ByteBuffer ripemdb = ByteBuffer.wrap(ripemd160.digest(b.array()));
+		ByteBuffer ripemdb = ByteBuffer.wrap(Crypto.getInstance().ripemd160(b.array()));
 		ripemdb.order(ByteOrder.LITTLE_ENDIAN);
 
 		state.set_B1(AT_API_Helper.getByteArray(ripemdb.getLong(0)));
@@ -586,10 +569,9 @@ public class AT_API_Impl implements AT_API {
 		b.put(state.get_A3());
 		b.put(state.get_A4());
 
-		RIPEMD160 ripemd160 = new RIPEMD160();
 		ByteBuffer ripemdb = ByteBuffer.allocate(32);
 		ripemdb.order(ByteOrder.LITTLE_ENDIAN);
-		ripemdb.put(ripemd160.digest(b.array()));
+		ripemdb.put(Crypto.getInstance().ripemd160(b.array()));
 
 		b.clear();
 
@@ -611,20 +593,13 @@ public class AT_API_Impl implements AT_API {
 		b.put(state.get_A3());
 		b.put(state.get_A4());
 
-		try {
-			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-			ByteBuffer shab = ByteBuffer.wrap(sha256.digest(b.array()));
-			shab.order(ByteOrder.LITTLE_ENDIAN);
-
-			state.set_B1(AT_API_Helper.getByteArray(shab.getLong(0)));
-			state.set_B2(AT_API_Helper.getByteArray(shab.getLong(8)));
-			state.set_B3(AT_API_Helper.getByteArray(shab.getLong(16)));
-			state.set_B4(AT_API_Helper.getByteArray(shab.getLong(24)));
+		ByteBuffer shab = ByteBuffer.wrap(Crypto.getInstance().digest(b.array()));
+		shab.order(ByteOrder.LITTLE_ENDIAN);
 
-		} catch (NoSuchAlgorithmException e) {
-			// not expected to reach that point
-			LOGGER.error(e.getMessage(), e);
-		}
+		state.set_B1(AT_API_Helper.getByteArray(shab.getLong(0)));
+		state.set_B2(AT_API_Helper.getByteArray(shab.getLong(8)));
+		state.set_B3(AT_API_Helper.getByteArray(shab.getLong(16)));
+		state.set_B4(AT_API_Helper.getByteArray(shab.getLong(24)));
 	}
 
 	@Override
@@ -637,22 +612,14 @@ public class AT_API_Impl implements AT_API {
 		b.put(state.get_A3());
 		b.put(state.get_A4());
 
-		try {
-			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-			byte[] shab = sha256.digest(b.array());
-
-			b.clear();
-			b.put(state.get_B1());
-			b.put(state.get_B2());
-			b.put(state.get_B3());
-			b.put(state.get_B4());
-			return (Arrays.equals(b.array(), shab)) ? 1 : 0;
+		byte[] shab = Crypto.getInstance().digest(b.array());
 
-		} catch (NoSuchAlgorithmException e) {
-			// not expected to reach that point
-			LOGGER.error(e.getMessage(), e);
-		}
-		return 0;
+		b.clear();
+		b.put(state.get_B1());
+		b.put(state.get_B2());
+		b.put(state.get_B3());
+		b.put(state.get_B4());
+		return (Arrays.equals(b.array(), shab)) ? 1 : 0;
 
 	}
 
@@ -780,21 +747,14 @@ public class AT_API_Impl implements AT_API {
 			return;
 		}
 
-		try {
-			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-			sha256.update(state.getAp_data().array(), (int) val1, (int) (val2 > 256 ? 256 : val2));
-			ByteBuffer shab = ByteBuffer.wrap(sha256.digest());
-			shab.order(ByteOrder.LITTLE_ENDIAN);
+		// Slice of data, without copying
+		ByteBuffer shab = ByteBuffer.wrap(Crypto.getInstance().digest(state.getAp_data().array(), (int) val1, (int) (val2 > 256 ? 256 : val2)));
+		shab.order(ByteOrder.LITTLE_ENDIAN);
 
-			state.set_B1(AT_API_Helper.getByteArray(shab.getLong(0)));
-			state.set_B2(AT_API_Helper.getByteArray(shab.getLong(8)));
-			state.set_B3(AT_API_Helper.getByteArray(shab.getLong(16)));
-			state.set_B4(AT_API_Helper.getByteArray(shab.getLong(24)));
-
-		} catch (NoSuchAlgorithmException e) {
-			// not expected to reach that point
-			LOGGER.error(e.getMessage(), e);
-		}
+		state.set_B1(AT_API_Helper.getByteArray(shab.getLong(0)));
+		state.set_B2(AT_API_Helper.getByteArray(shab.getLong(8)));
+		state.set_B3(AT_API_Helper.getByteArray(shab.getLong(16)));
+		state.set_B4(AT_API_Helper.getByteArray(shab.getLong(24)));
 	}
 
 }
\ No newline at end of file
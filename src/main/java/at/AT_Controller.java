@@ -35,24 +35,29 @@ public abstract class AT_Controller {
 
 	public static int runSteps( AT_Machine_State state , int blockHeight )
 	{
+		//DECODED ONCE PER CODE, REPLACES DISASSEMBLING IT WITH listCode BEFORE EVERY RUN
+		AT_Program program = AT_Program.getProgram( state );
+
 		state.getMachineState().stopped = false;
 		state.getMachineState().finished = false;
 		state.getMachineState().steps = 0;
 		state.getMachineState().dead = false;
 
-		AT_Machine_Processor processor = new AT_Machine_Processor( state );
+		AT_Program.Processor processor = program.getProcessor( state );
 
 		int height = blockHeight;
 
 		state.setFreeze( false );
 
 		long stepFee = AT_Constants.getInstance().STEP_FEE( height );
+		long maxSteps = AT_Constants.getInstance().MAX_STEPS( height );
+		int apiSteps = (int)AT_Constants.getInstance().API_STEP_MULTIPLIER( height );
 
 		int numSteps = 0;
 
 		while ( state.getMachineState().steps +
-				(numSteps = getNumSteps(state.getAp_code().get(state.getMachineState().pc), height))
-				<= AT_Constants.getInstance().MAX_STEPS( height ))
+				(numSteps = isApiCall(program.getOp(state.getMachineState().pc)) ? apiSteps : 1)
+				<= maxSteps )
 		{
 			if ( ( state.getG_balance() < stepFee * numSteps ) )
 			{
@@ -62,7 +67,7 @@ public abstract class AT_Controller {
 
 			state.setG_balance( state.getG_balance() - (stepFee * numSteps) );
 			state.getMachineState().steps += numSteps;
-			int rc = processor.processOp( false , false );
+			int rc = processor.processOp();
 
 			if ( rc >= 0 )
 			{
@@ -88,7 +93,7 @@ public abstract class AT_Controller {
 				else
 					System.out.println( "unexpected error" );
 
-				if ( state.getMachineState().jumps.contains( state.getMachineState().err ) )
+				if ( program.isJump( state.getMachineState().err ) )
 				{
 					state.getMachineState().pc = state.getMachineState().err;
 				}
@@ -104,12 +109,16 @@ public abstract class AT_Controller {
 	}
 
 	public static int getNumSteps(byte op, int height) {
-		if(op >= 0x32 && op < 0x38)
+		if(isApiCall(op))
 			return (int)AT_Constants.getInstance().API_STEP_MULTIPLIER(height);
 
 		return 1;
 	}
 
+	private static boolean isApiCall(byte op) {
+		return op >= 0x32 && op < 0x38;
+	}
+
 	public static void resetMachine( AT_Machine_State state ) {
 		state.getMachineState( ).reset( );
 		listCode( state , true , true );
@@ -299,7 +308,6 @@ public abstract class AT_Controller {
 					at.setHeight(blockHeight);
 					at.clearTransactions();
 					at.setWaitForNumberOfBlocks( at.getSleepBetween() );
-					listCode( at , true , true );
 
 					AT_API_Platform_Impl.getInstance().setDBSet( fork);
 					runSteps ( at , blockHeight );
@@ -402,8 +410,6 @@ public abstract class AT_Controller {
 
 				at.setG_balance( atAccountBalance );
 
-				listCode( at , true , true );
-
 				AT_API_Platform_Impl.getInstance().setDBSet( dbSet );
 
 				runSteps( at , blockHeight );
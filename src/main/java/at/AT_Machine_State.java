@@ -549,6 +549,16 @@ public class AT_Machine_State {
 		ap_data.clear();
 	}
 
+	/**
+	 * Returns height stored in <code>state</code>, as returned by {@link #getState()}, without decoding the rest.
+	 */
+	public static int getStateHeight(final byte[] state) {
+		// Machine state is 86 bytes, followed by both balances
+		final ByteBuffer b = ByteBuffer.wrap(state, 86 + 8 + 8, 4);
+		b.order(ByteOrder.LITTLE_ENDIAN);
+		return b.getInt();
+	}
+
 	protected int getStateSize() {
 		return (this.machineState.getSize() + 8 + 8 + 4 + 4 + 1 + ap_data.capacity());
 	}
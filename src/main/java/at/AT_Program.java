@@ -0,0 +1,957 @@
+package at;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.common.primitives.Ints;
+
+import qora.crypto.Crypto;
+
+/**
+ * Machine code of an AT decoded once into instructions, so running it doesn't disassemble the code for its jump table
+ * or decode operands again on every step.
+ * <p>
+ * Decoding and execution follow {@link AT_Machine_Processor} to the letter, quirks included, as they decide consensus:
+ * jump targets are only the instructions found by its linear disassembly, which stops early at some ops with bad
+ * addresses; indexed ops read their last address relative to a shifted code position and can run off the end of the
+ * code; <code>ERR_ADR</code> with a truncated address uses whatever address the previous op decoded.
+ * <p>
+ * Decoding only depends on the code and the code and data sizes, so programs are shared between ATs and blocks through
+ * a cache keyed by a digest of those.
+ */
+final class AT_Program {
+
+	private static final int MAX_CACHED_PROGRAMS = 256;
+	private static final Map<ByteBuffer, AT_Program> PROGRAMS = Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, AT_Program>(64, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, AT_Program> eldest) {
+			return size() > MAX_CACHED_PROGRAMS;
+		}
+	});
+
+	private static final int UNKNOWN = 0;
+	private static final int NOP = 1;
+	private static final int SET_VAL = 2;
+	private static final int SET_DAT = 3;
+	private static final int CLR_DAT = 4;
+	private static final int INC_DAT = 5;
+	private static final int DEC_DAT = 6;
+	private static final int ADD_DAT = 7;
+	private static final int SUB_DAT = 8;
+	private static final int MUL_DAT = 9;
+	private static final int DIV_DAT = 10;
+	private static final int BOR_DAT = 11;
+	private static final int AND_DAT = 12;
+	private static final int XOR_DAT = 13;
+	private static final int NOT_DAT = 14;
+	private static final int SET_IND = 15;
+	private static final int SET_IDX = 16;
+	private static final int PSH_DAT = 17;
+	private static final int POP_DAT = 18;
+	private static final int JMP_SUB = 19;
+	private static final int RET_SUB = 20;
+	private static final int IND_DAT = 21;
+	private static final int IDX_DAT = 22;
+	private static final int MOD_DAT = 23;
+	private static final int SHL_DAT = 24;
+	private static final int SHR_DAT = 25;
+	private static final int JMP_ADR = 26;
+	private static final int BZR_DAT = 27;
+	private static final int BNZ_DAT = 28;
+	private static final int BGT_DAT = 29;
+	private static final int BLT_DAT = 30;
+	private static final int BGE_DAT = 31;
+	private static final int BLE_DAT = 32;
+	private static final int BEQ_DAT = 33;
+	private static final int BNE_DAT = 34;
+	private static final int SLP_DAT = 35;
+	private static final int FIZ_DAT = 36;
+	private static final int STZ_DAT = 37;
+	private static final int FIN_IMD = 38;
+	private static final int STP_IMD = 39;
+	private static final int SLP_IMD = 40;
+	private static final int ERR_ADR = 41;
+	private static final int SET_PCS = 42;
+	private static final int EXT_FUN = 43;
+	private static final int EXT_FUN_DAT = 44;
+	private static final int EXT_FUN_DAT_2 = 45;
+	private static final int EXT_FUN_RET = 46;
+	private static final int EXT_FUN_RET_DAT = 47;
+	private static final int EXT_FUN_RET_DAT_2 = 48;
+
+	private static final int[] KINDS = new int[256];
+
+	static {
+		KINDS[OpCode.e_op_code_NOP & 0xff] = NOP;
+		KINDS[OpCode.e_op_code_SET_VAL & 0xff] = SET_VAL;
+		KINDS[OpCode.e_op_code_SET_DAT & 0xff] = SET_DAT;
+		KINDS[OpCode.e_op_code_CLR_DAT & 0xff] = CLR_DAT;
+		KINDS[OpCode.e_op_code_INC_DAT & 0xff] = INC_DAT;
+		KINDS[OpCode.e_op_code_DEC_DAT & 0xff] = DEC_DAT;
+		KINDS[OpCode.e_op_code_ADD_DAT & 0xff] = ADD_DAT;
+		KINDS[OpCode.e_op_code_SUB_DAT & 0xff] = SUB_DAT;
+		KINDS[OpCode.e_op_code_MUL_DAT & 0xff] = MUL_DAT;
+		KINDS[OpCode.e_op_code_DIV_DAT & 0xff] = DIV_DAT;
+		KINDS[OpCode.e_op_code_BOR_DAT & 0xff] = BOR_DAT;
+		KINDS[OpCode.e_op_code_AND_DAT & 0xff] = AND_DAT;
+		KINDS[OpCode.e_op_code_XOR_DAT & 0xff] = XOR_DAT;
+		KINDS[OpCode.e_op_code_NOT_DAT & 0xff] = NOT_DAT;
+		KINDS[OpCode.e_op_code_SET_IND & 0xff] = SET_IND;
+		KINDS[OpCode.e_op_code_SET_IDX & 0xff] = SET_IDX;
+		KINDS[OpCode.e_op_code_PSH_DAT & 0xff] = PSH_DAT;
+		KINDS[OpCode.e_op_code_POP_DAT & 0xff] = POP_DAT;
+		KINDS[OpCode.e_op_code_JMP_SUB & 0xff] = JMP_SUB;
+		KINDS[OpCode.e_op_code_RET_SUB & 0xff] = RET_SUB;
+		KINDS[OpCode.e_op_code_IND_DAT & 0xff] = IND_DAT;
+		KINDS[OpCode.e_op_code_IDX_DAT & 0xff] = IDX_DAT;
+		KINDS[OpCode.e_op_code_MOD_DAT & 0xff] = MOD_DAT;
+		KINDS[OpCode.e_op_code_SHL_DAT & 0xff] = SHL_DAT;
+		KINDS[OpCode.e_op_code_SHR_DAT & 0xff] = SHR_DAT;
+		KINDS[OpCode.e_op_code_JMP_ADR & 0xff] = JMP_ADR;
+		KINDS[OpCode.e_op_code_BZR_DAT & 0xff] = BZR_DAT;
+		KINDS[OpCode.e_op_code_BNZ_DAT & 0xff] = BNZ_DAT;
+		KINDS[OpCode.e_op_code_BGT_DAT & 0xff] = BGT_DAT;
+		KINDS[OpCode.e_op_code_BLT_DAT & 0xff] = BLT_DAT;
+		KINDS[OpCode.e_op_code_BGE_DAT & 0xff] = BGE_DAT;
+		KINDS[OpCode.e_op_code_BLE_DAT & 0xff] = BLE_DAT;
+		KINDS[OpCode.e_op_code_BEQ_DAT & 0xff] = BEQ_DAT;
+		KINDS[OpCode.e_op_code_BNE_DAT & 0xff] = BNE_DAT;
+		KINDS[OpCode.e_op_code_SLP_DAT & 0xff] = SLP_DAT;
+		KINDS[OpCode.e_op_code_FIZ_DAT & 0xff] = FIZ_DAT;
+		KINDS[OpCode.e_op_code_STZ_DAT & 0xff] = STZ_DAT;
+		KINDS[OpCode.e_op_code_FIN_IMD & 0xff] = FIN_IMD;
+		KINDS[OpCode.e_op_code_STP_IMD & 0xff] = STP_IMD;
+		KINDS[OpCode.e_op_code_SLP_IMD & 0xff] = SLP_IMD;
+		KINDS[OpCode.e_op_code_ERR_ADR & 0xff] = ERR_ADR;
+		KINDS[OpCode.e_op_code_SET_PCS & 0xff] = SET_PCS;
+		KINDS[OpCode.e_op_code_EXT_FUN & 0xff] = EXT_FUN;
+		KINDS[OpCode.e_op_code_EXT_FUN_DAT & 0xff] = EXT_FUN_DAT;
+		KINDS[OpCode.e_op_code_EXT_FUN_DAT_2 & 0xff] = EXT_FUN_DAT_2;
+		KINDS[OpCode.e_op_code_EXT_FUN_RET & 0xff] = EXT_FUN_RET;
+		KINDS[OpCode.e_op_code_EXT_FUN_RET_DAT & 0xff] = EXT_FUN_RET_DAT;
+		KINDS[OpCode.e_op_code_EXT_FUN_RET_DAT_2 & 0xff] = EXT_FUN_RET_DAT_2;
+	}
+
+	private final byte[] code;
+	private final int csize;
+	private final int dsize;
+	private final boolean[] jumps;
+	private final Instruction[] instructions;
+
+	private AT_Program(final byte[] code, final int csize, final int dsize) {
+		this.code = code;
+		this.csize = csize;
+		this.dsize = dsize;
+		this.jumps = new boolean[Math.max(csize, 0)];
+		this.instructions = new Instruction[this.jumps.length];
+
+		// Same walk as AT_Controller.listCode, which may throw on code shorter than csize
+		final Decoder decoder = new Decoder();
+		int pc = 0;
+		while (csize >= 1 && pc < csize) {
+			this.jumps[pc] = true;
+
+			final int length = decoder.disassemble(pc);
+			if (length <= 0) {
+				break;
+			}
+
+			pc += length;
+		}
+
+		for (pc = 0; pc < this.jumps.length; pc++) {
+			if (this.jumps[pc]) {
+				this.instructions[pc] = decoder.decode(pc);
+			}
+		}
+	}
+
+	/**
+	 * Returns program of <code>state</code>'s code, decoding it if it isn't cached. Throws like disassembling the code
+	 * with {@link AT_Controller#listCode} would.
+	 */
+	static AT_Program getProgram(final AT_Machine_State state) {
+		final byte[] code = state.getAp_code().array();
+		final ByteBuffer key = ByteBuffer.wrap(Crypto.getInstance().digestConcat(code,
+				Ints.toByteArray(state.getCsize()), Ints.toByteArray(state.getDsize())));
+
+		AT_Program program = PROGRAMS.get(key);
+		if (program == null) {
+			program = new AT_Program(code.clone(), state.getCsize(), state.getDsize());
+			PROGRAMS.put(key, program);
+		}
+
+		return program;
+	}
+
+	/**
+	 * Returns opcode at <code>pc</code>, throwing past the end of the code like reading it from the machine would.
+	 */
+	byte getOp(final int pc) {
+		return this.code[pc];
+	}
+
+	/**
+	 * Returns true if <code>pc</code> starts an instruction the machine may jump to.
+	 */
+	boolean isJump(final int pc) {
+		return pc >= 0 && pc < this.jumps.length && this.jumps[pc];
+	}
+
+	/**
+	 * Returns processor executing this program on <code>state</code>. Like {@link AT_Machine_Processor} it carries an
+	 * address between ops, so use a new one for each run.
+	 */
+	Processor getProcessor(final AT_Machine_State state) {
+		return new Processor(state);
+	}
+
+	private boolean validAddr(final int addr, final boolean isCode) {
+		if (addr < 0) {
+			return false;
+		}
+
+		if (!isCode && (((long) addr) * 8 + 8 > ((long) Integer.MAX_VALUE) || addr * 8 + 8 > this.dsize)) {
+			return false;
+		}
+
+		if (isCode && addr >= this.csize) {
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * One decoded op. Operand fields hold what the processor's getters would have left in its registers.
+	 */
+	private static final class Instruction {
+		int kind;
+		// length if operands are valid, else -1, or -2 for unknown ops
+		int rc;
+		// reading the operands ran off the end of the code
+		boolean overrun;
+		// decoding set the address register ERR_ADR falls back on, and what to
+		boolean setsAddr1;
+		int lastAddr1;
+		short fun;
+		int addr1;
+		int addr2;
+		int addr3;
+		long val;
+		byte off;
+	}
+
+	/**
+	 * Mirror of the getters of {@link AT_Machine_Processor}, reading from the code instead of the machine.
+	 */
+	private final class Decoder {
+		private final ByteBuffer codeBuffer = ByteBuffer.wrap(AT_Program.this.code).order(ByteOrder.LITTLE_ENDIAN);
+
+		private Instruction in;
+
+		/**
+		 * Returns length of op at <code>pc</code> as disassembly for the jump table sees it, 0 or less to stop.
+		 */
+		int disassemble(final int pc) {
+			this.in = new Instruction();
+
+			switch (KINDS[this.codeBuffer.get(pc) & 0xff]) {
+			case NOP:
+			case RET_SUB:
+			case FIN_IMD:
+			case STP_IMD:
+			case SLP_IMD:
+			case SET_PCS:
+				return 1;
+			case SET_VAL:
+				this.getAddressVal(pc);
+				return 1 + 4 + 8;
+			case SET_DAT:
+			case ADD_DAT:
+			case SUB_DAT:
+			case MUL_DAT:
+			case DIV_DAT:
+			case BOR_DAT:
+			case AND_DAT:
+			case XOR_DAT:
+			case MOD_DAT:
+			case SHL_DAT:
+			case SHR_DAT:
+				this.getAddrs(pc);
+				return 1 + 4 + 4;
+			case CLR_DAT:
+			case INC_DAT:
+			case DEC_DAT:
+			case NOT_DAT:
+			case PSH_DAT:
+			case POP_DAT:
+			case FIZ_DAT:
+			case STZ_DAT:
+				this.getAddr(pc, 0, false);
+				return 1 + 4;
+			case JMP_SUB:
+			case JMP_ADR:
+			case SLP_DAT:
+			case ERR_ADR:
+				this.getAddr(pc, 0, true);
+				return 1 + 4;
+			case SET_IND:
+			case IND_DAT:
+				return this.getAddrs(pc) == 0 ? 1 + 4 + 4 : -1;
+			case SET_IDX:
+			case IDX_DAT:
+				this.getAddrs(pc);
+				this.getAddr(pc, 4 + 4, false);
+				return 13;
+			case BZR_DAT:
+			case BNZ_DAT:
+				this.getAddrOff(pc);
+				return 1 + 4 + 1;
+			case BGT_DAT:
+			case BLT_DAT:
+			case BGE_DAT:
+			case BLE_DAT:
+			case BEQ_DAT:
+			case BNE_DAT:
+				this.getAddrsOff(pc);
+				return 1 + 4 + 4 + 1;
+			case EXT_FUN:
+				this.getFun(pc);
+				return 1 + 2;
+			case EXT_FUN_DAT:
+				return this.getFunAddr(pc) == 0 ? 1 + 2 + 4 : -1;
+			case EXT_FUN_DAT_2:
+				this.getFunAddrs(pc);
+				return 1 + 2 + 4 + 4;
+			case EXT_FUN_RET:
+				this.getFunAddr(pc);
+				return 1 + 2 + 4;
+			case EXT_FUN_RET_DAT:
+				return this.getFunAddrs(pc) == 0 ? 1 + 2 + 4 + 4 : -1;
+			case EXT_FUN_RET_DAT_2:
+				this.getFunAddrs(pc);
+				return this.getAddr(pc, 2 + 4 + 4, false) == 0 ? 1 + 2 + 4 + 4 + 4 : -1;
+			default:
+				return 0;
+			}
+		}
+
+		/**
+		 * Returns op at <code>pc</code> decoded for execution.
+		 */
+		Instruction decode(final int pc) {
+			this.in = new Instruction();
+
+			try {
+				this.in.kind = KINDS[this.codeBuffer.get(pc) & 0xff];
+				this.in.rc = this.getOperands(pc);
+			} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+				this.in.overrun = true;
+			}
+
+			return this.in;
+		}
+
+		private int getOperands(final int pc) {
+			switch (this.in.kind) {
+			case NOP:
+			case RET_SUB:
+			case FIN_IMD:
+			case STP_IMD:
+			case SLP_IMD:
+			case SET_PCS:
+				return 1;
+			case SET_VAL:
+				return this.getAddressVal(pc) == 0 ? 1 + 4 + 8 : -1;
+			case SET_DAT:
+			case ADD_DAT:
+			case SUB_DAT:
+			case MUL_DAT:
+			case DIV_DAT:
+			case BOR_DAT:
+			case AND_DAT:
+			case XOR_DAT:
+			case MOD_DAT:
+			case SHL_DAT:
+			case SHR_DAT:
+			case SET_IND:
+			case IND_DAT:
+				return this.getAddrs(pc) == 0 ? 1 + 4 + 4 : -1;
+			case CLR_DAT:
+			case INC_DAT:
+			case DEC_DAT:
+			case NOT_DAT:
+			case PSH_DAT:
+			case POP_DAT:
+			case FIZ_DAT:
+			case STZ_DAT:
+				return this.getAddr(pc, 0, false) == 0 ? 1 + 4 : -1;
+			case JMP_SUB:
+			case JMP_ADR:
+			case SLP_DAT:
+				return this.getAddr(pc, 0, true) == 0 ? 1 + 4 : -1;
+			case ERR_ADR:
+				// Doesn't check rc to allow for unsetting handler with -1
+				this.getAddr(pc, 0, true);
+				return 1 + 4;
+			case SET_IDX:
+			case IDX_DAT:
+				if (this.getAddrs(pc) != 0) {
+					return -1;
+				}
+
+				// Index goes into addr3, operands stay in addr1 and addr2
+				final int addr1 = this.in.addr1;
+				final int rc = this.getAddr(pc, 4 + 4, false);
+				this.in.addr3 = this.in.addr1;
+				this.in.addr1 = addr1;
+				return rc == 0 ? 13 : -1;
+			case BZR_DAT:
+			case BNZ_DAT:
+				return this.getAddrOff(pc) == 0 ? 1 + 4 + 1 : -1;
+			case BGT_DAT:
+			case BLT_DAT:
+			case BGE_DAT:
+			case BLE_DAT:
+			case BEQ_DAT:
+			case BNE_DAT:
+				return this.getAddrsOff(pc) == 0 ? 1 + 4 + 4 + 1 : -1;
+			case EXT_FUN:
+				return this.getFun(pc) == 0 ? 1 + 2 : -1;
+			case EXT_FUN_DAT:
+			case EXT_FUN_RET:
+				return this.getFunAddr(pc) == 0 ? 1 + 2 + 4 : -1;
+			case EXT_FUN_DAT_2:
+			case EXT_FUN_RET_DAT:
+				return this.getFunAddrs(pc) == 0 ? 1 + 2 + 4 + 4 : -1;
+			case EXT_FUN_RET_DAT_2:
+				if (this.getFunAddrs(pc) != 0) {
+					return -1;
+				}
+
+				return this.getAddr(pc, 2 + 4 + 4, false) == 0 ? 1 + 2 + 4 + 4 + 4 : -1;
+			default:
+				return -2;
+			}
+		}
+
+		private int getFun(final int pc) {
+			if (pc + 2 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.fun = this.codeBuffer.getShort(pc + 1);
+			return 0;
+		}
+
+		/**
+		 * Reads an address <code>position</code> bytes further on, as the processor does for the last address of indexed
+		 * ops by moving the code position, but still only checks the first four bytes are within the code.
+		 */
+		private int getAddr(final int pc, final int position, final boolean isCode) {
+			if (position > this.codeBuffer.capacity()) {
+				throw new IllegalArgumentException();
+			}
+
+			if (pc + 4 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.addr1 = this.codeBuffer.getInt(position + pc + 1);
+			this.in.setsAddr1 = true;
+			this.in.lastAddr1 = this.in.addr1;
+			return validAddr(this.in.addr1, isCode) ? 0 : -1;
+		}
+
+		private int getAddrs(final int pc) {
+			if (pc + 4 + 4 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.addr1 = this.codeBuffer.getInt(pc + 1);
+			this.in.addr2 = this.codeBuffer.getInt(pc + 1 + 4);
+			this.in.setsAddr1 = true;
+			this.in.lastAddr1 = this.in.addr1;
+			return validAddr(this.in.addr1, false) && validAddr(this.in.addr2, false) ? 0 : -1;
+		}
+
+		private int getAddrOff(final int pc) {
+			if (pc + 4 + 1 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.addr1 = this.codeBuffer.getInt(pc + 1);
+			this.in.off = this.codeBuffer.get(pc + 1 + 4);
+			this.in.setsAddr1 = true;
+			this.in.lastAddr1 = this.in.addr1;
+			return validAddr(this.in.addr1, false) && validAddr(pc + this.in.off, true) ? 0 : -1;
+		}
+
+		private int getAddrsOff(final int pc) {
+			if (pc + 4 + 4 + 1 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.addr1 = this.codeBuffer.getInt(pc + 1);
+			this.in.addr2 = this.codeBuffer.getInt(pc + 1 + 4);
+			this.in.off = this.codeBuffer.get(pc + 1 + 4 + 4);
+			this.in.setsAddr1 = true;
+			this.in.lastAddr1 = this.in.addr1;
+			return validAddr(this.in.addr1, false) && validAddr(this.in.addr2, false)
+					&& validAddr(pc + this.in.off, true) ? 0 : -1;
+		}
+
+		private int getFunAddr(final int pc) {
+			// Checks for a whole address more than the op needs, like the processor
+			if (pc + 4 + 4 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.fun = this.codeBuffer.getShort(pc + 1);
+			this.in.addr1 = this.codeBuffer.getInt(pc + 1 + 2);
+			this.in.setsAddr1 = true;
+			this.in.lastAddr1 = this.in.addr1;
+			return validAddr(this.in.addr1, false) ? 0 : -1;
+		}
+
+		private int getFunAddrs(final int pc) {
+			if (pc + 4 + 4 + 2 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.fun = this.codeBuffer.getShort(pc + 1);
+			this.in.addr3 = this.codeBuffer.getInt(pc + 1 + 2);
+			this.in.addr2 = this.codeBuffer.getInt(pc + 1 + 2 + 4);
+			return validAddr(this.in.addr3, false) && validAddr(this.in.addr2, false) ? 0 : -1;
+		}
+
+		private int getAddressVal(final int pc) {
+			if (pc + 4 + 8 >= AT_Program.this.csize) {
+				return -1;
+			}
+
+			this.in.addr1 = this.codeBuffer.getInt(pc + 1);
+			this.in.val = this.codeBuffer.getLong(pc + 1 + 4);
+			this.in.setsAddr1 = true;
+			this.in.lastAddr1 = this.in.addr1;
+			return validAddr(this.in.addr1, false) ? 0 : -1;
+		}
+	}
+
+	/**
+	 * Executes a program one op at a time with the semantics of {@link AT_Machine_Processor#processOp} outside
+	 * disassembly.
+	 */
+	final class Processor {
+		private final AT_Machine_State state;
+		private final AT_Machine_State.Machine_State machineState;
+
+		// Last address decoded, which ERR_ADR falls back on when its own is cut off by the end of the code
+		private int addr1;
+
+		private Processor(final AT_Machine_State state) {
+			this.state = state;
+			this.machineState = state.getMachineState();
+		}
+
+		int processOp() {
+			final AT_Machine_State.Machine_State ms = this.machineState;
+			final int pc = ms.pc;
+
+			if (csize < 1 || pc >= csize) {
+				return 0;
+			}
+
+			Instruction in = instructions[pc];
+			if (in == null) {
+				// Not reachable by jumping, but decode it anyway rather than assume
+				in = new Decoder().decode(pc);
+			}
+
+			if (in.overrun) {
+				throw new IndexOutOfBoundsException("Operands of op at " + pc + " run past end of code");
+			}
+
+			if (in.setsAddr1) {
+				this.addr1 = in.lastAddr1;
+			}
+
+			if (in.rc < 0) {
+				return in.rc;
+			}
+
+			final ByteBuffer data = this.state.getAp_data();
+			final int rc = in.rc;
+
+			switch (in.kind) {
+			case NOP:
+				ms.pc += rc;
+				return rc;
+
+			case SET_VAL:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, in.val);
+				return rc;
+
+			case SET_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr2 * 8));
+				return rc;
+
+			case CLR_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, 0L);
+				return rc;
+
+			case INC_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) + 1);
+				return rc;
+
+			case DEC_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) - 1);
+				return rc;
+
+			case NOT_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, ~data.getLong(in.addr1 * 8));
+				return rc;
+
+			case ADD_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) + data.getLong(in.addr2 * 8));
+				return rc;
+
+			case SUB_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) - data.getLong(in.addr2 * 8));
+				return rc;
+
+			case MUL_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) * data.getLong(in.addr2 * 8));
+				return rc;
+
+			case DIV_DAT: {
+				final long divisor = data.getLong(in.addr2 * 8);
+				if (divisor == 0) {
+					return -2;
+				}
+
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) / divisor);
+				return rc;
+			}
+
+			case MOD_DAT: {
+				final long dividend = data.getLong(in.addr1 * 8);
+				final long divisor = data.getLong(in.addr2 * 8);
+				if (divisor == 0) {
+					return -2;
+				}
+
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, dividend % divisor);
+				return rc;
+			}
+
+			case BOR_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) | data.getLong(in.addr2 * 8));
+				return rc;
+
+			case AND_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) & data.getLong(in.addr2 * 8));
+				return rc;
+
+			case XOR_DAT:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong(in.addr1 * 8) ^ data.getLong(in.addr2 * 8));
+				return rc;
+
+			case SHL_DAT:
+			case SHR_DAT: {
+				ms.pc += rc;
+				final long val = data.getLong(in.addr1 * 8);
+				final long shift = Math.max(0, Math.min(63, data.getLong(in.addr2 * 8)));
+				data.putLong(in.addr1 * 8, in.kind == SHL_DAT ? val << shift : val >>> shift);
+				return rc;
+			}
+
+			case SET_IND: {
+				final long addr = data.getLong(in.addr2 * 8);
+				if (!validAddr((int) addr, false)) {
+					return -1;
+				}
+
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong((int) addr * 8));
+				return rc;
+			}
+
+			case SET_IDX: {
+				final long addr = data.getLong(in.addr2 * 8) + data.getLong(in.addr3 * 8);
+				if (!validAddr((int) addr, false)) {
+					return -1;
+				}
+
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, data.getLong((int) addr * 8));
+				return rc;
+			}
+
+			case IND_DAT: {
+				final long addr = data.getLong(in.addr1 * 8);
+				if (!validAddr((int) addr, false)) {
+					return -1;
+				}
+
+				ms.pc += rc;
+				data.putLong((int) addr * 8, data.getLong(in.addr2 * 8));
+				return rc;
+			}
+
+			case IDX_DAT: {
+				final long addr = data.getLong(in.addr1 * 8) + data.getLong(in.addr2 * 8);
+				if (!validAddr((int) addr, false)) {
+					return -1;
+				}
+
+				ms.pc += rc;
+				data.putLong((int) addr * 8, data.getLong(in.addr3 * 8));
+				return rc;
+			}
+
+			case PSH_DAT: {
+				if (ms.us == this.state.getC_user_stack_bytes() / 8) {
+					return -1;
+				}
+
+				ms.pc += rc;
+				final long val = data.getLong(in.addr1 * 8);
+				ms.us++;
+				data.putLong(this.state.getDsize() + this.state.getC_call_stack_bytes()
+						+ this.state.getC_user_stack_bytes() - ms.us * 8, val);
+				return rc;
+			}
+
+			case POP_DAT: {
+				if (ms.us == 0) {
+					return -1;
+				}
+
+				ms.pc += rc;
+				final long val = data.getLong(this.state.getDsize() + this.state.getC_call_stack_bytes()
+						+ this.state.getC_user_stack_bytes() - ms.us * 8);
+				ms.us--;
+				data.putLong(in.addr1 * 8, val);
+				return rc;
+			}
+
+			case JMP_SUB:
+				if (ms.cs == this.state.getC_call_stack_bytes() / 8) {
+					return -1;
+				}
+
+				if (!isJump(in.addr1)) {
+					return -2;
+				}
+
+				ms.cs++;
+				data.putLong(this.state.getDsize() + this.state.getC_call_stack_bytes() - ms.cs * 8, (long) (ms.pc + rc));
+				ms.pc = in.addr1;
+				return rc;
+
+			case RET_SUB: {
+				if (ms.cs == 0) {
+					return -1;
+				}
+
+				final long val = data.getLong(this.state.getDsize() + this.state.getC_call_stack_bytes() - ms.cs * 8);
+				ms.cs--;
+				if (!isJump((int) val)) {
+					return -2;
+				}
+
+				ms.pc = (int) val;
+				return rc;
+			}
+
+			case JMP_ADR:
+				if (!isJump(in.addr1)) {
+					return -2;
+				}
+
+				ms.pc = in.addr1;
+				return rc;
+
+			case BZR_DAT:
+			case BNZ_DAT: {
+				final long val = data.getLong(in.addr1 * 8);
+				return this.branch(ms, rc, in, in.kind == BZR_DAT ? val == 0 : val != 0);
+			}
+
+			case BGT_DAT:
+			case BLT_DAT:
+			case BGE_DAT:
+			case BLE_DAT:
+			case BEQ_DAT:
+			case BNE_DAT: {
+				final long val1 = data.getLong(in.addr1 * 8);
+				final long val2 = data.getLong(in.addr2 * 8);
+
+				final boolean taken;
+				switch (in.kind) {
+				case BGT_DAT:
+					taken = val1 > val2;
+					break;
+				case BLT_DAT:
+					taken = val1 < val2;
+					break;
+				case BGE_DAT:
+					taken = val1 >= val2;
+					break;
+				case BLE_DAT:
+					taken = val1 <= val2;
+					break;
+				case BEQ_DAT:
+					taken = val1 == val2;
+					break;
+				default:
+					taken = val1 != val2;
+					break;
+				}
+
+				return this.branch(ms, rc, in, taken);
+			}
+
+			case SLP_DAT: {
+				ms.pc += rc;
+				// Address was checked as code, so reading it as data may throw
+				int numBlocks = (int) data.getLong(in.addr1 * 8);
+				if (numBlocks < 0) {
+					numBlocks = 0;
+				}
+
+				final int maxNumBlocks = (int) AT_Constants.getInstance()
+						.get_MAX_WAIT_FOR_NUM_OF_BLOCKS(this.state.getCreationBlockHeight());
+				if (numBlocks > maxNumBlocks) {
+					numBlocks = maxNumBlocks;
+				}
+
+				this.state.setWaitForNumberOfBlocks(numBlocks);
+				ms.stopped = true;
+				return rc;
+			}
+
+			case FIZ_DAT:
+			case STZ_DAT:
+				if (data.getLong(in.addr1 * 8) != 0) {
+					ms.pc += rc;
+				} else if (in.kind == STZ_DAT) {
+					ms.pc += rc;
+					ms.stopped = true;
+					this.state.setFreeze(true);
+				} else {
+					ms.pc = ms.pcs;
+					ms.finished = true;
+					this.state.setFreeze(true);
+				}
+
+				return rc;
+
+			case FIN_IMD:
+				ms.pc = ms.pcs;
+				ms.finished = true;
+				this.state.setFreeze(true);
+				return rc;
+
+			case STP_IMD:
+				ms.pc += rc;
+				ms.stopped = true;
+				this.state.setFreeze(true);
+				return rc;
+
+			case SLP_IMD:
+				ms.pc += rc;
+				this.state.setWaitForNumberOfBlocks(1);
+				ms.stopped = true;
+				return rc;
+
+			case SET_PCS:
+				ms.pc += rc;
+				ms.pcs = ms.pc;
+				return rc;
+
+			case ERR_ADR:
+				if (this.addr1 != -1 && !isJump(this.addr1)) {
+					return -2;
+				}
+
+				ms.pc += rc;
+				ms.err = this.addr1;
+				return rc;
+
+			case EXT_FUN:
+				ms.pc += rc;
+				AT_API_Controller.func(in.fun, this.state);
+				return rc;
+
+			case EXT_FUN_DAT:
+				ms.pc += rc;
+				AT_API_Controller.func1(in.fun, data.getLong(in.addr1 * 8), this.state);
+				return rc;
+
+			case EXT_FUN_DAT_2:
+				ms.pc += rc;
+				AT_API_Controller.func2(in.fun, data.getLong(in.addr3 * 8), data.getLong(in.addr2 * 8), this.state);
+				return rc;
+
+			case EXT_FUN_RET:
+				ms.pc += rc;
+				data.putLong(in.addr1 * 8, AT_API_Controller.func(in.fun, this.state));
+				return rc;
+
+			case EXT_FUN_RET_DAT: {
+				ms.pc += rc;
+				final long val = data.getLong(in.addr2 * 8);
+				data.putLong(in.addr3 * 8, AT_API_Controller.func1(in.fun, val, this.state));
+				return rc;
+			}
+
+			case EXT_FUN_RET_DAT_2: {
+				ms.pc += rc;
+				final long val = data.getLong(in.addr2 * 8);
+				final long val2 = data.getLong(in.addr1 * 8);
+				data.putLong(in.addr3 * 8, AT_API_Controller.func2(in.fun, val, val2, this.state));
+				return rc;
+			}
+
+			default:
+				return -2;
+			}
+		}
+
+		private int branch(final AT_Machine_State.Machine_State ms, final int rc, final Instruction in, final boolean taken) {
+			if (!taken) {
+				ms.pc += rc;
+				return rc;
+			}
+
+			if (!isJump(ms.pc + in.off)) {
+				return -2;
+			}
+
+			ms.pc += in.off;
+			return rc;
+		}
+	}
+}
@@ -27,6 +27,14 @@ import java.util.Observer;
 import java.util.Random;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.swing.JOptionPane;
@@ -53,7 +61,9 @@ import lang.Lang;
 import network.Network;
 import network.Peer;
 import network.message.BlockMessage;
+import network.message.GetBlockHeadersMessage;
 import network.message.GetBlockMessage;
+import network.message.GetLocatorSignaturesMessage;
 import network.message.GetSignaturesMessage;
 import network.message.HeightMessage;
 import network.message.Message;
@@ -83,6 +93,7 @@ import qora.voting.PollOption;
 import qora.wallet.Wallet;
 import settings.Settings;
 import utils.DateTimeFormat;
+import utils.LatencyHistogram;
 import utils.ObserverMessage;
 import utils.Pair;
 import utils.SysTray;
@@ -95,6 +106,7 @@ public final class Controller extends Observable {
 	private static final Logger LOGGER = LogManager.getLogger(Controller.class);
 	private static final String VERSION = "0.26.12-rc2";
 	private static final String BUILD_TIME = "2021-07-01 14:00:00 UTC";
+	private static final int TRANSACTION_VALIDATION_QUEUE_SIZE = 10000;
 
 	// TODO ENUM would be better here
 	public static final int STATUS_NO_CONNECTIONS = 0;
@@ -125,6 +137,9 @@ public final class Controller extends Observable {
 
 	private Map<Peer, Pair<String, Long>> peersVersions;
 
+	private final ExecutorService transactionValidator = createTransactionValidator();
+	private final Map<Integer, LatencyHistogram> messageLatencies = new ConcurrentHashMap<Integer, LatencyHistogram>();
+
 	private static Controller instance;
 
 	public boolean isProcessingWalletSynchronize() {
@@ -226,6 +241,26 @@ public final class Controller extends Observable {
 		}
 	}
 
+	/**
+	 * Peers that claim to have at least <code>minimumHeight</code> blocks, in longest-connection-first order.
+	 * 
+	 * @param minimumHeight
+	 * @return list of peers, possibly empty
+	 */
+	public List<Peer> getPeersWithHeight(final int minimumHeight) {
+		final List<Peer> peers = new ArrayList<Peer>();
+
+		synchronized (this.peerHeight) {
+			for (final Map.Entry<Peer, Integer> entry : this.peerHeight.entrySet()) {
+				if (entry.getValue() >= minimumHeight) {
+					peers.add(entry.getKey());
+				}
+			}
+		}
+
+		return peers;
+	}
+
 	public Map<Peer, Pair<String, Long>> getPeersVersions() {
 		return peersVersions;
 	}
@@ -308,9 +343,9 @@ public final class Controller extends Observable {
 
 		// startFromScratchOnDemand();
 
-		// If BlockMap database was closed while processing a block
+		// If database was closed part-way through writes it couldn't roll back
 		// then assume all databases are corrupt and rebuild from scratch
-		if (QoraDb.getInstance().getBlockMap().isProcessing()) {
+		if (QoraDb.getInstance().isRecoveryNeeded()) {
 			try {
 				QoraDb.getInstance().close();
 			} catch (Throwable e) {
@@ -430,7 +465,6 @@ public final class Controller extends Observable {
 
 		// REGISTER DATABASE OBSERVER
 		this.addObserver(QoraDb.getInstance().getTransactionMap());
-		this.addObserver(QoraDb.getInstance());
 	}
 
 	public void replaseAssetsFavorites() {
@@ -478,7 +512,7 @@ public final class Controller extends Observable {
 			QoraDb.createDatabase();
 		}
 
-		if (QoraDb.getInstance().getBlockMap().isProcessing()) {
+		if (QoraDb.getInstance().isRecoveryNeeded()) {
 			throw new Exception(Lang.getInstance().translate("The application was not closed correctly! Delete the folder ") + dataDir.getAbsolutePath()
 					+ Lang.getInstance().translate(" and start the application again."));
 		}
@@ -606,6 +640,7 @@ public final class Controller extends Observable {
 				LOGGER.info(Lang.getInstance().translate("Stopping message processor"));
 				ClosingDialog.getInstance().updateProgress("Stopping message processor");
 				this.network.stop();
+				this.transactionValidator.shutdownNow();
 
 				// CLOSE DATABASE
 				LOGGER.info(Lang.getInstance().translate("Closing database (this may take some time)"));
@@ -753,6 +788,9 @@ public final class Controller extends Observable {
 	}
 
 	public void onDisconnect(Peer peer) {
+		if (this.synchronizer != null)
+			this.synchronizer.onDisconnect(peer);
+
 		synchronized (this.peerHeight) {
 			this.peerHeight.remove(peer);
 			this.peersVersions.remove(peer);
@@ -787,194 +825,309 @@ public final class Controller extends Observable {
 		this.onDisconnect(peer);
 	}
 
-	// SYNCHRONIZED DO NOT PROCESS MESSAGES SIMULTANEOUSLY
+	/**
+	 * Handle message from peer.
+	 * <p>
+	 * Messages are handled concurrently, in lanes:
+	 * <ul>
+	 * <li>pings, heights and versions need no locking</li>
+	 * <li>requests for signatures or blocks are read-only so are served concurrently, only waiting for any block being
+	 * applied to finish</li>
+	 * <li>transactions are validated and admitted on a separate pool, see {@link #admitTransaction(TransactionMessage, long)}</li>
+	 * <li>new blocks are applied one at a time by {@link Synchronizer#process(Block)}</li>
+	 * </ul>
+	 * Time taken for each message type is recorded, see {@link #getMessageLatencies()}.
+	 * 
+	 * @param message
+	 */
 	public void onMessage(Message message) {
-		Message response;
-		Block block;
+		final long start = System.nanoTime();
 
-		synchronized (this) {
-			switch (message.getType()) {
-				case Message.PING_TYPE:
+		switch (message.getType()) {
+			case Message.PING_TYPE:
 
-					// CREATE PING
-					response = MessageFactory.getInstance().createPingMessage();
+				// CREATE PING
+				Message response = MessageFactory.getInstance().createPingMessage();
 
-					// SET ID
-					response.setId(message.getId());
+				// SET ID
+				response.setId(message.getId());
 
-					// SEND BACK TO SENDER
-					message.getSender().sendMessage(response);
+				// SEND BACK TO SENDER
+				message.getSender().sendMessage(response);
 
-					break;
+				break;
 
-				case Message.HEIGHT_TYPE:
+			case Message.HEIGHT_TYPE:
 
-					HeightMessage heightMessage = (HeightMessage) message;
-					LOGGER.trace("Received height " + heightMessage.getHeight() + " from peer " + heightMessage.getSender().getAddress());
+				HeightMessage heightMessage = (HeightMessage) message;
+				LOGGER.trace("Received height " + heightMessage.getHeight() + " from peer " + heightMessage.getSender().getAddress());
 
-					// ADD TO LIST
-					synchronized (this.peerHeight) {
-						this.peerHeight.put(heightMessage.getSender(), heightMessage.getHeight());
-					}
+				// ADD TO LIST
+				synchronized (this.peerHeight) {
+					this.peerHeight.put(heightMessage.getSender(), heightMessage.getHeight());
+				}
+
+				break;
 
+			case Message.GET_SIGNATURES_TYPE:
+			case Message.GET_LOCATOR_SIGNATURES_TYPE:
+			case Message.GET_BLOCK_HEADERS_TYPE:
+			case Message.GET_BLOCK_TYPE:
+
+				// Don't send if we're synchronizing
+				if (this.status == STATUS_SYNCHRONIZING)
 					break;
 
-				case Message.GET_SIGNATURES_TYPE:
+				final Lock readLock = QoraDb.getInstance().getReadLock();
+				readLock.lock();
+				try {
+					switch (message.getType()) {
+						case Message.GET_SIGNATURES_TYPE:
+							this.onGetSignaturesMessage((GetSignaturesMessage) message);
+							break;
+
+						case Message.GET_LOCATOR_SIGNATURES_TYPE:
+							this.onGetLocatorSignaturesMessage((GetLocatorSignaturesMessage) message);
+							break;
+
+						case Message.GET_BLOCK_HEADERS_TYPE:
+							this.onGetBlockHeadersMessage((GetBlockHeadersMessage) message);
+							break;
+
+						default:
+							this.onGetBlockMessage((GetBlockMessage) message);
+							break;
+					}
+				} finally {
+					readLock.unlock();
+				}
 
-					// Don't send if we're synchronizing
-					if (this.status == STATUS_SYNCHRONIZING)
-						break;
+				break;
 
-					GetSignaturesMessage getHeadersMessage = (GetSignaturesMessage) message;
+			case Message.BLOCK_TYPE:
 
-					// ASK SIGNATURES FROM BLOCKCHAIN
-					List<byte[]> headers = this.blockchain.getSignatures(getHeadersMessage.getParent());
-					LOGGER.trace("Found " + headers.size() + " block signatures to send to " + message.getSender().getAddress());
+				this.onBlockMessage((BlockMessage) message);
+				break;
 
-					// CREATE RESPONSE WITH SAME ID
-					response = MessageFactory.getInstance().createHeadersMessage(headers);
-					response.setId(message.getId());
+			case Message.TRANSACTION_TYPE:
 
-					// SEND RESPONSE BACK WITH SAME ID
-					message.getSender().sendMessage(response);
+				// Validated on separate pool, which records latency itself
+				try {
+					this.transactionValidator.execute(() -> this.admitTransaction((TransactionMessage) message, start));
+				} catch (RejectedExecutionException e) {
+					// Queue full or shutting down - transaction will be gossiped again
+					LOGGER.debug("Dropped transaction from " + message.getSender().getAddress() + ": validation queue full");
+				}
 
-					break;
+				return;
 
-				case Message.GET_BLOCK_TYPE:
+			case Message.VERSION_TYPE:
 
-					// Don't send if we're synchronizing
-					if (this.status == STATUS_SYNCHRONIZING)
-						break;
+				VersionMessage versionMessage = (VersionMessage) message;
 
-					GetBlockMessage getBlockMessage = (GetBlockMessage) message;
+				// ADD TO LIST
+				synchronized (this.peersVersions) {
+					this.peersVersions.put(versionMessage.getSender(),
+							new Pair<String, Long>(versionMessage.getStrVersion(), versionMessage.getBuildDateTime()));
+				}
 
-					// ASK BLOCK FROM BLOCKCHAIN
-					block = this.blockchain.getBlock(getBlockMessage.getSignature());
+				break;
+		}
 
-					// CREATE RESPONSE WITH SAME ID
-					response = MessageFactory.getInstance().createBlockMessage(block);
-					response.setId(message.getId());
+		this.recordMessageLatency(message.getType(), start);
+	}
 
-					// SEND RESPONSE BACK WITH SAME ID
-					message.getSender().sendMessage(response);
+	private void onGetSignaturesMessage(final GetSignaturesMessage getHeadersMessage) {
+		// ASK SIGNATURES FROM BLOCKCHAIN
+		List<byte[]> headers = this.blockchain.getSignatures(getHeadersMessage.getParent());
+		LOGGER.trace("Found " + headers.size() + " block signatures to send to " + getHeadersMessage.getSender().getAddress());
 
-					break;
+		// CREATE RESPONSE WITH SAME ID
+		Message response = MessageFactory.getInstance().createHeadersMessage(headers);
+		response.setId(getHeadersMessage.getId());
 
-				case Message.BLOCK_TYPE:
-					// Don't process if we're synchronizing
-					if (this.status == STATUS_SYNCHRONIZING) {
-						break;
-					}
+		// SEND RESPONSE BACK WITH SAME ID
+		getHeadersMessage.getSender().sendMessage(response);
+	}
 
-					final BlockMessage blockMessage = (BlockMessage) message;
+	private void onGetLocatorSignaturesMessage(final GetLocatorSignaturesMessage getLocatorSignaturesMessage) {
+		// FIND BEST MATCH FROM LOCATOR AND SIGNATURES AFTER IT
+		List<byte[]> headers = this.blockchain.getSignatures(getLocatorSignaturesMessage.getLocator());
+		LOGGER.trace("Found " + headers.size() + " block signatures from locator to send to " + getLocatorSignaturesMessage.getSender().getAddress());
 
-					// Get block from message
-					block = blockMessage.getBlock();
-					LOGGER.trace("Received block from peer " + message.getSender().getAddress());
+		// CREATE RESPONSE WITH SAME ID
+		Message response = MessageFactory.getInstance().createHeadersMessage(headers);
+		response.setId(getLocatorSignaturesMessage.getId());
 
-					// Compare to our blockchain tip
-					final Block blockchainTip = this.blockchain.getLastBlock();
-					if (blockchainTip.getHeight() == blockMessage.getHeight() && Arrays.equals(blockchainTip.getSignature(), block.getSignature())) {
-						// We have this block already but update our peer DB to reflect peer's height anyway
-						synchronized (this.peerHeight) {
-							this.peerHeight.put(message.getSender(), blockMessage.getHeight());
-						}
-						break;
-					}
+		// SEND RESPONSE BACK WITH SAME ID
+		getLocatorSignaturesMessage.getSender().sendMessage(response);
+	}
 
-					final boolean isNewBlockValid = this.blockchain.isNewBlockValid(block);
+	private void onGetBlockHeadersMessage(final GetBlockHeadersMessage getBlockHeadersMessage) {
+		// ASK BLOCKS FROM BLOCKCHAIN, STOPPING AT FIRST UNKNOWN SIGNATURE
+		List<Block> headers = new ArrayList<Block>();
+		for (byte[] signature : getBlockHeadersMessage.getSignatures()) {
+			Block block = this.blockchain.getBlock(signature);
+			if (block == null)
+				break;
 
-					if (isNewBlockValid) {
-						synchronized (this.peerHeight) {
-							this.peerHeight.put(message.getSender(), blockMessage.getHeight());
-						}
-					}
+			headers.add(block);
+		}
 
-					if (isProcessingWalletSynchronize()) {
-						break;
-					}
+		// CREATE RESPONSE WITH SAME ID
+		Message response = MessageFactory.getInstance().createBlockHeadersMessage(headers);
+		response.setId(getBlockHeadersMessage.getId());
 
-					/*
-					 * Prevent deadlock when a new block arrives from network while we're resyncing wallet.
-					 * 
-					 * New block arrival locks Controller and wants Synchronizer, 
-					 * but it's possible Synchronizer is locked (e.g. by BlockGenerator) while performing a wallet sync 
-					 * and this.setChanged() would want a lock on Controller too, causing a deadlock.
-					 * 
-					 * We avoid this by testing for block processing status and exiting early.
-					 */
-					if (QoraDb.getInstance().getBlockMap().isProcessing()) {
-						break;
-					}
+		// SEND RESPONSE BACK WITH SAME ID
+		getBlockHeadersMessage.getSender().sendMessage(response);
+	}
 
-					// Check if block is valid
-					if (isNewBlockValid && this.synchronizer.process(block)) {
-						LOGGER.info(Lang.getInstance().translate("Received new block") + " " + block.getHeight() + " (" + block.getTransactionCount() + " transactions)");
+	private void onGetBlockMessage(final GetBlockMessage getBlockMessage) {
+		// ASK BLOCK FROM BLOCKCHAIN
+		// Stored block keeps its serialized bytes, so its transactions are never parsed here
+		Block block = this.blockchain.getBlock(getBlockMessage.getSignature());
 
-						// Broadcast to peers
-						final List<Peer> excludes = new ArrayList<Peer>();
-						excludes.add(message.getSender());
-						this.network.broadcast(message, excludes);
+		// CREATE RESPONSE WITH SAME ID
+		Message response = MessageFactory.getInstance().createBlockMessage(block);
+		response.setId(getBlockMessage.getId());
 
-						// Let sender know we've updated
-						sendOurHeightToPeer(message.getSender());
-					}
-					break;
+		// SEND RESPONSE BACK WITH SAME ID
+		getBlockMessage.getSender().sendMessage(response);
+	}
 
-				case Message.TRANSACTION_TYPE:
+	private void onBlockMessage(final BlockMessage blockMessage) {
+		// Don't process if we're synchronizing
+		if (this.status == STATUS_SYNCHRONIZING) {
+			return;
+		}
 
-					TransactionMessage transactionMessage = (TransactionMessage) message;
+		// Get block from message
+		Block block = blockMessage.getBlock();
+		LOGGER.trace("Received block from peer " + blockMessage.getSender().getAddress());
 
-					// GET TRANSACTION
-					Transaction transaction = transactionMessage.getTransaction();
+		// Compare to our blockchain tip
+		final Block blockchainTip = this.blockchain.getLastBlock();
+		if (blockchainTip.getHeight() == blockMessage.getHeight() && Arrays.equals(blockchainTip.getSignature(), block.getSignature())) {
+			// We have this block already but update our peer DB to reflect peer's height anyway
+			synchronized (this.peerHeight) {
+				this.peerHeight.put(blockMessage.getSender(), blockMessage.getHeight());
+			}
+			return;
+		}
 
-					// CHECK IF SIGNATURE IS VALID OR GENESIS TRANSACTION
-					if (!transaction.isSignatureValid() || transaction.getType() == Transaction.GENESIS_TRANSACTION) {
-						// DISHONEST PEER
-						this.network.onError(message.getSender(), Lang.getInstance().translate("invalid transaction signature"));
+		final boolean isNewBlockValid = this.blockchain.isNewBlockValid(block);
 
-						return;
-					}
+		if (isNewBlockValid) {
+			synchronized (this.peerHeight) {
+				this.peerHeight.put(blockMessage.getSender(), blockMessage.getHeight());
+			}
+		}
+
+		if (isProcessingWalletSynchronize()) {
+			return;
+		}
 
-					// CHECK IF TRANSACTION HAS MINIMUM FEE AND MINIMUM FEE PER BYTE
-					// AND UNCONFIRMED
-					if (transaction.hasMinimumFee() && transaction.hasMinimumFeePerByte()
-							&& !QoraDb.getInstance().getTransactionParentMap().contains(transaction.getSignature())) {
-						// ADD TO UNCONFIRMED TRANSACTIONS
-						this.blockGenerator.addUnconfirmedTransaction(transaction);
+		/*
+		 * Prevent deadlock when a new block arrives from network while we're resyncing wallet.
+		 * 
+		 * New block arrival wants Synchronizer, 
+		 * but it's possible Synchronizer is locked (e.g. by BlockGenerator) while performing a wallet sync 
+		 * and this.setChanged() would want a lock on Controller too, causing a deadlock.
+		 * 
+		 * We avoid this by testing for block processing status and exiting early.
+		 */
+		if (QoraDb.getInstance().getBlockMap().isProcessing()) {
+			return;
+		}
 
-						// NOTIFY OBSERVERS
-						// this.setChanged();
-						// this.notifyObservers(new
-						// ObserverMessage(ObserverMessage.LIST_TRANSACTION_TYPE,
-						// DatabaseSet.getInstance().getTransactionsDatabase().getTransactions()));
+		// Check if block is valid - Synchronizer applies blocks one at a time
+		if (isNewBlockValid && this.synchronizer.process(block)) {
+			LOGGER.info(Lang.getInstance().translate("Received new block") + " " + block.getHeight() + " (" + block.getTransactionCount() + " transactions)");
 
-						this.setChanged();
-						this.notifyObservers(new ObserverMessage(ObserverMessage.ADD_TRANSACTION_TYPE, transaction));
+			// Broadcast to peers
+			final List<Peer> excludes = new ArrayList<Peer>();
+			excludes.add(blockMessage.getSender());
+			this.network.broadcast(blockMessage, excludes);
 
-						// BROADCAST
-						List<Peer> excludes = new ArrayList<Peer>();
-						excludes.add(message.getSender());
-						this.network.broadcast(message, excludes);
-					}
+			// Let sender know we've updated
+			sendOurHeightToPeer(blockMessage.getSender());
+		}
+	}
 
-					break;
+	/**
+	 * Validate transaction from peer and, if acceptable, add it to unconfirmed transactions and pass it on.
+	 * <p>
+	 * Runs on transaction validation pool.
+	 * 
+	 * @param transactionMessage
+	 * @param start
+	 *            when message was received, from <code>System.nanoTime()</code>
+	 */
+	private void admitTransaction(final TransactionMessage transactionMessage, final long start) {
+		try {
+			// GET TRANSACTION
+			Transaction transaction = transactionMessage.getTransaction();
 
-				case Message.VERSION_TYPE:
+			// CHECK IF SIGNATURE IS VALID OR GENESIS TRANSACTION
+			if (!transaction.hasValidSignature() || transaction.getType() == Transaction.GENESIS_TRANSACTION) {
+				// DISHONEST PEER
+				this.network.onError(transactionMessage.getSender(), Lang.getInstance().translate("invalid transaction signature"));
 
-					VersionMessage versionMessage = (VersionMessage) message;
+				return;
+			}
 
-					// ADD TO LIST
-					synchronized (this.peersVersions) {
-						this.peersVersions.put(versionMessage.getSender(),
-								new Pair<String, Long>(versionMessage.getStrVersion(), versionMessage.getBuildDateTime()));
-					}
+			// CHECK IF TRANSACTION HAS MINIMUM FEE AND MINIMUM FEE PER BYTE
+			// AND UNCONFIRMED
+			if (transaction.hasMinimumFee() && transaction.hasMinimumFeePerByte()
+					&& !QoraDb.getInstance().getTransactionParentMap().contains(transaction.getSignature())) {
+				// ADD TO UNCONFIRMED TRANSACTIONS
+				this.blockGenerator.addUnconfirmedTransaction(transaction);
 
-					break;
+				// NOTIFY OBSERVERS
+				this.setChanged();
+				this.notifyObservers(new ObserverMessage(ObserverMessage.ADD_TRANSACTION_TYPE, transaction));
+
+				// BROADCAST
+				List<Peer> excludes = new ArrayList<Peer>();
+				excludes.add(transactionMessage.getSender());
+				this.network.broadcast(transactionMessage, excludes);
 			}
+		} catch (Exception e) {
+			LOGGER.error(e.getMessage(), e);
+		} finally {
+			this.recordMessageLatency(Message.TRANSACTION_TYPE, start);
 		}
 	}
 
+	private void recordMessageLatency(final int type, final long start) {
+		this.messageLatencies.computeIfAbsent(type, key -> new LatencyHistogram()).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Time taken to handle each type of message from peers, including time spent queued for transactions.
+	 * 
+	 * @return histograms keyed by message type
+	 * @see Message
+	 */
+	public Map<Integer, LatencyHistogram> getMessageLatencies() {
+		return Collections.unmodifiableMap(this.messageLatencies);
+	}
+
+	/**
+	 * Pool for validating transactions from peers, with bounded queue so a flood of transactions can't exhaust memory.
+	 */
+	private static ExecutorService createTransactionValidator() {
+		final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		final AtomicInteger threadCount = new AtomicInteger();
+
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(TRANSACTION_VALIDATION_QUEUE_SIZE), runnable -> {
+					final Thread thread = new Thread(runnable, "Transaction validator " + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
 	public void addActivePeersObserver(Observer o) {
 		this.network.addObserver(o);
 	}
@@ -1028,6 +1181,9 @@ public final class Controller extends Observable {
 		this.setChanged();
 		this.notifyObservers(new ObserverMessage(ObserverMessage.NETWORK_STATUS, this.status));
 
+		// Hold back commits until we're done, if DB is configured to do so
+		QoraDb.getInstance().beginSync();
+
 		Peer peer = null;
 		try {
 			// Synchronize while we're not up-to-date
@@ -1068,6 +1224,8 @@ public final class Controller extends Observable {
 			}
 
 			return;
+		} finally {
+			QoraDb.getInstance().endSync();
 		}
 
 		if (this.peerHeight.size() == 0) {
@@ -1085,6 +1243,10 @@ public final class Controller extends Observable {
 			this.setChanged();
 			this.notifyObservers(new ObserverMessage(ObserverMessage.NETWORK_STATUS, this.status));
 
+			if (QoraDb.getInstance().isBulkSync()) {
+				LOGGER.info("Caught up using bulk sync mode - database will reopen in durable mode after restart");
+			}
+
 			Controller.getInstance().logStatusInfo();
 		}
 	}
@@ -1291,10 +1453,10 @@ public final class Controller extends Observable {
 	}
 
 	public Transaction getTransaction(byte[] signature, QoraDb database) {
-		// CHECK IF IN BLOCK
-		Block block = database.getTransactionParentMap().getParent(signature);
-		if (block != null)
-			return block.getTransaction(signature);
+		// CHECK IF CONFIRMED
+		Transaction transaction = database.getTransactionFinalMap().getTransaction(signature);
+		if (transaction != null)
+			return transaction;
 
 		// CHECK IF IN TRANSACTION DATABASE
 		return database.getTransactionMap().get(signature);
@@ -1383,7 +1545,9 @@ public final class Controller extends Observable {
 	}
 
 	public void onDatabaseCommit() {
-		this.wallet.commit();
+		if (this.wallet != null) {
+			this.wallet.commit();
+		}
 	}
 
 	public ForgingStatus getForgingStatus() {
@@ -1400,6 +1564,14 @@ public final class Controller extends Observable {
 		return this.blockchain.getLastBlock();
 	}
 
+	public List<byte[]> getBlockLocator() {
+		return this.blockchain.getBlockLocator();
+	}
+
+	public int getMainChainHeight(byte[] signature) {
+		return this.blockchain.getMainChainHeight(signature);
+	}
+
 	public byte[] getWalletLastBlockSign() {
 		return this.wallet.getLastBlockSignature();
 	}
@@ -1442,11 +1614,11 @@ public final class Controller extends Observable {
 
 	// BALANCES
 
-	public SortableList<Tuple2<String, Long>, BigDecimal> getBalances(long key) {
+	public SortableList<byte[], BigDecimal> getBalances(long key) {
 		return QoraDb.getInstance().getBalanceMap().getBalancesSortableList(key);
 	}
 
-	public SortableList<Tuple2<String, Long>, BigDecimal> getBalances(Account account) {
+	public SortableList<byte[], BigDecimal> getBalances(Account account) {
 		return QoraDb.getInstance().getBalanceMap().getBalancesSortableList(account);
 	}
 
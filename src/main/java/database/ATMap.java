@@ -49,6 +49,15 @@ public class ATMap extends DbMap<String, AT>
 	public ATMap(ATMap parent) 
 	{
 		super(parent);
+
+		this.typeATs = EmptyIndexes.set();
+		this.creatorATs = EmptyIndexes.set();
+		this.orderedATs = EmptyIndexes.set();
+		this.creationHeightATs = EmptyIndexes.set();
+		this.hashATs = EmptyIndexes.set();
+		this.stateAT = EmptyIndexes.map();
+		this.hashCodes = EmptyIndexes.map();
+		this.atToNextHeight = EmptyIndexes.map();
 		this.parentATMap = parent;
 
 	}
@@ -265,7 +274,7 @@ public class ATMap extends DbMap<String, AT>
 
 	public void delete(AT at)
 	{
-		this.map.remove( Base58.encode(at.getId()));
+		this.getOverlay().remove( Base58.encode(at.getId()));
 
 	}
 
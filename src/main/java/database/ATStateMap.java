@@ -1,12 +1,20 @@
 package database;
 
-import java.util.Collection;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Set;
 import java.util.TreeMap;
 
+import org.mapdb.Atomic;
 import org.mapdb.BTreeMap;
 import org.mapdb.Bind;
 import org.mapdb.DB;
@@ -16,52 +24,88 @@ import org.mapdb.Fun.Tuple2;
 
 import qora.crypto.Base58;
 import at.AT_Constants;
+import at.AT_Machine_State;
 
-//Integer -> blockHeight (f.e 0 -> 1000 -> 2000 if we keep state every 1000s blocks), byte[] -> atId , byte[] stateBytes
-public class ATStateMap extends DbMap< Tuple2<Integer, String> ,  byte[] > {
+/**
+ * AT states by the height of the block that changed them and AT, used to roll ATs back when blocks are orphaned.
+ * <p>
+ * The first record of an AT in every {@link AT_Constants#STATE_STORE_DISTANCE} blocks is its full state. Records after
+ * that are diffs against the AT's previous record: its height and the pages that changed since, which for most ATs are
+ * just the balances, registers and a few data cells. A full state is stored again after {@link #MAX_DIFFS} diffs, or once
+ * diffs since the last one add up to its size, so getting a state back takes a bounded number of reads.
+ * <p>
+ * Only the last {@link #EXACT_ROLLBACK_DEPTH} or so blocks need every state. Older stretches of
+ * {@link AT_Constants#STATE_STORE_DISTANCE} blocks are compacted to the last state of each AT in them, the way older
+ * versions stored them, see {@link #getRollbackHeight}.
+ */
+public class ATStateMap extends DbMap<Tuple2<Integer, String>, byte[]> {
+
+	private static final byte FULL = 0;
+	private static final byte DIFF = 1;
+
+	// Same as an AT data cell
+	private static final int PAGE_SIZE = 8;
+
+	// Diff record: type, previous record's height, diffs since full state, their total size, state length, then pages
+	private static final int DIFF_HEADER_LENGTH = 1 + 4 + 2 + 4 + 4;
+
+	private static final int MAX_DIFFS = 32;
+
+	/**
+	 * Blocks back from the last one that every AT state is kept for. Deeper reorganizations roll back to the end of a
+	 * {@link AT_Constants#STATE_STORE_DISTANCE} stretch instead, as they always did.
+	 */
+	public static final int EXACT_ROLLBACK_DEPTH = 2 * AT_Constants.STATE_STORE_DISTANCE;
 
 	private Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
 
+	// Secondary index of (AT, height) to key
 	@SuppressWarnings("rawtypes")
 	private NavigableSet allATStates;
 
-	public ATStateMap( QoraDb databaseSet, DB database ) 
+	// Lowest height states can be rolled back to exactly, see getRollbackHeight
+	private Atomic.Integer exactHeight;
+
+	public ATStateMap(QoraDb databaseSet, DB database)
 	{
 		super(databaseSet, database);
+
+		this.exactHeight = database.getAtomicInteger("at_state_exact_height");
 	}
-	
-	public ATStateMap( ATStateMap parent )
+
+	public ATStateMap(ATStateMap parent)
 	{
 		super(parent);
+
+		this.allATStates = EmptyIndexes.set();
 	}
 
 	protected void createIndexes(DB database) {
-//		
+//
 	}
 
 	@Override
-	protected Map< Tuple2< Integer, String> ,  byte[] > getMap(DB database)
+	protected Map<Tuple2<Integer, String>, byte[]> getMap(DB database)
 	{
 		return this.openMap(database);
 	}
 
 	@Override
-	protected Map< Tuple2< Integer, String> ,  byte[] > getMemoryMap()
+	protected Map<Tuple2<Integer, String>, byte[]> getMemoryMap()
 	{
 		DB database = DBMaker.newMemoryDB().make();
 		return this.openMap(database);
 	}
 
-
 	@SuppressWarnings("unchecked")
-	private Map< Tuple2< Integer, String> ,  byte[]>  openMap(DB database)
+	private Map<Tuple2<Integer, String>, byte[]> openMap(DB database)
 	{
 		//OPEN MAP
-		BTreeMap< Tuple2<Integer, String> ,  byte[]> map = database.createTreeMap("at_state")
-				.makeOrGet();
+		BTreeMap<Tuple2<Integer, String>, byte[]> map = database.createTreeMap("at_state_diffs")
+				.comparator(Fun.COMPARATOR).makeOrGet();
+
+		allATStates = database.createTreeSet("at_diff_id_to_height").comparator(Fun.COMPARATOR).makeOrGet();
 
-		allATStates = database.createTreeSet("at_id_to_height").comparator(Fun.COMPARATOR).makeOrGet();
-		
 		Bind.secondaryKey(map, allATStates, new Fun.Function2<Tuple2<String, Integer>, Tuple2<Integer, String>, byte[]>() {
 			@Override
 			public Tuple2<String, Integer> run(Tuple2<Integer, String> key, byte[] val)
@@ -69,67 +113,369 @@ public class ATStateMap extends DbMap< Tuple2<Integer, String> ,  byte[] > {
 				return new Tuple2<String, Integer>(key.b, key.a);
 			}
 		});
-		
+
 		//RETURN
 		return map;
 	}
 
+	/**
+	 * Returns true if <code>database</code> still has AT states the way older versions stored them, the last state of
+	 * every AT in each {@link AT_Constants#STATE_STORE_DISTANCE} blocks.
+	 */
+	public static boolean hasLegacyStates(DB database)
+	{
+		return database.exists("at_state") && !database.exists("at_state_diffs");
+	}
+
+	/**
+	 * Moves states stored by older versions over as full states at the height they were run at. Rolling back below
+	 * the last of them can't be exact, see {@link #getRollbackHeight}.
+	 */
+	void importLegacyStates(DB database)
+	{
+		BTreeMap<Tuple2<Integer, String>, byte[]> legacy = database.getTreeMap("at_state");
+
+		int lastHeight = 0;
+		for (Map.Entry<Tuple2<Integer, String>, byte[]> entry : legacy.entrySet())
+		{
+			int height = AT_Machine_State.getStateHeight(entry.getValue());
+			this.set(new Tuple2<Integer, String>(height, entry.getKey().b), toRecord(entry.getValue()));
+			lastHeight = Math.max(lastHeight, height);
+		}
 
-	//add State if it does not exist or update the state
+		this.exactHeight.set(lastHeight);
+
+		database.delete("at_id_to_height");
+		database.delete("at_state");
+	}
+
+	//add State of AT as changed by block at blockHeight
 	public void addOrUpdate( Integer blockHeight , byte[] atId , byte[] stateBytes )
 	{
-		//Height to store state
-		int height = (int)((Math.round(blockHeight)/AT_Constants.STATE_STORE_DISTANCE)+1)*AT_Constants.STATE_STORE_DISTANCE;
-		
-		this.set( new Tuple2<Integer, String>( height, Base58.encode(atId) ), stateBytes);
+		String id = Base58.encode(atId);
+
+		Integer previousHeight = this.getLastHeight(id, blockHeight - 1);
+
+		byte[] record;
+		if (previousHeight == null || previousHeight / AT_Constants.STATE_STORE_DISTANCE != blockHeight / AT_Constants.STATE_STORE_DISTANCE)
+		{
+			record = toRecord(stateBytes);
+		}
+		else
+		{
+			byte[] previous = this.get(new Tuple2<Integer, String>(previousHeight, id));
+			record = diff(previousHeight, previous, this.toState(id, previous), stateBytes);
+		}
+
+		this.set(new Tuple2<Integer, String>(blockHeight, id), record);
+
+		if (this.parent == null)
+		{
+			this.compact(blockHeight);
+		}
+	}
+
+	/**
+	 * Returns state AT <code>id</code> had after block at <code>blockHeight</code>, or null if it didn't exist yet.
+	 */
+	public byte[] getState( String id , int blockHeight )
+	{
+		Integer height = this.getLastHeight(id, blockHeight);
+		if (height == null)
+		{
+			return null;
+		}
+
+		return this.toState(id, this.get(new Tuple2<Integer, String>(height, id)));
 	}
 
-	//get the list of states stored at block height. use for roll back
-	@SuppressWarnings({ "unchecked", "rawtypes" })
+	//get states ATs changed after blockHeight had at blockHeight. use for roll back
 	public Map<String, byte[]> getStates( Integer blockHeight )
 	{
-		BTreeMap map = (BTreeMap) this.map;
-
-		//Height to store state
-		int height = (int)((Math.round(blockHeight)/AT_Constants.STATE_STORE_DISTANCE)+1)*AT_Constants.STATE_STORE_DISTANCE;
-		
-		//FILTER ALL ATS
-		Collection<Tuple2> keys = ((BTreeMap<Tuple2, String>) map).subMap(
-				Fun.t2(height, null),
-				Fun.t2(Fun.HI(), Fun.HI())).keySet();
-		
 		Map<String, byte[]> states = new TreeMap<String, byte[]>();
-		
-		for (Tuple2 key : keys)
+
+		for (String id : this.getChangedAfter(blockHeight))
 		{
-			//states.put( (String)key.b , (byte[]) map.get(key));
-			Iterator<Tuple2< Integer, String>> iter = Fun.filter(allATStates, new Tuple2<String, Integer>((String)key.b, 0), true, new Tuple2<String,Integer>((String)key.b, height-1),true).iterator();
-			if ( iter.hasNext() )
+			byte[] state = this.getState(id, blockHeight);
+			if (state != null)
 			{
-				states.put((String) key.b, this.map.get(iter.next()));
+				states.put(id, state);
 			}
 		}
-		
+
 		return states;
 	}
 
-	//delete the List of States after blockHeight. When roll back occurs to 1000 blockHeight and you have also states stored at 2000 blockHeight f.e.
-	@SuppressWarnings({ "unchecked", "rawtypes" })
+	//delete the states stored after blockHeight, once rolled back to it
 	public void deleteStatesAfter( Integer blockHeight )
 	{
-		BTreeMap map = (BTreeMap) this.map;
+		for (Tuple2<Integer, String> key : this.getKeysAfter(blockHeight))
+		{
+			this.delete(key);
+		}
+
+		// Stretches from here on are stored in full again
+		if (this.parent == null && blockHeight < this.exactHeight.get())
+		{
+			this.exactHeight.set((blockHeight + 1) / AT_Constants.STATE_STORE_DISTANCE * AT_Constants.STATE_STORE_DISTANCE);
+		}
+	}
+
+	/**
+	 * Returns height to roll ATs back to on orphaning back to <code>blockHeight</code>. That's <code>blockHeight</code>
+	 * itself, unless it's below states that were compacted or imported from an older version, which only keep the last
+	 * state in every {@link AT_Constants#STATE_STORE_DISTANCE} blocks; then it's the end of the previous such stretch.
+	 */
+	public int getRollbackHeight( int blockHeight )
+	{
+		if (blockHeight >= this.getExactHeight())
+		{
+			return blockHeight;
+		}
+
+		return Math.max(1, blockHeight / AT_Constants.STATE_STORE_DISTANCE * AT_Constants.STATE_STORE_DISTANCE - 1);
+	}
+
+	@Override
+	public void reset()
+	{
+		super.reset();
+
+		if (this.parent == null)
+		{
+			this.exactHeight.set(0);
+		}
+	}
+
+	private int getExactHeight()
+	{
+		if (this.parent != null)
+		{
+			return ((ATStateMap) this.parent).getExactHeight();
+		}
+
+		return this.exactHeight.get();
+	}
+
+	/**
+	 * Compacts whole {@link AT_Constants#STATE_STORE_DISTANCE} stretches more than {@link #EXACT_ROLLBACK_DEPTH} blocks
+	 * before <code>blockHeight</code> that aren't yet.
+	 */
+	private void compact(int blockHeight)
+	{
+		int compactHeight = (blockHeight - EXACT_ROLLBACK_DEPTH) / AT_Constants.STATE_STORE_DISTANCE * AT_Constants.STATE_STORE_DISTANCE;
+		int exactHeight = this.exactHeight.get();
+		if (compactHeight <= exactHeight)
+		{
+			return;
+		}
+
+		for (int start = exactHeight / AT_Constants.STATE_STORE_DISTANCE * AT_Constants.STATE_STORE_DISTANCE; start < compactHeight;
+				start += AT_Constants.STATE_STORE_DISTANCE)
+		{
+			this.compactStretch(start, start + AT_Constants.STATE_STORE_DISTANCE - 1);
+		}
+
+		this.exactHeight.set(compactHeight);
+	}
+
+	/**
+	 * Keeps only the last record of each AT from <code>from</code> to <code>to</code>, as a full state. Records in later
+	 * stretches never refer back to them.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void compactStretch(int from, int to)
+	{
+		Map<String, Integer> last = new HashMap<String, Integer>();
+		List<Tuple2<Integer, String>> older = new ArrayList<Tuple2<Integer, String>>();
 
-		//FILTER ALL ATS
-		Collection<Tuple2> keys = ((BTreeMap<Tuple2, String>) map).subMap(
-				Fun.t2(blockHeight+1, null),
-				Fun.t2(Fun.HI(), Fun.HI())).keySet();
+		// In height order, so each AT's last record is seen last
+		Set<Tuple2<Integer, String>> keys = this.getRange(new Tuple2(from, null), new Tuple2(to, Fun.HI())).keySet();
+		for (Tuple2<Integer, String> key : keys)
+		{
+			Integer previous = last.put(key.b, key.a);
+			if (previous != null)
+			{
+				older.add(new Tuple2<Integer, String>(previous, key.b));
+			}
+		}
 
-		//DELETE
-		for(Tuple2 key: keys) {
+		// Worked out from older records, so before they're deleted
+		for (Map.Entry<String, Integer> entry : last.entrySet())
+		{
+			Tuple2<Integer, String> key = new Tuple2<Integer, String>(entry.getValue(), entry.getKey());
+			byte[] record = this.get(key);
+			if (record[0] == DIFF)
+			{
+				this.set(key, toRecord(this.toState(entry.getKey(), record)));
+			}
+		}
+
+		for (Tuple2<Integer, String> key : older)
+		{
 			this.delete(key);
 		}
 	}
 
+	private Set<String> getChangedAfter(int blockHeight)
+	{
+		Set<String> ids = new LinkedHashSet<String>();
+		for (Tuple2<Integer, String> key : this.getKeysAfter(blockHeight))
+		{
+			ids.add(key.b);
+		}
+
+		return ids;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Set<Tuple2<Integer, String>> getKeysAfter(int blockHeight)
+	{
+		return this.getRange(new Tuple2(blockHeight + 1, null), new Tuple2(Fun.HI(), Fun.HI())).keySet();
+	}
+
+	/**
+	 * Returns height of AT <code>id</code>'s last record up to <code>blockHeight</code>, or null if there's none.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Integer getLastHeight(String id, int blockHeight)
+	{
+		Integer last = null;
+
+		Iterator<Tuple2<Tuple2<String, Integer>, Tuple2<Integer, String>>> iterator = this.allATStates
+				.headSet(new Tuple2(new Tuple2(id, blockHeight), Fun.HI()), true).descendingIterator();
+		if (iterator.hasNext())
+		{
+			Tuple2<String, Integer> entry = iterator.next().a;
+			if (entry.a.equals(id))
+			{
+				last = entry.b;
+			}
+		}
+
+		if (this.parent != null)
+		{
+			ATStateMap parent = (ATStateMap) this.parent;
+			Integer parentLast = parent.getLastHeight(id, blockHeight);
+
+			// Forks only delete the newest records, so skip back past those
+			while (parentLast != null && this.deletedContains(new Tuple2<Integer, String>(parentLast, id)))
+			{
+				parentLast = parent.getLastHeight(id, parentLast - 1);
+			}
+
+			if (parentLast != null && (last == null || parentLast > last))
+			{
+				last = parentLast;
+			}
+		}
+
+		return last;
+	}
+
+	private static byte[] toRecord(byte[] state)
+	{
+		byte[] record = new byte[1 + state.length];
+		record[0] = FULL;
+		System.arraycopy(state, 0, record, 1, state.length);
+		return record;
+	}
+
+	/**
+	 * Returns state AT <code>id</code> has in <code>record</code>, walking back to the last full state before it.
+	 */
+	private byte[] toState(String id, byte[] record)
+	{
+		Deque<byte[]> diffs = new ArrayDeque<byte[]>();
+		while (record[0] == DIFF)
+		{
+			diffs.push(record);
+			record = this.get(new Tuple2<Integer, String>(ByteBuffer.wrap(record, 1, 4).getInt(), id));
+		}
+
+		byte[] state = Arrays.copyOfRange(record, 1, record.length);
+		while (!diffs.isEmpty())
+		{
+			applyDiff(state, diffs.pop());
+		}
+
+		return state;
+	}
+
+	/**
+	 * Returns record of the pages <code>state</code> changed from <code>previousState</code>, held by record
+	 * <code>previous</code> stored at <code>previousHeight</code>, or a new full record if that's due.
+	 */
+	private static byte[] diff(int previousHeight, byte[] previous, byte[] previousState, byte[] state)
+	{
+		int pages = (state.length + PAGE_SIZE - 1) / PAGE_SIZE;
+		if (previousState.length != state.length || pages > 0xFFFF)
+		{
+			return toRecord(state);
+		}
+
+		ByteBuffer header = ByteBuffer.wrap(previous);
+		int count = previous[0] == FULL ? 1 : header.getShort(5) + 1;
+		int chainSize = previous[0] == FULL ? 0 : header.getInt(7);
+
+		boolean[] changed = new boolean[pages];
+		int size = DIFF_HEADER_LENGTH;
+
+		for (int page = 0; page < pages; page++)
+		{
+			int from = page * PAGE_SIZE;
+			int to = Math.min(from + PAGE_SIZE, state.length);
+
+			for (int i = from; i < to; i++)
+			{
+				if (previousState[i] != state[i])
+				{
+					changed[page] = true;
+					size += 2 + to - from;
+					break;
+				}
+			}
+		}
+
+		// Start over from a new full state once diffs since the last one cost as much, so reads stay short
+		chainSize += size;
+		if (count > MAX_DIFFS || chainSize >= 1 + state.length)
+		{
+			return toRecord(state);
+		}
+
+		ByteBuffer record = ByteBuffer.allocate(size);
+		record.put(DIFF);
+		record.putInt(previousHeight);
+		record.putShort((short) count);
+		record.putInt(chainSize);
+		record.putInt(state.length);
+
+		for (int page = 0; page < pages; page++)
+		{
+			if (changed[page])
+			{
+				int from = page * PAGE_SIZE;
+				record.putShort((short) page);
+				record.put(state, from, Math.min(PAGE_SIZE, state.length - from));
+			}
+		}
+
+		return record.array();
+	}
+
+	private static void applyDiff(byte[] state, byte[] diff)
+	{
+		ByteBuffer record = ByteBuffer.wrap(diff);
+		record.position(DIFF_HEADER_LENGTH);
+
+		while (record.hasRemaining())
+		{
+			int from = (record.getShort() & 0xFFFF) * PAGE_SIZE;
+			record.get(state, from, Math.min(PAGE_SIZE, state.length - from));
+		}
+	}
+
 	@Override
 	protected byte[] getDefaultValue() {
 		return null;
@@ -140,5 +486,4 @@ public class ATStateMap extends DbMap< Tuple2<Integer, String> ,  byte[] > {
 		return this.observableData;
 	}
 
-
 }
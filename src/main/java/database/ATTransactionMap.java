@@ -32,20 +32,28 @@ public class ATTransactionMap extends DbMap< Tuple2<Integer, Integer> ,  AT_Tran
 	private NavigableSet senderKey;
 	@SuppressWarnings("rawtypes")
 	private NavigableSet recipientKey;
+
+	private final BalanceHistoryMap balanceHistoryMap;
 	
 	public ATTransactionMap(QoraDb databaseSet, DB database)
 	{
 		super(databaseSet, database);
 
+		this.balanceHistoryMap = databaseSet.getBalanceHistoryMap();
+
 		this.observableData.put(DbMap.NOTIFY_ADD, ObserverMessage.ADD_AT_TX_TYPE);
 		this.observableData.put(DbMap.NOTIFY_REMOVE, ObserverMessage.REMOVE_AT_TX);
 		this.observableData.put(DbMap.NOTIFY_LIST, ObserverMessage.LIST_AT_TXS);
 	}
 
-	public ATTransactionMap(ATTransactionMap parent) 
+	public ATTransactionMap(BalanceHistoryMap balanceHistoryMap, ATTransactionMap parent) 
 	{
 		super(parent);
 
+		this.balanceHistoryMap = balanceHistoryMap;
+		this.senderKey = EmptyIndexes.set();
+		this.recipientKey = EmptyIndexes.set();
+
 	}
 	
 	protected void createIndexes(DB database){}
@@ -65,6 +73,12 @@ public class ATTransactionMap extends DbMap< Tuple2<Integer, Integer> ,  AT_Tran
 		//OPEN MAP
 		return this.openMap(database);
 	}
+
+	@Override
+	protected Map<Tuple2<Integer, Integer>, AT_Transaction> getEmptyOverlay()
+	{
+		return EmptyIndexes.map();
+	}
 	
 	@SuppressWarnings("unchecked")
 	private Map<Tuple2<Integer, Integer>, AT_Transaction>  openMap(DB database)
@@ -121,6 +135,28 @@ public class ATTransactionMap extends DbMap< Tuple2<Integer, Integer> ,  AT_Tran
 		return this.set(new Tuple2<Integer, Integer>(blockHeight, seq), atTx);
 	}
 	
+	//keep balance history of recipients up to date
+	@Override
+	public boolean set(Tuple2<Integer, Integer> key, AT_Transaction atTx)
+	{
+		this.balanceHistoryMap.updateATTransaction(key.a, this.get(key), atTx);
+
+		return super.set(key, atTx);
+	}
+
+	@Override
+	public void delete(Tuple2<Integer, Integer> key)
+	{
+		AT_Transaction old = this.get(key);
+
+		if (old != null)
+		{
+			this.balanceHistoryMap.updateATTransaction(key.a, old, null);
+		}
+
+		super.delete(key);
+	}
+	
 	public DbMap<Tuple2<Integer, Integer>, AT_Transaction> getParent()
 	{
 		return this.parent;
@@ -130,15 +166,13 @@ public class ATTransactionMap extends DbMap< Tuple2<Integer, Integer> ,  AT_Tran
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public void delete(Integer height)
 	{
-		BTreeMap map = (BTreeMap) this.map;
-		
-		//FILTER ALL ATS
-		Collection<Tuple2> keys = ((BTreeMap<Tuple2, AT_Transaction>) map).subMap(
-				Fun.t2(height, null ),
-				Fun.t2(height , Fun.HI() ) ).keySet();
+		//FILTER ALL ATS, INCLUDING PARENT'S SO A FORK TOMBSTONES THEM
+		Collection<Tuple2<Integer, Integer>> keys = this.getRange(
+				new Tuple2(height, null),
+				new Tuple2(height, Fun.HI()) ).keySet();
 		
 		//DELETE
-		for(Tuple2 key: keys) {
+		for(Tuple2<Integer, Integer> key: keys) {
 			this.delete(key);
 		}
 	}
@@ -146,15 +180,13 @@ public class ATTransactionMap extends DbMap< Tuple2<Integer, Integer> ,  AT_Tran
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public void deleteAllAfterHeight(Integer height)
 	{
-		BTreeMap map = (BTreeMap) this.map;
-		
-		//FILTER ALL ATS
-		Collection<Tuple2> keys = ((BTreeMap<Tuple2, AT_Transaction> ) map).subMap(
-				Fun.t2(height, null),
-				Fun.t2(Fun.HI() , Fun.HI() ) ).keySet();
+		//FILTER ALL ATS, INCLUDING PARENT'S SO A FORK TOMBSTONES THEM
+		Collection<Tuple2<Integer, Integer>> keys = this.getRange(
+				new Tuple2(height, null),
+				new Tuple2(Fun.HI(), Fun.HI()) ).keySet();
 		
 		//DELETE
-		for(Tuple2 key: keys) {
+		for(Tuple2<Integer, Integer> key: keys) {
 			this.delete(key);
 		}
 	}
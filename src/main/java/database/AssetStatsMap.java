@@ -0,0 +1,134 @@
+package database;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.mapdb.DB;
+import org.mapdb.Fun.Tuple3;
+
+import qora.assets.Order;
+
+/**
+ * Per asset totals over the open order book and trade history, kept up to date as orders and trades are stored so asset
+ * listings don't have to walk either.
+ * <p>
+ * Values are open orders, trades and amount left in open orders selling the asset. Orders and trades count towards both
+ * assets of their pair. Assets with nothing to count have no entry.
+ */
+public final class AssetStatsMap extends DbMap<Long, Tuple3<Long, Long, BigDecimal>> {
+
+	private static final BigDecimal ZERO = BigDecimal.ZERO.setScale(8);
+	private static final Tuple3<Long, Long, BigDecimal> EMPTY = new Tuple3<Long, Long, BigDecimal>(0L, 0L, ZERO);
+
+	private final Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
+
+	public AssetStatsMap(final QoraDb databaseSet, final DB database) {
+		super(databaseSet, database);
+	}
+
+	public AssetStatsMap(final AssetStatsMap parent) {
+		super(parent);
+	}
+
+	protected void createIndexes(final DB database) {
+	}
+
+	@Override
+	protected Map<Long, Tuple3<Long, Long, BigDecimal>> getMap(final DB database) {
+		return database.createTreeMap("asset_stats").makeOrGet();
+	}
+
+	@Override
+	protected Map<Long, Tuple3<Long, Long, BigDecimal>> getMemoryMap() {
+		return new TreeMap<Long, Tuple3<Long, Long, BigDecimal>>();
+	}
+
+	@Override
+	protected Tuple3<Long, Long, BigDecimal> getDefaultValue() {
+		return EMPTY;
+	}
+
+	@Override
+	protected Map<Integer, Integer> getObservableData() {
+		return this.observableData;
+	}
+
+	public long getOpenOrdersCount(final long asset) {
+		return this.get(asset).a;
+	}
+
+	public long getTradesCount(final long asset) {
+		return this.get(asset).b;
+	}
+
+	/**
+	 * Returns open orders plus trades involving <code>asset</code>.
+	 */
+	public long getOperationsCount(final long asset) {
+		final Tuple3<Long, Long, BigDecimal> stats = this.get(asset);
+		return stats.a + stats.b;
+	}
+
+	public BigDecimal getAmountInOrders(final long asset) {
+		return this.get(asset).c;
+	}
+
+	/**
+	 * Accounts for open order <code>old</code> being replaced by <code>order</code>. Either may be null, for orders being
+	 * opened or closed.
+	 */
+	void updateOrder(final Order old, final Order order) {
+		// Partly filled order only changes amount left
+		if (old != null && order != null && old.getHave() == order.getHave() && old.getWant() == order.getWant()) {
+			final BigDecimal change = order.getAmountLeft().subtract(old.getAmountLeft());
+
+			if (change.signum() != 0) {
+				this.update(order.getHave(), 0, 0, change);
+			}
+
+			return;
+		}
+
+		if (old != null) {
+			this.update(old.getHave(), -1, 0, old.getAmountLeft().negate());
+			this.update(old.getWant(), -1, 0, ZERO);
+		}
+
+		if (order != null) {
+			this.update(order.getHave(), 1, 0, order.getAmountLeft());
+			this.update(order.getWant(), 1, 0, ZERO);
+		}
+	}
+
+	/**
+	 * Counts a trade initiated by <code>initiator</code>.
+	 */
+	public void addTrade(final Order initiator) {
+		this.update(initiator.getHave(), 0, 1, ZERO);
+		this.update(initiator.getWant(), 0, 1, ZERO);
+	}
+
+	/**
+	 * Stops counting a trade initiated by <code>initiator</code>.
+	 */
+	public void removeTrade(final Order initiator) {
+		this.update(initiator.getHave(), 0, -1, ZERO);
+		this.update(initiator.getWant(), 0, -1, ZERO);
+	}
+
+	private void update(final long asset, final long orders, final long trades, final BigDecimal amount) {
+		final Tuple3<Long, Long, BigDecimal> stats = this.get(asset);
+
+		final long newOrders = stats.a + orders;
+		final long newTrades = stats.b + trades;
+		final BigDecimal newAmount = stats.c.add(amount);
+
+		if (newOrders == 0 && newTrades == 0 && newAmount.signum() == 0) {
+			this.delete(asset);
+		} else {
+			this.set(asset, new Tuple3<Long, Long, BigDecimal>(newOrders, newTrades, newAmount));
+		}
+	}
+}
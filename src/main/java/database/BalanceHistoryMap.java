@@ -0,0 +1,226 @@
+package database;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.mapdb.DB;
+import org.mapdb.Fun;
+import org.mapdb.Fun.Tuple2;
+
+import at.AT_Transaction;
+import qora.account.Account;
+import qora.transaction.DeployATTransaction;
+import qora.transaction.Transaction;
+
+/**
+ * QORA amounts confirmed transactions moved in and out of each address, keyed by address and block height.
+ * <p>
+ * Each entry holds running totals up to and including its height: the amounts of transactions involving the address
+ * plus AT payments it received, and the same counting only amounts received. Totals over any range of blocks then take
+ * two lookups, instead of reading every block in it. Only heights where an address's totals changed have an entry.
+ */
+public final class BalanceHistoryMap extends DbMap<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> {
+
+	private static final BigDecimal ZERO = BigDecimal.ZERO.setScale(8);
+	private static final Tuple2<BigDecimal, BigDecimal> NO_TOTALS = new Tuple2<BigDecimal, BigDecimal>(ZERO, ZERO);
+
+	private final Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
+
+	public BalanceHistoryMap(final QoraDb databaseSet, final DB database) {
+		super(databaseSet, database);
+	}
+
+	public BalanceHistoryMap(final BalanceHistoryMap parent) {
+		super(parent);
+	}
+
+	protected void createIndexes(final DB database) {
+	}
+
+	@Override
+	protected Map<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> getMap(final DB database) {
+		return database.createTreeMap("balance_history").comparator(Fun.COMPARATOR).makeOrGet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Map<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> getMemoryMap() {
+		return new TreeMap<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>>(Fun.COMPARATOR);
+	}
+
+	@Override
+	protected Tuple2<BigDecimal, BigDecimal> getDefaultValue() {
+		return null;
+	}
+
+	@Override
+	protected Map<Integer, Integer> getObservableData() {
+		return this.observableData;
+	}
+
+	/**
+	 * Returns total amount transactions in blocks after <code>fromHeight</code> up to <code>toHeight</code> changed
+	 * <code>address</code>'s balance by, counting AT payments it received but not block fees or AT payments it sent.
+	 */
+	public BigDecimal getChange(final String address, final int fromHeight, final int toHeight) {
+		if (toHeight <= fromHeight) {
+			return ZERO;
+		}
+
+		return this.getTotals(address, toHeight).a.subtract(this.getTotals(address, fromHeight).a);
+	}
+
+	/**
+	 * Returns total amount <code>address</code> received in blocks after <code>fromHeight</code> up to
+	 * <code>toHeight</code>, counting each transaction that increased its balance and every AT payment to it.
+	 */
+	public BigDecimal getReceived(final String address, final int fromHeight, final int toHeight) {
+		if (toHeight <= fromHeight) {
+			return ZERO;
+		}
+
+		return this.getTotals(address, toHeight).b.subtract(this.getTotals(address, fromHeight).b);
+	}
+
+	/**
+	 * Accounts for confirmed transaction <code>old</code> at <code>height</code> being replaced by
+	 * <code>transaction</code>. Either may be null, for transactions being added or removed.
+	 */
+	void updateTransaction(final int height, final Transaction old, final Transaction transaction) {
+		if (old != null) {
+			this.update(height, old, false);
+		}
+
+		if (transaction != null) {
+			this.update(height, transaction, true);
+		}
+	}
+
+	/**
+	 * Accounts for AT payment <code>old</code> at <code>height</code> being replaced by <code>transaction</code>. Either
+	 * may be null, for payments being added or removed.
+	 */
+	void updateATTransaction(final int height, final AT_Transaction old, final AT_Transaction transaction) {
+		if (old != null) {
+			final BigDecimal amount = BigDecimal.valueOf(old.getAmount(), 8).negate();
+			this.update(old.getRecipient(), height, amount, amount);
+		}
+
+		if (transaction != null) {
+			final BigDecimal amount = BigDecimal.valueOf(transaction.getAmount(), 8);
+			this.update(transaction.getRecipient(), height, amount, amount);
+		}
+	}
+
+	private void update(final int height, final Transaction transaction, final boolean add) {
+		final Map<String, Account> accounts = new LinkedHashMap<String, Account>();
+		for (Account account : transaction.getInvolvedAccounts()) {
+			accounts.put(account.getAddress(), account);
+		}
+
+		for (Account account : transaction.getRecipientAccounts()) {
+			accounts.put(account.getAddress(), account);
+		}
+
+		// AT being deployed is involved, but not among the involved accounts
+		if (transaction instanceof DeployATTransaction) {
+			final Account at = ((DeployATTransaction) transaction).getATaccount();
+			accounts.put(at.getAddress(), at);
+		}
+
+		for (Account account : accounts.values()) {
+			if (!transaction.isInvolved(account)) {
+				continue;
+			}
+
+			BigDecimal amount = transaction.getAmount(account);
+			if (!add) {
+				amount = amount.negate();
+			}
+
+			final BigDecimal received = transaction.getAmount(account).signum() > 0 ? amount : ZERO;
+			this.update(account.getAddress(), height, amount, received);
+		}
+	}
+
+	/**
+	 * Adds <code>change</code> and <code>received</code> to <code>address</code>'s totals from <code>height</code> on.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void update(final String address, final int height, final BigDecimal change, final BigDecimal received) {
+		if (change.signum() == 0 && received.signum() == 0) {
+			return;
+		}
+
+		final Tuple2<BigDecimal, BigDecimal> previous = this.getTotals(address, height - 1);
+		final Tuple2<BigDecimal, BigDecimal> totals = this.getTotals(address, height);
+		this.setTotals(Fun.t2(address, height), previous, add(totals, change, received));
+
+		// Only AT payments from blocks that failed validation get here with later heights, so this rarely finds any
+		final NavigableMap<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> later = this.getRange(
+				new Tuple2(address, height + 1), new Tuple2(address, Fun.HI()));
+		for (Map.Entry<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> entry : later.entrySet()) {
+			this.set(entry.getKey(), add(entry.getValue(), change, received));
+		}
+	}
+
+	/**
+	 * Stores <code>totals</code> at <code>key</code>, or removes the entry if they're the same as the
+	 * <code>previous</code> ones, e.g. once a block's transactions have all been orphaned.
+	 */
+	private void setTotals(final Tuple2<String, Integer> key, final Tuple2<BigDecimal, BigDecimal> previous,
+			final Tuple2<BigDecimal, BigDecimal> totals) {
+		if (totals.a.compareTo(previous.a) == 0 && totals.b.compareTo(previous.b) == 0) {
+			if (this.contains(key)) {
+				this.delete(key);
+			}
+		} else {
+			this.set(key, totals);
+		}
+	}
+
+	private static Tuple2<BigDecimal, BigDecimal> add(final Tuple2<BigDecimal, BigDecimal> totals, final BigDecimal change,
+			final BigDecimal received) {
+		return new Tuple2<BigDecimal, BigDecimal>(totals.a.add(change), totals.b.add(received));
+	}
+
+	/**
+	 * Returns <code>address</code>'s totals up to and including <code>height</code>.
+	 */
+	private Tuple2<BigDecimal, BigDecimal> getTotals(final String address, final int height) {
+		final Map.Entry<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> entry = this.getFloor(address, height);
+		return entry == null ? NO_TOTALS : entry.getValue();
+	}
+
+	/**
+	 * Returns <code>address</code>'s last entry up to <code>height</code>, or null if there's none.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map.Entry<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> getFloor(final String address,
+			final int height) {
+		Map.Entry<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> floor = ((NavigableMap<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>>) this.map)
+				.floorEntry(Fun.t2(address, height));
+		if (floor != null && !floor.getKey().a.equals(address)) {
+			floor = null;
+		}
+
+		if (this.parent != null) {
+			final BalanceHistoryMap parent = (BalanceHistoryMap) this.parent;
+			Map.Entry<Tuple2<String, Integer>, Tuple2<BigDecimal, BigDecimal>> parentFloor = parent.getFloor(address, height);
+
+			while (parentFloor != null && this.deletedContains(parentFloor.getKey())) {
+				parentFloor = parent.getFloor(address, parentFloor.getKey().b - 1);
+			}
+
+			if (parentFloor != null && (floor == null || parentFloor.getKey().b > floor.getKey().b)) {
+				floor = parentFloor;
+			}
+		}
+
+		return floor;
+	}
+}
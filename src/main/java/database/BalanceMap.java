@@ -1,30 +1,74 @@
 package database;
 
 import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
-import org.mapdb.BTreeKeySerializer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.mapdb.BTreeMap;
 import org.mapdb.Bind;
 import org.mapdb.DB;
-import org.mapdb.Fun;
 import org.mapdb.Fun.Tuple2;
-import org.mapdb.Fun.Tuple3;
 
+import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Longs;
+import com.google.common.primitives.UnsignedBytes;
+
+import database.serializer.BalanceSerializer;
+import database.serializer.ByteArrayKeySerializer;
 import qora.account.Account;
+import qora.crypto.Base58;
 import utils.ObserverMessage;
 
-public final class BalanceMap extends DbMap<Tuple2<String, Long>, BigDecimal> {
+/**
+ * Confirmed balances, keyed by raw address bytes followed by big-endian asset key.
+ * <p>
+ * Values are stored as packed counts of 10<sup>-8</sup> units (see {@link BalanceSerializer}). A secondary index of
+ * asset key, balance (largest first) and address is kept up to date in place by a listener on the main map.
+ * <p>
+ * Databases from older versions keyed balances by <code>Tuple2&lt;String, Long&gt;</code>. These are converted the first
+ * time the database is opened.
+ */
+public final class BalanceMap extends DbMap<byte[], BigDecimal> {
+
+	private static final Logger LOGGER = LogManager.getLogger(BalanceMap.class);
 
 	public static final long QORA_KEY = 0L;
 
+	public static final int KEY_LENGTH = Account.ADDRESS_LENGTH + Long.BYTES;
+
+	private static final int INDEX_AMOUNT_OFFSET = Long.BYTES;
+	private static final int INDEX_ADDRESS_OFFSET = INDEX_AMOUNT_OFFSET + 2 * Long.BYTES;
+	private static final int INDEX_LENGTH = INDEX_ADDRESS_OFFSET + Account.ADDRESS_LENGTH;
+
+	private static final String LEGACY_MAP_NAME = "balances";
+	private static final String LEGACY_INDEX_NAME = "balances_key_asset";
+
+	private static final BigDecimal ZERO = BigDecimal.ZERO.setScale(BalanceSerializer.SCALE);
+	private static final BigDecimal UNITS_PER_COIN = BigDecimal.ONE.movePointRight(BalanceSerializer.SCALE);
+	private static final BigInteger MIN_LONG = BigInteger.valueOf(Long.MIN_VALUE);
+	private static final BigInteger MAX_LONG = BigInteger.valueOf(Long.MAX_VALUE);
+
+	/** Lookup keys aren't kept by the maps so reads can reuse one per thread */
+	private static final ThreadLocal<byte[]> LOOKUP_KEY = ThreadLocal.withInitial(() -> new byte[KEY_LENGTH]);
+
 	private final Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
 
-	@SuppressWarnings("rawtypes")
-	private BTreeMap assetKeyMap;
+	private NavigableSet<byte[]> assetIndex;
 
 	public BalanceMap(final QoraDb databaseSet, final DB database) {
 		super(databaseSet, database);
@@ -35,42 +79,88 @@ public final class BalanceMap extends DbMap<Tuple2<String, Long>, BigDecimal> {
 
 	public BalanceMap(final BalanceMap parent) {
 		super(parent);
+
+		// Fork's overlay isn't indexed, see getIndexKeys(long)
+		this.assetIndex = EmptyIndexes.set();
 	}
 
 	protected void createIndexes(final DB database) {
 	}
 
-	@SuppressWarnings({ "unchecked" })
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
-	protected Map<Tuple2<String, Long>, BigDecimal> getMap(final DB database) {
+	protected Map<byte[], BigDecimal> getMap(final DB database) {
 		// Open map
-		final BTreeMap<Tuple2<String, Long>, BigDecimal> map = database.createTreeMap("balances")
-				.keySerializer(BTreeKeySerializer.TUPLE2).counterEnable().makeOrGet();
-
-		// Have/want key
-		this.assetKeyMap = database.createTreeMap("balances_key_asset").comparator(Fun.COMPARATOR).counterEnable()
+		final BTreeMap<byte[], BigDecimal> map = database.createTreeMap("balance_units").keySerializer(new ByteArrayKeySerializer())
+				.comparator(UnsignedBytes.lexicographicalComparator()).valueSerializer(new BalanceSerializer()).counterEnable()
 				.makeOrGet();
 
-		// Bind asset key
-		Bind.secondaryKey(map, this.assetKeyMap,
-				new Fun.Function2<Tuple3<Long, BigDecimal, String>, Tuple2<String, Long>, BigDecimal>() {
-					@Override
-					public Tuple3<Long, BigDecimal, String> run(final Tuple2<String, Long> key,
-							final BigDecimal value) {
-						return new Tuple3<Long, BigDecimal, String>(key.b, value.negate(), key.a);
-					}
-				});
+		// Asset/balance/address index
+		final NavigableSet<byte[]> assetIndex = database.createTreeSet("balance_units_asset").serializer(new ByteArrayKeySerializer())
+				.comparator(UnsignedBytes.lexicographicalComparator()).counterEnable().makeOrGet();
+		this.assetIndex = assetIndex;
+
+		// Move index entry whenever balance changes
+		((Bind.MapWithModificationListener) map).modificationListenerAdd(new Bind.MapListener<byte[], BigDecimal>() {
+			@Override
+			public void update(final byte[] key, final BigDecimal oldValue, final BigDecimal newValue) {
+				if (oldValue != null && newValue != null && oldValue.compareTo(newValue) == 0) {
+					return;
+				}
+
+				if (oldValue != null) {
+					assetIndex.remove(getIndexKey(key, oldValue));
+				}
+
+				if (newValue != null) {
+					assetIndex.add(getIndexKey(key, newValue));
+				}
+			}
+		});
+
+		if (database.exists(LEGACY_MAP_NAME)) {
+			migrate(database, map);
+		}
+
 		return map;
 	}
 
+	/**
+	 * Copy balances from older, <code>Tuple2&lt;String, Long&gt;</code> keyed map then drop it and its index.
+	 */
+	private static void migrate(final DB database, final Map<byte[], BigDecimal> map) {
+		final BTreeMap<Tuple2<String, Long>, BigDecimal> legacyMap = database.getTreeMap(LEGACY_MAP_NAME);
+
+		int count = 0;
+		for (final Map.Entry<Tuple2<String, Long>, BigDecimal> entry : legacyMap.entrySet()) {
+			final byte[] address = Account.decodeAddress(entry.getKey().a);
+			if (address == null) {
+				LOGGER.warn("Dropping balance for invalid address " + entry.getKey().a);
+				continue;
+			}
+
+			map.put(getKey(address, entry.getKey().b), entry.getValue());
+			++count;
+		}
+
+		database.delete(LEGACY_MAP_NAME);
+		if (database.exists(LEGACY_INDEX_NAME)) {
+			database.delete(LEGACY_INDEX_NAME);
+		}
+
+		database.commit();
+
+		LOGGER.info("Converted " + count + " balances to new format");
+	}
+
 	@Override
-	protected Map<Tuple2<String, Long>, BigDecimal> getMemoryMap() {
-		return new TreeMap<Tuple2<String, Long>, BigDecimal>(Fun.TUPLE2_COMPARATOR);
+	protected Map<byte[], BigDecimal> getMemoryMap() {
+		return new TreeMap<byte[], BigDecimal>(UnsignedBytes.lexicographicalComparator());
 	}
 
 	@Override
 	protected BigDecimal getDefaultValue() {
-		return BigDecimal.ZERO.setScale(8);
+		return ZERO;
 	}
 
 	@Override
@@ -78,12 +168,122 @@ public final class BalanceMap extends DbMap<Tuple2<String, Long>, BigDecimal> {
 		return this.observableData;
 	}
 
+	@Override
+	public void reset() {
+		super.reset();
+
+		if (this.parent == null) {
+			this.assetIndex.clear();
+		}
+	}
+
+	/**
+	 * @param address
+	 *            {@link Account#ADDRESS_LENGTH} raw address bytes
+	 * @param assetKey
+	 * @return new balance key
+	 */
+	public static byte[] getKey(final byte[] address, final long assetKey) {
+		return fillKey(new byte[KEY_LENGTH], address, assetKey);
+	}
+
+	private static byte[] fillKey(final byte[] key, final byte[] address, final long assetKey) {
+		System.arraycopy(address, 0, key, 0, Account.ADDRESS_LENGTH);
+		putLong(key, Account.ADDRESS_LENGTH, assetKey);
+		return key;
+	}
+
+	/**
+	 * @param key
+	 *            balance key
+	 * @return Base58 address
+	 */
+	public static String getAddress(final byte[] key) {
+		return Base58.encode(Arrays.copyOf(key, Account.ADDRESS_LENGTH));
+	}
+
+	/**
+	 * @param key
+	 *            balance key
+	 * @return asset key
+	 */
+	public static long getAssetKey(final byte[] key) {
+		return Longs.fromBytes(key[Account.ADDRESS_LENGTH], key[Account.ADDRESS_LENGTH + 1], key[Account.ADDRESS_LENGTH + 2],
+				key[Account.ADDRESS_LENGTH + 3], key[Account.ADDRESS_LENGTH + 4], key[Account.ADDRESS_LENGTH + 5],
+				key[Account.ADDRESS_LENGTH + 6], key[Account.ADDRESS_LENGTH + 7]);
+	}
+
+	/**
+	 * Index entries are asset key, balance ordered largest first, then address.
+	 * <p>
+	 * Balance is split into whole coins and remaining units so huge indivisible asset balances still order correctly.
+	 */
+	private static byte[] getIndexKey(final byte[] key, final BigDecimal value) {
+		final BigDecimal whole = value.setScale(0, RoundingMode.FLOOR);
+		final long units = value.subtract(whole).multiply(UNITS_PER_COIN).longValue();
+
+		final BigInteger wholeInteger = whole.toBigInteger().max(MIN_LONG).min(MAX_LONG);
+
+		final byte[] indexKey = new byte[INDEX_LENGTH];
+		System.arraycopy(key, Account.ADDRESS_LENGTH, indexKey, 0, Long.BYTES);
+		// Flipping all but sign bit makes unsigned byte order descending
+		putLong(indexKey, INDEX_AMOUNT_OFFSET, wholeInteger.longValue() ^ Long.MAX_VALUE);
+		putLong(indexKey, INDEX_AMOUNT_OFFSET + Long.BYTES, units ^ Long.MAX_VALUE);
+		System.arraycopy(key, 0, indexKey, INDEX_ADDRESS_OFFSET, Account.ADDRESS_LENGTH);
+		return indexKey;
+	}
+
+	private static byte[] getKeyFromIndex(final byte[] indexKey) {
+		final byte[] key = new byte[KEY_LENGTH];
+		System.arraycopy(indexKey, INDEX_ADDRESS_OFFSET, key, 0, Account.ADDRESS_LENGTH);
+		System.arraycopy(indexKey, 0, key, Account.ADDRESS_LENGTH, Long.BYTES);
+		return key;
+	}
+
+	private static void putLong(final byte[] bytes, final int offset, long value) {
+		for (int i = offset + Long.BYTES - 1; i >= offset; --i) {
+			bytes[i] = (byte) value;
+			value >>= 8;
+		}
+	}
+
+	/**
+	 * @param address
+	 *            {@link Account#ADDRESS_LENGTH} raw address bytes, or <code>null</code> for invalid address
+	 * @param assetKey
+	 * @return balance, zero if none or address is invalid
+	 */
+	public BigDecimal get(final byte[] address, final long assetKey) {
+		if (address == null || address.length != Account.ADDRESS_LENGTH) {
+			return ZERO;
+		}
+
+		return this.get(fillKey(LOOKUP_KEY.get(), address, assetKey));
+	}
+
+	/**
+	 * Sets balance. Balances for invalid addresses can't be keyed, so are ignored.
+	 * 
+	 * @param address
+	 *            {@link Account#ADDRESS_LENGTH} raw address bytes, or <code>null</code> for invalid address
+	 * @param assetKey
+	 * @param value
+	 */
+	public void set(final byte[] address, final long assetKey, final BigDecimal value) {
+		if (address == null || address.length != Account.ADDRESS_LENGTH) {
+			LOGGER.warn("Ignoring balance for invalid address");
+			return;
+		}
+
+		this.set(getKey(address, assetKey), value);
+	}
+
 	public void set(final String address, final BigDecimal value) {
 		this.set(address, QORA_KEY, value);
 	}
 
 	public void set(final String address, final long key, final BigDecimal value) {
-		this.set(new Tuple2<String, Long>(address, key), value);
+		this.set(Account.decodeAddress(address), key, value);
 	}
 
 	public BigDecimal get(final String address) {
@@ -91,24 +291,85 @@ public final class BalanceMap extends DbMap<Tuple2<String, Long>, BigDecimal> {
 	}
 
 	public BigDecimal get(final String address, final long key) {
-		return this.get(new Tuple2<String, Long>(address, key));
+		return this.get(Account.decodeAddress(address), key);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	public SortableList<Tuple2<String, Long>, BigDecimal> getBalancesSortableList(final long key) {
+	/**
+	 * @param key
+	 *            asset key
+	 * @return balances of asset, largest first
+	 */
+	public SortableList<byte[], BigDecimal> getBalancesSortableList(final long key) {
 		// Filter all keys
-		final Collection<Tuple2<String, Long>> keys = ((BTreeMap<Tuple3, Tuple2<String, Long>>) this.assetKeyMap)
-				.subMap(Fun.t3(key, null, null), Fun.t3(key, Fun.HI(), Fun.HI())).values();
-		return new SortableList<Tuple2<String, Long>, BigDecimal>(this, keys);
+		if (this.parent == null) {
+			final Collection<byte[]> keys = Collections2.transform(
+					this.assetIndex.subSet(Longs.toByteArray(key), true, Longs.toByteArray(key + 1), false), BalanceMap::getKeyFromIndex);
+			return new SortableList<byte[], BigDecimal>(this, keys);
+		}
+
+		final List<byte[]> keys = Lists.newArrayList(Iterators.transform(this.getIndexKeys(key), BalanceMap::getKeyFromIndex));
+		return new SortableList<byte[], BigDecimal>(this, keys);
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-	public SortableList<Tuple2<String, Long>, BigDecimal> getBalancesSortableList(final Account account) {
-		final BTreeMap map = (BTreeMap) this.map;
+	/**
+	 * Index entries for asset <code>key</code>, in index order.
+	 * <p>
+	 * A fork's overlay has no index of its own, so a fork indexes its few entries for the asset on the fly and merges them
+	 * with its parent's, skipping parent's entries for balances it has changed or deleted.
+	 */
+	private Iterator<byte[]> getIndexKeys(final long key) {
+		if (this.parent == null) {
+			return this.assetIndex.subSet(Longs.toByteArray(key), true, Longs.toByteArray(key + 1), false).iterator();
+		}
+
+		final NavigableSet<byte[]> indexKeys = new TreeSet<byte[]>(UnsignedBytes.lexicographicalComparator());
+		for (final Map.Entry<byte[], BigDecimal> entry : this.map.entrySet()) {
+			if (getAssetKey(entry.getKey()) == key) {
+				indexKeys.add(getIndexKey(entry.getKey(), entry.getValue()));
+			}
+		}
+
+		// Parent's entries, minus those we've changed or deleted
+		final Iterator<byte[]> parentKeys = Iterators.filter(((BalanceMap) this.parent).getIndexKeys(key), indexKey -> {
+			final byte[] balanceKey = getKeyFromIndex(indexKey);
+			return !this.map.containsKey(balanceKey) && !this.deletedContains(balanceKey);
+		});
 
+		return Iterators.mergeSorted(Arrays.asList(indexKeys.iterator(), parentKeys), UnsignedBytes.lexicographicalComparator());
+	}
+
+	/**
+	 * @param account
+	 * @return account's balances, by asset key
+	 */
+	public SortableList<byte[], BigDecimal> getBalancesSortableList(final Account account) {
+		final byte[] address = account.getAddressBytes();
+		if (address == null) {
+			return new SortableList<byte[], BigDecimal>(this, Collections.<byte[]> emptyList());
+		}
+
+		return new SortableList<byte[], BigDecimal>(this, this.getAccountKeys(address));
+	}
+
+	/**
+	 * Keys of balances for <code>address</code>, by asset key. A fork adds its parent's, minus those it has deleted.
+	 */
+	private Collection<byte[]> getAccountKeys(final byte[] address) {
 		// Filter all keys
-		final Collection keys = ((BTreeMap<Tuple2, BigDecimal>) map)
-				.subMap(Fun.t2(account.getAddress(), null), Fun.t2(account.getAddress(), Fun.HI())).keySet();
-		return new SortableList<Tuple2<String, Long>, BigDecimal>(this, keys);
+		final Collection<byte[]> keys = ((NavigableMap<byte[], BigDecimal>) this.map).subMap(address, true, getKey(address, -1L), true)
+				.keySet();
+		if (this.parent == null) {
+			return keys;
+		}
+
+		final NavigableSet<byte[]> forkKeys = new TreeSet<byte[]>(UnsignedBytes.lexicographicalComparator());
+		forkKeys.addAll(keys);
+		for (final byte[] key : ((BalanceMap) this.parent).getAccountKeys(address)) {
+			if (!this.deletedContains(key)) {
+				forkKeys.add(key);
+			}
+		}
+
+		return forkKeys;
 	}
 }
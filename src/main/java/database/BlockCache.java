@@ -0,0 +1,233 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import qora.block.Block;
+import qora.block.BlockHeader;
+import settings.Settings;
+
+/**
+ * Decoded blocks and their headers by signature, shared by the main database and all its forks.
+ * <p>
+ * Entries only say what a block with that signature holds, not whether a database has it, so callers check their own
+ * database contains the block before using them. Decoded blocks are kept up to {@link Settings#getBlockCacheSize()} MiB,
+ * headers up to {@link #MAX_HEADERS}; least recently used ones are evicted first. Blocks orphaned from the main database
+ * are removed.
+ * <p>
+ * Also counts hits, misses and time taken to validate blocks, so the cache's effect can be seen.
+ */
+public final class BlockCache {
+
+	private static final int MAX_HEADERS = 100000;
+
+	// Raw bytes are kept next to decoded transactions, so decoded blocks take about twice their serialized size
+	private static final int DECODED_SIZE_FACTOR = 2;
+
+	private static BlockCache instance;
+
+	private final long maxBlockBytes;
+	private final Map<ByteBuffer, Entry> blocks;
+	private final Map<ByteBuffer, BlockHeader> headers;
+	private long blockBytes;
+
+	private final AtomicLong blockHits = new AtomicLong();
+	private final AtomicLong blockMisses = new AtomicLong();
+	private final AtomicLong headerHits = new AtomicLong();
+	private final AtomicLong headerMisses = new AtomicLong();
+	private final AtomicLong validations = new AtomicLong();
+	private final AtomicLong validationNanos = new AtomicLong();
+
+	private static final class Entry {
+		private final Block block;
+		private final long size;
+
+		private Entry(final Block block, final long size) {
+			this.block = block;
+			this.size = size;
+		}
+	}
+
+	public static synchronized BlockCache getInstance() {
+		if (instance == null) {
+			instance = new BlockCache(Settings.getInstance().getBlockCacheSize() * 1024L * 1024L);
+		}
+
+		return instance;
+	}
+
+	private BlockCache(final long maxBlockBytes) {
+		this.maxBlockBytes = maxBlockBytes;
+		this.blocks = new LinkedHashMap<ByteBuffer, Entry>(1024, 0.75f, true);
+		this.headers = new LinkedHashMap<ByteBuffer, BlockHeader>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, BlockHeader> eldest) {
+				return size() > MAX_HEADERS;
+			}
+		};
+	}
+
+	/**
+	 * @return decoded block with <code>signature</code>, or <code>null</code> if it's not cached
+	 */
+	public Block getBlock(final byte[] signature) {
+		final Entry entry;
+		synchronized (this.blocks) {
+			entry = this.blocks.get(ByteBuffer.wrap(signature));
+		}
+
+		if (entry == null) {
+			this.blockMisses.incrementAndGet();
+			return null;
+		}
+
+		this.blockHits.incrementAndGet();
+		return entry.block;
+	}
+
+	public void putBlock(final Block block) {
+		final long size = (long) block.getDataLength() * DECODED_SIZE_FACTOR;
+		if (size > this.maxBlockBytes) {
+			return;
+		}
+
+		synchronized (this.blocks) {
+			final Entry old = this.blocks.put(ByteBuffer.wrap(block.getSignature()), new Entry(block, size));
+			if (old != null) {
+				this.blockBytes -= old.size;
+			}
+			this.blockBytes += size;
+
+			final Iterator<Entry> iterator = this.blocks.values().iterator();
+			while (this.blockBytes > this.maxBlockBytes && iterator.hasNext()) {
+				this.blockBytes -= iterator.next().size;
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * @return header of block with <code>signature</code>, or <code>null</code> if it's not cached
+	 */
+	public BlockHeader getHeader(final byte[] signature) {
+		final BlockHeader header;
+		synchronized (this.headers) {
+			header = this.headers.get(ByteBuffer.wrap(signature));
+		}
+
+		if (header == null) {
+			this.headerMisses.incrementAndGet();
+		} else {
+			this.headerHits.incrementAndGet();
+		}
+
+		return header;
+	}
+
+	public void putHeader(final BlockHeader header) {
+		synchronized (this.headers) {
+			this.headers.put(ByteBuffer.wrap(header.getSignature()), header);
+		}
+	}
+
+	/**
+	 * Forget block with <code>signature</code> and its header, e.g. once it's been orphaned.
+	 */
+	public void remove(final byte[] signature) {
+		final ByteBuffer key = ByteBuffer.wrap(signature);
+
+		synchronized (this.blocks) {
+			final Entry old = this.blocks.remove(key);
+			if (old != null) {
+				this.blockBytes -= old.size;
+			}
+		}
+
+		synchronized (this.headers) {
+			this.headers.remove(key);
+		}
+	}
+
+	/**
+	 * Record a block validation taking <code>nanos</code>.
+	 */
+	public void addValidation(final long nanos) {
+		this.validations.incrementAndGet();
+		this.validationNanos.addAndGet(nanos);
+	}
+
+	public int getBlockCount() {
+		synchronized (this.blocks) {
+			return this.blocks.size();
+		}
+	}
+
+	public long getBlockBytes() {
+		synchronized (this.blocks) {
+			return this.blockBytes;
+		}
+	}
+
+	public int getHeaderCount() {
+		synchronized (this.headers) {
+			return this.headers.size();
+		}
+	}
+
+	/**
+	 * @return share of block lookups found in the cache, from 0 to 1
+	 */
+	public double getBlockHitRate() {
+		return getHitRate(this.blockHits.get(), this.blockMisses.get());
+	}
+
+	/**
+	 * @return share of header lookups found in the cache, from 0 to 1
+	 */
+	public double getHeaderHitRate() {
+		return getHitRate(this.headerHits.get(), this.headerMisses.get());
+	}
+
+	public long getValidationCount() {
+		return this.validations.get();
+	}
+
+	/**
+	 * @return average time taken to validate a block, in milliseconds
+	 */
+	public double getAverageValidationTime() {
+		final long count = this.validations.get();
+		return count == 0 ? 0 : this.validationNanos.get() / 1e6 / count;
+	}
+
+	private static double getHitRate(final long hits, final long misses) {
+		return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+	}
+
+	/**
+	 * Forget all blocks and headers and reset counts.
+	 */
+	public void clear() {
+		synchronized (this.blocks) {
+			this.blocks.clear();
+			this.blockBytes = 0;
+		}
+
+		synchronized (this.headers) {
+			this.headers.clear();
+		}
+
+		this.blockHits.set(0);
+		this.blockMisses.set(0);
+		this.headerHits.set(0);
+		this.headerMisses.set(0);
+		this.validations.set(0);
+		this.validationNanos.set(0);
+	}
+
+}
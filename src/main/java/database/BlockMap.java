@@ -32,8 +32,7 @@ public final class BlockMap extends DbMap<byte[], Block> {
 	private Var<byte[]> lastBlockVar;
 	private byte[] lastBlockSignature;
 
-	private Var<Boolean> processingVar;
-	private Boolean processing;
+	private boolean processing;
 
 	private BTreeMap<Tuple2<String, String>, byte[]> generatorMap;
 
@@ -60,13 +59,6 @@ public final class BlockMap extends DbMap<byte[], Block> {
 		if (this.lastBlockSignature.length == 0) {
 			this.lastBlockSignature = null;
 		}
-
-		// Processing state
-		if (!database.exists("processingBlock")) {
-			database.createAtomicVar("processingBlock", false, null);
-		}
-		this.processingVar = database.getAtomicVar("processingBlock");
-		this.processing = this.processingVar.get();
 	}
 
 	public BlockMap(final BlockMap parent) {
@@ -129,6 +121,40 @@ public final class BlockMap extends DbMap<byte[], Block> {
 		return this.observableData;
 	}
 
+	/**
+	 * Returns block <code>signature</code>, from the {@link BlockCache} if it's there.
+	 */
+	@Override
+	public Block get(final byte[] signature) {
+		if (signature == null) {
+			return null;
+		}
+
+		final BlockCache cache = BlockCache.getInstance();
+		Block block = cache.getBlock(signature);
+		if (block != null) {
+			// Cache is shared with forks, so the block might not be in this one
+			return this.contains(signature) ? block : null;
+		}
+
+		block = super.get(signature);
+		if (block != null) {
+			cache.putBlock(block);
+		}
+
+		return block;
+	}
+
+	@Override
+	public void delete(final byte[] signature) {
+		super.delete(signature);
+
+		// Forks don't last, so only blocks orphaned from the chain itself are worth forgetting
+		if (this.parent == null) {
+			BlockCache.getInstance().remove(signature);
+		}
+	}
+
 	public void setLastBlock(final Block block) {
 		if (this.lastBlockVar != null) {
 			this.lastBlockVar.set(block.getSignature());
@@ -144,17 +170,31 @@ public final class BlockMap extends DbMap<byte[], Block> {
 		return this.lastBlockSignature;
 	}
 
-	public boolean isProcessing() {
-		if (this.processing != null) {
-			return this.processing.booleanValue();
+	/**
+	 * Re-read last block from store, e.g. after rolling back uncommitted changes.
+	 */
+	public void reload() {
+		if (this.lastBlockVar == null) {
+			return;
+		}
+
+		this.lastBlockSignature = this.lastBlockVar.get();
+
+		// 0-length byte[] effectively means no signature
+		if (this.lastBlockSignature.length == 0) {
+			this.lastBlockSignature = null;
 		}
-		return false;
+	}
+
+	/**
+	 * @return <code>true</code> while a block is being processed or orphaned
+	 * @see QoraDb#beginBlock()
+	 */
+	public boolean isProcessing() {
+		return this.processing;
 	}
 
 	public void setProcessing(final boolean processing) {
-		if (this.processingVar != null) {
-			this.processingVar.set(processing);
-		}
 		this.processing = processing;
 	}
 
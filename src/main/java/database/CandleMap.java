@@ -0,0 +1,254 @@
+package database;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.mapdb.DB;
+import org.mapdb.Fun;
+import org.mapdb.Fun.Tuple3;
+
+import database.serializer.CandleSerializer;
+import qora.assets.Candle;
+import qora.assets.Order;
+import qora.assets.Trade;
+
+/**
+ * Trade history of each asset pair summarised as candles, keyed by pair, interval and start of the candle.
+ * <p>
+ * Pairs are keyed like {@link TradeMap}'s pair index, larger asset key first. Each trade is added to one candle per interval
+ * as it's processed. Orphaning a trade takes its volume back out; only if it could have set one of the candle's prices is
+ * that candle rebuilt from the trades left in it.
+ */
+public final class CandleMap extends DbMap<Tuple3<String, Long, Long>, Candle> {
+
+	public static final long HOUR = 60 * 60 * 1000L;
+	public static final long DAY = 24 * HOUR;
+	public static final long WEEK = 7 * DAY;
+
+	public static final long[] INTERVALS = { HOUR, DAY, WEEK };
+
+	/** Unix epoch fell on a Thursday, so weeks start this long after multiples of a week to start on Monday */
+	private static final long WEEK_OFFSET = 4 * DAY;
+
+	private final Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
+
+	public CandleMap(final QoraDb databaseSet, final DB database) {
+		super(databaseSet, database);
+	}
+
+	public CandleMap(final CandleMap parent) {
+		super(parent);
+	}
+
+	protected void createIndexes(final DB database) {
+	}
+
+	@Override
+	protected Map<Tuple3<String, Long, Long>, Candle> getMap(final DB database) {
+		return database.createTreeMap("candles").comparator(Fun.COMPARATOR).valueSerializer(new CandleSerializer())
+				.makeOrGet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Map<Tuple3<String, Long, Long>, Candle> getMemoryMap() {
+		return new TreeMap<Tuple3<String, Long, Long>, Candle>(Fun.COMPARATOR);
+	}
+
+	@Override
+	protected Candle getDefaultValue() {
+		return null;
+	}
+
+	@Override
+	protected Map<Integer, Integer> getObservableData() {
+		return this.observableData;
+	}
+
+	public static String getPairKey(final long have, final long want) {
+		return have > want ? have + "/" + want : want + "/" + have;
+	}
+
+	/**
+	 * Returns start of <code>interval</code> candle holding <code>timestamp</code>. Candles start on the hour, at midnight
+	 * UTC or, for weeks, at midnight UTC on Monday.
+	 */
+	public static long getCandleStart(final long timestamp, final long interval) {
+		final long offset = interval == WEEK ? WEEK_OFFSET : 0;
+		return timestamp - Math.floorMod(timestamp - offset, interval);
+	}
+
+	/**
+	 * Returns candles of pair <code>have</code>/<code>want</code> (in either order) covering <code>from</code> to
+	 * <code>to</code>, oldest first. Intervals without trades have no candle.
+	 */
+	public List<Candle> getCandles(final long have, final long want, final long interval, final long from, final long to) {
+		final String pairKey = getPairKey(have, want);
+		return new ArrayList<Candle>(this.getRange(Fun.t3(pairKey, interval, getCandleStart(from, interval)),
+				Fun.t3(pairKey, interval, to)).values());
+	}
+
+	/**
+	 * Returns close of most recent trade of pair <code>have</code>/<code>want</code>, or null if never traded.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public BigDecimal getLastPrice(final long have, final long want) {
+		final String pairKey = getPairKey(have, want);
+		final NavigableMap<Tuple3<String, Long, Long>, Candle> candles = this.getRange(new Tuple3(pairKey, WEEK, null),
+				new Tuple3(pairKey, WEEK, Fun.HI()));
+
+		for (Candle candle : candles.descendingMap().values()) {
+			if (candle.getClose() != null) {
+				return candle.getClose();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns candle summing every trade of pair <code>have</code>/<code>want</code> in the day up to <code>now</code>, to
+	 * the hour, or null if there were none.
+	 */
+	public Candle getDay(final long have, final long want, final long now) {
+		Candle day = null;
+
+		for (Candle candle : this.getCandles(have, want, HOUR, now - DAY + HOUR, now)) {
+			if (day == null) {
+				day = candle;
+			} else {
+				day = merge(day, candle);
+			}
+		}
+
+		return day;
+	}
+
+	/**
+	 * Returns candle summing every trade of pair <code>have</code>/<code>want</code> ever, or null if never traded.
+	 */
+	public Candle getTotal(final long have, final long want) {
+		Candle total = null;
+
+		for (Candle candle : this.getCandles(have, want, WEEK, 0, Long.MAX_VALUE)) {
+			if (total == null) {
+				total = candle;
+			} else {
+				total = merge(total, candle);
+			}
+		}
+
+		return total;
+	}
+
+	private static Candle merge(final Candle first, final Candle second) {
+		if (first.getOpen() == null) {
+			return new Candle(first.getTimestamp(), first.getTrades() + second.getTrades(), second.getOpen(),
+					second.getHigh(), second.getLow(), second.getClose(), first.getVolume().add(second.getVolume()),
+					first.getQuoteVolume().add(second.getQuoteVolume()), second.getOpenTime(), second.getCloseTime());
+		}
+
+		if (second.getOpen() == null) {
+			return new Candle(first.getTimestamp(), first.getTrades() + second.getTrades(), first.getOpen(),
+					first.getHigh(), first.getLow(), first.getClose(), first.getVolume().add(second.getVolume()),
+					first.getQuoteVolume().add(second.getQuoteVolume()), first.getOpenTime(), first.getCloseTime());
+		}
+
+		return new Candle(first.getTimestamp(), first.getTrades() + second.getTrades(), first.getOpen(),
+				first.getHigh().max(second.getHigh()), first.getLow().min(second.getLow()), second.getClose(),
+				first.getVolume().add(second.getVolume()), first.getQuoteVolume().add(second.getQuoteVolume()),
+				first.getOpenTime(), second.getCloseTime());
+	}
+
+	/**
+	 * Adds <code>trade</code>, initiated by <code>initiator</code>, to its candles.
+	 */
+	public void add(final Trade trade, final Order initiator) {
+		final String pairKey = getPairKey(initiator.getHave(), initiator.getWant());
+		final BigDecimal volume = getVolume(trade, initiator);
+		final BigDecimal quoteVolume = getQuoteVolume(trade, initiator);
+
+		for (long interval : INTERVALS) {
+			final long start = getCandleStart(trade.getTimestamp(), interval);
+			final Tuple3<String, Long, Long> key = Fun.t3(pairKey, interval, start);
+			final Candle candle = this.get(key);
+
+			if (candle == null) {
+				this.set(key, Candle.of(start, volume, quoteVolume, trade.getTimestamp()));
+			} else {
+				this.set(key, candle.add(volume, quoteVolume, trade.getTimestamp()));
+			}
+		}
+	}
+
+	/**
+	 * Takes <code>trade</code>, initiated by <code>initiator</code>, back out of its candles. Must be called once the trade
+	 * has been removed from <code>db</code>'s {@link TradeMap}.
+	 */
+	public void remove(final Trade trade, final Order initiator, final QoraDb db) {
+		final String pairKey = getPairKey(initiator.getHave(), initiator.getWant());
+		final BigDecimal volume = getVolume(trade, initiator);
+		final BigDecimal quoteVolume = getQuoteVolume(trade, initiator);
+		final BigDecimal price = Candle.getPrice(volume, quoteVolume);
+
+		for (long interval : INTERVALS) {
+			final long start = getCandleStart(trade.getTimestamp(), interval);
+			final Tuple3<String, Long, Long> key = Fun.t3(pairKey, interval, start);
+			final Candle candle = this.get(key);
+
+			if (candle == null) {
+				continue;
+			}
+
+			if (candle.getTrades() <= 1) {
+				this.delete(key);
+			} else if (candle.isExtreme(price, trade.getTimestamp())) {
+				final Candle rebuilt = rebuildCandle(db, initiator.getHave(), initiator.getWant(), start, interval);
+
+				if (rebuilt == null) {
+					this.delete(key);
+				} else {
+					this.set(key, rebuilt);
+				}
+			} else {
+				this.set(key, candle.subtract(volume, quoteVolume));
+			}
+		}
+	}
+
+	private static Candle rebuildCandle(final QoraDb db, final long have, final long want, final long start,
+			final long interval) {
+		Candle candle = null;
+
+		for (Trade trade : db.getTradeMap().getTrades(have, want, start, start + interval - 1, db)) {
+			final Order initiator = trade.getInitiatorOrder(db);
+			final BigDecimal volume = getVolume(trade, initiator);
+			final BigDecimal quoteVolume = getQuoteVolume(trade, initiator);
+
+			if (candle == null) {
+				candle = Candle.of(start, volume, quoteVolume, trade.getTimestamp());
+			} else {
+				candle = candle.add(volume, quoteVolume, trade.getTimestamp());
+			}
+		}
+
+		return candle;
+	}
+
+	/**
+	 * Returns base asset (larger key) changing hands in <code>trade</code>. Initiator pays <code>price</code> of what it has
+	 * for <code>amount</code> of what it wants.
+	 */
+	private static BigDecimal getVolume(final Trade trade, final Order initiator) {
+		return initiator.getHave() > initiator.getWant() ? trade.getPrice() : trade.getAmount();
+	}
+
+	private static BigDecimal getQuoteVolume(final Trade trade, final Order initiator) {
+		return initiator.getHave() > initiator.getWant() ? trade.getAmount() : trade.getPrice();
+	}
+}
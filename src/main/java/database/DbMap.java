@@ -1,17 +1,16 @@
 package database;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NavigableSet;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -35,10 +34,17 @@ public abstract class DbMap<T, U> extends Observable {
 	public static final int DEFAULT_INDEX = 0;
 	protected static final int DESCENDING_INDEX_OFFSET = 10000;
 
+	/**
+	 * Stands in for a fork's overlay until first write. Has a comparator so lookups with non-Comparable keys (e.g. byte[])
+	 * work, though it's never actually called as the map is always empty.
+	 */
+	@SuppressWarnings("rawtypes")
+	private static final Map EMPTY_OVERLAY = Collections.unmodifiableNavigableMap(new TreeMap<Object, Object>((a, b) -> 0));
+
 	protected DbMap<T, U> parent;
 	protected IDB databaseSet;
 	protected Map<T, U> map;
-	protected List<T> deleted;
+	protected DeletedKeys<T> deleted;
 	private Map<Integer, NavigableSet<Tuple2<?, T>>> indexes;
 
 	public DbMap(IDB databaseSet, DB database) {
@@ -55,9 +61,44 @@ public abstract class DbMap<T, U> extends Observable {
 	public DbMap(DbMap<T, U> parent) {
 		this.parent = parent;
 
-		// OPEN MAP
-		this.map = this.getMemoryMap();
-		this.deleted = new ArrayList<T>();
+		// Overlay and tombstones are only created on first write so untouched forked maps cost nothing
+		this.map = this.getEmptyOverlay();
+		this.deleted = null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T, U> Map<T, U> emptyOverlay() {
+		return EMPTY_OVERLAY;
+	}
+
+	/**
+	 * Returns map a fork reads from until it's first written to. Maps that query their overlay as a {@link BTreeMap}
+	 * return {@link EmptyIndexes#map()} instead, and point their secondary indexes at {@link EmptyIndexes} too.
+	 */
+	protected Map<T, U> getEmptyOverlay() {
+		return emptyOverlay();
+	}
+
+	/**
+	 * Returns map to write to, creating fork's in-memory overlay on first use.
+	 */
+	protected Map<T, U> getOverlay() {
+		if (this.map == this.getEmptyOverlay()) {
+			this.map = this.getMemoryMap();
+		}
+
+		return this.map;
+	}
+
+	/**
+	 * Returns fork's tombstones, creating them on first use.
+	 */
+	private DeletedKeys<T> getDeleted() {
+		if (this.deleted == null) {
+			this.deleted = new DeletedKeys<T>();
+		}
+
+		return this.deleted;
 	}
 
 	protected abstract Map<T, U> getMap(DB database);
@@ -100,8 +141,9 @@ public abstract class DbMap<T, U> extends Observable {
 			}
 			
 			// Trivial case: if our map contains an entry for key, return it
-			if (this.map.containsKey(key)) {
-				return this.map.get(key);
+			final U value = this.map.get(key);
+			if (value != null || this.map.containsKey(key)) {
+				return value;
 			}
 
 			// If we've deleted the entry for key, return default value
@@ -125,9 +167,9 @@ public abstract class DbMap<T, U> extends Observable {
 	public boolean set(final T key, final U value) {
 		try {
 			// First set new value in our map, retrieving old value (if any)
-			final U old = this.map.put(key, value);
+			final U old = this.getOverlay().put(key, value);
 
-			// If appropriate, remove this key from list of deleted keys
+			// If appropriate, remove this key from deleted keys
 			if (this.deleted != null) {
 				this.deleted.remove(key);
 			}
@@ -140,6 +182,11 @@ public abstract class DbMap<T, U> extends Observable {
 				}
 			}
 
+			// Nobody to notify (e.g. forks) so skip building notifications
+			if (this.countObservers() == 0) {
+				return old != null;
+			}
+
 			// Notify observers that we've added an entry
 			if (this.getObservableData().containsKey(NOTIFY_ADD)) {
 				setChanged();
@@ -176,7 +223,7 @@ public abstract class DbMap<T, U> extends Observable {
 				final U value = this.map.remove(key);
 
 				// Notify observers that we've removed an entry
-				if (getObservableData().containsKey(NOTIFY_REMOVE)) {
+				if (this.countObservers() > 0 && getObservableData().containsKey(NOTIFY_REMOVE)) {
 					setChanged();
 
 					// Observers that want to be notified of removed Automated Transactions get sent a key-value tuple
@@ -195,9 +242,9 @@ public abstract class DbMap<T, U> extends Observable {
 				 */
 			}
 
-			// If we cache which entries have been deleted, add this key as deleted
-			if (this.deleted != null) {
-				this.deleted.add(key);
+			// If we're a fork, record key as deleted so parent's entry is hidden
+			if (this.parent != null) {
+				this.getDeleted().add(key);
 			}
 
 			// If this map is backed by files, commit this transaction now
@@ -280,7 +327,7 @@ public abstract class DbMap<T, U> extends Observable {
 
 	public void reset() {
 		// RESET MAP
-		this.map.clear();
+		this.getOverlay().clear();
 
 		// RESET INDEXES
 		for (Set<Tuple2<?, T>> set : this.indexes.values()) {
@@ -298,35 +345,37 @@ public abstract class DbMap<T, U> extends Observable {
 		}
 	}
 
-	/** 
-	 * byte[]-aware version of this.deleted.contains(key)
-	 * <p>
-	 * We can't use simplistic <tt>this.deleted.contains(key)</tt> as the underlying ArrayList implementation
-	 * uses <tt>Object.equals()</tt> to compare as this doesn't work for byte[].
-	 * <p>
-	 * This is only needed for <tt>this.deleted</tt> as <tt>this.parent</tt> is a more complex MapDB object.
-	 * <p>
+	/**
+	 * Entries with keys from <code>fromKey</code> to <code>toKey</code> inclusive, in key order. For forks, parent's entries
+	 * are included unless this fork has replaced or deleted them. Only for maps backed by sorted maps.
+	 */
+	@SuppressWarnings("unchecked")
+	protected NavigableMap<T, U> getRange(final T fromKey, final T toKey) {
+		final NavigableMap<T, U> range;
+		if (this.parent == null) {
+			range = new TreeMap<T, U>(((NavigableMap<T, U>) this.map).comparator());
+		} else {
+			range = this.parent.getRange(fromKey, toKey);
+
+			if (this.deleted != null) {
+				range.keySet().removeIf(this::deletedContains);
+			}
+		}
+
+		range.putAll(((NavigableMap<T, U>) this.map).subMap(fromKey, true, toKey, true));
+		return range;
+	}
+
+	/**
 	 * @param key
-	 * @return <tt>true</tt> if <tt>this.deleted</tt> list contains key, false otherwise
+	 * @return <tt>true</tt> if this fork has deleted key, false otherwise
+	 * @see DeletedKeys
 	 */
 	protected boolean deletedContains(T key) {
 		if (this.deleted == null || key == null)
 			return false;
 
-		if (!(key instanceof byte[]))
-			return this.deleted.contains(key);
-
-		// byte[]-safe
-		@SuppressWarnings("unchecked")
-		List<byte[]> deletedKeys = (List<byte[]>) this.deleted;
-
-		byte[] byteKey = (byte[]) key;
-
-		for (byte[] deletedKey : deletedKeys)
-			if (Arrays.equals(byteKey, deletedKey))
-				return true;
-
-		return false;
+		return this.deleted.contains(key);
 	}
 
 }
@@ -0,0 +1,57 @@
+package database;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Tombstones for keys deleted in a forked {@link DbMap}.
+ * <p>
+ * Hash-based so lookups stay O(1) however many keys a fork deletes. <code>byte[]</code> keys are compared by content, not
+ * identity, like <code>Arrays.equals()</code>. Iterates over the original key objects.
+ *
+ * @param <T> key type
+ */
+public final class DeletedKeys<T> implements Iterable<T> {
+
+	private final Map<Object, T> keys = new HashMap<Object, T>();
+
+	private static Object hashable(final Object key) {
+		if (key instanceof byte[]) {
+			return ByteBuffer.wrap((byte[]) key);
+		}
+
+		return key;
+	}
+
+	public void add(final T key) {
+		this.keys.put(hashable(key), key);
+	}
+
+	public boolean remove(final T key) {
+		return this.keys.remove(hashable(key)) != null;
+	}
+
+	public boolean contains(final T key) {
+		return this.keys.containsKey(hashable(key));
+	}
+
+	public boolean isEmpty() {
+		return this.keys.isEmpty();
+	}
+
+	public int size() {
+		return this.keys.size();
+	}
+
+	public void clear() {
+		this.keys.clear();
+	}
+
+	@Override
+	public Iterator<T> iterator() {
+		return this.keys.values().iterator();
+	}
+
+}
@@ -0,0 +1,114 @@
+package database;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.mapdb.DB;
+import org.mapdb.Fun;
+import org.mapdb.Fun.Tuple2;
+import org.mapdb.Fun.Tuple3;
+
+import qora.assets.Order;
+
+/**
+ * Open order book aggregated by price level, keyed by have, want and price. Values are how many open orders are at that
+ * price and the amount they have left.
+ * <p>
+ * Kept up to date as orders are stored, so depth doesn't need every order of a pair loaded.
+ */
+public final class DepthMap extends DbMap<Tuple3<Long, Long, BigDecimal>, Tuple2<Long, BigDecimal>> {
+
+	private final Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
+
+	public DepthMap(final QoraDb databaseSet, final DB database) {
+		super(databaseSet, database);
+	}
+
+	public DepthMap(final DepthMap parent) {
+		super(parent);
+	}
+
+	protected void createIndexes(final DB database) {
+	}
+
+	@Override
+	protected Map<Tuple3<Long, Long, BigDecimal>, Tuple2<Long, BigDecimal>> getMap(final DB database) {
+		return database.createTreeMap("depth").comparator(Fun.COMPARATOR).makeOrGet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Map<Tuple3<Long, Long, BigDecimal>, Tuple2<Long, BigDecimal>> getMemoryMap() {
+		return new TreeMap<Tuple3<Long, Long, BigDecimal>, Tuple2<Long, BigDecimal>>(Fun.COMPARATOR);
+	}
+
+	@Override
+	protected Tuple2<Long, BigDecimal> getDefaultValue() {
+		return null;
+	}
+
+	@Override
+	protected Map<Integer, Integer> getObservableData() {
+		return this.observableData;
+	}
+
+	/**
+	 * Returns open orders selling <code>have</code> for <code>want</code> by price, lowest first, as order count and amount
+	 * left.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public NavigableMap<BigDecimal, Tuple2<Long, BigDecimal>> getDepth(final long have, final long want) {
+		final NavigableMap<BigDecimal, Tuple2<Long, BigDecimal>> depth = new TreeMap<BigDecimal, Tuple2<Long, BigDecimal>>();
+
+		final Map<Tuple3<Long, Long, BigDecimal>, Tuple2<Long, BigDecimal>> levels = this.getRange(new Tuple3(have, want, null),
+				new Tuple3(have, want, Fun.HI()));
+
+		for (Map.Entry<Tuple3<Long, Long, BigDecimal>, Tuple2<Long, BigDecimal>> level : levels.entrySet()) {
+			depth.put(level.getKey().c, level.getValue());
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Accounts for open order <code>old</code> being replaced by <code>order</code>. Either may be null, for orders being
+	 * opened or closed.
+	 */
+	void updateOrder(final Order old, final Order order) {
+		// Partly filled order stays at the same level
+		if (old != null && order != null && old.getHave() == order.getHave() && old.getWant() == order.getWant()
+				&& old.getPrice().compareTo(order.getPrice()) == 0) {
+			final BigDecimal change = order.getAmountLeft().subtract(old.getAmountLeft());
+
+			if (change.signum() != 0) {
+				this.update(order, 0, change);
+			}
+
+			return;
+		}
+
+		if (old != null) {
+			this.update(old, -1, old.getAmountLeft().negate());
+		}
+
+		if (order != null) {
+			this.update(order, 1, order.getAmountLeft());
+		}
+	}
+
+	private void update(final Order order, final long orders, final BigDecimal amount) {
+		final Tuple3<Long, Long, BigDecimal> key = Fun.t3(order.getHave(), order.getWant(), order.getPrice());
+		final Tuple2<Long, BigDecimal> level = this.get(key);
+
+		final long newOrders = (level == null ? 0 : level.a) + orders;
+		if (newOrders == 0) {
+			this.delete(key);
+		} else {
+			final BigDecimal newAmount = level == null ? amount : level.b.add(amount);
+			this.set(key, new Tuple2<Long, BigDecimal>(newOrders, newAmount));
+		}
+	}
+}
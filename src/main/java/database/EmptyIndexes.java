@@ -0,0 +1,40 @@
+package database;
+
+import java.util.NavigableSet;
+
+import org.mapdb.BTreeMap;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Fun;
+
+/**
+ * Empty map and index shared by all forks that haven't been written to yet, so querying a fork's overlay or its
+ * secondary indexes finds nothing without the overlay having to be created.
+ * <p>
+ * They're shared, so must never be written to or bound to anything. A fork's first write replaces them with its own, see
+ * {@link DbMap#getOverlay()}.
+ */
+final class EmptyIndexes {
+
+	private static final DB DATABASE = DBMaker.newMemoryDB().make();
+
+	@SuppressWarnings("rawtypes")
+	private static final BTreeMap MAP = DATABASE.createTreeMap("empty_map").comparator(Fun.COMPARATOR).make();
+
+	@SuppressWarnings("rawtypes")
+	private static final NavigableSet SET = DATABASE.createTreeSet("empty_set").comparator(Fun.COMPARATOR).make();
+
+	private EmptyIndexes() {
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> BTreeMap<K, V> map() {
+		return MAP;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <E> NavigableSet<E> set() {
+		return SET;
+	}
+
+}
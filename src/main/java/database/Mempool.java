@@ -0,0 +1,215 @@
+package database;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+
+import com.google.common.primitives.UnsignedBytes;
+
+import qora.account.PublicKeyAccount;
+import qora.transaction.Transaction;
+
+/**
+ * In-memory index of unconfirmed transactions.
+ * <p>
+ * Keeps transactions ordered by fee-per-byte (for block assembly and eviction), by deadline (for expiry) and grouped by
+ * sender. Holds at most <code>maxSize</code> transactions, evicting the lowest fee-per-byte entry when full.
+ * <p>
+ * Thread-safe. {@link TransactionMap} keeps this in step with its MapDB map, which is only used for persistence.
+ */
+public final class Mempool {
+
+	private static final Comparator<byte[]> SIGNATURE_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+	/** Highest fee-per-byte first, then oldest first */
+	private static final Comparator<Entry> FEE_COMPARATOR = (a, b) -> {
+		int result = b.feePerByte.compareTo(a.feePerByte);
+		if (result != 0)
+			return result;
+
+		result = Long.compare(a.transaction.getTimestamp(), b.transaction.getTimestamp());
+		if (result != 0)
+			return result;
+
+		return SIGNATURE_COMPARATOR.compare(a.signature, b.signature);
+	};
+
+	/** Earliest deadline first */
+	private static final Comparator<Entry> DEADLINE_COMPARATOR = (a, b) -> {
+		final int result = Long.compare(a.deadline, b.deadline);
+		if (result != 0)
+			return result;
+
+		return SIGNATURE_COMPARATOR.compare(a.signature, b.signature);
+	};
+
+	/** Oldest first */
+	private static final Comparator<Entry> TIMESTAMP_COMPARATOR = (a, b) -> {
+		final int result = Long.compare(a.transaction.getTimestamp(), b.transaction.getTimestamp());
+		if (result != 0)
+			return result;
+
+		return SIGNATURE_COMPARATOR.compare(a.signature, b.signature);
+	};
+
+	private static final class Entry {
+		private final Transaction transaction;
+		private final byte[] signature;
+		private final BigDecimal feePerByte;
+		private final long deadline;
+		private final String sender;
+
+		private Entry(final Transaction transaction) {
+			this.transaction = transaction;
+			this.signature = transaction.getSignature();
+			this.feePerByte = transaction.feePerByte();
+			this.deadline = transaction.getDeadline();
+
+			final PublicKeyAccount creator = transaction.getCreator();
+			this.sender = creator == null ? null : creator.getAddress();
+		}
+	}
+
+	private final int maxSize;
+	private final Map<ByteBuffer, Entry> entries = new HashMap<ByteBuffer, Entry>();
+	private final NavigableSet<Entry> byFee = new TreeSet<Entry>(FEE_COMPARATOR);
+	private final NavigableSet<Entry> byDeadline = new TreeSet<Entry>(DEADLINE_COMPARATOR);
+	private final Map<String, NavigableSet<Entry>> bySender = new HashMap<String, NavigableSet<Entry>>();
+
+	public Mempool(final int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Add (or replace) transaction.
+	 *
+	 * @param transaction
+	 * @return transaction evicted to make room, which may be <code>transaction</code> itself if its fee-per-byte is too low,
+	 *         or <code>null</code> if nothing was evicted
+	 */
+	public synchronized Transaction add(final Transaction transaction) {
+		final Entry entry = new Entry(transaction);
+
+		this.remove(entry.signature);
+		this.index(entry);
+
+		if (this.entries.size() <= this.maxSize) {
+			return null;
+		}
+
+		final Entry lowest = this.byFee.last();
+		this.unindex(lowest);
+		return lowest.transaction;
+	}
+
+	/**
+	 * @param signature
+	 * @return removed transaction, or <code>null</code> if not present
+	 */
+	public synchronized Transaction remove(final byte[] signature) {
+		final Entry entry = this.entries.get(ByteBuffer.wrap(signature));
+		if (entry == null)
+			return null;
+
+		this.unindex(entry);
+		return entry.transaction;
+	}
+
+	public synchronized Transaction get(final byte[] signature) {
+		final Entry entry = this.entries.get(ByteBuffer.wrap(signature));
+		return entry == null ? null : entry.transaction;
+	}
+
+	public synchronized boolean contains(final byte[] signature) {
+		return this.entries.containsKey(ByteBuffer.wrap(signature));
+	}
+
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	public synchronized void clear() {
+		this.entries.clear();
+		this.byFee.clear();
+		this.byDeadline.clear();
+		this.bySender.clear();
+	}
+
+	/**
+	 * @return snapshot of transactions, highest fee-per-byte first
+	 */
+	public synchronized List<Transaction> getTransactionsByFee() {
+		final List<Transaction> transactions = new ArrayList<Transaction>(this.byFee.size());
+		for (final Entry entry : this.byFee) {
+			transactions.add(entry.transaction);
+		}
+
+		return transactions;
+	}
+
+	/**
+	 * @param time
+	 * @return snapshot of transactions whose deadline is before <code>time</code>
+	 */
+	public synchronized List<Transaction> getExpired(final long time) {
+		final List<Transaction> transactions = new ArrayList<Transaction>();
+		for (final Entry entry : this.byDeadline) {
+			if (entry.deadline >= time)
+				break;
+
+			transactions.add(entry.transaction);
+		}
+
+		return transactions;
+	}
+
+	/**
+	 * @param address
+	 * @return snapshot of transactions created by <code>address</code>, oldest first
+	 */
+	public synchronized List<Transaction> getTransactionsBySender(final String address) {
+		final NavigableSet<Entry> senderEntries = this.bySender.get(address);
+		if (senderEntries == null)
+			return Collections.emptyList();
+
+		final List<Transaction> transactions = new ArrayList<Transaction>(senderEntries.size());
+		for (final Entry entry : senderEntries) {
+			transactions.add(entry.transaction);
+		}
+
+		return transactions;
+	}
+
+	private void index(final Entry entry) {
+		this.entries.put(ByteBuffer.wrap(entry.signature), entry);
+		this.byFee.add(entry);
+		this.byDeadline.add(entry);
+
+		if (entry.sender != null) {
+			this.bySender.computeIfAbsent(entry.sender, sender -> new TreeSet<Entry>(TIMESTAMP_COMPARATOR)).add(entry);
+		}
+	}
+
+	private void unindex(final Entry entry) {
+		this.entries.remove(ByteBuffer.wrap(entry.signature));
+		this.byFee.remove(entry);
+		this.byDeadline.remove(entry);
+
+		if (entry.sender != null) {
+			final NavigableSet<Entry> senderEntries = this.bySender.get(entry.sender);
+			if (senderEntries != null) {
+				senderEntries.remove(entry);
+				if (senderEntries.isEmpty())
+					this.bySender.remove(entry.sender);
+			}
+		}
+	}
+
+}
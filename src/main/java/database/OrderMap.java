@@ -3,15 +3,14 @@ package database;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.TreeMap;
-import java.util.TreeSet;
 
 import org.mapdb.BTreeMap;
 import org.mapdb.Bind;
@@ -20,6 +19,9 @@ import org.mapdb.DBMaker;
 import org.mapdb.Fun;
 import org.mapdb.Fun.Tuple4;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+
 import database.serializer.OrderSerializer;
 import qora.assets.Order;
 import utils.ObserverMessage;
@@ -32,17 +34,28 @@ public class OrderMap extends DbMap<BigInteger, Order> {
 	@SuppressWarnings("rawtypes")
 	private BTreeMap wantHaveKeyMap;
 
+	private final AssetStatsMap assetStatsMap;
+	private final DepthMap depthMap;
+
 	public OrderMap(QoraDb databaseSet, DB database) {
 		super(databaseSet, database);
 
+		this.assetStatsMap = databaseSet.getAssetStatsMap();
+		this.depthMap = databaseSet.getDepthMap();
+
 		this.observableData.put(DbMap.NOTIFY_ADD, ObserverMessage.ADD_ORDER_TYPE);
 		this.observableData.put(DbMap.NOTIFY_REMOVE, ObserverMessage.REMOVE_ORDER_TYPE);
 		// this.observableData.put(DBMap.NOTIFY_LIST, ObserverMessage.LIST_ORDER_TYPE);
 	}
 
-	public OrderMap(OrderMap parent) {
+	public OrderMap(AssetStatsMap assetStatsMap, DepthMap depthMap, OrderMap parent) {
 		super(parent);
 
+		this.assetStatsMap = assetStatsMap;
+		this.depthMap = depthMap;
+		this.haveWantKeyMap = EmptyIndexes.map();
+		this.wantHaveKeyMap = EmptyIndexes.map();
+
 	}
 
 	protected void createIndexes(DB database) {
@@ -108,38 +121,74 @@ public class OrderMap extends DbMap<BigInteger, Order> {
 		return this.observableData;
 	}
 
+	/**
+	 * Stores <code>order</code>, keeping asset stats and depth up to date.
+	 */
+	@Override
+	public boolean set(BigInteger key, Order order) {
+		Order old = this.get(key);
+
+		this.assetStatsMap.updateOrder(old, order);
+		this.depthMap.updateOrder(old, order);
+
+		return super.set(key, order);
+	}
+
+	/**
+	 * Removes order with <code>key</code>, keeping asset stats and depth up to date.
+	 */
+	@Override
+	public void delete(BigInteger key) {
+		Order old = this.get(key);
+
+		if (old != null) {
+			this.assetStatsMap.updateOrder(old, null);
+			this.depthMap.updateOrder(old, null);
+		}
+
+		super.delete(key);
+	}
+
 	public void add(Order order) {
 		this.set(order.getId(), order);
 	}
 
+	/**
+	 * Index entries for orders selling <code>have</code> for <code>want</code>, in index order: lowest price first, then by
+	 * id.
+	 * <p>
+	 * A fork merges its own entries with its parent's, skipping parent's entries for orders it has changed or deleted.
+	 * Nothing is read until the iterator gets there.
+	 */
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private Collection<BigInteger> getKeys(long have, long want) {
-
-		// FILTER ALL KEYS
-		Collection<BigInteger> keys = ((BTreeMap<Tuple4, BigInteger>) this.haveWantKeyMap)
-				.subMap(Fun.t4(have, want, null, null), Fun.t4(have, want, Fun.HI(), Fun.HI())).values();
+	private Iterator<Tuple4<Long, Long, BigDecimal, BigInteger>> getBookKeys(long have, long want) {
+		Iterator<Tuple4<Long, Long, BigDecimal, BigInteger>> keys = (Iterator) ((BTreeMap<Tuple4, BigInteger>) this.haveWantKeyMap)
+				.subMap(Fun.t4(have, want, null, null), Fun.t4(have, want, Fun.HI(), Fun.HI())).keySet().iterator();
 
 		// IF THIS IS A FORK
 		if (this.parent != null) {
-			// GET ALL KEYS FOR FORK
-			Collection<BigInteger> forkKeys = ((OrderMap) this.parent).getKeys(have, want);
-
-			// COMBINE LISTS
-			Set<BigInteger> combinedKeys = new TreeSet<BigInteger>(keys);
-			combinedKeys.addAll(forkKeys);
+			// PARENT'S ENTRIES, MINUS THOSE WE'VE CHANGED OR DELETED
+			Iterator<Tuple4<Long, Long, BigDecimal, BigInteger>> parentKeys = Iterators.filter(((OrderMap) this.parent).getBookKeys(have, want),
+					key -> !this.map.containsKey(key.d) && !this.deletedContains(key.d));
 
-			// DELETE DELETED
-			for (BigInteger deleted : this.deleted) {
-				combinedKeys.remove(deleted);
-			}
-
-			// CONVERT SET BACK TO COLLECTION
-			keys = combinedKeys;
+			// ORDER'S PRICE NEVER CHANGES SO BOTH ARE IN THE SAME ORDER
+			keys = Iterators.mergeSorted(Arrays.asList(keys, parentKeys), Fun.COMPARATOR);
 		}
 
 		return keys;
 	}
 
+	/**
+	 * Orders selling <code>have</code> for <code>want</code>, lowest price first, then by id, as
+	 * {@link #getOrders(long, long)} but reading each order only when the iterator reaches it. Matching usually stops after
+	 * a few orders, so busy pairs don't cost more than quiet ones.
+	 * 
+	 * @return orders as they are when reached
+	 */
+	public Iterator<Order> getOrderBook(long have, long want) {
+		return Iterators.transform(this.getBookKeys(have, want), key -> this.get(key.d));
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	private Collection<BigInteger> getKeysHave(long have) {
 
@@ -213,23 +262,7 @@ public class OrderMap extends DbMap<BigInteger, Order> {
 	}
 
 	public List<Order> getOrders(long have, long want) {
-		// FILTER ALL KEYS
-		Collection<BigInteger> keys = this.getKeys(have, want);
-
-		// GET ALL ORDERS FOR KEYS
-		List<Order> orders = new ArrayList<Order>();
-		for (BigInteger key : keys) {
-			orders.add(this.get(key));
-		}
-
-		// IF THIS IS A FORK
-		if (this.parent != null) {
-			// RESORT ORDERS
-			Collections.sort(orders);
-		}
-
-		// RETURN
-		return orders;
+		return Lists.newArrayList(this.getOrderBook(have, want));
 	}
 
 	public SortableList<BigInteger, Order> getOrdersSortableList(long have, long want) {
@@ -407,7 +407,7 @@ public class PeerMap extends DbMap<byte[], byte[]> {
 		}
 
 		// ADD PEER INTO DB
-		this.map.put(address, peerInfo.toBytes());
+		this.getOverlay().put(address, peerInfo.toBytes());
 	}
 
 	public PeerInfo getInfo(InetAddress address) {
@@ -437,7 +437,7 @@ public class PeerMap extends DbMap<byte[], byte[]> {
 
 		// Un-blacklist
 		peerInfo.setBlacklisted(false);
-		this.map.put(address.getAddress(), peerInfo.toBytes());
+		this.getOverlay().put(address.getAddress(), peerInfo.toBytes());
 
 		return false;
 	}
@@ -447,7 +447,7 @@ public class PeerMap extends DbMap<byte[], byte[]> {
 		PeerInfo peerInfo = getInfo(peer.getAddress());
 		peerInfo.setBlacklisted(true);
 		peerInfo.updateGrayConnectTime();
-		this.map.put(peer.getAddress().getAddress(), peerInfo.toBytes());
+		this.getOverlay().put(peer.getAddress().getAddress(), peerInfo.toBytes());
 	}
 
 	public boolean isBad(InetAddress address) {
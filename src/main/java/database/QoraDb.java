@@ -1,67 +1,122 @@
 package database;
 
 import java.io.File;
+import java.io.IOError;
 import java.io.IOException;
 import java.nio.file.Files;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.mapdb.Atomic.Var;
 import org.mapdb.DB;
 import org.mapdb.DBMaker;
+import org.mapdb.Fun.Tuple2;
+import org.mapdb.StoreWAL;
 
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import qora.assets.Order;
+import qora.assets.Trade;
+import qora.transaction.Transaction;
 import qora.web.NameStorageMap;
 import qora.web.OrphanNameStorageHelperMap;
 import qora.web.OrphanNameStorageMap;
 import qora.web.SharedPostsMap;
 import controller.Controller;
 import settings.Settings;
-import utils.ObserverMessage;
 import utils.SimpleFileVisitorForRecursiveFolderDeletion;
 
-public final class QoraDb implements Observer, IDB {
+/**
+ * All blockchain state, backed by a single MapDB store.
+ * <p>
+ * Writes are grouped into units of work (usually one block, see {@link #beginBlock()}) and the store is only ever committed
+ * between units, so whatever is on disk always ends on a whole block. When to commit is set by <code>dbcommitmode</code>:
+ * <ul>
+ * <li><code>blocks</code> - every <code>dbcommitblocks</code> blocks</li>
+ * <li><code>interval</code> - once <code>dbcommitinterval</code> milliseconds have passed since last commit</li>
+ * <li><code>sync</code> - when synchronization finishes, or after each block received outside of synchronization</li>
+ * </ul>
+ * In every mode a commit is forced once too many writes are pending, to keep the write-ahead log bounded.
+ * <p>
+ * With <code>dbbulksync</code> enabled, a brand new database is opened without transactions and with asynchronous writes to
+ * speed up initial sync. A marker file exists for as long as the store is in that mode. If it's found when opening, the
+ * previous run didn't close cleanly and the database needs rebuilding, see {@link #isRecoveryNeeded()}.
+ */
+public final class QoraDb implements IDB {
 
 	private static final Logger LOGGER = LogManager.getLogger(QoraDb.class);
-	private static final int ACTIONS_BEFORE_COMMIT = 10000;
 
-	private static QoraDb instance;
+	public static final String COMMIT_MODE_BLOCKS = "blocks";
+	public static final String COMMIT_MODE_INTERVAL = "interval";
+	public static final String COMMIT_MODE_SYNC = "sync";
 
-	private final BalanceMap balanceMap;
-	private final BlockMap blockMap;
-	private final ChildMap childMap;
-	private final HeightMap heightMap;
-	private final ReferenceMap referenceMap;
-	private final PeerMap peerMap;
-	private final TransactionMap transactionMap;
-	private final NameMap nameMap;
-	private final NameStorageMap nameStorageMap;
-	private final OrphanNameStorageMap orphanNameStorageMap;
-	private final OrphanNameStorageHelperMap orphanNameStorageHelperMap;
-	private final SharedPostsMap sharedPostsMap;
-	private final PostCommentMap postCommentMap;
-	private final CommentPostMap commentPostMap;
-	private final LocalDataMap localDataMap;
-	private final BlogPostMap blogPostMap;
-	private final HashtagPostMap hashtagPostMap;
-	private final TransactionParentMap transactionParentMap;
-	private final NameExchangeMap nameExchangeMap;
-	private final UpdateNameMap updateNameMap;
-	private final CancelSellNameMap cancelSellNameMap;
-	private final PollMap pollMap;
-	private final VoteOnPollMap voteOnPollMap;
-	private final AssetMap assetMap;
-	private final IssueAssetMap issueAssetMap;
-	private final OrderMap orderMap;
-	private final CompletedOrderMap completedOrderMap;
-	private final TradeMap tradeMap;
-	private final ATMap atMap;
-	private final ATStateMap atStateMap;
-	private final ATTransactionMap atTransactionMap;
-	private final TransactionFinalMap transactionFinalMap;
+	private static final int ACTIONS_BEFORE_FORCED_COMMIT = 100000;
+	private static final String BULK_SYNC_MARKER = "bulksync.marker";
+
+	private static QoraDb instance;
 
+	private BalanceMap balanceMap;
+	private BlockMap blockMap;
+	private ChildMap childMap;
+	private HeightMap heightMap;
+	private ReferenceMap referenceMap;
+	private PeerMap peerMap;
+	private TransactionMap transactionMap;
+	private NameMap nameMap;
+	private NameStorageMap nameStorageMap;
+	private OrphanNameStorageMap orphanNameStorageMap;
+	private OrphanNameStorageHelperMap orphanNameStorageHelperMap;
+	private SharedPostsMap sharedPostsMap;
+	private PostCommentMap postCommentMap;
+	private CommentPostMap commentPostMap;
+	private LocalDataMap localDataMap;
+	private BlogPostMap blogPostMap;
+	private HashtagPostMap hashtagPostMap;
+	private TransactionParentMap transactionParentMap;
+	private NameExchangeMap nameExchangeMap;
+	private UpdateNameMap updateNameMap;
+	private CancelSellNameMap cancelSellNameMap;
+	private PollMap pollMap;
+	private VoteOnPollMap voteOnPollMap;
+	private AssetMap assetMap;
+	private IssueAssetMap issueAssetMap;
+	private AssetStatsMap assetStatsMap;
+	private DepthMap depthMap;
+	private CandleMap candleMap;
+	private OrderMap orderMap;
+	private CompletedOrderMap completedOrderMap;
+	private TradeMap tradeMap;
+	private ATMap atMap;
+	private ATStateMap atStateMap;
+	private ATTransactionMap atTransactionMap;
+	private TransactionFinalMap transactionFinalMap;
+	private TransactionCountMap transactionCountMap;
+	private BalanceHistoryMap balanceHistoryMap;
+
+	private QoraDb parent;
 	private DB database;
+	private File file;
+	private File bulkSyncMarker;
+	private boolean recoveryNeeded;
+
+	// Unit of work state
+	private final ReentrantReadWriteLock unitLock = new ReentrantReadWriteLock();
+	private int depth;
+	private int syncDepth;
 	private int actions;
+	private int blocksSinceCommit;
+	private long lastCommitTime;
+
+	// Commit metrics
+	private long commitCount;
+	private long totalCommitMillis;
+	private long maxCommitMillis;
+	private long lastCommitMillis;
+	private long lastCommitDirtyBytes;
+	private long lastCommitActions;
 
 	public static QoraDb getInstance() {
 		if (instance == null) {
@@ -108,12 +163,35 @@ public final class QoraDb implements Observer, IDB {
 		final File file = new File(Settings.getInstance().getDataDir(), "data.dat");
 		file.getParentFile().mkdirs();
 
+		// Marker left behind means we were in bulk sync mode when we stopped unexpectedly
+		final File bulkSyncMarker = new File(file.getParentFile(), BULK_SYNC_MARKER);
+		final boolean wasBulkSync = bulkSyncMarker.exists();
+
+		// Only use bulk sync mode for initial sync into a brand new database
+		final boolean isBulkSync = !wasBulkSync && !file.exists() && Settings.getInstance().isDbBulkSyncEnabled();
+
 		// Create database
-		final DB database = DBMaker.newFileDB(file).cacheSize(2048).checksumEnable().mmapFileEnableIfSupported()
-				.cacheLRUEnable().make();
+		DBMaker<?> maker = DBMaker.newFileDB(file).cacheSize(2048).checksumEnable().mmapFileEnableIfSupported()
+				.cacheLRUEnable();
+
+		if (isBulkSync) {
+			try {
+				bulkSyncMarker.createNewFile();
+			} catch (IOException e) {
+				throw new IOError(e);
+			}
+
+			LOGGER.info("Opening new database in bulk sync mode");
+			maker = maker.transactionDisable().asyncWriteEnable();
+		}
+
+		final DB database = maker.make();
 
 		// Set instance
 		instance = new QoraDb(database);
+		instance.file = file;
+		instance.bulkSyncMarker = isBulkSync ? bulkSyncMarker : null;
+		instance.recoveryNeeded = instance.recoveryNeeded || wasBulkSync;
 	}
 
 	public static QoraDb createMemoryDatabase() {
@@ -129,8 +207,29 @@ public final class QoraDb implements Observer, IDB {
 		try {
 			this.database = database;
 			this.actions = 0;
+			this.lastCommitTime = System.currentTimeMillis();
+
+			// Databases from older versions flagged block processing in the store itself
+			if (database.exists("processingBlock")) {
+				final Var<Boolean> processingVar = database.getAtomicVar("processingBlock");
+				this.recoveryNeeded = Boolean.TRUE.equals(processingVar.get());
+			}
+
+			// Databases from older versions have orders and trades but no market data yet
+			final boolean marketDataMissing = !database.exists("asset_stats");
+
+			// ... and AT states as periodic snapshots instead of diffs
+			final boolean legacyATStates = ATStateMap.hasLegacyStates(database);
+
+			// ... and no transaction counts
+			final boolean transactionCountsMissing = !database.exists("transaction_counts");
+
+			// ... and no balance history
+			final boolean balanceHistoryMissing = !database.exists("balance_history");
 
 			this.balanceMap = new BalanceMap(this, database);
+			this.transactionCountMap = new TransactionCountMap(this, database);
+			this.balanceHistoryMap = new BalanceHistoryMap(this, database);
 			this.transactionFinalMap = new TransactionFinalMap(this, database);
 			this.blockMap = new BlockMap(this, database);
 			this.childMap = new ChildMap(this, database);
@@ -156,6 +255,9 @@ public final class QoraDb implements Observer, IDB {
 			this.voteOnPollMap = new VoteOnPollMap(this, database);
 			this.assetMap = new AssetMap(this, database);
 			this.issueAssetMap = new IssueAssetMap(this, database);
+			this.assetStatsMap = new AssetStatsMap(this, database);
+			this.depthMap = new DepthMap(this, database);
+			this.candleMap = new CandleMap(this, database);
 			this.orderMap = new OrderMap(this, database);
 			this.completedOrderMap = new CompletedOrderMap(this, database);
 			this.tradeMap = new TradeMap(this, database);
@@ -163,205 +265,434 @@ public final class QoraDb implements Observer, IDB {
 			this.atStateMap = new ATStateMap(this, database);
 			this.atTransactionMap = new ATTransactionMap(this, database);
 
+			if (marketDataMissing) {
+				this.rebuildMarketData();
+			}
+
+			if (transactionCountsMissing) {
+				this.rebuildTransactionCounts();
+			}
+
+			if (balanceHistoryMissing) {
+				this.rebuildBalanceHistory();
+			}
+
+			if (legacyATStates) {
+				this.atStateMap.importLegacyStates(database);
+			}
 		} catch (Throwable e) {
 			close();
 			throw e;
 		}
 	}
 
+	/**
+	 * Fills asset stats, depth and candles from the orders and trades already stored.
+	 */
+	private void rebuildMarketData() {
+		if (this.orderMap.size() == 0 && this.tradeMap.size() == 0) {
+			return;
+		}
+
+		LOGGER.info("Building market data from " + this.orderMap.size() + " orders and " + this.tradeMap.size() + " trades");
+
+		for (Order order : this.orderMap.getValues()) {
+			this.assetStatsMap.updateOrder(null, order);
+			this.depthMap.updateOrder(null, order);
+		}
+
+		for (Trade trade : this.tradeMap.getValues()) {
+			final Order initiator = trade.getInitiatorOrder(this);
+			this.assetStatsMap.addTrade(initiator);
+			this.candleMap.add(trade, initiator);
+		}
+	}
+
+	/**
+	 * Fills transaction counts from the transactions already stored.
+	 */
+	private void rebuildTransactionCounts() {
+		if (this.transactionFinalMap.size() == 0) {
+			return;
+		}
+
+		LOGGER.info("Counting transactions of " + this.transactionFinalMap.size() + " confirmed transactions");
+
+		for (Transaction transaction : this.transactionFinalMap.getValues()) {
+			this.transactionCountMap.updateTransaction(null, transaction);
+		}
+	}
+
+	/**
+	 * Fills balance history from the transactions and AT payments already stored, in height order so totals are only
+	 * ever appended.
+	 */
+	private void rebuildBalanceHistory() {
+		if (this.transactionFinalMap.size() == 0 && this.atTransactionMap.size() == 0) {
+			return;
+		}
+
+		LOGGER.info("Building balance history from " + this.transactionFinalMap.size() + " confirmed transactions and "
+				+ this.atTransactionMap.size() + " AT transactions");
+
+		final PeekingIterator<Tuple2<Integer, Integer>> atKeys = Iterators.peekingIterator(this.atTransactionMap.getKeys().iterator());
+
+		for (Tuple2<Integer, Integer> key : this.transactionFinalMap.getKeys()) {
+			while (atKeys.hasNext() && atKeys.peek().a <= key.a) {
+				final Tuple2<Integer, Integer> atKey = atKeys.next();
+				this.balanceHistoryMap.updateATTransaction(atKey.a, null, this.atTransactionMap.get(atKey));
+			}
+
+			this.balanceHistoryMap.updateTransaction(key.a, null, this.transactionFinalMap.get(key));
+		}
+
+		while (atKeys.hasNext()) {
+			final Tuple2<Integer, Integer> atKey = atKeys.next();
+			this.balanceHistoryMap.updateATTransaction(atKey.a, null, this.atTransactionMap.get(atKey));
+		}
+	}
+
+	/**
+	 * Fork of <code>parent</code>. Each map's overlay is only created when first used.
+	 * <p>
+	 * Forks aren't thread-safe.
+	 */
 	protected QoraDb(final QoraDb parent) {
-		this.balanceMap = new BalanceMap(parent.balanceMap);
-		this.transactionFinalMap = new TransactionFinalMap(parent.transactionFinalMap);
-		this.blockMap = new BlockMap(parent.blockMap);
-		this.childMap = new ChildMap(this.blockMap, parent.childMap);
-		this.heightMap = new HeightMap(parent.heightMap);
-		this.referenceMap = new ReferenceMap(parent.referenceMap);
-		this.peerMap = new PeerMap(parent.peerMap);
-		this.transactionMap = new TransactionMap(parent.transactionMap);
-		this.nameMap = new NameMap(parent.nameMap);
-		this.nameStorageMap = new NameStorageMap(parent.nameStorageMap);
-		this.orphanNameStorageMap = new OrphanNameStorageMap(parent.orphanNameStorageMap);
-		this.sharedPostsMap = new SharedPostsMap(parent.sharedPostsMap);
-		this.postCommentMap = new PostCommentMap(parent.postCommentMap);
-		this.commentPostMap = new CommentPostMap(parent.commentPostMap);
-		this.orphanNameStorageHelperMap = new OrphanNameStorageHelperMap(parent.orphanNameStorageHelperMap);
-		this.localDataMap = new LocalDataMap(parent.localDataMap);
-		this.blogPostMap = new BlogPostMap(parent.blogPostMap);
-		this.hashtagPostMap = new HashtagPostMap(parent.hashtagPostMap);
-		this.transactionParentMap = new TransactionParentMap(this.blockMap, parent.transactionParentMap);
-		this.nameExchangeMap = new NameExchangeMap(parent.nameExchangeMap);
-		this.updateNameMap = new UpdateNameMap(parent.updateNameMap);
-		this.cancelSellNameMap = new CancelSellNameMap(parent.cancelSellNameMap);
-		this.pollMap = new PollMap(parent.pollMap);
-		this.voteOnPollMap = new VoteOnPollMap(parent.voteOnPollMap);
-		this.assetMap = new AssetMap(parent.assetMap);
-		this.issueAssetMap = new IssueAssetMap(parent.issueAssetMap);
-		this.orderMap = new OrderMap(parent.orderMap);
-		this.completedOrderMap = new CompletedOrderMap(parent.completedOrderMap);
-		this.tradeMap = new TradeMap(parent.tradeMap);
-		this.atMap = new ATMap(parent.atMap);
-		this.atStateMap = new ATStateMap(parent.atStateMap);
-		this.atTransactionMap = new ATTransactionMap(parent.atTransactionMap);
+		this.parent = parent;
 	}
 
 	public void reset() {
-		this.balanceMap.reset();
-		this.heightMap.reset();
-		this.referenceMap.reset();
-		this.peerMap.reset();
-		this.transactionFinalMap.reset();
-		this.transactionMap.reset();
-		this.nameMap.reset();
-		this.nameStorageMap.reset();
-		this.orphanNameStorageMap.reset();
-		this.orphanNameStorageHelperMap.reset();
-		this.sharedPostsMap.reset();
-		this.commentPostMap.reset();
-		this.postCommentMap.reset();
-		this.localDataMap.reset();
-		this.blogPostMap.reset();
-		this.hashtagPostMap.reset();
-		this.transactionParentMap.reset();
-		this.nameExchangeMap.reset();
-		this.updateNameMap.reset();
-		this.cancelSellNameMap.reset();
-		this.pollMap.reset();
-		this.voteOnPollMap.reset();
-		this.tradeMap.reset();
-		this.orderMap.reset();
-		this.completedOrderMap.reset();
-		this.issueAssetMap.reset();
-		this.assetMap.reset();
-		this.atMap.reset();
-		this.atStateMap.reset();
-		this.atTransactionMap.reset();
+		this.getBalanceMap().reset();
+		this.getHeightMap().reset();
+		this.getReferenceMap().reset();
+		this.getPeerMap().reset();
+		this.getTransactionFinalMap().reset();
+		this.getTransactionCountMap().reset();
+		this.getBalanceHistoryMap().reset();
+		this.getTransactionMap().reset();
+		this.getNameMap().reset();
+		this.getNameStorageMap().reset();
+		this.getOrphanNameStorageMap().reset();
+		this.getOrphanNameStorageHelperMap().reset();
+		this.getSharedPostsMap().reset();
+		this.getCommentPostMap().reset();
+		this.getPostCommentMap().reset();
+		this.getLocalDataMap().reset();
+		this.getBlogPostMap().reset();
+		this.getHashtagPostMap().reset();
+		this.getTransactionParentMap().reset();
+		this.getNameExchangeMap().reset();
+		this.getUpdateNameMap().reset();
+		this.getCancelSellNameMap().reset();
+		this.getPollMap().reset();
+		this.getVoteOnPollDatabase().reset();
+		this.getTradeMap().reset();
+		this.getOrderMap().reset();
+		this.getCompletedOrderMap().reset();
+		this.getAssetStatsMap().reset();
+		this.getDepthMap().reset();
+		this.getCandleMap().reset();
+		this.getIssueAssetMap().reset();
+		this.getAssetMap().reset();
+		this.getATMap().reset();
+		this.getATStateMap().reset();
+		this.getATTransactionMap().reset();
 	}
 
 	public BalanceMap getBalanceMap() {
+		if (this.balanceMap == null) {
+			this.balanceMap = new BalanceMap(this.parent.getBalanceMap());
+		}
+
 		return this.balanceMap;
 	}
 
 	public BlockMap getBlockMap() {
+		if (this.blockMap == null) {
+			this.blockMap = new BlockMap(this.parent.getBlockMap());
+		}
+
 		return this.blockMap;
 	}
 
 	public ChildMap getChildMap() {
+		if (this.childMap == null) {
+			this.childMap = new ChildMap(this.getBlockMap(), this.parent.getChildMap());
+		}
+
 		return this.childMap;
 	}
 
 	public HeightMap getHeightMap() {
+		if (this.heightMap == null) {
+			this.heightMap = new HeightMap(this.parent.getHeightMap());
+		}
+
 		return this.heightMap;
 	}
 
 	public ReferenceMap getReferenceMap() {
+		if (this.referenceMap == null) {
+			this.referenceMap = new ReferenceMap(this.parent.getReferenceMap());
+		}
+
 		return this.referenceMap;
 	}
 
 	public PeerMap getPeerMap() {
+		if (this.peerMap == null) {
+			this.peerMap = new PeerMap(this.parent.getPeerMap());
+		}
+
 		return this.peerMap;
 	}
 
 	public TransactionMap getTransactionMap() {
+		if (this.transactionMap == null) {
+			this.transactionMap = new TransactionMap(this.parent.getTransactionMap());
+		}
+
 		return this.transactionMap;
 	}
 
 	public TransactionFinalMap getTransactionFinalMap() {
+		if (this.transactionFinalMap == null) {
+			this.transactionFinalMap = new TransactionFinalMap(this.getTransactionCountMap(), this.getBalanceHistoryMap(),
+					this.parent.getTransactionFinalMap());
+		}
+
 		return this.transactionFinalMap;
 	}
 
+	public TransactionCountMap getTransactionCountMap() {
+		if (this.transactionCountMap == null) {
+			this.transactionCountMap = new TransactionCountMap(this.parent.getTransactionCountMap());
+		}
+
+		return this.transactionCountMap;
+	}
+
+	public BalanceHistoryMap getBalanceHistoryMap() {
+		if (this.balanceHistoryMap == null) {
+			this.balanceHistoryMap = new BalanceHistoryMap(this.parent.getBalanceHistoryMap());
+		}
+
+		return this.balanceHistoryMap;
+	}
+
 	public NameMap getNameMap() {
+		if (this.nameMap == null) {
+			this.nameMap = new NameMap(this.parent.getNameMap());
+		}
+
 		return this.nameMap;
 	}
 
 	public NameStorageMap getNameStorageMap() {
+		if (this.nameStorageMap == null) {
+			this.nameStorageMap = new NameStorageMap(this.parent.getNameStorageMap());
+		}
+
 		return this.nameStorageMap;
 	}
 
 	public OrphanNameStorageMap getOrphanNameStorageMap() {
+		if (this.orphanNameStorageMap == null) {
+			this.orphanNameStorageMap = new OrphanNameStorageMap(this.parent.getOrphanNameStorageMap());
+		}
+
 		return this.orphanNameStorageMap;
 	}
 
 	public SharedPostsMap getSharedPostsMap() {
+		if (this.sharedPostsMap == null) {
+			this.sharedPostsMap = new SharedPostsMap(this.parent.getSharedPostsMap());
+		}
+
 		return this.sharedPostsMap;
 	}
 
 	public PostCommentMap getPostCommentMap() {
+		if (this.postCommentMap == null) {
+			this.postCommentMap = new PostCommentMap(this.parent.getPostCommentMap());
+		}
+
 		return this.postCommentMap;
 	}
 
 	public CommentPostMap getCommentPostMap() {
+		if (this.commentPostMap == null) {
+			this.commentPostMap = new CommentPostMap(this.parent.getCommentPostMap());
+		}
+
 		return this.commentPostMap;
 	}
 
 	public OrphanNameStorageHelperMap getOrphanNameStorageHelperMap() {
+		if (this.orphanNameStorageHelperMap == null) {
+			this.orphanNameStorageHelperMap = new OrphanNameStorageHelperMap(this.parent.getOrphanNameStorageHelperMap());
+		}
+
 		return this.orphanNameStorageHelperMap;
 	}
 
 	public LocalDataMap getLocalDataMap() {
+		if (this.localDataMap == null) {
+			this.localDataMap = new LocalDataMap(this.parent.getLocalDataMap());
+		}
+
 		return this.localDataMap;
 	}
 
 	public BlogPostMap getBlogPostMap() {
+		if (this.blogPostMap == null) {
+			this.blogPostMap = new BlogPostMap(this.parent.getBlogPostMap());
+		}
+
 		return this.blogPostMap;
 	}
 
 	public HashtagPostMap getHashtagPostMap() {
+		if (this.hashtagPostMap == null) {
+			this.hashtagPostMap = new HashtagPostMap(this.parent.getHashtagPostMap());
+		}
+
 		return this.hashtagPostMap;
 	}
 
 	public TransactionParentMap getTransactionParentMap() {
+		if (this.transactionParentMap == null) {
+			this.transactionParentMap = new TransactionParentMap(this.getBlockMap(), this.parent.getTransactionParentMap());
+		}
+
 		return this.transactionParentMap;
 	}
 
 	public NameExchangeMap getNameExchangeMap() {
+		if (this.nameExchangeMap == null) {
+			this.nameExchangeMap = new NameExchangeMap(this.parent.getNameExchangeMap());
+		}
+
 		return this.nameExchangeMap;
 	}
 
 	public UpdateNameMap getUpdateNameMap() {
+		if (this.updateNameMap == null) {
+			this.updateNameMap = new UpdateNameMap(this.parent.getUpdateNameMap());
+		}
+
 		return this.updateNameMap;
 	}
 
 	public CancelSellNameMap getCancelSellNameMap() {
+		if (this.cancelSellNameMap == null) {
+			this.cancelSellNameMap = new CancelSellNameMap(this.parent.getCancelSellNameMap());
+		}
+
 		return this.cancelSellNameMap;
 	}
 
 	public PollMap getPollMap() {
+		if (this.pollMap == null) {
+			this.pollMap = new PollMap(this.parent.getPollMap());
+		}
+
 		return this.pollMap;
 	}
 
 	public VoteOnPollMap getVoteOnPollDatabase() {
+		if (this.voteOnPollMap == null) {
+			this.voteOnPollMap = new VoteOnPollMap(this.parent.getVoteOnPollDatabase());
+		}
+
 		return this.voteOnPollMap;
 	}
 
 	public AssetMap getAssetMap() {
+		if (this.assetMap == null) {
+			this.assetMap = new AssetMap(this.parent.getAssetMap());
+		}
+
 		return this.assetMap;
 	}
 
 	public IssueAssetMap getIssueAssetMap() {
+		if (this.issueAssetMap == null) {
+			this.issueAssetMap = new IssueAssetMap(this.parent.getIssueAssetMap());
+		}
+
 		return this.issueAssetMap;
 	}
 
+	public AssetStatsMap getAssetStatsMap() {
+		if (this.assetStatsMap == null) {
+			this.assetStatsMap = new AssetStatsMap(this.parent.getAssetStatsMap());
+		}
+
+		return this.assetStatsMap;
+	}
+
+	public DepthMap getDepthMap() {
+		if (this.depthMap == null) {
+			this.depthMap = new DepthMap(this.parent.getDepthMap());
+		}
+
+		return this.depthMap;
+	}
+
+	public CandleMap getCandleMap() {
+		if (this.candleMap == null) {
+			this.candleMap = new CandleMap(this.parent.getCandleMap());
+		}
+
+		return this.candleMap;
+	}
+
 	public OrderMap getOrderMap() {
+		if (this.orderMap == null) {
+			this.orderMap = new OrderMap(this.getAssetStatsMap(), this.getDepthMap(), this.parent.getOrderMap());
+		}
+
 		return this.orderMap;
 	}
 
 	public CompletedOrderMap getCompletedOrderMap() {
+		if (this.completedOrderMap == null) {
+			this.completedOrderMap = new CompletedOrderMap(this.parent.getCompletedOrderMap());
+		}
+
 		return this.completedOrderMap;
 	}
 
 	public TradeMap getTradeMap() {
+		if (this.tradeMap == null) {
+			this.tradeMap = new TradeMap(this.parent.getTradeMap());
+		}
+
 		return this.tradeMap;
 	}
 
 	public ATMap getATMap() {
+		if (this.atMap == null) {
+			this.atMap = new ATMap(this.parent.getATMap());
+		}
+
 		return this.atMap;
 	}
 
 	public ATStateMap getATStateMap() {
+		if (this.atStateMap == null) {
+			this.atStateMap = new ATStateMap(this.parent.getATStateMap());
+		}
+
 		return this.atStateMap;
 	}
 
 	public ATTransactionMap getATTransactionMap() {
+		if (this.atTransactionMap == null) {
+			this.atTransactionMap = new ATTransactionMap(this.getBalanceHistoryMap(), this.parent.getATTransactionMap());
+		}
+
 		return this.atTransactionMap;
 	}
 
@@ -374,6 +705,13 @@ public final class QoraDb implements Observer, IDB {
 			if (!this.database.isClosed()) {
 				this.database.commit();
 				this.database.close();
+
+				// Everything is on disk now, so bulk sync mode ended cleanly unless a block failed part-way through.
+				// Otherwise marker stays, so database is rebuilt on next start
+				if (this.bulkSyncMarker != null && !this.recoveryNeeded) {
+					this.bulkSyncMarker.delete();
+					this.bulkSyncMarker = null;
+				}
 			}
 		}
 	}
@@ -382,26 +720,245 @@ public final class QoraDb implements Observer, IDB {
 		return this.database.isClosed();
 	}
 
-	public void commit() {
-		this.actions++;
+	/**
+	 * @return <code>true</code> if the previous run stopped part-way through writing to a database that can't roll back, so its
+	 *         contents can't be trusted
+	 */
+	public boolean isRecoveryNeeded() {
+		return this.recoveryNeeded;
 	}
 
+	public boolean isBulkSync() {
+		return this.bulkSyncMarker != null;
+	}
+
+	/**
+	 * Records a pending write. Actual commits happen between units of work.
+	 */
 	@Override
-	public void update(final Observable o, final Object arg) {
-		final ObserverMessage message = (ObserverMessage) arg;
+	public synchronized void commit() {
+		this.actions++;
+	}
 
-		// Check if new block message
-		if (message.getType() == ObserverMessage.LIST_BLOCK_TYPE) {
+	/**
+	 * Start a unit of work, usually processing or orphaning a block.
+	 * <p>
+	 * Units can nest, e.g. a reorganization wrapping many blocks. Nothing is committed until the outermost unit ends. Only one
+	 * thread can be in a unit of work at a time, and it waits for any readers holding {@link #getReadLock()}.
+	 * 
+	 * @throws IllegalStateException
+	 *             if a unit failed part-way through in bulk sync mode, as nothing more can be built on what it left behind
+	 * @see #endBlock()
+	 * @see #abortBlock()
+	 */
+	public void beginBlock() {
+		synchronized (this) {
+			if (this.recoveryNeeded && this.isBulkSync()) {
+				throw new IllegalStateException("Block processing failed in bulk sync mode - database needs rebuilding");
+			}
+		}
 
-			// Check if we need to commit
-			if (this.actions >= ACTIONS_BEFORE_COMMIT) {
-				this.database.commit();
-				this.actions = 0;
+		// Outside monitor so we never wait for readers while holding it
+		this.unitLock.writeLock().lock();
 
-				// Notify controller of commit
-				Controller.getInstance().onDatabaseCommit();
+		synchronized (this) {
+			if (this.depth++ == 0) {
+				this.blockMap.setProcessing(true);
 			}
 		}
 	}
 
+	/**
+	 * Finish a unit of work, committing if the commit mode says it's time.
+	 */
+	public void endBlock() {
+		try {
+			synchronized (this) {
+				if (this.depth == 0 || --this.depth > 0) {
+					return;
+				}
+
+				this.blockMap.setProcessing(false);
+				this.blocksSinceCommit++;
+
+				if (this.isCommitDue()) {
+					this.flush();
+				}
+			}
+		} finally {
+			if (this.unitLock.isWriteLockedByCurrentThread()) {
+				this.unitLock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Abandon the current unit of work after a failure, discarding everything written since the last commit.
+	 * <p>
+	 * If the store has no transactions (bulk sync mode) the partial writes can't be undone, so the database is flagged for
+	 * recovery instead. No further units of work can then begin, and callers should stop processing blocks.
+	 *
+	 * @see #isRecoveryNeeded()
+	 */
+	public void abortBlock() {
+		try {
+			synchronized (this) {
+				this.depth = 0;
+				this.blockMap.setProcessing(false);
+
+				if (this.database == null) {
+					return;
+				}
+
+				if (this.isBulkSync()) {
+					LOGGER.error("Block processing failed in bulk sync mode - database needs rebuilding");
+					this.recoveryNeeded = true;
+					return;
+				}
+
+				LOGGER.warn("Block processing failed - rolling back " + this.blocksSinceCommit + " uncommitted blocks");
+				this.database.rollback();
+				this.blockMap.reload();
+				this.transactionMap.reload();
+				this.actions = 0;
+				this.blocksSinceCommit = 0;
+			}
+		} finally {
+			// Release every nested hold
+			while (this.unitLock.isWriteLockedByCurrentThread()) {
+				this.unitLock.writeLock().unlock();
+			}
+		}
+	}
+
+	/**
+	 * Lock for reading state that must not change part-way through, e.g. serving blocks to peers.
+	 * <p>
+	 * Units of work hold the matching write lock, so readers never see a unit part-way through. That isn't the same as
+	 * committed state: units that have ended but aren't committed yet (see {@link #beginBlock()}) are seen as well. Readers
+	 * run concurrently with each other and with block validation, and mustn't start a unit of work while holding this.
+	 * 
+	 * @return read lock
+	 * @see #beginBlock()
+	 */
+	public Lock getReadLock() {
+		return this.unitLock.readLock();
+	}
+
+	/**
+	 * Start synchronizing with peers. In <code>sync</code> commit mode, blocks are only committed once synchronization ends.
+	 */
+	public synchronized void beginSync() {
+		this.syncDepth++;
+	}
+
+	/**
+	 * Finish synchronizing with peers, committing any outstanding blocks.
+	 */
+	public synchronized void endSync() {
+		if (this.syncDepth > 0) {
+			this.syncDepth--;
+		}
+
+		if (this.syncDepth == 0 && this.depth == 0 && (this.actions > 0 || this.blocksSinceCommit > 0)) {
+			this.flush();
+		}
+	}
+
+	private boolean isCommitDue() {
+		// Keep write-ahead log bounded whatever the mode
+		if (this.actions >= ACTIONS_BEFORE_FORCED_COMMIT) {
+			return true;
+		}
+
+		// Store without transactions has nothing to commit until we're done
+		if (this.isBulkSync()) {
+			return false;
+		}
+
+		switch (Settings.getInstance().getDbCommitMode()) {
+			case COMMIT_MODE_INTERVAL:
+				return System.currentTimeMillis() - this.lastCommitTime >= Settings.getInstance().getDbCommitInterval();
+
+			case COMMIT_MODE_SYNC:
+				return this.syncDepth == 0;
+
+			case COMMIT_MODE_BLOCKS:
+			default:
+				return this.blocksSinceCommit >= Settings.getInstance().getDbCommitBlocks();
+		}
+	}
+
+	/**
+	 * Commit all pending writes now.
+	 * <p>
+	 * Only call between units of work.
+	 */
+	public synchronized void flush() {
+		if (this.database == null || this.database.isClosed()) {
+			return;
+		}
+
+		// Size of write-ahead log is how much dirty data this commit has to write out
+		final long dirtyBytes = this.file != null ? new File(this.file.getPath() + StoreWAL.TRANS_LOG_FILE_EXT).length() : 0;
+
+		final long start = System.currentTimeMillis();
+		this.database.commit();
+		final long elapsed = System.currentTimeMillis() - start;
+
+		this.commitCount++;
+		this.totalCommitMillis += elapsed;
+		this.maxCommitMillis = Math.max(this.maxCommitMillis, elapsed);
+		this.lastCommitMillis = elapsed;
+		this.lastCommitDirtyBytes = dirtyBytes;
+		this.lastCommitActions = this.actions;
+
+		LOGGER.debug(String.format("Committed %d blocks (%d writes, %d KiB log) in %dms", this.blocksSinceCommit,
+				this.actions, dirtyBytes / 1024, elapsed));
+
+		this.actions = 0;
+		this.blocksSinceCommit = 0;
+		this.lastCommitTime = System.currentTimeMillis();
+
+		// Notify controller of commit
+		Controller.getInstance().onDatabaseCommit();
+	}
+
+	public synchronized long getCommitCount() {
+		return this.commitCount;
+	}
+
+	public synchronized long getLastCommitMillis() {
+		return this.lastCommitMillis;
+	}
+
+	public synchronized long getMaxCommitMillis() {
+		return this.maxCommitMillis;
+	}
+
+	public synchronized double getAverageCommitMillis() {
+		return this.commitCount == 0 ? 0 : (double) this.totalCommitMillis / this.commitCount;
+	}
+
+	/**
+	 * @return size of write-ahead log flushed by last commit, in bytes
+	 */
+	public synchronized long getLastCommitDirtyBytes() {
+		return this.lastCommitDirtyBytes;
+	}
+
+	/**
+	 * @return number of map writes covered by last commit
+	 */
+	public synchronized long getLastCommitActions() {
+		return this.lastCommitActions;
+	}
+
+	/**
+	 * @return number of map writes not yet committed
+	 */
+	public synchronized int getPendingActions() {
+		return this.actions;
+	}
+
 }
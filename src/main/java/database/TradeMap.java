@@ -43,6 +43,11 @@ public class TradeMap extends DbMap<Tuple2<BigInteger, BigInteger>, Trade> {
 	public TradeMap(TradeMap parent) {
 		super(parent);
 
+		this.pairKeyMap = EmptyIndexes.map();
+		this.wantKeyMap = EmptyIndexes.map();
+		this.haveKeyMap = EmptyIndexes.map();
+		this.reverseKeyMap = EmptyIndexes.map();
+
 	}
 
 	protected void createIndexes(DB database) {
@@ -62,6 +67,11 @@ public class TradeMap extends DbMap<Tuple2<BigInteger, BigInteger>, Trade> {
 		return this.openMap(database);
 	}
 
+	@Override
+	protected Map<Tuple2<BigInteger, BigInteger>, Trade> getEmptyOverlay() {
+		return EmptyIndexes.map();
+	}
+
 	@SuppressWarnings("unchecked")
 	private Map<Tuple2<BigInteger, BigInteger>, Trade> openMap(final DB database) {
 		// OPEN MAP
@@ -192,8 +202,10 @@ public class TradeMap extends DbMap<Tuple2<BigInteger, BigInteger>, Trade> {
 			combinedKeys.addAll(forkKeys);
 
 			// DELETE DELETED
-			for (Tuple2 deleted : this.deleted) {
-				combinedKeys.remove(deleted);
+			if (this.deleted != null) {
+				for (Tuple2 deleted : this.deleted) {
+					combinedKeys.remove(deleted);
+				}
 			}
 
 			// CONVERT SET BACK TO COLLECTION
@@ -299,6 +311,50 @@ public class TradeMap extends DbMap<Tuple2<BigInteger, BigInteger>, Trade> {
 		return trades;
 	}
 
+	/**
+	 * Returns trades of pair <code>have</code>/<code>want</code> (in either order) with timestamps from <code>from</code> to
+	 * <code>to</code> inclusive. Forks' own trades aren't indexed so are checked one by one against <code>db</code>.
+	 */
+	@SuppressWarnings("unchecked")
+	public Collection<Trade> getTrades(long have, long want, long from, long to, QoraDb db) {
+		Map<Tuple2<BigInteger, BigInteger>, Trade> trades = new TreeMap<Tuple2<BigInteger, BigInteger>, Trade>();
+
+		if (this.parent == null) {
+			String pairKey = CandleMap.getPairKey(have, want);
+
+			Collection<Tuple2<BigInteger, BigInteger>> keys = ((BTreeMap<Tuple3, Tuple2<BigInteger, BigInteger>>) this.pairKeyMap)
+					.subMap(Fun.t3(pairKey, Long.MAX_VALUE - to, null), Fun.t3(pairKey, Long.MAX_VALUE - from, Fun.HI())).values();
+
+			for (Tuple2<BigInteger, BigInteger> key : keys) {
+				trades.put(key, this.get(key));
+			}
+
+			return trades.values();
+		}
+
+		for (Trade trade : ((TradeMap) this.parent).getTrades(have, want, from, to, db)) {
+			Tuple2<BigInteger, BigInteger> key = new Tuple2<BigInteger, BigInteger>(trade.getInitiator(), trade.getTarget());
+
+			if (!this.deletedContains(key)) {
+				trades.put(key, trade);
+			}
+		}
+
+		for (Map.Entry<Tuple2<BigInteger, BigInteger>, Trade> entry : this.map.entrySet()) {
+			Trade trade = entry.getValue();
+
+			if (trade.getTimestamp() >= from && trade.getTimestamp() <= to) {
+				Order order = trade.getInitiatorOrder(db);
+
+				if ((order.getHave() == have && order.getWant() == want) || (order.getHave() == want && order.getWant() == have)) {
+					trades.put(entry.getKey(), trade);
+				}
+			}
+		}
+
+		return trades.values();
+	}
+
 	public void delete(Trade trade) {
 		this.delete(new Tuple2<BigInteger, BigInteger>(trade.getInitiator(), trade.getTarget()));
 	}
@@ -0,0 +1,113 @@
+package database;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.mapdb.DB;
+import org.mapdb.Fun;
+import org.mapdb.Fun.Tuple2;
+
+import qora.account.Account;
+import qora.transaction.Transaction;
+
+/**
+ * Number of confirmed transactions per address, keyed by address and type.
+ * <p>
+ * Type 0 counts transactions the address sent or received, like {@link TransactionFinalMap}'s sender and recipient
+ * indexes. Other types count transactions of that type the address is involved in, like its address/type index. Kept up
+ * to date as transactions are stored, so counts don't need an address's whole history read.
+ */
+public final class TransactionCountMap extends DbMap<Tuple2<String, Integer>, Integer> {
+
+	private final Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
+
+	public TransactionCountMap(final QoraDb databaseSet, final DB database) {
+		super(databaseSet, database);
+	}
+
+	public TransactionCountMap(final TransactionCountMap parent) {
+		super(parent);
+	}
+
+	protected void createIndexes(final DB database) {
+	}
+
+	@Override
+	protected Map<Tuple2<String, Integer>, Integer> getMap(final DB database) {
+		return database.createTreeMap("transaction_counts").comparator(Fun.COMPARATOR).makeOrGet();
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected Map<Tuple2<String, Integer>, Integer> getMemoryMap() {
+		return new TreeMap<Tuple2<String, Integer>, Integer>(Fun.COMPARATOR);
+	}
+
+	@Override
+	protected Integer getDefaultValue() {
+		return null;
+	}
+
+	@Override
+	protected Map<Integer, Integer> getObservableData() {
+		return this.observableData;
+	}
+
+	/**
+	 * Returns number of transactions of <code>type</code> involving <code>address</code>, or all it sent or received for
+	 * type 0.
+	 */
+	public int getCount(final String address, final int type) {
+		final Integer count = this.get(Fun.t2(address, type));
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Accounts for confirmed transaction <code>old</code> being replaced by <code>transaction</code>. Either may be null, for
+	 * transactions being added or removed.
+	 */
+	void updateTransaction(final Transaction old, final Transaction transaction) {
+		if (old != null) {
+			this.update(old, -1);
+		}
+
+		if (transaction != null) {
+			this.update(transaction, 1);
+		}
+	}
+
+	private void update(final Transaction transaction, final int change) {
+		final Set<String> addresses = new HashSet<String>();
+		addresses.add(TransactionFinalMap.getSenderKey(transaction));
+		for (Account account : transaction.getRecipientAccounts()) {
+			addresses.add(account.getAddress());
+		}
+
+		for (String address : addresses) {
+			this.update(Fun.t2(address, 0), change);
+		}
+
+		final Set<String> involved = new HashSet<String>();
+		for (Account account : transaction.getInvolvedAccounts()) {
+			involved.add(account.getAddress());
+		}
+
+		for (String address : involved) {
+			this.update(Fun.t2(address, transaction.getType()), change);
+		}
+	}
+
+	private void update(final Tuple2<String, Integer> key, final int change) {
+		final Integer old = this.get(key);
+		final int count = (old == null ? 0 : old) + change;
+
+		if (count == 0) {
+			this.delete(key);
+		} else {
+			this.set(key, count);
+		}
+	}
+}
@@ -2,7 +2,10 @@ package database;
 
 import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -20,11 +23,17 @@ import org.mapdb.Fun;
 import org.mapdb.Fun.Tuple2;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Iterables;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.primitives.Bytes;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 
 import database.serializer.TransactionSerializer;
 import qora.account.Account;
+import qora.crypto.Base58;
 import qora.transaction.ArbitraryTransaction;
 import qora.transaction.GenesisTransaction;
 import qora.transaction.Transaction;
@@ -40,13 +49,30 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 	private NavigableSet recipientKey;
 	@SuppressWarnings("rawtypes")
 	private NavigableSet typeKey;
+	@SuppressWarnings("rawtypes")
+	private NavigableSet signatureKey;
+
+	private final TransactionCountMap transactionCountMap;
+	private final BalanceHistoryMap balanceHistoryMap;
 
 	public TransactionFinalMap(final QoraDb databaseSet, final DB database) {
 		super(databaseSet, database);
+
+		this.transactionCountMap = databaseSet.getTransactionCountMap();
+		this.balanceHistoryMap = databaseSet.getBalanceHistoryMap();
 	}
 
-	public TransactionFinalMap(final TransactionFinalMap parent) {
+	public TransactionFinalMap(final TransactionCountMap transactionCountMap, final BalanceHistoryMap balanceHistoryMap,
+			final TransactionFinalMap parent) {
 		super(parent);
+
+		this.transactionCountMap = transactionCountMap;
+		this.balanceHistoryMap = balanceHistoryMap;
+
+		this.senderKey = EmptyIndexes.set();
+		this.recipientKey = EmptyIndexes.set();
+		this.typeKey = EmptyIndexes.set();
+		this.signatureKey = EmptyIndexes.set();
 	}
 
 	protected void createIndexes(final DB database) {
@@ -62,10 +88,7 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 		Bind.secondaryKey(map, this.senderKey, new Fun.Function2<String, Tuple2<Integer, Integer>, Transaction>() {
 			@Override
 			public String run(Tuple2<Integer, Integer> key, Transaction val) {
-				if (val instanceof GenesisTransaction) {
-					return "genesis";
-				}
-				return val.getCreator().getAddress();
+				return getSenderKey(val);
 			}
 		});
 
@@ -104,6 +127,15 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 						return ret;
 					}
 				});
+
+		this.signatureKey = database.createTreeSet("signature_txs").comparator(Fun.COMPARATOR).makeOrGet();
+
+		Bind.secondaryKey(map, this.signatureKey, new Fun.Function2<Long, Tuple2<Integer, Integer>, Transaction>() {
+			@Override
+			public Long run(final Tuple2<Integer, Integer> key, final Transaction val) {
+				return getSignatureKey(val.getSignature());
+			}
+		});
 		return map;
 	}
 
@@ -128,12 +160,48 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 		return this.observableData;
 	}
 
+	/**
+	 * Returns key of <code>transaction</code> in the sender index: its creator's address, or "genesis".
+	 */
+	static String getSenderKey(final Transaction transaction) {
+		if (transaction instanceof GenesisTransaction) {
+			return "genesis";
+		}
+
+		return transaction.getCreator().getAddress();
+	}
+
+	/**
+	 * Stores <code>transaction</code>, keeping address counts and balance history up to date.
+	 */
+	@Override
+	public boolean set(final Tuple2<Integer, Integer> key, final Transaction transaction) {
+		final Transaction old = this.get(key);
+		this.transactionCountMap.updateTransaction(old, transaction);
+		this.balanceHistoryMap.updateTransaction(key.a, old, transaction);
+
+		return super.set(key, transaction);
+	}
+
+	/**
+	 * Removes transaction with <code>key</code>, keeping address counts and balance history up to date.
+	 */
+	@Override
+	public void delete(final Tuple2<Integer, Integer> key) {
+		final Transaction old = this.get(key);
+
+		if (old != null) {
+			this.transactionCountMap.updateTransaction(old, null);
+			this.balanceHistoryMap.updateTransaction(key.a, old, null);
+		}
+
+		super.delete(key);
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public void delete(final Integer height) {
-		final BTreeMap map = (BTreeMap) this.map;
-		// Get all transactions belonging to address
-		Collection<Tuple2> keys = ((BTreeMap<Tuple2, Transaction>) map)
-				.subMap(Fun.t2(height, null), Fun.t2(height, Fun.HI())).keySet();
+		// Get all transactions at height, including parent's on a fork
+		Collection<Tuple2<Integer, Integer>> keys = this.getRange(new Tuple2(height, null), new Tuple2(height, Fun.HI())).keySet();
 
 		// Delete transactions
 		for (final Tuple2<Integer, Integer> key : keys) {
@@ -159,6 +227,58 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 		return tx;
 	}
 
+	/**
+	 * Returns confirmed transaction with <code>signature</code>, or null if there's none.
+	 */
+	public Transaction getTransaction(final byte[] signature) {
+		final Tuple2<Tuple2<Integer, Integer>, Transaction> found = this.findTransaction(signature);
+		return found == null ? null : found.b;
+	}
+
+	/**
+	 * Returns height and sequence in its block of confirmed transaction with <code>signature</code>, or null if there's none.
+	 */
+	public Tuple2<Integer, Integer> getLocation(final byte[] signature) {
+		final Tuple2<Tuple2<Integer, Integer>, Transaction> found = this.findTransaction(signature);
+		return found == null ? null : found.a;
+	}
+
+	/**
+	 * Returns height and sequence of confirmed transaction with <code>signature</code> along with the transaction, or null
+	 * if there's none. Looks the signature up by its first bytes, then checks the whole of it against the transactions
+	 * found, so only those are read.
+	 */
+	@SuppressWarnings("unchecked")
+	public Tuple2<Tuple2<Integer, Integer>, Transaction> findTransaction(final byte[] signature) {
+		if (signature == null || signature.length < Longs.BYTES) {
+			return null;
+		}
+
+		for (Tuple2<Integer, Integer> key : (Iterable<Tuple2<Integer, Integer>>) Fun.filter(this.signatureKey,
+				getSignatureKey(signature))) {
+			final Transaction transaction = this.map.get(key);
+
+			if (transaction != null && Arrays.equals(transaction.getSignature(), signature)) {
+				return new Tuple2<Tuple2<Integer, Integer>, Transaction>(key, transaction);
+			}
+		}
+
+		if (this.parent != null) {
+			final Tuple2<Tuple2<Integer, Integer>, Transaction> found = ((TransactionFinalMap) this.parent).findTransaction(signature);
+
+			// Parent's transaction could have been replaced or removed by this fork
+			if (found != null && !this.map.containsKey(found.a) && !this.deletedContains(found.a)) {
+				return found;
+			}
+		}
+
+		return null;
+	}
+
+	private static Long getSignatureKey(final byte[] signature) {
+		return Longs.fromByteArray(signature);
+	}
+
 	public List<Transaction> getTransactionsByRecipient(final String address) {
 		return getTransactionsByRecipient(address, 0);
 	}
@@ -209,50 +329,29 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 		return txs;
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Set<BlExpUnit> getBlExpTransactionsByAddress(final String address) {
-		final Iterable senderKeys = Fun.filter(this.senderKey, address);
-		final Iterable recipientKeys = Fun.filter(this.recipientKey, address);
-
-		final Set<Tuple2<Integer, Integer>> treeKeys = new TreeSet<>();
-		treeKeys.addAll(Sets.newTreeSet(senderKeys));
-		treeKeys.addAll(Sets.newTreeSet(recipientKeys));
+		final Iterator<Tuple2<Integer, Integer>> keys = this.getAddressKeys(address, 0, 0, 0, null, false);
 
-		final Iterator iter = treeKeys.iterator();
 		final Set<BlExpUnit> txs = new TreeSet<>();
-		while (iter.hasNext()) {
-			final Tuple2<Integer, Integer> request = (Tuple2<Integer, Integer>) iter.next();
-			txs.add(new BlExpUnit(request.a, request.b, this.map.get(request)));
+		while (keys.hasNext()) {
+			final Tuple2<Integer, Integer> key = keys.next();
+			txs.add(new BlExpUnit(key.a, key.b, this.map.get(key)));
 		}
 		return txs;
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public List<Transaction> getTransactionsByAddress(final String address) {
-		final Iterable senderKeys = Fun.filter(this.senderKey, address);
-		final Iterable recipientKeys = Fun.filter(this.recipientKey, address);
+		final Iterator<Tuple2<Integer, Integer>> keys = this.getAddressKeys(address, 0, 0, 0, null, false);
 
-		final Set<Tuple2<Integer, Integer>> treeKeys = new TreeSet<>();
-		treeKeys.addAll(Sets.newTreeSet(senderKeys));
-		treeKeys.addAll(Sets.newTreeSet(recipientKeys));
-
-		final Iterator iter = treeKeys.iterator();
 		final List<Transaction> txs = new ArrayList<>();
-		while (iter.hasNext()) {
-			txs.add(this.map.get(iter.next()));
+		while (keys.hasNext()) {
+			txs.add(this.map.get(keys.next()));
 		}
 		return txs;
 	}
 
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public int getTransactionsByAddressCount(final String address) {
-		final Iterable senderKeys = Fun.filter(this.senderKey, address);
-		final Iterable recipientKeys = Fun.filter(this.recipientKey, address);
-
-		final Set<Tuple2<Integer, Integer>> treeKeys = new TreeSet<>();
-		treeKeys.addAll(Sets.newTreeSet(senderKeys));
-		treeKeys.addAll(Sets.newTreeSet(recipientKeys));
-		return treeKeys.size();
+		return this.transactionCountMap.getCount(address, 0);
 	}
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
@@ -280,99 +379,254 @@ public final class TransactionFinalMap extends DbMap<Tuple2<Integer, Integer>, T
 		return this.parent;
 	}
 
-	@SuppressWarnings("rawtypes")
 	public List<Transaction> findTransactions(final String address, final String sender, final String recipient, final int minHeight,
 			final int maxHeight, final int type, final int service, final boolean desc, final int offset, final int limit) {
-		final Iterable keys = findTransactionsKeys(address, sender, recipient, minHeight, maxHeight, type, service, desc,
-				offset, limit);
-		final Iterator iter = keys.iterator();
+		return this.findTransactions(address, sender, recipient, minHeight, maxHeight, type, service, null, desc, offset, limit);
+	}
+
+	/**
+	 * Returns transactions matching query, in order of height and sequence. Only those after <code>after</code> in that
+	 * order are returned, if given, so a query can be resumed from the last key of the previous page, see
+	 * {@link #toCursor(Tuple2)}.
+	 */
+	public List<Transaction> findTransactions(final String address, final String sender, final String recipient, final int minHeight,
+			final int maxHeight, final int type, final int service, final Tuple2<Integer, Integer> after, final boolean desc,
+			final int offset, final int limit) {
 		final List<Transaction> txs = new ArrayList<>();
-		while (iter.hasNext()) {
-			txs.add(this.map.get(iter.next()));
+		for (Tuple2<Integer, Integer> key : this.findTransactionsKeys(address, sender, recipient, minHeight, maxHeight, type,
+				service, after, desc, offset, limit)) {
+			txs.add(this.map.get(key));
 		}
 		return txs;
 	}
 
-	@SuppressWarnings("rawtypes")
+	/**
+	 * Returns number of transactions matching query, after skipping <code>offset</code> and up to <code>limit</code>.
+	 * Counts for an address alone come straight from {@link TransactionCountMap}.
+	 */
 	public int findTransactionsCount(final String address, final String sender, final String recipient, final int minHeight,
 			final int maxHeight, final int type, final int service, final boolean desc, final int offset, final int limit) {
-		final Iterable keys = findTransactionsKeys(address, sender, recipient, minHeight, maxHeight, type, service, desc,
-				offset, limit);
-		return Iterables.size(keys);
+		if (address != null && minHeight == 0 && maxHeight == 0 && !isServiceQuery(type, service)) {
+			final int count = Math.max(0, this.transactionCountMap.getCount(address, Math.max(type, 0)) - offset);
+			return limit == 0 ? count : Math.min(count, limit);
+		}
+
+		return Iterables.size(this.findTransactionsKeys(address, sender, recipient, minHeight, maxHeight, type, service, null,
+				desc, offset, limit));
 	}
 
-	@SuppressWarnings({ "rawtypes", "unchecked" })
-	public Iterable findTransactionsKeys(String address, String sender, String recipient, final int minHeight,
-			final int maxHeight, int type, final int service, boolean desc, int offset, int limit) {
-		Iterable senderKeys = null;
-		Iterable recipientKeys = null;
-		Set<Tuple2<Integer, Integer>> treeKeys = new TreeSet<>();
+	public Iterable<Tuple2<Integer, Integer>> findTransactionsKeys(final String address, final String sender,
+			final String recipient, final int minHeight, final int maxHeight, final int type, final int service,
+			final boolean desc, final int offset, final int limit) {
+		return this.findTransactionsKeys(address, sender, recipient, minHeight, maxHeight, type, service, null, desc, offset,
+				limit);
+	}
 
-		if (address != null) {
-			sender = address;
-			recipient = address;
-		}
+	/**
+	 * Returns keys of transactions matching query. Keys are read from the indexes lazily as they're iterated, merged in
+	 * order, so a page costs about as much as its size plus <code>offset</code>, however many transactions match.
+	 */
+	public Iterable<Tuple2<Integer, Integer>> findTransactionsKeys(final String address, final String sender,
+			final String recipient, final int minHeight, final int maxHeight, final int type, final int service,
+			final Tuple2<Integer, Integer> after, final boolean desc, final int offset, final int limit) {
+		return new Iterable<Tuple2<Integer, Integer>>() {
+			@Override
+			public Iterator<Tuple2<Integer, Integer>> iterator() {
+				Iterator<Tuple2<Integer, Integer>> keys = findTransactionsKeys(address, sender, recipient, minHeight, maxHeight,
+						type, after, desc);
+
+				if (isServiceQuery(type, service)) {
+					keys = Iterators.filter(keys, new Predicate<Tuple2<Integer, Integer>>() {
+						@Override
+						public boolean apply(Tuple2<Integer, Integer> key) {
+							ArbitraryTransaction tx = (ArbitraryTransaction) map.get(key);
+							return tx.getService() == service;
+						}
+					});
+				}
 
-		if (sender == null && recipient == null) {
-			return treeKeys;
+				Iterators.advance(keys, offset);
+				return limit == 0 ? keys : Iterators.limit(keys, limit);
+			}
+		};
+	}
+
+	private Iterator<Tuple2<Integer, Integer>> findTransactionsKeys(final String address, String sender, String recipient,
+			final int minHeight, final int maxHeight, final int type, final Tuple2<Integer, Integer> after, final boolean desc) {
+		if (address != null) {
+			return this.getAddressKeys(address, type, minHeight, maxHeight, after, desc);
 		}
 
+		Iterator<Tuple2<Integer, Integer>> senderKeys = null;
 		if (sender != null) {
-			if (type > 0) {
-				senderKeys = Fun.filter(this.typeKey, new Tuple2<String, Integer>(sender, type));
-			} else {
-				senderKeys = Fun.filter(this.senderKey, sender);
-			}
+			senderKeys = type > 0 ? this.getKeys(this.typeKey, Fun.t2(sender, type), minHeight, maxHeight, after, desc)
+					: this.getKeys(this.senderKey, sender, minHeight, maxHeight, after, desc);
 		}
 
+		Iterator<Tuple2<Integer, Integer>> recipientKeys = null;
 		if (recipient != null) {
-			if (type > 0) {
-				recipientKeys = Fun.filter(this.typeKey, new Tuple2<String, Integer>(recipient, type));
-			} else {
-				recipientKeys = Fun.filter(this.recipientKey, recipient);
+			recipientKeys = type > 0 ? this.getKeys(this.typeKey, Fun.t2(recipient, type), minHeight, maxHeight, after, desc)
+					: this.getKeys(this.recipientKey, recipient, minHeight, maxHeight, after, desc);
+		}
+
+		if (senderKeys != null && recipientKeys != null) {
+			return new Intersection(senderKeys, recipientKeys, desc);
+		} else if (senderKeys != null) {
+			return senderKeys;
+		} else if (recipientKeys != null) {
+			return recipientKeys;
+		}
+
+		return Collections.emptyIterator();
+	}
+
+	/**
+	 * Keys of transactions <code>address</code> sent or received, or was involved in if <code>type</code> is given.
+	 */
+	private Iterator<Tuple2<Integer, Integer>> getAddressKeys(final String address, final int type, final int minHeight,
+			final int maxHeight, final Tuple2<Integer, Integer> after, final boolean desc) {
+		if (type > 0) {
+			return this.getKeys(this.typeKey, Fun.t2(address, type), minHeight, maxHeight, after, desc);
+		}
+
+		return new Union(this.getKeys(this.senderKey, address, minHeight, maxHeight, after, desc),
+				this.getKeys(this.recipientKey, address, minHeight, maxHeight, after, desc), desc);
+	}
+
+	/**
+	 * Keys of transactions in <code>index</code> under <code>secondary</code>, within heights (0 for no bound) and after
+	 * <code>after</code>.
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Iterator<Tuple2<Integer, Integer>> getKeys(final NavigableSet index, final Object secondary, final int minHeight,
+			final int maxHeight, final Tuple2<Integer, Integer> after, final boolean desc) {
+		Object from = minHeight == 0 ? null : new Tuple2(minHeight, null);
+		boolean fromInclusive = true;
+		Object to = maxHeight == 0 ? Fun.HI() : new Tuple2(maxHeight, Fun.HI());
+		boolean toInclusive = true;
+
+		if (after != null) {
+			if (!desc && (from == null || Fun.COMPARATOR.compare(after, from) >= 0)) {
+				from = after;
+				fromInclusive = false;
+			} else if (desc && Fun.COMPARATOR.compare(after, to) <= 0) {
+				to = after;
+				toInclusive = false;
 			}
 		}
 
-		if (address != null) {
-			treeKeys.addAll(Sets.newTreeSet(senderKeys));
-			treeKeys.addAll(Sets.newTreeSet(recipientKeys));
-		} else if (sender != null && recipient != null) {
-			treeKeys.addAll(Sets.newTreeSet(senderKeys));
-			treeKeys.retainAll(Sets.newTreeSet(recipientKeys));
-		} else if (sender != null) {
-			treeKeys.addAll(Sets.newTreeSet(senderKeys));
-		} else if (recipient != null) {
-			treeKeys.addAll(Sets.newTreeSet(recipientKeys));
+		if (from != null && Fun.COMPARATOR.compare(from, to) > 0) {
+			return Collections.emptyIterator();
 		}
 
-		if (minHeight != 0 || maxHeight != 0) {
-			treeKeys = Sets.filter(treeKeys, new Predicate<Tuple2<Integer, Integer>>() {
-				@Override
-				public boolean apply(Tuple2<Integer, Integer> key) {
-					return (minHeight == 0 || key.a >= minHeight) && (maxHeight == 0 || key.a <= maxHeight);
-				}
-			});
+		final NavigableSet<Tuple2<Object, Tuple2<Integer, Integer>>> range = index.subSet(new Tuple2(secondary, from),
+				fromInclusive, new Tuple2(secondary, to), toInclusive);
+
+		return Iterators.transform(desc ? range.descendingIterator() : range.iterator(), entry -> entry.b);
+	}
+
+	private static boolean isServiceQuery(final int type, final int service) {
+		return type == Transaction.ARBITRARY_TRANSACTION && service > -1;
+	}
+
+	/**
+	 * Returns opaque cursor resuming a query after <code>key</code>.
+	 */
+	public static String toCursor(final Tuple2<Integer, Integer> key) {
+		return Base58.encode(Bytes.concat(Ints.toByteArray(key.a), Ints.toByteArray(key.b)));
+	}
+
+	/**
+	 * Returns key <code>cursor</code> resumes after.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if <code>cursor</code> isn't one returned by {@link #toCursor(Tuple2)}
+	 */
+	public static Tuple2<Integer, Integer> fromCursor(final String cursor) {
+		final byte[] bytes = Base58.decode(cursor);
+		if (bytes == null || bytes.length != 8) {
+			throw new IllegalArgumentException("Invalid cursor");
 		}
 
-		if (type == Transaction.ARBITRARY_TRANSACTION && service > -1) {
-			treeKeys = Sets.filter(treeKeys, new Predicate<Tuple2<Integer, Integer>>() {
-				@Override
-				public boolean apply(Tuple2<Integer, Integer> key) {
-					ArbitraryTransaction tx = (ArbitraryTransaction) map.get(key);
-					return tx.getService() == service;
-				}
-			});
+		return new Tuple2<Integer, Integer>(Ints.fromByteArray(bytes), Ints.fromBytes(bytes[4], bytes[5], bytes[6], bytes[7]));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Comparator<Tuple2<Integer, Integer>> getOrder(final boolean desc) {
+		return desc ? Collections.reverseOrder(Fun.COMPARATOR) : Fun.COMPARATOR;
+	}
+
+	/**
+	 * Keys in either of two ordered iterators, in the same order, without duplicates.
+	 */
+	private static final class Union extends AbstractIterator<Tuple2<Integer, Integer>> {
+
+		private final PeekingIterator<Tuple2<Integer, Integer>> first;
+		private final PeekingIterator<Tuple2<Integer, Integer>> second;
+		private final Comparator<Tuple2<Integer, Integer>> order;
+
+		Union(final Iterator<Tuple2<Integer, Integer>> first, final Iterator<Tuple2<Integer, Integer>> second, final boolean desc) {
+			this.first = Iterators.peekingIterator(first);
+			this.second = Iterators.peekingIterator(second);
+			this.order = getOrder(desc);
+		}
+
+		@Override
+		protected Tuple2<Integer, Integer> computeNext() {
+			if (!this.first.hasNext()) {
+				return this.second.hasNext() ? this.second.next() : this.endOfData();
+			}
+
+			if (!this.second.hasNext()) {
+				return this.first.next();
+			}
+
+			final int compare = this.order.compare(this.first.peek(), this.second.peek());
+			if (compare > 0) {
+				return this.second.next();
+			}
+
+			if (compare == 0) {
+				this.second.next();
+			}
+
+			return this.first.next();
 		}
+	}
+
+	/**
+	 * Keys in both of two ordered iterators, in the same order.
+	 */
+	private static final class Intersection extends AbstractIterator<Tuple2<Integer, Integer>> {
 
-		Iterable keys;
-		if (desc) {
-			keys = ((TreeSet) treeKeys).descendingSet();
-		} else {
-			keys = treeKeys;
+		private final PeekingIterator<Tuple2<Integer, Integer>> first;
+		private final PeekingIterator<Tuple2<Integer, Integer>> second;
+		private final Comparator<Tuple2<Integer, Integer>> order;
+
+		Intersection(final Iterator<Tuple2<Integer, Integer>> first, final Iterator<Tuple2<Integer, Integer>> second,
+				final boolean desc) {
+			this.first = Iterators.peekingIterator(first);
+			this.second = Iterators.peekingIterator(second);
+			this.order = getOrder(desc);
 		}
 
-		limit = (limit == 0) ? Iterables.size(keys) : limit;
-		return Iterables.limit(Iterables.skip(keys, offset), limit);
+		@Override
+		protected Tuple2<Integer, Integer> computeNext() {
+			while (this.first.hasNext() && this.second.hasNext()) {
+				final int compare = this.order.compare(this.first.peek(), this.second.peek());
+
+				if (compare < 0) {
+					this.first.next();
+				} else if (compare > 0) {
+					this.second.next();
+				} else {
+					this.second.next();
+					return this.first.next();
+				}
+			}
+
+			return this.endOfData();
+		}
 	}
 
 }
@@ -1,6 +1,8 @@
 package database;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,13 +22,23 @@ import com.google.common.primitives.UnsignedBytes;
 import database.serializer.TransactionSerializer;
 import ntp.NTP;
 import qora.transaction.Transaction;
+import settings.Settings;
 import utils.ObserverMessage;
 import utils.ReverseComparator;
+import utils.TransactionFeeComparator;
+import utils.TransactionTimestampComparator;
 
+/**
+ * Unconfirmed transactions.
+ * <p>
+ * The main map serves reads from an in-memory {@link Mempool} and only uses MapDB for persistence. Forks don't have a
+ * mempool and fall back to their overlay and parent.
+ */
 public class TransactionMap extends DbMap<byte[], Transaction> implements Observer {
 	public static final int TIMESTAMP_INDEX = 1;
 
 	private Map<Integer, Integer> observableData = new HashMap<Integer, Integer>();
+	private Mempool mempool;
 
 	public TransactionMap(QoraDb databaseSet, DB database) {
 		super(databaseSet, database);
@@ -34,6 +46,9 @@ public class TransactionMap extends DbMap<byte[], Transaction> implements Observ
 		this.observableData.put(DbMap.NOTIFY_ADD, ObserverMessage.ADD_TRANSACTION_TYPE);
 		this.observableData.put(DbMap.NOTIFY_REMOVE, ObserverMessage.REMOVE_TRANSACTION_TYPE);
 		this.observableData.put(DbMap.NOTIFY_LIST, ObserverMessage.LIST_TRANSACTION_TYPE);
+
+		this.mempool = new Mempool(Settings.getInstance().getMaxUnconfirmedTransactions());
+		this.reload();
 	}
 
 	public TransactionMap(TransactionMap parent) {
@@ -90,20 +105,96 @@ public class TransactionMap extends DbMap<byte[], Transaction> implements Observ
 
 		// ON NEW BLOCK
 		if (message.getType() == ObserverMessage.ADD_BLOCK_TYPE) {
-			// CLEAN UP
-			for (Transaction transaction : this.getValues()) {
-				// CHECK IF DEADLINE PASSED
-				if (transaction.getDeadline() < NTP.getTime()) {
-					this.delete(transaction.getSignature());
-
-					// NOTIFY
-					/*
-					 * this.setChanged(); this.notifyObservers(new
-					 * ObserverMessage(ObserverMessage.REMOVE_TRANSACTION_TYPE, transaction));
-					 */
-				}
+			// CLEAN UP TRANSACTIONS WHOSE DEADLINE HAS PASSED
+			for (Transaction transaction : this.getExpiredTransactions(NTP.getTime())) {
+				this.delete(transaction.getSignature());
+			}
+		}
+	}
+
+	/**
+	 * Rebuild mempool from persisted transactions, e.g. after rolling back uncommitted changes.
+	 */
+	public void reload() {
+		if (this.mempool == null) {
+			return;
+		}
+
+		this.mempool.clear();
+
+		for (Transaction transaction : this.map.values()) {
+			Transaction evicted = this.mempool.add(transaction);
+
+			if (evicted != null) {
+				super.delete(evicted.getSignature());
+			}
+		}
+	}
+
+	@Override
+	public Transaction get(byte[] signature) {
+		if (this.mempool == null || signature == null) {
+			return super.get(signature);
+		}
+
+		return this.mempool.get(signature);
+	}
+
+	@Override
+	public boolean contains(byte[] signature) {
+		if (this.mempool == null || signature == null) {
+			return super.contains(signature);
+		}
+
+		return this.mempool.contains(signature);
+	}
+
+	@Override
+	public boolean set(byte[] signature, Transaction transaction) {
+		if (this.mempool != null) {
+			Transaction evicted = this.mempool.add(transaction);
+
+			// Mempool full and this transaction pays least
+			if (evicted == transaction) {
+				return false;
+			}
+
+			if (evicted != null) {
+				super.delete(evicted.getSignature());
 			}
 		}
+
+		return super.set(signature, transaction);
+	}
+
+	@Override
+	public void delete(byte[] signature) {
+		if (this.mempool != null) {
+			this.mempool.remove(signature);
+		}
+
+		super.delete(signature);
+	}
+
+	@Override
+	public void reset() {
+		if (this.mempool != null) {
+			this.mempool.clear();
+		}
+
+		super.reset();
+	}
+
+	/**
+	 * @return snapshot of unconfirmed transactions (highest fee-per-byte first for main map)
+	 */
+	@Override
+	public Collection<Transaction> getValues() {
+		if (this.mempool == null) {
+			return super.getValues();
+		}
+
+		return this.mempool.getTransactionsByFee();
 	}
 
 	public void add(Transaction transaction) {
@@ -114,6 +205,66 @@ public class TransactionMap extends DbMap<byte[], Transaction> implements Observ
 		return new ArrayList<Transaction>(this.getValues());
 	}
 
+	/**
+	 * @return unconfirmed transactions, highest fee-per-byte first
+	 */
+	public List<Transaction> getOrderedTransactions() {
+		if (this.mempool != null) {
+			return this.mempool.getTransactionsByFee();
+		}
+
+		// Fork: parent's transactions not deleted or replaced here, plus our own
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		for (Transaction transaction : ((TransactionMap) this.parent).getOrderedTransactions()) {
+			if (!this.deletedContains(transaction.getSignature()) && !this.map.containsKey(transaction.getSignature())) {
+				transactions.add(transaction);
+			}
+		}
+
+		transactions.addAll(this.map.values());
+		Collections.sort(transactions, new TransactionFeeComparator());
+		return transactions;
+	}
+
+	/**
+	 * @param time
+	 * @return unconfirmed transactions whose deadline is before <code>time</code>
+	 */
+	public List<Transaction> getExpiredTransactions(long time) {
+		if (this.mempool != null) {
+			return this.mempool.getExpired(time);
+		}
+
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		for (Transaction transaction : this.getOrderedTransactions()) {
+			if (transaction.getDeadline() < time) {
+				transactions.add(transaction);
+			}
+		}
+
+		return transactions;
+	}
+
+	/**
+	 * @param address
+	 * @return unconfirmed transactions created by <code>address</code>, oldest first
+	 */
+	public List<Transaction> getTransactionsBySender(String address) {
+		if (this.mempool != null) {
+			return this.mempool.getTransactionsBySender(address);
+		}
+
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		for (Transaction transaction : this.getOrderedTransactions()) {
+			if (transaction.getCreator() != null && transaction.getCreator().getAddress().equals(address)) {
+				transactions.add(transaction);
+			}
+		}
+
+		Collections.sort(transactions, new TransactionTimestampComparator());
+		return transactions;
+	}
+
 	public void delete(Transaction transaction) {
 		this.delete(transaction.getSignature());
 	}
@@ -0,0 +1,93 @@
+package database.serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+/**
+ * Stores balances as a packed count of 10<sup>-8</sup> units, usually only a few bytes.
+ * <p>
+ * Balances with fewer decimal places are stored as a count of their own units, so they're read back with the scale they
+ * were stored with. Balances that don't fit in a <code>long</code> of units (e.g. huge indivisible asset quantities) or have more than 8
+ * decimal places are stored in full instead.
+ */
+public final class BalanceSerializer implements Serializer<BigDecimal>, Serializable {
+
+	private static final long serialVersionUID = -2265313190487645839L;
+
+	public static final int SCALE = 8;
+
+	private static final int UNITS = 0;
+	private static final int NEGATIVE_UNITS = 1;
+	private static final int DECIMAL = 2;
+	private static final int SCALED_UNITS = 3;
+	private static final int NEGATIVE_SCALED_UNITS = 4;
+
+	@Override
+	public void serialize(final DataOutput out, final BigDecimal value) throws IOException {
+		if (value.scale() >= 0 && value.scale() <= SCALE) {
+			final BigInteger units = value.unscaledValue();
+
+			if (units.bitLength() < Long.SIZE && units.longValue() != Long.MIN_VALUE) {
+				final long longUnits = units.longValue();
+
+				if (value.scale() == SCALE) {
+					out.writeByte(longUnits >= 0 ? UNITS : NEGATIVE_UNITS);
+				} else {
+					out.writeByte(longUnits >= 0 ? SCALED_UNITS : NEGATIVE_SCALED_UNITS);
+					out.writeByte(value.scale());
+				}
+
+				DataOutput2.packLong(out, Math.abs(longUnits));
+				return;
+			}
+		}
+
+		final byte[] unscaled = value.unscaledValue().toByteArray();
+		out.writeByte(DECIMAL);
+		out.writeInt(value.scale());
+		DataOutput2.packInt(out, unscaled.length);
+		out.write(unscaled);
+	}
+
+	@Override
+	public BigDecimal deserialize(final DataInput in, final int available) throws IOException {
+		switch (in.readByte()) {
+		case UNITS:
+			return BigDecimal.valueOf(DataInput2.unpackLong(in), SCALE);
+
+		case NEGATIVE_UNITS:
+			return BigDecimal.valueOf(-DataInput2.unpackLong(in), SCALE);
+
+		case SCALED_UNITS:
+			final int unitScale = in.readByte();
+			return BigDecimal.valueOf(DataInput2.unpackLong(in), unitScale);
+
+		case NEGATIVE_SCALED_UNITS:
+			final int negativeUnitScale = in.readByte();
+			return BigDecimal.valueOf(-DataInput2.unpackLong(in), negativeUnitScale);
+
+		case DECIMAL:
+			final int scale = in.readInt();
+			final byte[] unscaled = new byte[DataInput2.unpackInt(in)];
+			in.readFully(unscaled);
+			return new BigDecimal(new BigInteger(unscaled), scale);
+
+		default:
+			throw new IOException("Unknown balance encoding");
+		}
+	}
+
+	@Override
+	public int fixedSize() {
+		return -1;
+	}
+
+}
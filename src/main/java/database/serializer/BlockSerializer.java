@@ -19,8 +19,9 @@ public final class BlockSerializer implements Serializer<Block>, Serializable {
 
 	@Override
 	public void serialize(final DataOutput out, final Block value) throws IOException {
-		out.writeInt(value.getDataLength());
-		out.write(value.toBytes());
+		final byte[] bytes = value.toBytes();
+		out.writeInt(bytes.length);
+		out.write(bytes);
 	}
 
 	@Override
@@ -30,7 +31,11 @@ public final class BlockSerializer implements Serializer<Block>, Serializable {
 		in.readFully(bytes);
 		
 		try {
-			return BlockFactory.getInstance().parse(bytes);
+			final Block block = BlockFactory.getInstance().parse(bytes);
+
+			// Keep stored bytes so block can be sent to peers without re-serializing
+			block.setRawBytes(bytes);
+			return block;
 		} catch (Exception e) {
 			LOGGER.error(e.getMessage(), e);
 		}
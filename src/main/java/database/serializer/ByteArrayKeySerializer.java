@@ -0,0 +1,57 @@
+package database.serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.Comparator;
+
+import org.mapdb.BTreeKeySerializer;
+
+import com.google.common.primitives.UnsignedBytes;
+
+/**
+ * BTree node serializer for <code>byte[]</code> keys in unsigned lexicographic order.
+ * <p>
+ * Neighbouring keys in a node usually share a long prefix (e.g. the same address, or the same asset key), so each key
+ * is written as only the bytes that differ from the previous one.
+ */
+public final class ByteArrayKeySerializer extends BTreeKeySerializer<byte[]> implements Serializable {
+
+	private static final long serialVersionUID = 3924051687266291823L;
+
+	@Override
+	public void serialize(final DataOutput out, final int start, final int end, final Object[] keys) throws IOException {
+		byte[] previous = null;
+
+		for (int i = start; i < end; ++i) {
+			final byte[] key = (byte[]) keys[i];
+			leadingValuePackWrite(out, key, previous, 0);
+			previous = key;
+		}
+	}
+
+	@Override
+	public Object[] deserialize(final DataInput in, final int start, final int end, final int size) throws IOException {
+		final Object[] keys = new Object[size];
+		byte[] previous = null;
+
+		for (int i = start; i < end; ++i) {
+			final byte[] key = leadingValuePackRead(in, previous, 0);
+			if (key == null) {
+				continue;
+			}
+
+			keys[i] = key;
+			previous = key;
+		}
+
+		return keys;
+	}
+
+	@Override
+	public Comparator<byte[]> getComparator() {
+		return UnsignedBytes.lexicographicalComparator();
+	}
+
+}
@@ -0,0 +1,72 @@
+package database.serializer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Serializer;
+
+import qora.assets.Candle;
+
+/**
+ * Stores candles field by field, amounts packed like balances (see {@link BalanceSerializer}).
+ * <p>
+ * A candle whose trades moved no base asset has no prices, which is stored as a flag instead of the four prices.
+ */
+public final class CandleSerializer implements Serializer<Candle>, Serializable {
+
+	private static final long serialVersionUID = 4130977420941766384L;
+
+	private static final BalanceSerializer AMOUNT_SERIALIZER = new BalanceSerializer();
+
+	@Override
+	public void serialize(final DataOutput out, final Candle value) throws IOException {
+		out.writeLong(value.getTimestamp());
+		DataOutput2.packLong(out, value.getTrades());
+		AMOUNT_SERIALIZER.serialize(out, value.getVolume());
+		AMOUNT_SERIALIZER.serialize(out, value.getQuoteVolume());
+
+		final boolean hasPrices = value.getOpen() != null;
+		out.writeBoolean(hasPrices);
+
+		if (hasPrices) {
+			AMOUNT_SERIALIZER.serialize(out, value.getOpen());
+			AMOUNT_SERIALIZER.serialize(out, value.getHigh());
+			AMOUNT_SERIALIZER.serialize(out, value.getLow());
+			AMOUNT_SERIALIZER.serialize(out, value.getClose());
+			out.writeLong(value.getOpenTime());
+			out.writeLong(value.getCloseTime());
+		}
+	}
+
+	@Override
+	public Candle deserialize(final DataInput in, final int available) throws IOException {
+		final long timestamp = in.readLong();
+		final long trades = DataInput2.unpackLong(in);
+		final BigDecimal volume = AMOUNT_SERIALIZER.deserialize(in, -1);
+		final BigDecimal quoteVolume = AMOUNT_SERIALIZER.deserialize(in, -1);
+
+		if (!in.readBoolean()) {
+			return new Candle(timestamp, trades, null, null, null, null, volume, quoteVolume, 0L, 0L);
+		}
+
+		final BigDecimal open = AMOUNT_SERIALIZER.deserialize(in, -1);
+		final BigDecimal high = AMOUNT_SERIALIZER.deserialize(in, -1);
+		final BigDecimal low = AMOUNT_SERIALIZER.deserialize(in, -1);
+		final BigDecimal close = AMOUNT_SERIALIZER.deserialize(in, -1);
+		final long openTime = in.readLong();
+		final long closeTime = in.readLong();
+
+		return new Candle(timestamp, trades, open, high, low, close, volume, quoteVolume, openTime, closeTime);
+	}
+
+	@Override
+	public int fixedSize() {
+		return -1;
+	}
+
+}
@@ -4,9 +4,11 @@ import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.mapdb.DataInput2;
 import org.mapdb.Serializer;
 
 import qora.transaction.Transaction;
@@ -20,17 +22,29 @@ public final class TransactionSerializer implements Serializer<Transaction>, Ser
 	@Override
 	public void serialize(final DataOutput out, final Transaction value) throws IOException {
 		out.writeInt(value.getDataLength());
-		out.write(value.toBytes());
+		value.writeTo(out);
 	}
 
 	@Override
 	public Transaction deserialize(DataInput in, int available) throws IOException {
 		final int length = in.readInt();
-		final byte[] bytes = new byte[length];
-		in.readFully(bytes);
+		
+		final ByteBuffer data;
+		if (in instanceof DataInput2) {
+			// Parse straight from store's buffer rather than copying out first
+			final DataInput2 input = (DataInput2) in;
+			data = input.buf.duplicate();
+			data.position(input.pos);
+			data.limit(input.pos + length);
+			input.pos += length;
+		} else {
+			final byte[] bytes = new byte[length];
+			in.readFully(bytes);
+			data = ByteBuffer.wrap(bytes);
+		}
 		
 		try {
-			return TransactionFactory.getInstance().parse(bytes);
+			return TransactionFactory.getInstance().parse(data);
 		} catch (Exception e) {
 			LOGGER.error(e.getMessage(), e);
 		}
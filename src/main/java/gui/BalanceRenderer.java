@@ -8,14 +8,13 @@ import javax.swing.JLabel;
 import javax.swing.JList;
 import javax.swing.ListCellRenderer;
 
-import org.mapdb.Fun.Tuple2;
-
 import controller.Controller;
+import database.BalanceMap;
 import qora.assets.Asset;
 import utils.NumberAsString;
 import utils.Pair;
 
-public class BalanceRenderer implements ListCellRenderer<Pair<Tuple2<String, Long>, BigDecimal>> 
+public class BalanceRenderer implements ListCellRenderer<Pair<byte[], BigDecimal>> 
 {
 	private DefaultListCellRenderer defaultRenderer;
 	
@@ -24,13 +23,13 @@ public class BalanceRenderer implements ListCellRenderer<Pair<Tuple2<String, Lon
 		this.defaultRenderer = new DefaultListCellRenderer();
 	}
 	
-	public Component getListCellRendererComponent(JList<? extends Pair<Tuple2<String, Long>, BigDecimal>> list, Pair<Tuple2<String, Long>, BigDecimal> value, int index, boolean isSelected, boolean cellHasFocus) 
+	public Component getListCellRendererComponent(JList<? extends Pair<byte[], BigDecimal>> list, Pair<byte[], BigDecimal> value, int index, boolean isSelected, boolean cellHasFocus) 
 	{
 		JLabel renderer = (JLabel) this.defaultRenderer.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
 		
 		if(value != null)
 		{
-			Asset asset = Controller.getInstance().getAsset(value.getA().b);		
+			Asset asset = Controller.getInstance().getAsset(BalanceMap.getAssetKey(value.getA()));		
 			renderer.setText("(" + asset.getKey() + ") " + asset.getName() + " - " + NumberAsString.getInstance().numberAsString(value.getB()));
 		}
 		
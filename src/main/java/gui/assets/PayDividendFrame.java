@@ -20,9 +20,8 @@ import java.util.List;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 
-import org.mapdb.Fun.Tuple2;
-
 import controller.Controller;
+import database.BalanceMap;
 import database.SortableList;
 import qora.account.Account;
 import qora.assets.Asset;
@@ -35,7 +34,7 @@ public class PayDividendFrame extends JFrame
 	private Asset asset;
 	private JTextField txtAsset;
 	private JTextField txtAccount;
-	private JComboBox<Pair<Tuple2<String, Long>, BigDecimal>> cbxAssetToPay;
+	private JComboBox<Pair<byte[], BigDecimal>> cbxAssetToPay;
 	private JTextField txtAmount;
 	private JTextField txtHolders;
 	private JButton generateButton;
@@ -125,7 +124,7 @@ public class PayDividendFrame extends JFrame
       		
       	//CBX ASSET TO PAY
       	txtGBC.gridy = 2;
-      	this.cbxAssetToPay = new JComboBox<Pair<Tuple2<String, Long>, BigDecimal>>(new BalancesComboBoxModel(asset.getOwner()));
+      	this.cbxAssetToPay = new JComboBox<Pair<byte[], BigDecimal>>(new BalancesComboBoxModel(asset.getOwner()));
       	this.cbxAssetToPay.setRenderer(new BalanceRenderer());
         this.add(this.cbxAssetToPay, txtGBC);
       	
@@ -186,18 +185,18 @@ public class PayDividendFrame extends JFrame
 			BigDecimal amount = new BigDecimal(txtAmount.getText()).setScale(8);
 			
 			//ASSET TO PAY
-			long assetKey = ((Pair<Tuple2<String, Long>, BigDecimal>) this.cbxAssetToPay.getSelectedItem()).getA().b;
+			long assetKey = BalanceMap.getAssetKey(((Pair<byte[], BigDecimal>) this.cbxAssetToPay.getSelectedItem()).getA());
 			Asset assetToPay = Controller.getInstance().getAsset(assetKey);
 			
 			//BALANCES
-			SortableList<Tuple2<String, Long>, BigDecimal> balances = Controller.getInstance().getBalances(this.asset.getKey());
+			SortableList<byte[], BigDecimal> balances = Controller.getInstance().getBalances(this.asset.getKey());
 			
 			//GET ACCOUNTS AND THEIR TOTAL BALANCE
 			List<Account> accounts = new ArrayList<Account>();
 			BigDecimal total = BigDecimal.ZERO.setScale(8);
 			for(int i=0; i<holders && i<balances.size(); i++)
 			{
-				Account account = new Account(balances.get(i).getA().a);
+				Account account = new Account(BalanceMap.getAddress(balances.get(i).getA()));
 				accounts.add(account);
 				
 				total = total.add(balances.get(i).getB());
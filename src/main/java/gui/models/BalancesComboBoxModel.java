@@ -6,8 +6,6 @@ import java.util.Observer;
 
 import javax.swing.DefaultComboBoxModel;
 
-import org.mapdb.Fun.Tuple2;
-
 import qora.account.Account;
 import utils.ObserverMessage;
 import utils.Pair;
@@ -15,9 +13,9 @@ import controller.Controller;
 import database.SortableList;
 
 @SuppressWarnings("serial")
-public class BalancesComboBoxModel extends DefaultComboBoxModel<Pair<Tuple2<String, Long>, BigDecimal>> implements Observer {
+public class BalancesComboBoxModel extends DefaultComboBoxModel<Pair<byte[], BigDecimal>> implements Observer {
 
-	private SortableList<Tuple2<String, Long>, BigDecimal> balances;
+	private SortableList<byte[], BigDecimal> balances;
 
 	public BalancesComboBoxModel(Account account)
 	{
@@ -6,13 +6,12 @@ import java.util.Observer;
 
 import javax.swing.table.AbstractTableModel;
 
-import org.mapdb.Fun.Tuple2;
-
 import qora.account.Account;
 import utils.NumberAsString;
 import utils.ObserverMessage;
 import utils.Pair;
 import controller.Controller;
+import database.BalanceMap;
 import database.SortableList;
 import lang.Lang;
 
@@ -24,7 +23,7 @@ public class BalancesTableModel extends AbstractTableModel implements Observer
 	
 	private long key;
 	private String[] columnNames = Lang.getInstance().translate(new String[]{"Address", "Balance"});
-	private SortableList<Tuple2<String, Long>, BigDecimal> balances;
+	private SortableList<byte[], BigDecimal> balances;
 	
 	public BalancesTableModel(long key)
 	{
@@ -60,8 +59,8 @@ public class BalancesTableModel extends AbstractTableModel implements Observer
 			return null;
 		}
 		
-		Pair<Tuple2<String, Long>, BigDecimal> aRow = this.balances.get(row);
-		Account account = new Account(aRow.getA().a);
+		Pair<byte[], BigDecimal> aRow = this.balances.get(row);
+		Account account = new Account(BalanceMap.getAddress(aRow.getA()));
 		
 		switch(column)
 		{
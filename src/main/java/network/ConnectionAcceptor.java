@@ -1,9 +1,12 @@
 package network;
 
+import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ServerSocketChannel;
 
 import lang.Lang;
 
@@ -35,7 +38,7 @@ public final class ConnectionAcceptor extends Thread {
 			try {
 				// Create server socket
 				if (this.socket == null) {
-					this.socket = new ServerSocket(Controller.getInstance().getNetworkPort());
+					this.socket = openServerSocket();
 				}
 
 				// Check if we have reached connections limit
@@ -50,7 +53,7 @@ public final class ConnectionAcceptor extends Thread {
 				} else {
 					// Reopen socket
 					if (this.socket.isClosed()) {
-						this.socket = new ServerSocket(Controller.getInstance().getNetworkPort());
+						this.socket = openServerSocket();
 					}
 
 					// Accept connections
@@ -78,7 +81,7 @@ public final class ConnectionAcceptor extends Thread {
 
 					// Create peer
 					LOGGER.debug("Connection accepted from " + connectionAddress);
-					new Peer(callback, connectionSocket);
+					new Peer(callback, connectionSocket.getChannel());
 				}
 			} catch (SocketException e) {
 				if (this.running) {
@@ -92,6 +95,15 @@ public final class ConnectionAcceptor extends Thread {
 		}
 	}
 
+	/**
+	 * Open server socket backed by a channel, so accepted sockets have channels that {@link Transport} can use.
+	 */
+	private static ServerSocket openServerSocket() throws IOException {
+		final ServerSocket serverSocket = ServerSocketChannel.open().socket();
+		serverSocket.bind(new InetSocketAddress(Controller.getInstance().getNetworkPort()));
+		return serverSocket;
+	}
+
 	public void halt() {
 		this.running = false;
 
@@ -216,7 +216,7 @@ public final class Network extends Observable implements ConnectionCallback {
 			final FindMyselfMessage findMyselfMessage = (FindMyselfMessage) message;
 			if (Arrays.equals(findMyselfMessage.getFoundMyselfID(), Controller.getInstance().getFoundMyselfID())) {
 				LOGGER.info(Lang.getInstance().translate("Connected to self. Disconnecting."));
-				message.getSender().close();
+				onDisconnect(message.getSender());
 			}
 			break;
 		// Send to controller
@@ -270,13 +270,21 @@ public final class Network extends Observable implements ConnectionCallback {
 		this.acceptor.halt();
 		this.creator.halt();
 
-		while (this.connectedPeers.size() > 0) {
+		final List<Peer> peers;
+		synchronized (this.connectedPeers) {
+			peers = new ArrayList<Peer>(this.connectedPeers);
+			this.connectedPeers.clear();
+		}
+
+		for (final Peer peer : peers) {
 			try {
-				this.connectedPeers.get(0).close();
+				peer.close();
 			} catch (Exception e) {
 				LOGGER.debug(e.getMessage(), e);
 			}
 		}
+
+		Transport.getInstance().shutdown();
 	}
 
 	public static boolean isHostLocalAddress(InetAddress address) {
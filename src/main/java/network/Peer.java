@@ -1,21 +1,24 @@
 package network;
 
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
-import java.io.EOFException;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-import java.net.SocketException;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -30,21 +33,48 @@ import network.message.MessageFactory;
 import ntp.NTP;
 import settings.Settings;
 
-public final class Peer extends Thread {
+/**
+ * Connection to a remote peer.
+ * <p>
+ * All socket I/O is done by {@link Transport}'s selector thread. Incoming bytes are collected in a read buffer until a
+ * whole message has arrived, which is then parsed on a worker thread. Outgoing messages are queued, up to
+ * <code>MAX_OUTBOUND_BYTES</code>, and written together when the socket is ready.
+ */
+public final class Peer {
 
 	private static final Logger LOGGER = LogManager.getLogger(Peer.class);
 	private static final int INACTIVITY_TIMEOUT = 60 * 60 * 1000; // one hour
-	
+
+	private static final int INITIAL_READ_BUFFER_SIZE = 64 * 1024;
+	/** Largest message data we'll accept - generously bigger than a full block */
+	private static final int MAX_DATA_LENGTH = 4 * 1024 * 1024;
+	/** Most unsent data we'll queue before giving up on peer */
+	private static final long MAX_OUTBOUND_BYTES = 64 * 1024 * 1024;
+	/** Most messages written in one go */
+	private static final int MAX_GATHERED_WRITES = 64;
+
 	private final InetAddress address;
 	private ConnectionCallback callback;
-	private Socket socket;
-	private OutputStream out;
+	private SocketChannel channel;
+	private SelectionKey selectionKey;
 	private Pinger pinger;
 	private boolean white;
 	private long pingCounter;
 	private long connectionTime;
-	
+	private volatile long lastActivity;
+	private volatile boolean closed;
+	private final AtomicBoolean disconnecting = new AtomicBoolean();
+
+	// Only used by selector thread
+	private ByteBuffer readBuffer;
+	private int requiredLength;
+
+	private final Deque<ByteBuffer> outbound = new ArrayDeque<ByteBuffer>();
+	private long outboundBytes;
+	private boolean writeRequested;
+
 	private Map<Integer, BlockingQueue<Message>> messages;
+	private Map<Integer, Consumer<Message>> responseHandlers;
 
 	/**
 	 * Construct simple, non-connected Peer
@@ -56,16 +86,16 @@ public final class Peer extends Thread {
 	}
 
 	/**
-	 * Construct Peer based on existing connected <code>socket</code>
+	 * Construct Peer based on existing connected <code>channel</code>
 	 * <p>
 	 * 
 	 * @param callback
-	 * @param socket
+	 * @param channel
 	 */
-	public Peer(final ConnectionCallback callback, final Socket socket) {
+	public Peer(final ConnectionCallback callback, final SocketChannel channel) {
 		this.callback = callback;
-		this.socket = socket;
-		this.address = socket.getInetAddress();
+		this.channel = channel;
+		this.address = channel.socket().getInetAddress();
 
 		setup(false);
 	}
@@ -73,43 +103,38 @@ public final class Peer extends Thread {
 	/**
 	 * Set up initial peer values
 	 * <p>
-	 * Set up initial peer settings, e.g. socket timeout, ping thread & counter, etc.<br>
+	 * Set up initial peer settings, e.g. non-blocking channel, pinger & counter, etc.<br>
 	 * Will close peer if setup fails. On success, will call <code>ConnectionCallback.onConnect</code>
 	 * 
 	 * @param white
 	 * @see Pinger
+	 * @see Transport#register(Peer)
 	 * @see ConnectionCallback#onConnect(Peer)
 	 */
 	private void setup(final boolean white) {
 		this.messages = Collections.synchronizedMap(new HashMap<Integer, BlockingQueue<Message>>());
+		this.responseHandlers = Collections.synchronizedMap(new HashMap<Integer, Consumer<Message>>());
 		this.white = white;
 		this.pingCounter = 0;
 		this.connectionTime = NTP.getTime();
+		this.lastActivity = System.currentTimeMillis();
+		this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
 
 		try {
 			// Enable TCP no-delay
-			this.socket.setTcpNoDelay(true);
-			
-			// Inactivity timeout - see run()
-			this.socket.setSoTimeout(INACTIVITY_TIMEOUT);
-
-			// Grab reference to output stream
-			this.out = this.socket.getOutputStream();
+			this.channel.socket().setTcpNoDelay(true);
 
-			// Start main communication thread
-			start();
+			// Hand channel over to selector thread
+			this.channel.configureBlocking(false);
+			Transport.getInstance().register(this);
 
-			// Start Pinger (requires main communication thread)
+			// Start Pinger
 			this.pinger = new Pinger(this);
 
 			// Notify peer is connected
 			this.callback.onConnect(this);
-		} catch (SocketException e) {
-			LOGGER.info("Failed to set socket timeout for address " + address + ": " + e.getMessage());
-			// peer no longer usable
-			close();
 		} catch (IOException e) {
-			LOGGER.info("Failed to get output stream for address " + address + ": " + e.getMessage());
+			LOGGER.info("Failed to set up connection to address " + address + ": " + e.getMessage());
 			// peer no longer usable
 			close();
 		}
@@ -137,7 +162,7 @@ public final class Peer extends Thread {
 	 * <p>
 	 * Updates ping counter and peer info in PeerMap database.
 	 * 
-	 * @see Pinger#run()
+	 * @see Pinger
 	 * @see PingMap
 	 */
 	public void onPingSuccess() {
@@ -153,7 +178,7 @@ public final class Peer extends Thread {
 	 * <p>
 	 * Disconnects peer using <code>ConnectionCallback.onDisconnect(Peer)</code> which is typically a <code>Network</code> object.
 	 * 
-	 * @see Pinger#run()
+	 * @see Pinger
 	 * @see ConnectionCallback#onDisconnect(Peer)
 	 * @see Network#onDisconnect(Peer)
 	 */
@@ -202,152 +227,328 @@ public final class Peer extends Thread {
 
 		this.callback = callback;
 
-		// Create new socket for connection to peer
-		this.socket = new Socket();
-
 		// Collate this.address and destination port from controller
 		final InetSocketAddress socketAddress = new InetSocketAddress(address, Controller.getInstance().getNetworkPort());
 
 		// Attempt to connect, with timeout from settings
 		try {
-			this.socket.connect(socketAddress, Settings.getInstance().getConnectionTimeout());
+			this.channel = SocketChannel.open();
+			this.channel.socket().connect(socketAddress, Settings.getInstance().getConnectionTimeout());
 		} catch (Exception e) {
 			LOGGER.info(Lang.getInstance().translate("Failed to connect to ") + address + ": " + e.getMessage());
+			close();
 			return;
 		}
 
 		setup(true);
 	}
 
+	SocketChannel getChannel() {
+		return this.channel;
+	}
+
+	void setSelectionKey(final SelectionKey selectionKey) {
+		this.selectionKey = selectionKey;
+
+		// Peer might have been closed while waiting for registration
+		if (this.closed) {
+			selectionKey.cancel();
+		}
+	}
+
 	/**
-	 * Main communication thread
-	 * <p>
-	 * Waits for incoming messages from peer, unless inactivity timeout reached.
+	 * Called by selector thread when there are bytes to read.
 	 * <p>
-	 * If something is waiting for a message with a specific ID then they are notified so it can be processed. Otherwise the message is added to our queue,
-	 * keyed by message ID.
+	 * Each complete message is passed to a worker thread for parsing and delivery.
 	 * 
-	 * @see #getResponse(Message)
-	 * @see MessageFactory#parse(Peer, DataInputStream)
-	 * @see ConnectionCallback#onMessage(Message)
-	 * @see ConnectionCallback#onDisconnect(Message)
+	 * @see #deliver(byte[])
 	 */
-	public void run() {
-		Thread.currentThread().setName("Peer " + this.address.toString());
+	void onReadable() {
+		final int bytesRead;
+		try {
+			bytesRead = this.channel.read(this.readBuffer);
+		} catch (IOException e) {
+			this.onIOError(e);
+			return;
+		}
 
-		class MessageCallbackRunnable implements Runnable {
-			private ConnectionCallback callback;
-			private Message message;
+		if (bytesRead < 0) {
+			// Peer closed connection
+			this.disconnect();
+			return;
+		}
 
-			public MessageCallbackRunnable(ConnectionCallback callback, Message message) {
-				this.callback = callback;
-				this.message = message;
-			}
+		this.lastActivity = System.currentTimeMillis();
 
-			@Override
-			public void run() {
-				this.callback.onMessage(this.message);
+		this.readBuffer.flip();
+
+		try {
+			int frameLength;
+			while ((frameLength = this.getFrameLength(this.readBuffer)) > 0) {
+				final byte[] frame = new byte[frameLength];
+				this.readBuffer.get(frame);
+
+				Transport.getInstance().dispatch(() -> this.deliver(frame));
 			}
+		} catch (MessageException e) {
+			// Suspect peer
+			this.onError(e.getMessage());
+			return;
 		}
 
-		try {
-			DataInputStream in = new DataInputStream(socket.getInputStream());
+		this.readBuffer.compact();
+
+		if (this.requiredLength > this.readBuffer.capacity()) {
+			// Grow to fit incoming message
+			final ByteBuffer newBuffer = ByteBuffer.allocate(this.requiredLength);
+			this.readBuffer.flip();
+			newBuffer.put(this.readBuffer);
+			this.readBuffer = newBuffer;
+		} else if (this.readBuffer.position() == 0 && this.readBuffer.capacity() > INITIAL_READ_BUFFER_SIZE) {
+			// Drop oversized buffer once it's empty
+			this.readBuffer = ByteBuffer.allocate(INITIAL_READ_BUFFER_SIZE);
+		}
+	}
 
-			while (true) {
-				// Read only enough bytes to cover Message "magic" preamble
-				byte[] messageMagic = new byte[Message.MAGIC_LENGTH];
-				in.readFully(messageMagic);
+	/**
+	 * Work out length of complete message at start of <code>buffer</code>.
+	 * <p>
+	 * Message layout is magic, type, has-ID flag, optional ID, data length then, only if there's data, checksum and data.
+	 * 
+	 * @param buffer
+	 * @return length of message in bytes, or 0 if message is incomplete
+	 * @throws MessageException
+	 *             if message has wrong magic or bad length
+	 */
+	private int getFrameLength(final ByteBuffer buffer) throws MessageException {
+		final int start = buffer.position();
+		final int available = buffer.remaining();
+
+		int headerLength = Message.MAGIC_LENGTH + Message.TYPE_LENGTH + 1;
+		if (available < headerLength) {
+			this.requiredLength = 0;
+			return 0;
+		}
 
-				if (!Arrays.equals(messageMagic, Controller.getInstance().getMessageMagic())) {
-					// Didn't receive valid Message "magic"
-					this.callback.onError(this, Lang.getInstance().translate("received message with wrong magic") + " " + address);
-					return;
-				}
+		final byte[] magic = Controller.getInstance().getMessageMagic();
+		for (int i = 0; i < Message.MAGIC_LENGTH; ++i) {
+			if (buffer.get(start + i) != magic[i]) {
+				throw new MessageException(Lang.getInstance().translate("received message with wrong magic") + " " + address);
+			}
+		}
 
-				// Attempt to parse incoming message - throws on failure
-				Message message = MessageFactory.getInstance().parse(this, in);
+		if (buffer.get(start + headerLength - 1) == 1) {
+			headerLength += Message.ID_LENGTH;
+		}
 
-				// LOGGER.debug("Received message (type " + message.getType() + ") from " + this.address);
+		headerLength += Message.MESSAGE_LENGTH;
+		if (available < headerLength) {
+			this.requiredLength = 0;
+			return 0;
+		}
 
-				// If there's a queue for this message ID then add message to queue
-				if (message.hasId() && this.messages.containsKey(message.getId())) {
-					// Adding message to queue will unblock waiting caller (if any)
-					this.messages.get(message.getId()).add(message);
-				} else {
-					// Generic message callback
-					// This needs to be done in a new thread to avoid mapdb/interrupt issue
-					new Thread(new MessageCallbackRunnable(this.callback, message)).start();
-				}
-			}
-		} catch (InterruptedException e) {
-			// peer connection being closed - simply exit
-			LOGGER.debug("Peer thread interrupted " + address);
+		final int dataLength = buffer.getInt(start + headerLength - Message.MESSAGE_LENGTH);
+		if (dataLength < 0 || dataLength > MAX_DATA_LENGTH) {
+			throw new MessageException("Invalid message data length " + dataLength + " from " + address);
+		}
 
-			return;
-		} catch (SocketTimeoutException e) {
-			LOGGER.info(Lang.getInstance().translate("Inactivity timeout with peer") + " " + address);
+		final int frameLength = dataLength > 0 ? headerLength + Message.CHECKSUM_LENGTH + dataLength : headerLength;
+		if (available < frameLength) {
+			this.requiredLength = frameLength;
+			return 0;
+		}
 
-			// Disconnect peer
-			this.callback.onDisconnect(this);
-			return;
-		} catch (SocketException e) {
-			// We might be finding out that peer was disconnected elsewhere
-			if (socket == null || socket.isClosed()) {
-				LOGGER.debug(Lang.getInstance().translate("Socket already closed") + " " + address);
-			} else {
-				LOGGER.info(Lang.getInstance().translate("Socket issue with peer") + " " + address + ": " + e.getMessage());
-			}
+		this.requiredLength = 0;
+		return frameLength;
+	}
 
-			// Disconnect peer
-			this.callback.onDisconnect(this);
+	/**
+	 * Parse message and pass it on.
+	 * <p>
+	 * If something is waiting for a message with a specific ID then they are notified so it can be processed. Otherwise the message is passed to
+	 * <code>ConnectionCallback.onMessage</code>.
+	 * <p>
+	 * Called on a worker thread.
+	 * 
+	 * @param frame
+	 *            complete message, including magic
+	 * @see #getResponse(Message)
+	 * @see MessageFactory#parse(Peer, DataInputStream)
+	 * @see ConnectionCallback#onMessage(Message)
+	 */
+	private void deliver(final byte[] frame) {
+		if (this.closed) {
 			return;
+		}
+
+		final Message message;
+		try {
+			final DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(frame, Message.MAGIC_LENGTH, frame.length - Message.MAGIC_LENGTH));
+			message = MessageFactory.getInstance().parse(this, in);
 		} catch (MessageException e) {
 			// Suspect peer
-			this.callback.onError(this, e.getMessage());
-			return;
-		} catch (EOFException e) {
-			// We might be finding out that peer was disconnected elsewhere
-			// if (socket == null || socket.isClosed())
-			// return;
-
-			// Disconnect peer
-			this.callback.onDisconnect(this);
+			this.onError(e.getMessage());
 			return;
 		} catch (Exception e) {
 			// not expected as above
 			LOGGER.debug(e.getMessage(), e);
 
 			// Disconnect peer
-			this.callback.onDisconnect(this);
+			this.disconnect();
 			return;
 		}
+
+		// LOGGER.debug("Received message (type " + message.getType() + ") from " + this.address);
+
+		// If someone's waiting for this response without blocking, hand it over
+		final Consumer<Message> handler = message.hasId() ? this.responseHandlers.remove(message.getId()) : null;
+		if (handler != null) {
+			handler.accept(message);
+			return;
+		}
+
+		// If there's a queue for this message ID then add message to queue
+		final BlockingQueue<Message> queue = message.hasId() ? this.messages.get(message.getId()) : null;
+		if (queue != null) {
+			// Adding message to queue will unblock waiting caller (if any)
+			queue.offer(message);
+		} else {
+			// Generic message callback
+			this.callback.onMessage(message);
+		}
 	}
 
 	/**
-	 * Attempt to send Message to peer
+	 * Called by selector thread when socket can take more data, or when new messages have been queued.
+	 * <p>
+	 * Writes as many queued messages as possible in one go.
+	 */
+	void onWritable() {
+		synchronized (this.outbound) {
+			this.writeRequested = false;
+
+			if (this.closed || this.selectionKey == null || !this.selectionKey.isValid()) {
+				return;
+			}
+
+			try {
+				while (!this.outbound.isEmpty()) {
+					final ByteBuffer[] buffers = this.outbound.stream().limit(MAX_GATHERED_WRITES).toArray(ByteBuffer[]::new);
+
+					this.outboundBytes -= this.channel.write(buffers);
+
+					// Drop fully written messages
+					while (!this.outbound.isEmpty() && !this.outbound.peekFirst().hasRemaining()) {
+						this.outbound.removeFirst();
+					}
+
+					// Socket full?
+					if (buffers[buffers.length - 1].hasRemaining()) {
+						break;
+					}
+				}
+
+				this.selectionKey.interestOps(this.outbound.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			} catch (IOException e) {
+				this.onIOError(e);
+			}
+		}
+	}
+
+	/**
+	 * Called by selector thread if peer has been silent for too long.
+	 * 
+	 * @param now
+	 */
+	void checkInactivity(final long now) {
+		if (now - this.lastActivity > INACTIVITY_TIMEOUT) {
+			LOGGER.info(Lang.getInstance().translate("Inactivity timeout with peer") + " " + address);
+
+			// Disconnect peer
+			this.disconnect();
+		}
+	}
+
+	void onIOError(final Exception e) {
+		// We might be finding out that peer was disconnected elsewhere
+		if (this.closed) {
+			LOGGER.debug(Lang.getInstance().translate("Socket already closed") + " " + address);
+		} else {
+			LOGGER.info(Lang.getInstance().translate("Socket issue with peer") + " " + address + ": " + e.getMessage());
+		}
+
+		// Disconnect peer
+		this.disconnect();
+	}
+
+	/**
+	 * Tell callback, once only, that peer has disconnected. Done on a worker thread so selector thread isn't held up.
+	 * 
+	 * @see ConnectionCallback#onDisconnect(Peer)
+	 */
+	private void disconnect() {
+		if (this.disconnecting.compareAndSet(false, true)) {
+			Transport.getInstance().dispatch(() -> this.callback.onDisconnect(this));
+		}
+	}
+
+	/**
+	 * Tell callback, once only, about an error with peer. Done on a worker thread so selector thread isn't held up.
+	 * 
+	 * @see ConnectionCallback#onError(Peer, String)
+	 */
+	private void onError(final String error) {
+		if (this.disconnecting.compareAndSet(false, true)) {
+			Transport.getInstance().dispatch(() -> this.callback.onError(this, error));
+		}
+	}
+
+	/**
+	 * Queue Message to be sent to peer
+	 * <p>
+	 * Message is written by selector thread, possibly along with other queued messages.
 	 * 
 	 * @param message
-	 * @return <code>true</code> if message successfully sent; <code>false</code> otherwise
+	 * @return <code>true</code> if message successfully queued; <code>false</code> otherwise
 	 */
 	public boolean sendMessage(final Message message) {
-		try {
-			// Check if socket has died out
-			if (!this.socket.isConnected()) {
-				this.callback.onError(this, Lang.getInstance().translate("Socket died"));
-				return false;
-			}
+		// Check if socket has died out
+		if (this.closed || this.channel == null || !this.channel.isOpen()) {
+			this.onError(Lang.getInstance().translate("Socket died"));
+			return false;
+		}
 
-			// Send message
-			synchronized (this.out) {
-				this.out.write(message.toBytes());
-				this.out.flush();
-			}
-			return true;
+		final byte[] bytes;
+		try {
+			bytes = message.toBytes();
 		} catch (Exception e) {
 			LOGGER.trace(e.getMessage(), e);
-			this.callback.onError(this, e.getMessage());
+			this.onError(e.getMessage());
 			return false;
 		}
+
+		final boolean requestWrite;
+		synchronized (this.outbound) {
+			if (this.outboundBytes + bytes.length > MAX_OUTBOUND_BYTES) {
+				// Peer isn't keeping up
+				this.onError("Outbound queue full");
+				return false;
+			}
+
+			this.outbound.addLast(ByteBuffer.wrap(bytes));
+			this.outboundBytes += bytes.length;
+
+			// Only need to wake selector if it isn't already going to write
+			requestWrite = !this.writeRequested;
+			this.writeRequested = true;
+		}
+
+		if (requestWrite) {
+			Transport.getInstance().requestWrite(this);
+		}
+
+		return true;
 	}
 
 	/**
@@ -383,7 +584,7 @@ public final class Peer extends Thread {
 			Message response = blockingQueue.poll(Settings.getInstance().getConnectionTimeout(), TimeUnit.MILLISECONDS);
 			this.messages.remove(id);
 
-			if (response == null && this.socket.isConnected()) {
+			if (response == null && !this.closed) {
 				// LOGGER.trace("Timed out while waiting for type " + message.getType() + " response " + id + " from peer " + address);
 				LOGGER.info("Timed out while waiting for response from peer " + address);
 			}
@@ -397,6 +598,38 @@ public final class Peer extends Thread {
 		}
 	}
 
+	/**
+	 * Send message to peer without waiting for its response.
+	 * <p>
+	 * Like {@link #getResponse(Message)}, but <code>handler</code> is called on a worker thread with the response, or with
+	 * <code>null</code> if message couldn't be sent or there's no response within timeout. Nothing is called once peer is
+	 * closed.
+	 * 
+	 * @param message
+	 * @param handler
+	 */
+	void getResponse(final Message message, final Consumer<Message> handler) {
+		// Assign random ID to this message
+		final int id = (int) ((Math.random() * 1000000) + 1);
+		message.setId(id);
+
+		this.responseHandlers.put(id, handler);
+
+		if (!this.sendMessage(message)) {
+			if (this.responseHandlers.remove(id, handler))
+				Transport.getInstance().dispatch(() -> handler.accept(null));
+
+			return;
+		}
+
+		Transport.getInstance().schedule(() -> {
+			if (this.responseHandlers.remove(id, handler)) {
+				LOGGER.info("Timed out while waiting for response from peer " + address);
+				handler.accept(null);
+			}
+		}, Settings.getInstance().getConnectionTimeout());
+	}
+
 	public boolean isWhite() {
 		return this.white;
 	}
@@ -427,23 +660,35 @@ public final class Peer extends Thread {
 	public void close() {
 		LOGGER.debug("Closing socket connection to peer " + address);
 
+		this.closed = true;
+
 		// Ignore any pending messages
-		this.messages.clear();
+		if (this.messages != null)
+			this.messages.clear();
 
-		// Stop processing messages
-		if (this.isAlive())
-			this.interrupt();
+		if (this.responseHandlers != null)
+			this.responseHandlers.clear();
 
 		// Stop Pinger if applicable
 		if (this.pinger != null)
 			this.pinger.stopPing();
 
+		// Stop selecting on channel
+		if (this.selectionKey != null)
+			this.selectionKey.cancel();
+
 		try {
-			// Close socket if applicable
-			if (socket != null && socket.isConnected())
-				socket.close();
+			// Close channel if applicable
+			if (this.channel != null && this.channel.isOpen())
+				this.channel.close();
 		} catch (IOException e) {
 			LOGGER.debug("Error closing socket connection to peer " + address + ": " + e.getMessage(), e);
 		}
+
+		// Discard unsent messages
+		synchronized (this.outbound) {
+			this.outbound.clear();
+			this.outboundBytes = 0;
+		}
 	}
 }
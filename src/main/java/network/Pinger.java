@@ -1,5 +1,7 @@
 package network;
 
+import java.util.concurrent.ScheduledFuture;
+
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -8,22 +10,27 @@ import network.message.MessageFactory;
 import settings.Settings;
 
 /**
- * Pinger is a Thread that periodically pings a Peer to maintain/check connectivity.
+ * Pinger periodically pings a Peer to maintain/check connectivity.
+ * <p>
+ * Pings are scheduled on {@link Transport}'s shared scheduler and their responses handled on its worker threads, so no
+ * thread is kept per peer or held while waiting for a response.
  */
-public class Pinger extends Thread {
+public class Pinger implements Runnable {
 
 	private static final Logger LOGGER = LogManager.getLogger(Pinger.class);
-	private Peer peer;
+	private final Peer peer;
 	/**
 	 * Most recent ping round-trip time in milliseconds, or Long.MAX_VALUE if no ping yet.
 	 */
-	private long ping;
+	private volatile long ping;
+	private volatile boolean stopped;
+	private volatile ScheduledFuture<?> next;
 
 	/**
 	 * Simple Pinger constructor
 	 * <p>
-	 * Will start Pinger thread.
-	 * 
+	 * Will send first ping straight away.
+	 *
 	 * @param peer
 	 * @see #run()
 	 */
@@ -31,12 +38,12 @@ public class Pinger extends Thread {
 		this.peer = peer;
 		this.ping = Long.MAX_VALUE;
 
-		this.start();
+		this.next = Transport.getInstance().schedule(this, 0);
 	}
 
 	/**
 	 * Get last ping's round-trip time.
-	 * 
+	 *
 	 * @return ping's RTT in milliseconds or Long.MAX_VALUE if no ping yet.
 	 */
 	public long getPing() {
@@ -44,90 +51,62 @@ public class Pinger extends Thread {
 	}
 
 	/**
-	 * Repeatedly ping peer using interval from settings.
-	 * <p>
-	 * Will exit if interrupted, typically by <code>stopPing()</code>
-	 * 
-	 * @see #stopPing()
-	 * @see Peer#onPingSuccess()
-	 * @see Peer#onPingFailure()
+	 * Send ping message to peer. Response is handled by <code>onResponse()</code>, which schedules next ping using
+	 * interval from settings.
+	 *
+	 * @see #onResponse(Message, long)
 	 */
 	@Override
 	public void run() {
-		Thread.currentThread().setName("Pinger " + this.peer.getAddress());
+		if (this.stopped)
+			return;
 
-		class PingFailureRunnable implements Runnable {
-			private final Peer peer;
-
-			public PingFailureRunnable(Peer peer) {
-				this.peer = peer;
-			}
+		final long start = System.currentTimeMillis();
+		Message pingMessage = MessageFactory.getInstance().createPingMessage();
+		// NB: response is null if none within timeout
+		this.peer.getResponse(pingMessage, response -> this.onResponse(response, start));
+	}
 
-			@Override
-			public void run() {
-				this.peer.onPingFailure();
-			}
+	/**
+	 * Notify peer of ping's outcome, on a worker thread, and schedule next ping if it succeeded.
+	 *
+	 * @see Peer#onPingSuccess()
+	 * @see Peer#onPingFailure()
+	 */
+	private void onResponse(Message response, long start) {
+		if (this.stopped)
+			return;
+
+		// Check for valid ping response
+		if (response == null || response.getType() != Message.PING_TYPE) {
+			// Notify Peer that ping has failed.
+			// NB: currently Peer.onPingFailure() may call Pinger.stopPing()
+			LOGGER.debug("Ping failure with " + this.peer.getAddress());
+
+			this.peer.onPingFailure();
+			return;
 		}
 
-		class PingSuccessRunnable implements Runnable {
-			private final Peer peer;
+		// Calculate ping's round-trip time and notify peer
+		this.ping = System.currentTimeMillis() - start;
+		this.peer.onPingSuccess();
 
-			public PingSuccessRunnable(Peer peer) {
-				this.peer = peer;
-			}
-
-			@Override
-			public void run() {
-				this.peer.onPingSuccess();
-			}
-		}
-
-		while (true) {
-			// Send ping message to peer
-			long start = System.currentTimeMillis();
-			Message pingMessage = MessageFactory.getInstance().createPingMessage();
-			// NB: Peer.getResponse returns null if no response within timeout
-			// or interrupt occurs
-			Message response = this.peer.getResponse(pingMessage);
-
-			// Check for valid ping response
-			if (response == null || response.getType() != Message.PING_TYPE) {
-				// Notify Peer that ping has failed.
-				// NB: currently Peer.onPingFailure() may call Pinger.stopPing()
-				// (see below)
-				LOGGER.debug("Ping failure with " + this.peer.getAddress());
-
-				// This needs to be done in a new thread to avoid mapdb/interrupt issue
-				new Thread(new PingFailureRunnable(this.peer)).start();
-
-				return;
-			}
-
-			// Calculate ping's round-trip time and notify peer
-			this.ping = System.currentTimeMillis() - start;
-
-			// This needs to be done in a new thread to avoid mapdb/interrupt issue
-			new Thread(new PingSuccessRunnable(this.peer)).start();
-
-			// Sleep until we need to send next ping
-			try {
-				Thread.sleep(Settings.getInstance().getPingInterval());
-			} catch (InterruptedException e) {
-				// If interrupted, usually by stopPing(), we need to exit thread
-				return;
-			}
-		}
+		// Schedule next ping
+		this.next = Transport.getInstance().schedule(this, Settings.getInstance().getPingInterval());
 	}
 
 	/**
 	 * Stop pinging peer.
 	 * <p>
 	 * Usually called by Peer.close()
-	 * 
+	 *
 	 * @see Peer#close()
 	 */
 	public void stopPing() {
-		if (this.isAlive())
-			this.interrupt();
+		this.stopped = true;
+
+		ScheduledFuture<?> next = this.next;
+		if (next != null)
+			next.cancel(false);
 	}
 }
@@ -0,0 +1,221 @@
+package network;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import settings.Settings;
+
+/**
+ * Non-blocking I/O for all peer connections.
+ * <p>
+ * A single selector thread reads and writes every peer's channel. Complete messages are handed to a fixed pool of worker
+ * threads which call into {@link ConnectionCallback#onMessage(network.message.Message)}, so no thread is created per
+ * peer or per message. Timed tasks, e.g. pinging peers, share one scheduler thread which hands them to the workers.
+ * <p>
+ * Other threads never touch the selector directly: they queue registrations and write requests, then wake the selector.
+ *
+ * @see Peer
+ */
+public final class Transport implements Runnable {
+
+	private static final Logger LOGGER = LogManager.getLogger(Transport.class);
+
+	/** How often to check for inactive peers */
+	private static final long IDLE_CHECK_INTERVAL = 10 * 1000;
+
+	private static Transport instance;
+
+	private final Selector selector;
+	private final ExecutorService workers;
+	private final ScheduledExecutorService scheduler;
+	private final Queue<Peer> pendingRegistrations = new ConcurrentLinkedQueue<Peer>();
+	private final Queue<Peer> pendingWrites = new ConcurrentLinkedQueue<Peer>();
+	private final Thread thread;
+	private volatile boolean running;
+
+	public static synchronized Transport getInstance() {
+		if (instance == null) {
+			instance = new Transport();
+		}
+
+		return instance;
+	}
+
+	private Transport() {
+		try {
+			this.selector = Selector.open();
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open network selector", e);
+		}
+
+		final AtomicInteger workerCount = new AtomicInteger();
+		final ThreadFactory threadFactory = runnable -> {
+			final Thread worker = new Thread(runnable, "Network worker " + workerCount.incrementAndGet());
+			worker.setDaemon(true);
+			return worker;
+		};
+		this.workers = Executors.newFixedThreadPool(Settings.getInstance().getNetworkWorkerThreads(), threadFactory);
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread scheduler = new Thread(runnable, "Network scheduler");
+			scheduler.setDaemon(true);
+			return scheduler;
+		});
+
+		this.running = true;
+		this.thread = new Thread(this, "Network I/O");
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Start reading from peer's channel.
+	 *
+	 * @param peer
+	 */
+	void register(final Peer peer) {
+		this.pendingRegistrations.add(peer);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Ask selector thread to flush peer's outbound queue.
+	 *
+	 * @param peer
+	 */
+	void requestWrite(final Peer peer) {
+		this.pendingWrites.add(peer);
+		this.selector.wakeup();
+	}
+
+	/**
+	 * Run task on a worker thread.
+	 *
+	 * @param task
+	 */
+	void dispatch(final Runnable task) {
+		try {
+			this.workers.execute(task);
+		} catch (RejectedExecutionException e) {
+			// Shutting down
+			LOGGER.debug("Network worker task rejected: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Run <code>task</code> on a worker thread after <code>delay</code> milliseconds.
+	 * 
+	 * @return future to cancel task with, or <code>null</code> if shutting down
+	 */
+	ScheduledFuture<?> schedule(final Runnable task, final long delay) {
+		try {
+			return this.scheduler.schedule(() -> this.dispatch(task), delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			// Shutting down
+			LOGGER.debug("Network scheduled task rejected: " + e.getMessage());
+			return null;
+		}
+	}
+
+	@Override
+	public void run() {
+		long lastIdleCheck = System.currentTimeMillis();
+
+		while (this.running) {
+			try {
+				this.selector.select(IDLE_CHECK_INTERVAL);
+
+				this.processRegistrations();
+				this.processWriteRequests();
+
+				final Iterator<SelectionKey> iterator = this.selector.selectedKeys().iterator();
+				while (iterator.hasNext()) {
+					final SelectionKey key = iterator.next();
+					iterator.remove();
+
+					final Peer peer = (Peer) key.attachment();
+
+					try {
+						if (key.isReadable()) {
+							peer.onReadable();
+						}
+
+						if (key.isValid() && key.isWritable()) {
+							peer.onWritable();
+						}
+					} catch (CancelledKeyException e) {
+						// Peer closed elsewhere
+					}
+				}
+
+				final long now = System.currentTimeMillis();
+				if (now - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+					lastIdleCheck = now;
+
+					for (final SelectionKey key : this.selector.keys()) {
+						((Peer) key.attachment()).checkInactivity(now);
+					}
+				}
+			} catch (ClosedSelectorException e) {
+				return;
+			} catch (Exception e) {
+				// Don't let one bad peer stop all networking
+				LOGGER.error(e.getMessage(), e);
+			}
+		}
+	}
+
+	private void processRegistrations() {
+		Peer peer;
+		while ((peer = this.pendingRegistrations.poll()) != null) {
+			try {
+				peer.setSelectionKey(peer.getChannel().register(this.selector, SelectionKey.OP_READ, peer));
+			} catch (Exception e) {
+				LOGGER.debug("Unable to register peer " + peer.getAddress() + ": " + e.getMessage());
+				peer.onIOError(e);
+			}
+		}
+	}
+
+	private void processWriteRequests() {
+		Peer peer;
+		while ((peer = this.pendingWrites.poll()) != null) {
+			peer.onWritable();
+		}
+	}
+
+	/**
+	 * Stop selector thread, scheduler and workers. Peers should already be closed.
+	 */
+	public void shutdown() {
+		this.running = false;
+		this.scheduler.shutdownNow();
+		this.workers.shutdown();
+
+		try {
+			this.selector.close();
+			this.workers.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (IOException e) {
+			LOGGER.debug(e.getMessage(), e);
+		} catch (InterruptedException e) {
+			// Shutting down anyway
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package network.message;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.primitives.Ints;
+
+import qora.Blockchain;
+import qora.block.Block;
+
+/**
+ * Block headers, i.e. blocks without their transactions, in reply to a {@link GetBlockHeadersMessage}.
+ *
+ * @see Block#getHeaderBytes()
+ */
+public class BlockHeadersMessage extends Message {
+
+	private static final int COUNT_LENGTH = 4;
+	private static final int HEADER_SIZE_LENGTH = 4;
+
+	private List<Block> headers;
+	private List<byte[]> headerBytes;
+
+	public BlockHeadersMessage(List<Block> headers) {
+		super(BLOCK_HEADERS_TYPE);
+
+		this.headers = headers;
+	}
+
+	public List<Block> getHeaders() {
+		return this.headers;
+	}
+
+	public static BlockHeadersMessage parse(byte[] data) throws Exception {
+		if (data.length < COUNT_LENGTH) {
+			throw new Exception("Data does not match length");
+		}
+
+		// READ COUNT
+		int count = Ints.fromByteArray(Arrays.copyOfRange(data, 0, COUNT_LENGTH));
+		if (count < 0 || count > Blockchain.MAX_SIGNATURES) {
+			throw new Exception("Too many block headers");
+		}
+
+		int position = COUNT_LENGTH;
+		List<Block> headers = new ArrayList<Block>(count);
+		for (int i = 0; i < count; ++i) {
+			// READ HEADER SIZE
+			if (position + HEADER_SIZE_LENGTH > data.length) {
+				throw new Exception("Data does not match length");
+			}
+			int length = Ints.fromByteArray(Arrays.copyOfRange(data, position, position + HEADER_SIZE_LENGTH));
+			position += HEADER_SIZE_LENGTH;
+
+			// READ HEADER
+			if (length < 0 || position + length > data.length) {
+				throw new Exception("Data does not match length");
+			}
+			headers.add(Block.parse(Arrays.copyOfRange(data, position, position + length)));
+			position += length;
+		}
+
+		if (position != data.length) {
+			throw new Exception("Data does not match length");
+		}
+
+		return new BlockHeadersMessage(headers);
+	}
+
+	@Override
+	public byte[] toBytes() {
+		final ByteBuffer data = this.allocateWithChecksum();
+
+		// WRITE COUNT
+		data.putInt(this.headers.size());
+
+		// WRITE HEADERS
+		for (byte[] header : this.getHeaderBytes()) {
+			data.putInt(header.length);
+			data.put(header);
+		}
+
+		// ADD CHECKSUM
+		return this.completeWithChecksum(data);
+	}
+
+	@Override
+	public int getDataLength() {
+		int length = COUNT_LENGTH;
+
+		for (byte[] header : this.getHeaderBytes()) {
+			length += HEADER_SIZE_LENGTH + header.length;
+		}
+
+		return length;
+	}
+
+	private List<byte[]> getHeaderBytes() {
+		if (this.headerBytes == null) {
+			List<byte[]> headerBytes = new ArrayList<byte[]>(this.headers.size());
+			for (Block header : this.headers) {
+				headerBytes.add(header.getHeaderBytes());
+			}
+
+			this.headerBytes = headerBytes;
+		}
+
+		return this.headerBytes;
+	}
+
+}
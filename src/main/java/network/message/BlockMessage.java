@@ -1,16 +1,39 @@
 package network.message;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import qora.block.Block;
 
-import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Ints;
 
 public class BlockMessage extends Message {
 
 	private static final int HEIGHT_LENGTH = 4;
 
+	// CHECKSUMS OF STORED BLOCKS, SO SERVING THE SAME BLOCK TO SEVERAL PEERS ONLY HASHES IT ONCE
+	private static final int MAX_CACHED_CHECKSUMS = 2048;
+	private static final Map<ByteBuffer, CachedChecksum> CHECKSUMS = new LinkedHashMap<ByteBuffer, CachedChecksum>(256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, CachedChecksum> eldest) {
+			return size() > MAX_CACHED_CHECKSUMS;
+		}
+	};
+
+	private static final class CachedChecksum {
+		private final int height;
+		private final byte[] checksum;
+
+		private CachedChecksum(final int height, final byte[] checksum) {
+			this.height = height;
+			this.checksum = checksum;
+		}
+	}
+
 	private Block block;
 	private int height;
 
@@ -51,22 +74,61 @@ public class BlockMessage extends Message {
 	}
 
 	public byte[] toBytes() {
-		byte[] data = new byte[0];
+		final boolean isStored = this.block.hasRawBytes();
+		final byte[] blockBytes = this.block.toBytes();
+		final int height = this.block.getHeight();
+		final byte[] header = super.toBytes();
+
+		// WRITE EVERYTHING INTO ONE BUFFER
+		final byte[] data = new byte[header.length + CHECKSUM_LENGTH + HEIGHT_LENGTH + blockBytes.length];
+		int position = 0;
+
+		// WRITE HEADER
+		System.arraycopy(header, 0, data, position, header.length);
+		position += header.length;
+
+		// LEAVE ROOM FOR CHECKSUM
+		final int checksumPosition = position;
+		position += CHECKSUM_LENGTH;
 
 		// WRITE BLOCK HEIGHT
-		byte[] heightBytes = Ints.toByteArray(this.block.getHeight());
-		data = Bytes.concat(data, heightBytes);
+		System.arraycopy(Ints.toByteArray(height), 0, data, position, HEIGHT_LENGTH);
+		position += HEIGHT_LENGTH;
 
 		// WRITE BLOCK
-		byte[] blockBytes = this.block.toBytes();
-		data = Bytes.concat(data, blockBytes);
+		System.arraycopy(blockBytes, 0, data, position, blockBytes.length);
 
-		// ADD CHECKSUM
-		data = Bytes.concat(super.toBytes(), this.generateChecksum(data), data);
+		// WRITE CHECKSUM
+		final byte[] checksum = this.getChecksum(isStored, height, data, checksumPosition + CHECKSUM_LENGTH);
+		System.arraycopy(checksum, 0, data, checksumPosition, CHECKSUM_LENGTH);
 
 		return data;
 	}
 
+	private byte[] getChecksum(final boolean isStored, final int height, final byte[] data, final int offset) {
+		// ONLY STORED BLOCKS ARE KNOWN NOT TO CHANGE
+		if (!isStored) {
+			return this.generateChecksum(data, offset, data.length - offset);
+		}
+
+		final ByteBuffer key = ByteBuffer.wrap(this.block.getSignature());
+
+		synchronized (CHECKSUMS) {
+			final CachedChecksum cached = CHECKSUMS.get(key);
+			if (cached != null && cached.height == height) {
+				return cached.checksum;
+			}
+		}
+
+		final byte[] checksum = this.generateChecksum(data, offset, data.length - offset);
+
+		synchronized (CHECKSUMS) {
+			CHECKSUMS.put(key, new CachedChecksum(height, checksum));
+		}
+
+		return checksum;
+	}
+
 	protected int getDataLength() {
 		return HEIGHT_LENGTH + this.block.getDataLength();
 	}
@@ -0,0 +1,43 @@
+package network.message;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import qora.Blockchain;
+
+/**
+ * Request for the headers of blocks with given signatures. Peer replies with a {@link BlockHeadersMessage}.
+ */
+public class GetBlockHeadersMessage extends Message {
+
+	private List<byte[]> signatures;
+
+	public GetBlockHeadersMessage(List<byte[]> signatures) {
+		super(GET_BLOCK_HEADERS_TYPE);
+
+		this.signatures = signatures;
+	}
+
+	public List<byte[]> getSignatures() {
+		return this.signatures;
+	}
+
+	public static GetBlockHeadersMessage parse(byte[] data) throws Exception {
+		return new GetBlockHeadersMessage(SignaturesMessage.parseSignatures(data, Blockchain.MAX_SIGNATURES));
+	}
+
+	@Override
+	public byte[] toBytes() {
+		final ByteBuffer data = this.allocateWithChecksum();
+		SignaturesMessage.writeSignatures(data, this.signatures);
+
+		// ADD CHECKSUM
+		return this.completeWithChecksum(data);
+	}
+
+	@Override
+	public int getDataLength() {
+		return SignaturesMessage.getSignaturesLength(this.signatures);
+	}
+
+}
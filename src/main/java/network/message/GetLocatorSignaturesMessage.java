@@ -0,0 +1,48 @@
+package network.message;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import qora.Blockchain;
+
+/**
+ * Request for block signatures following the best match from a block locator.
+ * <p>
+ * Peer replies with a {@link SignaturesMessage} whose first signature is the highest locator entry on its main chain.
+ *
+ * @see Blockchain#getBlockLocator()
+ * @see Blockchain#getSignatures(List)
+ */
+public class GetLocatorSignaturesMessage extends Message {
+
+	private List<byte[]> locator;
+
+	public GetLocatorSignaturesMessage(List<byte[]> locator) {
+		super(GET_LOCATOR_SIGNATURES_TYPE);
+
+		this.locator = locator;
+	}
+
+	public List<byte[]> getLocator() {
+		return this.locator;
+	}
+
+	public static GetLocatorSignaturesMessage parse(byte[] data) throws Exception {
+		return new GetLocatorSignaturesMessage(SignaturesMessage.parseSignatures(data, Blockchain.MAX_LOCATOR_SIGNATURES));
+	}
+
+	@Override
+	public byte[] toBytes() {
+		final ByteBuffer data = this.allocateWithChecksum();
+		SignaturesMessage.writeSignatures(data, this.locator);
+
+		// ADD CHECKSUM
+		return this.completeWithChecksum(data);
+	}
+
+	@Override
+	public int getDataLength() {
+		return SignaturesMessage.getSignaturesLength(this.locator);
+	}
+
+}
@@ -1,12 +1,10 @@
 package network.message;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import qora.crypto.Crypto;
 
-import com.google.common.primitives.Bytes;
-import com.google.common.primitives.Ints;
-
 import controller.Controller;
 import network.Peer;
 
@@ -32,6 +30,9 @@ public class Message {
 	public static final int PING_TYPE = 9;
 	public static final int VERSION_TYPE = 10;
 	public static final int FIND_MYSELF_TYPE = 11;
+	public static final int GET_LOCATOR_SIGNATURES_TYPE = 12;
+	public static final int GET_BLOCK_HEADERS_TYPE = 13;
+	public static final int BLOCK_HEADERS_TYPE = 14;
 
 	private final int type;
 	
@@ -72,42 +73,89 @@ public class Message {
 	}
 
 	public byte[] toBytes() {
-		byte[] data = new byte[0];
+		final ByteBuffer data = ByteBuffer.allocate(this.getHeaderLength());
+		this.writeHeader(data);
+		return data.array();
+	}
+
+	private int getHeaderLength() {
+		return Controller.getInstance().getMessageMagic().length + TYPE_LENGTH + 1 + (hasId() ? ID_LENGTH : 0) + MESSAGE_LENGTH;
+	}
 
+	private void writeHeader(final ByteBuffer data) {
 		// Write magic
-		data = Bytes.concat(data, Controller.getInstance().getMessageMagic());
+		data.put(Controller.getInstance().getMessageMagic());
 
 		// Write message type
-		byte[] typeBytes = Ints.toByteArray(this.type);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.putInt(this.type);
 
 		// Write Id if exists
 		if (hasId()) {
-			final byte[] hasIdBytes = new byte[] { 1 };
-			data = Bytes.concat(data, hasIdBytes);
-			
-			byte[] idBytes = Ints.toByteArray(this.id);
-			idBytes = Bytes.ensureCapacity(idBytes, ID_LENGTH, 0);
-			data = Bytes.concat(data, idBytes);
+			data.put((byte) 1);
+			data.putInt(this.id);
 		} else {
-			final byte[] hasIdBytes = new byte[] { 0 };
-			data = Bytes.concat(data, hasIdBytes);
+			data.put((byte) 0);
 		}
 
 		// Write length
-		final byte[] lengthBytes = Ints.toByteArray(this.getDataLength());
-		data = Bytes.concat(data, lengthBytes);
+		data.putInt(this.getDataLength());
+	}
 
+	/**
+	 * Start a message with checksummed data: writes the header and leaves room for the checksum.
+	 * 
+	 * @return buffer sized for header, checksum and {@link #getDataLength()} bytes of data, positioned for data
+	 */
+	protected ByteBuffer allocateWithChecksum() {
+		final ByteBuffer data = ByteBuffer.allocate(this.getHeaderLength() + CHECKSUM_LENGTH + this.getDataLength());
+		this.writeHeader(data);
+		data.position(data.position() + CHECKSUM_LENGTH);
 		return data;
 	}
 
+	/**
+	 * Finish a message started by {@link #allocateWithChecksum()} once data is written, filling in the checksum.
+	 * 
+	 * @return message bytes
+	 */
+	protected byte[] completeWithChecksum(final ByteBuffer data) {
+		final byte[] bytes = data.array();
+		final int dataOffset = this.getHeaderLength() + CHECKSUM_LENGTH;
+		final byte[] checksum = this.generateChecksum(bytes, dataOffset, data.position() - dataOffset);
+		System.arraycopy(checksum, 0, bytes, dataOffset - CHECKSUM_LENGTH, CHECKSUM_LENGTH);
+
+		return data.position() == bytes.length ? bytes : Arrays.copyOf(bytes, data.position());
+	}
+
 	protected byte[] generateChecksum(final byte[] data) {
 		byte[] checksum = Crypto.getInstance().digest(data);
 		checksum = Arrays.copyOfRange(checksum, 0, CHECKSUM_LENGTH);
 		return checksum;
 	}
 
+	protected byte[] generateChecksum(final byte[] data, final int offset, final int length) {
+		byte[] checksum = Crypto.getInstance().digest(data, offset, length);
+		checksum = Arrays.copyOfRange(checksum, 0, CHECKSUM_LENGTH);
+		return checksum;
+	}
+
+	/**
+	 * @param checksum
+	 *            {@link #CHECKSUM_LENGTH} bytes
+	 * @param digest
+	 *            full digest of data
+	 * @return <code>true</code> if checksum is the start of digest
+	 */
+	static boolean isChecksumPrefix(final byte[] checksum, final byte[] digest) {
+		for (int i = 0; i < CHECKSUM_LENGTH; ++i) {
+			if (checksum[i] != digest[i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
 	protected int getDataLength() {
 		return 0;
 	}
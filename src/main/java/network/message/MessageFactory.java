@@ -1,7 +1,6 @@
 package network.message;
 
 import java.io.DataInputStream;
-import java.util.Arrays;
 import java.util.List;
 import java.util.logging.Logger;
 
@@ -57,6 +56,18 @@ public final class MessageFactory {
 		return new SignaturesMessage(headers);
 	}
 
+	public Message createGetLocatorSignaturesMessage(final List<byte[]> locator) {
+		return new GetLocatorSignaturesMessage(locator);
+	}
+
+	public Message createGetBlockHeadersMessage(final List<byte[]> signatures) {
+		return new GetBlockHeadersMessage(signatures);
+	}
+
+	public Message createBlockHeadersMessage(final List<Block> headers) {
+		return new BlockHeadersMessage(headers);
+	}
+
 	public Message createGetBlockMessage(final byte[] header) {
 		return new GetBlockMessage(header);
 	}
@@ -100,13 +111,10 @@ public final class MessageFactory {
 			inputStream.readFully(data);
 
 			// VALIDATE CHECKSUM
-			byte[] digest = Crypto.getInstance().digest(data);
-
-			// TAKE FOR FIRST BYTES
-			digest = Arrays.copyOfRange(digest, 0, Message.CHECKSUM_LENGTH);
+			final byte[] digest = Crypto.getInstance().digest(data);
 
-			// CHECK IF CHECKSUM MATCHES
-			if (!Arrays.equals(checksum, digest)) {
+			// CHECK IF CHECKSUM MATCHES FIRST BYTES
+			if (!Message.isChecksumPrefix(checksum, digest)) {
 				throw new MessageException(Lang.getInstance().translate("Invalid data checksum length=") + length);
 			}
 		}
@@ -189,6 +197,27 @@ public final class MessageFactory {
 			message = FindMyselfMessage.parse(data);
 			break;
 
+		// GET_LOCATOR_SIGNATURES
+		case Message.GET_LOCATOR_SIGNATURES_TYPE:
+
+			// CREATE MESSAGE FROM DATA
+			message = GetLocatorSignaturesMessage.parse(data);
+			break;
+
+		// GET_BLOCK_HEADERS
+		case Message.GET_BLOCK_HEADERS_TYPE:
+
+			// CREATE MESSAGE FROM DATA
+			message = GetBlockHeadersMessage.parse(data);
+			break;
+
+		// BLOCK_HEADERS
+		case Message.BLOCK_HEADERS_TYPE:
+
+			// CREATE MESSAGE FROM DATA
+			message = BlockHeadersMessage.parse(data);
+			break;
+
 		default:
 
 			// UNKNOWN MESSAGE
@@ -1,10 +1,10 @@
 package network.message;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Ints;
 
 public class SignaturesMessage extends Message{
@@ -28,12 +28,23 @@ public class SignaturesMessage extends Message{
 	
 	public static SignaturesMessage parse(byte[] data) throws Exception
 	{
+		return new SignaturesMessage(parseSignatures(data, Integer.MAX_VALUE));
+	}
+	
+	static List<byte[]> parseSignatures(byte[] data, int maxLength) throws Exception
+	{
+		//CHECK MINIMUM LENGTH
+		if(data.length < DATA_LENGTH)
+		{
+			throw new Exception("Data does not match length");
+		}
+		
 		//READ LENGTH
 		byte[] lengthBytes =  Arrays.copyOfRange(data, 0, DATA_LENGTH);
 		int length = Ints.fromByteArray(lengthBytes);
 		
 		//CHECK IF DATA MATCHES LENGTH
-		if(data.length != DATA_LENGTH + (length * SIGNATURE_LENGTH))
+		if(length < 0 || length > maxLength || data.length != DATA_LENGTH + (length * SIGNATURE_LENGTH))
 		{
 			throw new Exception("Data does not match length");
 		}
@@ -53,37 +64,40 @@ public class SignaturesMessage extends Message{
 			headers.add(header);
 		}
 		
-		return new SignaturesMessage(headers);
+		return headers;
 	}
 	
-	@Override
-	public byte[] toBytes()
+	static void writeSignatures(ByteBuffer data, List<byte[]> signatures)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE LENGTH
-		int length = this.signatures.size();
-		byte[] lengthBytes = Ints.toByteArray(length);
-		lengthBytes = Bytes.ensureCapacity(lengthBytes, DATA_LENGTH, 0);
-		data = Bytes.concat(data, lengthBytes);
+		data.putInt(signatures.size());
 		
 		//WRITE SIGNATURES
-		for(byte[] header: this.signatures)
+		for(byte[] signature: signatures)
 		{
-			//WRITE SIGNATURE
-			data = Bytes.concat(data, header);
+			data.put(signature, 0, SIGNATURE_LENGTH);
 		}
+	}
+	
+	static int getSignaturesLength(List<byte[]> signatures)
+	{
+		return DATA_LENGTH + (signatures.size() * SIGNATURE_LENGTH);
+	}
+	
+	@Override
+	public byte[] toBytes()
+	{
+		ByteBuffer data = this.allocateWithChecksum();
+		writeSignatures(data, this.signatures);
 		
 		//ADD CHECKSUM
-		data = Bytes.concat(super.toBytes(), this.generateChecksum(data), data);
-		
-		return data;
+		return this.completeWithChecksum(data);
 	}
 	
 	@Override
 	public int getDataLength()
 	{
-		return DATA_LENGTH + (this.signatures.size() * SIGNATURE_LENGTH);
+		return getSignaturesLength(this.signatures);
 	}
 
 }
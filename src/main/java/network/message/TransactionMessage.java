@@ -1,9 +1,10 @@
 package network.message;
 
+import java.nio.ByteBuffer;
+
 import qora.transaction.Transaction;
 import qora.transaction.TransactionFactory;
 
-import com.google.common.primitives.Bytes;
 
 public class TransactionMessage extends Message{
 
@@ -31,16 +32,13 @@ public class TransactionMessage extends Message{
 	
 	public byte[] toBytes() 
 	{
-		byte[] data = new byte[0];
+		ByteBuffer data = this.allocateWithChecksum();
 		
-		//WRITE BLOCK
-		byte[] blockBytes = this.transaction.toBytes();
-		data = Bytes.concat(data, blockBytes);
+		//WRITE TRANSACTION
+		this.transaction.writeTo(data);
 		
 		//ADD CHECKSUM
-		data = Bytes.concat(super.toBytes(), this.generateChecksum(data), data);
-		
-		return data;
+		return this.completeWithChecksum(data);
 	}	
 	
 	protected int getDataLength()
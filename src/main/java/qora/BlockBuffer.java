@@ -1,116 +1,324 @@
 package qora;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
-import qora.block.Block;
-import settings.Settings;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
 import network.Peer;
 import network.message.BlockMessage;
 import network.message.Message;
 import network.message.MessageFactory;
+import settings.Settings;
+
+/**
+ * Pipelined block downloader used by {@link Synchronizer}.
+ * <p>
+ * Requests for the blocks in <code>signatures</code> are spread across all supplied peers using a bounded pool of loader threads.
+ * The number of requests in flight ahead of the consumer adapts to how peers respond: every delivered block widens the window by
+ * one, every timeout halves it. A block that times out (or comes back with the wrong signature) is retried on a different peer.
+ * <p>
+ * Blocks are always handed back in the order of <code>signatures</code>, so callers can keep applying them strictly in order.
+ * Each block's signatures are verified in the background as soon as it arrives, see {@link #isSignatureValid(int)}.
+ */
+public final class BlockBuffer {
 
-public final class BlockBuffer extends Thread {
-	
-	private static final int BUFFER_SIZE = 20;
+	private static final Logger LOGGER = LogManager.getLogger(BlockBuffer.class);
+
+	private static final int MIN_WINDOW = 4;
+	private static final int INITIAL_WINDOW = 16;
+	private static final int MAX_WINDOW = 64;
+	private static final int MAX_ATTEMPTS = 3;
 
 	private final List<byte[]> signatures;
-	private final Peer peer;
-	private final Map<byte[], BlockingQueue<Block>> blocks;
+	private final List<Peer> peers;
+	private final List<BlockingQueue<BlockMessage>> slots;
+	private final List<Future<Boolean>> signatureChecks;
+	private final Map<Peer, Integer> inFlightPerPeer;
+	private final ExecutorService executor;
 
-	private int counter;
+	private int window;
+	private int nextToRequest;
+	private int consumed;
+	private int inFlight;
 	private boolean error;
 	private boolean running;
 
+	private final long startTime;
+	private long downloadedBlocks;
+	private long downloadedBytes;
+	private long retries;
+
+	/**
+	 * Start downloading blocks from a single peer.
+	 *
+	 * @param signatures
+	 * @param peer
+	 */
 	public BlockBuffer(final List<byte[]> signatures, final Peer peer) {
-		super("Block Buffer");
+		this(signatures, Arrays.asList(peer));
+	}
+
+	/**
+	 * Start downloading blocks, spreading requests across <code>peers</code>.
+	 * <p>
+	 * The first peer is preferred when all peers are equally busy, so callers should put the peer the signatures came from first.
+	 *
+	 * @param signatures
+	 * @param peers
+	 */
+	public BlockBuffer(final List<byte[]> signatures, final List<Peer> peers) {
+		if (peers.isEmpty()) {
+			throw new IllegalArgumentException("Block buffer needs at least one peer");
+		}
+
 		this.signatures = signatures;
-		this.peer = peer;
-		this.blocks = new HashMap<byte[], BlockingQueue<Block>>();
-		
-		this.counter = 0;
+		this.peers = new ArrayList<Peer>(peers);
+		this.slots = new ArrayList<BlockingQueue<BlockMessage>>(signatures.size());
+		for (int i = 0; i < signatures.size(); ++i) {
+			this.slots.add(new ArrayBlockingQueue<BlockMessage>(1));
+		}
+		this.signatureChecks = new ArrayList<Future<Boolean>>(Collections.nCopies(signatures.size(), (Future<Boolean>) null));
+
+		this.inFlightPerPeer = new HashMap<Peer, Integer>();
+		for (final Peer peer : this.peers) {
+			this.inFlightPerPeer.put(peer, 0);
+		}
+
+		this.executor = Executors.newFixedThreadPool(Math.min(MAX_WINDOW, signatures.size() + 1), runnable -> {
+			final Thread thread = new Thread(runnable, "Block Loader");
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		this.window = INITIAL_WINDOW;
+		this.nextToRequest = 0;
+		this.consumed = 0;
+		this.inFlight = 0;
 		this.error = false;
 		this.running = true;
-		this.start();
+		this.startTime = System.currentTimeMillis();
+
+		fill();
 	}
 
-	public void run() {
-		while (this.running) {
-			for (int i = 0; i < this.signatures.size() && i < this.counter + BUFFER_SIZE; i++) {
-				final byte[] signature = this.signatures.get(i);
+	/**
+	 * Issue new requests until the in-flight window ahead of the consumer is full.
+	 */
+	private synchronized void fill() {
+		while (this.running && !this.error && this.nextToRequest < this.signatures.size()
+				&& this.nextToRequest < this.consumed + this.window && this.inFlight < this.window) {
+			request(this.nextToRequest++, 1, null);
+		}
+	}
 
-				// Check if block already loaded
-				if (!this.blocks.containsKey(signature)) {
-					// Load block
-					loadBlock(signature);
-				}
+	/**
+	 * Pick the least busy peer, skipping <code>exclude</code> if there's any alternative.
+	 *
+	 * @param exclude
+	 * @return peer to send next request to
+	 */
+	private Peer choosePeer(final Peer exclude) {
+		Peer bestPeer = null;
+		int bestLoad = Integer.MAX_VALUE;
+
+		for (final Peer peer : this.peers) {
+			if (peer == exclude && this.peers.size() > 1) {
+				continue;
 			}
 
-			try {
-				Thread.sleep(10);
-			} catch (InterruptedException e) {
-				// Ignore
+			final int load = this.inFlightPerPeer.get(peer);
+			if (load < bestLoad) {
+				bestPeer = peer;
+				bestLoad = load;
 			}
 		}
+
+		return bestPeer;
+	}
+
+	private synchronized void request(final int index, final int attempt, final Peer exclude) {
+		final Peer peer = choosePeer(exclude);
+		if (peer == null) {
+			this.error = true;
+			return;
+		}
+
+		this.inFlight++;
+		this.inFlightPerPeer.put(peer, this.inFlightPerPeer.get(peer) + 1);
+
+		try {
+			this.executor.execute(() -> loadBlock(index, attempt, peer));
+		} catch (RejectedExecutionException e) {
+			// Buffer stopped while we were scheduling
+			this.inFlight--;
+			this.inFlightPerPeer.put(peer, this.inFlightPerPeer.get(peer) - 1);
+		}
 	}
 
-	private void loadBlock(final byte[] signature) {
-		// Create queue
-		final BlockingQueue<Block> blockingQueue = new ArrayBlockingQueue<Block>(1);
-		this.blocks.put(signature, blockingQueue);
+	private void loadBlock(final int index, final int attempt, final Peer peer) {
+		BlockMessage response = null;
+
+		try {
+			response = fetchBlock(this.signatures.get(index), peer);
+		} catch (Exception e) {
+			// E.g. peer answered with some other message: same as no answer
+			LOGGER.debug("Bad response for block " + index + " from " + peer.getAddress() + ": " + e.getMessage());
+		} finally {
+			onResponse(index, attempt, peer, response);
+		}
+	}
 
-		// Offload block loading to seperate thread
-		new Thread("Block Loader") {
-			@Override
-			public void run() {
-				// Create block message
-				final Message message = MessageFactory.getInstance().createGetBlockMessage(signature);
+	/**
+	 * @return block with <code>signature</code> from <code>peer</code>, or <code>null</code> if it didn't send it in time
+	 */
+	private static BlockMessage fetchBlock(final byte[] signature, final Peer peer) {
+		// Create block message
+		final Message message = MessageFactory.getInstance().createGetBlockMessage(signature);
 
-				// Query response from peer
-				final BlockMessage response = (BlockMessage) peer.getResponse(message);
+		// Query response from peer
+		final BlockMessage response = (BlockMessage) peer.getResponse(message);
 
-				// Check if we have a response
-				if (response == null) {
-					error = true;
+		// Did peer respond with the block we asked for?
+		if (response == null || !Arrays.equals(response.getBlock().getSignature(), signature)) {
+			return null;
+		}
+
+		return response;
+	}
+
+	/**
+	 * Account for a finished request, whatever happened to it, and either hand over the block or retry elsewhere.
+	 */
+	private void onResponse(final int index, final int attempt, final Peer peer, final BlockMessage response) {
+		synchronized (this) {
+			this.inFlight--;
+			this.inFlightPerPeer.put(peer, this.inFlightPerPeer.get(peer) - 1);
+
+			if (!this.running) {
+				return;
+			}
+
+			if (response == null) {
+				// Back off and retry elsewhere
+				this.window = Math.max(MIN_WINDOW, this.window / 2);
+
+				if (attempt >= MAX_ATTEMPTS) {
+					LOGGER.debug("Giving up on block " + index + " after " + attempt + " attempts");
+					this.error = true;
 					return;
 				}
 
-				// Add to list
-				blockingQueue.add(response.getBlock());
+				LOGGER.trace("Retrying block " + index + " (attempt " + (attempt + 1) + ")");
+				this.retries++;
+				request(index, attempt + 1, peer);
+				return;
 			}
-		}.start();
+
+			this.window = Math.min(MAX_WINDOW, this.window + 1);
+			this.downloadedBlocks++;
+			this.downloadedBytes += response.getBlock().getDataLength();
+
+			// Start checking signatures while block waits its turn to be processed
+			this.signatureChecks.set(index, BlockSignatureVerifier.getInstance().submit(response.getBlock()));
+		}
+
+		this.slots.get(index).add(response);
+
+		fill();
 	}
 
-	public Block getBlock(byte[] signature) throws Exception {
-		// Check for errors
-		if (this.error) {
-			throw new Exception("Block buffer error");
+	/**
+	 * Wait for block at <code>index</code> in <code>signatures</code> to arrive.
+	 *
+	 * @param index
+	 * @return {BlockMessage} block and height from peer, or <code>null</code> if block didn't arrive in time
+	 * @throws Exception if block couldn't be fetched from any peer
+	 */
+	public BlockMessage getBlock(final int index) throws Exception {
+		synchronized (this) {
+			this.consumed = index;
 		}
 
-		// Update counter
-		this.counter = this.signatures.indexOf(signature);
+		// Consumer moved forward, so there may be room for more requests
+		fill();
+
+		final BlockingQueue<BlockMessage> slot = this.slots.get(index);
+		final long timeout = (long) Settings.getInstance().getConnectionTimeout() * MAX_ATTEMPTS;
+		final long deadline = System.currentTimeMillis() + timeout;
+
+		while (System.currentTimeMillis() < deadline) {
+			final BlockMessage blockMessage = slot.poll(100, TimeUnit.MILLISECONDS);
+			if (blockMessage != null) {
+				return blockMessage;
+			}
 
-		// Check if block already loaded
-		if (!this.blocks.containsKey(signature)) {
-			// Load block
-			loadBlock(signature);
+			synchronized (this) {
+				if (this.error) {
+					throw new Exception("Block buffer error");
+				}
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Result of background signature verification of block at <code>index</code>, waiting for it if necessary.
+	 * <p>
+	 * Only call once {@link #getBlock(int)} has returned that block.
+	 *
+	 * @param index
+	 * @return <code>true</code> if block's signatures, and those of its transactions, are valid
+	 * @throws Exception if verification was interrupted
+	 * @see BlockSignatureVerifier
+	 */
+	public boolean isSignatureValid(final int index) throws Exception {
+		final Future<Boolean> signatureCheck;
+		synchronized (this) {
+			signatureCheck = this.signatureChecks.get(index);
+		}
+
+		if (signatureCheck == null) {
+			throw new IllegalStateException("Block " + index + " hasn't been received yet");
 		}
 
-		// Get block
-		return this.blocks.get(signature).poll(Settings.getInstance().getConnectionTimeout(), TimeUnit.MILLISECONDS);
+		return signatureCheck.get();
+	}
+
+	public synchronized long getDownloadedBlocks() {
+		return this.downloadedBlocks;
+	}
+
+	/**
+	 * @return average download rate since this buffer was started
+	 */
+	public synchronized double getBlocksPerSecond() {
+		final long elapsed = Math.max(1, System.currentTimeMillis() - this.startTime);
+		return this.downloadedBlocks * 1000d / elapsed;
 	}
 
 	public void stopThread() {
-		try {
+		synchronized (this) {
 			this.running = false;
-			this.join();
-		} catch (InterruptedException e) {
-			// Ignore
 		}
+
+		this.executor.shutdownNow();
+
+		LOGGER.debug(String.format("Downloaded %d blocks (%d bytes, %d retries) from %d peers at %.2f blocks/sec",
+				getDownloadedBlocks(), this.downloadedBytes, this.retries, this.peers.size(), getBlocksPerSecond()));
 	}
 
 }
@@ -2,14 +2,19 @@ package qora;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,11 +23,11 @@ import ntp.NTP;
 import qora.account.PrivateKeyAccount;
 import qora.block.Block;
 import qora.block.BlockFactory;
+import qora.block.BlockHeader;
 import qora.crypto.Crypto;
 import qora.transaction.Transaction;
 import settings.Settings;
 import utils.ObserverMessage;
-import utils.TransactionFeeComparator;
 import at.AT_Block;
 import at.AT_Constants;
 import at.AT_Controller;
@@ -44,6 +49,21 @@ public final class BlockGenerator extends Thread implements Observer {
 
 	private static final Logger LOGGER = LogManager.getLogger(BlockGenerator.class);
 
+	private static final int MAX_CACHED_GENERATING_BALANCES = 10000;
+
+	/**
+	 * Next block's generating balance by signature of the block before it. Keyed by signature, not height, so blocks that
+	 * replace orphaned ones never get their results; those are just evicted in time.
+	 */
+	private static final Map<ByteBuffer, Long> NEXT_GENERATING_BALANCES = new LinkedHashMap<ByteBuffer, Long>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+			return size() > MAX_CACHED_GENERATING_BALANCES;
+		}
+	};
+
 	public enum ForgingStatus {
 		FORGING_DISABLED(0, Lang.getInstance().translate("Forging disabled")),
 		FORGING_ENABLED(1, Lang.getInstance().translate("Forging enabled")),
@@ -71,7 +91,10 @@ public final class BlockGenerator extends Thread implements Observer {
 	}
 
 	private Map<PrivateKeyAccount, Block> blocks;
+	private Set<PrivateKeyAccount> checkedAccounts;
 	private Block solvingBlock;
+	private BlockTemplate template;
+	private final Queue<Transaction> newTransactions = new ConcurrentLinkedQueue<Transaction>();
 	private List<PrivateKeyAccount> cachedAccounts;
 
 	private ForgingStatus forgingStatus = ForgingStatus.FORGING_DISABLED;
@@ -122,6 +145,11 @@ public final class BlockGenerator extends Thread implements Observer {
 	public void addUnconfirmedTransaction(QoraDb db, Transaction transaction, boolean process) {
 		// ADD TO TRANSACTION DATABASE
 		db.getTransactionMap().add(transaction);
+
+		// Generator thread adds it to block template
+		if (process && db == QoraDb.getInstance() && this.forgingStatus == ForgingStatus.FORGING) {
+			this.newTransactions.add(transaction);
+		}
 	}
 
 	public List<Transaction> getUnconfirmedTransactions() {
@@ -175,6 +203,20 @@ public final class BlockGenerator extends Thread implements Observer {
 
 					// RESET BLOCKS
 					this.blocks = new HashMap<PrivateKeyAccount, Block>();
+					this.checkedAccounts = new HashSet<PrivateKeyAccount>();
+
+					// BUILD NEW TEMPLATE FROM ALL UNCONFIRMED TRANSACTIONS, THEN SWAP IT IN
+					this.newTransactions.clear();
+					BlockTemplate newTemplate = new BlockTemplate(QoraDb.getInstance());
+					newTemplate.offerAll(QoraDb.getInstance().getTransactionMap().getOrderedTransactions(), NTP.getTime());
+					this.template = newTemplate;
+				} else {
+					// OFFER HELD TRANSACTIONS TIME HAS REACHED, THEN NEWLY ARRIVED ONES
+					this.template.advanceTo(NTP.getTime());
+					Transaction transaction;
+					while ((transaction = this.newTransactions.poll()) != null) {
+						this.template.offer(transaction, NTP.getTime());
+					}
 				}
 
 				// GENERATE NEW BLOCKS
@@ -183,13 +225,15 @@ public final class BlockGenerator extends Thread implements Observer {
 					List<PrivateKeyAccount> knownAccounts = this.getKnownAccounts();
 					synchronized (knownAccounts) {
 						for (PrivateKeyAccount account : knownAccounts) {
+							// ONLY CHECK EACH ACCOUNT ONCE PER SOLVING BLOCK, ITS GENERATING BALANCE WON'T CHANGE UNTIL NEXT
+							if (!this.checkedAccounts.add(account)) {
+								continue;
+							}
+
 							if (account.getGeneratingBalance().compareTo(BigDecimal.ONE) >= 0) {
-								// CHECK IF BLOCK FROM USER ALREADY EXISTS USE MAP ACCOUNT BLOCK EASY
-								if (!this.blocks.containsKey(account)) {
-									// GENERATE NEW BLOCK FOR USER
-									this.blocks.put(account,
-											this.generateNextBlock(QoraDb.getInstance(), account, this.solvingBlock));
-								}
+								// GENERATE NEW BLOCK FOR USER
+								this.blocks.put(account,
+										this.generateNextBlock(QoraDb.getInstance(), account, this.solvingBlock));
 							}
 						}
 					}
@@ -209,8 +253,12 @@ public final class BlockGenerator extends Thread implements Observer {
 
 					// CHECK IF BLACK TIMESTAMP IS VALID
 					if (block.getTimestamp() <= NTP.getTime() && !validBlockFound) {
-						// ADD TRANSACTIONS
-						this.addUnconfirmedTransactions(QoraDb.getInstance(), block);
+						// ADD TRANSACTIONS FROM TEMPLATE, OR FROM SCRATCH IF TEMPLATE NO LONGER APPLIES
+						if (this.template.isUsableFor(block, QoraDb.getInstance().getTransactionMap())) {
+							this.addTemplateTransactions(this.template, block);
+						} else {
+							this.addUnconfirmedTransactions(QoraDb.getInstance(), block);
+						}
 
 						// ADD TRANSACTION SIGNATURE
 						block.setTransactionsSignature(this.calculateTransactionsSignature(block, account));
@@ -352,57 +400,17 @@ public final class BlockGenerator extends Thread implements Observer {
 	}
 
 	public void addUnconfirmedTransactions(QoraDb db, Block block) {
-		long totalBytes = 0;
-		boolean transactionProcessed;
+		// SINGLE PASS OVER TRANSACTIONS, HIGHEST FEE PER BYTE FIRST
+		BlockTemplate template = new BlockTemplate(db);
+		template.offerAll(db.getTransactionMap().getOrderedTransactions(), block.getTimestamp());
 
-		// CREATE FORK OF GIVEN DATABASE
-		QoraDb newBlockDb = db.fork();
-
-		// ORDER TRANSACTIONS BY FEE PER BYTE
-		List<Transaction> orderedTransactions = new ArrayList<Transaction>(db.getTransactionMap().getValues());
-		Collections.sort(orderedTransactions, new TransactionFeeComparator());
-		// Collections.sort(orderedTransactions, Collections.reverseOrder());
-
-		do {
-			transactionProcessed = false;
-
-			for (Transaction transaction : orderedTransactions) {
-				// CHECK TRANSACTION TIMESTAMP AND DEADLINE
-				if (transaction.getTimestamp() <= block.getTimestamp()
-						&& transaction.getDeadline() > block.getTimestamp()) {
-					try {
-						// CHECK IF VALID
-						if (transaction.isValid(newBlockDb) == Transaction.VALIDATE_OK) {
-							// CHECK IF ENOUGH ROOM
-							if (totalBytes + transaction.getDataLength() <= Block.MAX_TRANSACTION_BYTES) {
-								// ADD INTO BLOCK
-								block.addTransaction(transaction);
-
-								// REMOVE FROM LIST
-								orderedTransactions.remove(transaction);
-
-								// PROCESS IN NEWBLOCKDB
-								transaction.process(newBlockDb);
-
-								// TRANSACTION PROCESSED
-								transactionProcessed = true;
-
-								// INCREASE TRANSACTIONS SIZE TOTAL
-								totalBytes += transaction.getDataLength();
-								break;
-							}
-						}
-					} catch (Exception e) {
-						LOGGER.error(e.getMessage(), e);
-						// REMOVE FROM LIST
-						orderedTransactions.remove(transaction);
-						transactionProcessed = true;
-						break;
-					}
-				}
+		this.addTemplateTransactions(template, block);
+	}
 
-			}
-		} while (transactionProcessed == true);
+	private void addTemplateTransactions(BlockTemplate template, Block block) {
+		for (Transaction transaction : template.getTransactions()) {
+			block.addTransaction(transaction);
+		}
 	}
 
 	/*
@@ -411,14 +419,48 @@ public final class BlockGenerator extends Thread implements Observer {
 	 * DBSet.getInstance().getTransactionMap().getValues())); }
 	 */
 
+	/**
+	 * Returns generating balance of the block after <code>block</code>, remembering it for stored blocks so validation and
+	 * forging don't walk back through the last {@link #RETARGET} blocks again.
+	 */
 	public static long getNextBlockGeneratingBalance(QoraDb db, Block block) {
+		ByteBuffer key = ByteBuffer.wrap(block.getSignature());
+
+		synchronized (NEXT_GENERATING_BALANCES) {
+			Long generatingBalance = NEXT_GENERATING_BALANCES.get(key);
+			if (generatingBalance != null) {
+				return generatingBalance;
+			}
+		}
+
 		int height = block.getHeight(db);
+		long generatingBalance = calculateNextBlockGeneratingBalance(db, block, height);
+
+		// Blocks not stored yet have no height, so don't remember what that gave
+		if (height > 0) {
+			synchronized (NEXT_GENERATING_BALANCES) {
+				NEXT_GENERATING_BALANCES.put(key, generatingBalance);
+			}
+		}
+
+		return generatingBalance;
+	}
+
+	/**
+	 * Works out generating balance of the block after <code>block</code>, adjusting <code>block</code>'s every
+	 * {@link #RETARGET} blocks by how long the last {@link #RETARGET} blocks took.
+	 */
+	public static long calculateNextBlockGeneratingBalance(QoraDb db, Block block) {
+		return calculateNextBlockGeneratingBalance(db, block, block.getHeight(db));
+	}
+
+	private static long calculateNextBlockGeneratingBalance(QoraDb db, Block block, int height) {
 		if (height % RETARGET == 0) {
 			// CALCULATE THE GENERATING TIME FOR LAST 10 BLOCKS
 			long generatingTime = block.getTimestamp();
 
-			// GET FIRST BLOCK OF TARGET
-			Block firstBlock = block;
+			// GET FIRST BLOCK OF TARGET, ONLY NEEDING HEADERS OF BLOCKS IN BETWEEN
+			BlockHeader firstBlock = new BlockHeader(block, height);
 			for (int i = 1; i < RETARGET; i++) {
 				firstBlock = firstBlock.getParent(db);
 			}
@@ -0,0 +1,155 @@
+package qora;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+
+import qora.block.Block;
+import qora.block.GenesisBlock;
+import qora.transaction.Transaction;
+
+/**
+ * Verifies block signatures on a shared {@link ForkJoinPool}, ahead of the serial validate/process step.
+ * <p>
+ * Signature checks don't depend on chain state, so they can run while earlier blocks are still being processed. A block's
+ * generator signature, transactions signature and its transactions' own signatures are all checked in parallel. Transaction
+ * signatures that pass are recorded via {@link Transaction#hasValidSignature()}, so they aren't verified again later.
+ * <p>
+ * Gives the same answer as {@link Block#isSignatureValid()}.
+ */
+public final class BlockSignatureVerifier {
+
+	/** Transactions per leaf task. Ed25519 verify is roughly 100us so this keeps tasks worth stealing. */
+	private static final int TRANSACTIONS_PER_TASK = 8;
+
+	private static BlockSignatureVerifier instance;
+
+	private final ForkJoinPool pool;
+
+	public static synchronized BlockSignatureVerifier getInstance() {
+		if (instance == null) {
+			instance = new BlockSignatureVerifier();
+		}
+
+		return instance;
+	}
+
+	private BlockSignatureVerifier() {
+		this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+			final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			thread.setName("Signature Verifier " + thread.getPoolIndex());
+			thread.setDaemon(true);
+			return thread;
+		}, null, false);
+	}
+
+	/**
+	 * Start verifying <code>block</code>'s signatures in the background.
+	 *
+	 * @param block
+	 * @return task whose result is <code>true</code> if all signatures are valid
+	 */
+	public ForkJoinTask<Boolean> submit(final Block block) {
+		return this.pool.submit(new BlockTask(block));
+	}
+
+	/**
+	 * Verify <code>block</code>'s signatures using the pool, waiting for the result.
+	 *
+	 * @param block
+	 * @return <code>true</code> if all signatures are valid
+	 */
+	public boolean verify(final Block block) {
+		return this.pool.invoke(new BlockTask(block));
+	}
+
+	private static final class BlockTask extends RecursiveTask<Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Block block;
+
+		BlockTask(final Block block) {
+			this.block = block;
+		}
+
+		@Override
+		protected Boolean compute() {
+			// Genesis block has its own fixed signatures
+			if (this.block instanceof GenesisBlock) {
+				return this.block.isSignatureValid();
+			}
+
+			final List<Transaction> transactions = this.block.getTransactions();
+			final TransactionsTask transactionsTask = new TransactionsTask(transactions, 0, transactions.size());
+			transactionsTask.fork();
+
+			final RecursiveTask<Boolean> transactionsSignatureTask = new RecursiveTask<Boolean>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected Boolean compute() {
+					return BlockTask.this.block.isTransactionsSignatureValid();
+				}
+			};
+			transactionsSignatureTask.fork();
+
+			// Check generator signature on this thread while the others run
+			final boolean isGeneratorSignatureValid = this.block.isGeneratorSignatureValid();
+
+			// Always join forked tasks, even if we already know the answer
+			final boolean isTransactionsSignatureValid = transactionsSignatureTask.join();
+			final boolean areTransactionsValid = transactionsTask.join();
+
+			// Pass result on, so checking block again before processing it doesn't verify everything twice
+			if (isGeneratorSignatureValid && isTransactionsSignatureValid && areTransactionsValid) {
+				this.block.setSignatureVerified();
+				return true;
+			}
+
+			return false;
+		}
+
+	}
+
+	private static final class TransactionsTask extends RecursiveTask<Boolean> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final List<Transaction> transactions;
+		private final int from;
+		private final int to;
+
+		TransactionsTask(final List<Transaction> transactions, final int from, final int to) {
+			this.transactions = transactions;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Boolean compute() {
+			if (this.to - this.from <= TRANSACTIONS_PER_TASK) {
+				for (int i = this.from; i < this.to; ++i) {
+					if (!this.transactions.get(i).hasValidSignature()) {
+						return false;
+					}
+				}
+
+				return true;
+			}
+
+			final int middle = (this.from + this.to) >>> 1;
+			final TransactionsTask left = new TransactionsTask(this.transactions, this.from, middle);
+			left.fork();
+
+			final boolean isRightValid = new TransactionsTask(this.transactions, middle, this.to).compute();
+			final boolean isLeftValid = left.join();
+
+			return isLeftValid && isRightValid;
+		}
+
+	}
+
+}
@@ -0,0 +1,270 @@
+package qora;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import database.QoraDb;
+import database.TransactionMap;
+import qora.account.Account;
+import qora.block.Block;
+import qora.transaction.Transaction;
+
+/**
+ * Transactions for the next block, validated incrementally against a fork of the chain tip.
+ * <p>
+ * Transactions are offered highest fee-per-byte first. Valid ones are processed on the fork and included straight away.
+ * Ones that aren't valid yet, e.g. waiting on an earlier transaction from the same sender or on a payment to the sender,
+ * are deferred by sender and only retried once a transaction from or crediting that sender is included. Ones from after the block timestamp they're offered
+ * for are held until the template's timestamp reaches them, see {@link #advanceTo(long)}.
+ * <p>
+ * Not thread-safe. {@link BlockGenerator} replaces its template whenever the tip changes.
+ */
+public final class BlockTemplate {
+
+	private static final Logger LOGGER = LogManager.getLogger(BlockTemplate.class);
+
+	private final byte[] parentSignature;
+	private final QoraDb fork;
+	private final List<Transaction> transactions = new ArrayList<Transaction>();
+	private final Map<String, List<Transaction>> deferredTransactions = new HashMap<String, List<Transaction>>();
+	private final List<Transaction> futureTransactions = new ArrayList<Transaction>();
+	private final Set<ByteBuffer> offeredSignatures = new HashSet<ByteBuffer>();
+	private long totalBytes = 0;
+	private long timestamp = Long.MIN_VALUE;
+
+	/**
+	 * @param db
+	 *            database whose last block will be the new block's parent
+	 */
+	public BlockTemplate(final QoraDb db) {
+		this.parentSignature = db.getBlockMap().getLastBlockSignature();
+		this.fork = db.fork();
+	}
+
+	public byte[] getParentSignature() {
+		return this.parentSignature;
+	}
+
+	/**
+	 * @return included transactions, in block order
+	 */
+	public List<Transaction> getTransactions() {
+		return this.transactions;
+	}
+
+	public long getTotalBytes() {
+		return this.totalBytes;
+	}
+
+	/**
+	 * Offer transactions, highest fee-per-byte first, for a block with given timestamp.
+	 *
+	 * @param transactions
+	 * @param timestamp
+	 *            block timestamp
+	 */
+	public void offerAll(final Iterable<Transaction> transactions, final long timestamp) {
+		for (final Transaction transaction : transactions) {
+			this.offer(transaction, timestamp);
+		}
+	}
+
+	/**
+	 * Offer a transaction for a block with given timestamp, including it if valid, or holding it if it's from after that
+	 * timestamp.
+	 *
+	 * @param transaction
+	 * @param timestamp
+	 *            block timestamp
+	 */
+	public void offer(final Transaction transaction, final long timestamp) {
+		this.advanceTo(timestamp);
+
+		// Already included, deferred or held?
+		if (!this.offeredSignatures.add(ByteBuffer.wrap(transaction.getSignature()))) {
+			return;
+		}
+
+		// Hold until template's timestamp reaches it
+		if (transaction.getTimestamp() > timestamp) {
+			this.futureTransactions.add(transaction);
+			return;
+		}
+
+		this.tryInclude(transaction, timestamp);
+	}
+
+	/**
+	 * Move template on to block timestamp <code>timestamp</code>, offering held transactions it has reached.
+	 *
+	 * @param timestamp
+	 *            block timestamp
+	 */
+	public void advanceTo(final long timestamp) {
+		if (timestamp <= this.timestamp) {
+			return;
+		}
+
+		this.timestamp = timestamp;
+
+		final List<Transaction> reached = new ArrayList<Transaction>();
+		final Iterator<Transaction> iterator = this.futureTransactions.iterator();
+		while (iterator.hasNext()) {
+			final Transaction transaction = iterator.next();
+
+			if (transaction.getTimestamp() <= timestamp) {
+				reached.add(transaction);
+				iterator.remove();
+			}
+		}
+
+		for (final Transaction transaction : reached) {
+			this.tryInclude(transaction, timestamp);
+		}
+	}
+
+	private void tryInclude(final Transaction transaction, final long timestamp) {
+		if (!this.fits(transaction, timestamp)) {
+			return;
+		}
+
+		try {
+			if (transaction.isValid(this.fork) != Transaction.VALIDATE_OK) {
+				this.defer(transaction);
+				return;
+			}
+
+			this.include(transaction);
+		} catch (Exception e) {
+			LOGGER.error(e.getMessage(), e);
+			return;
+		}
+
+		this.includeDeferred(transaction, timestamp);
+	}
+
+	private void defer(final Transaction transaction) {
+		final String sender = transaction.getCreator().getAddress();
+
+		List<Transaction> deferred = this.deferredTransactions.get(sender);
+		if (deferred == null) {
+			deferred = new ArrayList<Transaction>();
+			this.deferredTransactions.put(sender, deferred);
+		}
+
+		deferred.add(transaction);
+	}
+
+	/**
+	 * Can this template's transactions go into <code>block</code> as they are?
+	 * <p>
+	 * Not if the chain tip has moved, a transaction's timestamp or deadline doesn't suit the block's timestamp, or a
+	 * transaction has since left the unconfirmed pool.
+	 *
+	 * @param block
+	 * @param transactionMap
+	 *            unconfirmed transactions
+	 * @return <code>true</code> if usable
+	 */
+	public boolean isUsableFor(final Block block, final TransactionMap transactionMap) {
+		if (!Arrays.equals(this.parentSignature, block.getReference())) {
+			return false;
+		}
+
+		for (final Transaction transaction : this.transactions) {
+			if (transaction.getTimestamp() > block.getTimestamp() || transaction.getDeadline() <= block.getTimestamp()) {
+				return false;
+			}
+
+			if (!transactionMap.contains(transaction.getSignature())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private boolean fits(final Transaction transaction, final long timestamp) {
+		// CHECK TRANSACTION TIMESTAMP AND DEADLINE
+		if (transaction.getTimestamp() > timestamp || transaction.getDeadline() <= timestamp) {
+			return false;
+		}
+
+		// CHECK IF ENOUGH ROOM
+		return this.totalBytes + transaction.getDataLength() <= Block.MAX_TRANSACTION_BYTES;
+	}
+
+	private void include(final Transaction transaction) {
+		// PROCESS IN FORK
+		transaction.process(this.fork);
+
+		this.transactions.add(transaction);
+		this.totalBytes += transaction.getDataLength();
+	}
+
+	/**
+	 * Include deferred transactions that <code>transaction</code>, just included, has made valid, and any those make
+	 * valid in turn.
+	 * <p>
+	 * Only the deferred transactions of accounts an included transaction comes from or credits are retried, so ones that
+	 * never become valid are not revalidated after every include.
+	 */
+	private void includeDeferred(final Transaction transaction, final long timestamp) {
+		final Deque<Transaction> included = new ArrayDeque<Transaction>();
+		included.add(transaction);
+
+		while (!included.isEmpty() && !this.deferredTransactions.isEmpty()) {
+			final Transaction cause = included.poll();
+
+			final Set<String> woken = new HashSet<String>();
+			woken.add(cause.getCreator().getAddress());
+			for (final Account account : cause.getRecipientAccounts()) {
+				woken.add(account.getAddress());
+			}
+
+			for (final String address : woken) {
+				final List<Transaction> deferred = this.deferredTransactions.get(address);
+				if (deferred == null) {
+					continue;
+				}
+
+				final Iterator<Transaction> iterator = deferred.iterator();
+				while (iterator.hasNext()) {
+					final Transaction candidate = iterator.next();
+
+					if (!this.fits(candidate, timestamp)) {
+						continue;
+					}
+
+					try {
+						if (candidate.isValid(this.fork) == Transaction.VALIDATE_OK) {
+							this.include(candidate);
+							iterator.remove();
+							included.add(candidate);
+						}
+					} catch (Exception e) {
+						LOGGER.error(e.getMessage(), e);
+						iterator.remove();
+					}
+				}
+
+				if (deferred.isEmpty()) {
+					this.deferredTransactions.remove(address);
+				}
+			}
+		}
+	}
+
+}
@@ -10,6 +10,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import controller.Controller;
+import database.HeightMap;
 import database.QoraDb;
 import qora.account.Account;
 import qora.assets.Asset;
@@ -24,6 +25,7 @@ import utils.Pair;
 public final class Blockchain {
 
 	public static final int MAX_SIGNATURES = 500;
+	public static final int MAX_LOCATOR_SIGNATURES = 64;
 	public static final Map<Integer, String> CHECKPOINTS = new HashMap<>();
 
 	private static final Logger LOGGER = LogManager.getLogger(Blockchain.class);
@@ -124,21 +126,115 @@ public final class Blockchain {
 		return QoraDb.getInstance().getHeightMap().get(lastBlockSignature);
 	}
 
+	/**
+	 * Up to {@link #MAX_SIGNATURES} signatures of blocks following <code>parent</code> on our main chain.
+	 * <p>
+	 * Served from the height index, so no blocks are loaded.
+	 * 
+	 * @param parent
+	 * @return signatures, empty if <code>parent</code> isn't on our main chain
+	 */
 	public List<byte[]> getSignatures(final byte[] parent) {
 		final List<byte[]> headers = new ArrayList<byte[]>();
-		// Check if block exists
-		if (QoraDb.getInstance().getBlockMap().contains(parent)) {
-			Block parentBlock = QoraDb.getInstance().getBlockMap().get(parent).getChild();
-			int counter = 0;
-			while (parentBlock != null && counter < MAX_SIGNATURES) {
-				headers.add(parentBlock.getSignature());
-				parentBlock = parentBlock.getChild();
-				counter++;
+
+		final int parentHeight = this.getMainChainHeight(parent);
+		if (parentHeight == -1) {
+			return headers;
+		}
+
+		final HeightMap heightMap = QoraDb.getInstance().getHeightMap();
+		final int lastHeight = this.getHeight();
+		for (int height = parentHeight + 1; height <= lastHeight && headers.size() < MAX_SIGNATURES; ++height) {
+			final byte[] signature = heightMap.getBlockByHeight(height);
+			if (signature == null) {
+				break;
 			}
+
+			headers.add(signature);
 		}
+
 		return headers;
 	}
 
+	/**
+	 * Signatures following the best match from a peer's block locator.
+	 * <p>
+	 * The first signature returned is the highest locator entry that's on our main chain, so the peer knows where the
+	 * rest follow on from.
+	 * 
+	 * @param locator
+	 *            peer's block signatures, highest first
+	 * @return matched signature then up to {@link #MAX_SIGNATURES} following signatures, or empty if nothing in
+	 *         <code>locator</code> is on our main chain
+	 * 
+	 * @see #getBlockLocator()
+	 */
+	public List<byte[]> getSignatures(final List<byte[]> locator) {
+		for (final byte[] signature : locator) {
+			if (this.getMainChainHeight(signature) != -1) {
+				final List<byte[]> headers = new ArrayList<byte[]>();
+				headers.add(signature);
+				headers.addAll(this.getSignatures(signature));
+				return headers;
+			}
+		}
+
+		return new ArrayList<byte[]>();
+	}
+
+	/**
+	 * Exponentially spaced signatures from our main chain: the last 10 blocks, then doubling the step back to genesis.
+	 * <p>
+	 * Lets a peer find the common block in one round-trip however long our chains have diverged.
+	 * 
+	 * @return signatures, highest first, always ending with genesis
+	 */
+	public List<byte[]> getBlockLocator() {
+		final HeightMap heightMap = QoraDb.getInstance().getHeightMap();
+		final List<byte[]> locator = new ArrayList<byte[]>();
+
+		int step = 1;
+		for (int height = this.getHeight(); height > 1 && locator.size() < MAX_LOCATOR_SIGNATURES - 1; height -= step) {
+			final byte[] signature = heightMap.getBlockByHeight(height);
+			if (signature != null) {
+				locator.add(signature);
+			}
+
+			if (locator.size() >= 10) {
+				step *= 2;
+			}
+		}
+
+		locator.add(heightMap.getBlockByHeight(1));
+		return locator;
+	}
+
+	/**
+	 * @param signature
+	 * @return height of block if it's on our main chain, otherwise -1
+	 */
+	public int getMainChainHeight(final byte[] signature) {
+		final HeightMap heightMap = QoraDb.getInstance().getHeightMap();
+
+		// Height map keeps entries for orphaned blocks, so check index agrees
+		final int height = heightMap.get(signature);
+		if (height == -1 || height > this.getHeight() || !Arrays.equals(heightMap.getBlockByHeight(height), signature)) {
+			return -1;
+		}
+
+		return height;
+	}
+
+	/**
+	 * @param height
+	 * @param signature
+	 * @return <code>false</code> if there's a checkpoint at <code>height</code> that <code>signature</code> doesn't match
+	 */
+	public static boolean passesCheckpoint(final int height, final byte[] signature) {
+		final String checkpoint = CHECKPOINTS.get(height);
+		return checkpoint == null || Arrays.equals(Base58.decode(checkpoint), signature);
+	}
+
 	public Block getBlock(final byte[] header) {
 		return QoraDb.getInstance().getBlockMap().get(header);
 	}
@@ -149,7 +245,7 @@ public final class Blockchain {
 			return false;
 		}
 
-		// Check if signature is valid
+		// Check if signature is valid, unless it's already been verified in the background
 		if (!block.isSignatureValid()) {
 			return false;
 		}
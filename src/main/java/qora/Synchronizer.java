@@ -4,11 +4,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import network.Peer;
+import network.message.BlockHeadersMessage;
 import network.message.BlockMessage;
 import network.message.Message;
 import network.message.MessageFactory;
@@ -17,10 +19,13 @@ import network.message.TransactionMessage;
 import qora.block.Block;
 import qora.crypto.Base58;
 import qora.transaction.Transaction;
+import settings.Settings;
 import at.AT;
 import at.AT_API_Platform_Impl;
 import at.AT_Constants;
 
+import controller.Controller;
+
 import com.google.common.primitives.Bytes;
 
 import database.QoraDb;
@@ -28,8 +33,14 @@ import database.QoraDb;
 public final class Synchronizer {
 	
 	private static final Logger LOGGER = LogManager.getLogger(Synchronizer.class);
+
+	/** How long to sync with a peer that didn't reply to our block locator the legacy way, before asking it again */
+	private static final long LEGACY_PEER_TIMEOUT = 30 * 60 * 1000; // 30 minutes
 	
 	private boolean running;
+	private double blocksPerSecond;
+	// When each peer was found not to reply to our block locator
+	private final Map<Peer, Long> legacyPeers = new WeakHashMap<Peer, Long>();
 
 	public Synchronizer() {
 		this.running = true;
@@ -37,19 +48,99 @@ public final class Synchronizer {
 
 	/**
 	 * Find last common block with peer
+	 * <p>
+	 * Sends peer our block locator so the common block is usually found in one round-trip. Falls back to walking back
+	 * a chunk of signatures at a time for peers that don't understand locators.
 	 * 
-	 * @param {Peer} peer
+	 * @param {Peer}         peer
+	 * @param {List<byte[]>} following filled with any signatures peer has already sent us after the common block
+	 * @return {Block} Last common block with peer.
+	 * @throws {Exception} Thrown if peer fails to respond OR has no common block.
+	 * 
+	 * @see Blockchain#getBlockLocator()
+	 */
+	private Block findLastCommonBlock(final Peer peer, final List<byte[]> following) throws Exception {
+		if (!this.isLegacyPeer(peer)) {
+			final List<byte[]> headers = this.getLocatorSignatures(peer);
+
+			if (headers != null) {
+				return this.findLastCommonBlock(headers, peer, following);
+			}
+
+			// Peer doesn't understand locators (or is very slow) so don't ask again for a while
+			LOGGER.debug("No reply to block locator from " + peer.getAddress().getHostAddress() + " - using legacy sync");
+			synchronized (this.legacyPeers) {
+				this.legacyPeers.put(peer, System.currentTimeMillis());
+			}
+		}
+
+		return this.findLastCommonBlockByWalking(peer, following);
+	}
+
+	/**
+	 * Find last common block given peer's reply to our block locator.
+	 * <p>
+	 * First signature in reply is the best match from our locator. If we have all the following signatures too, we ask
+	 * again from the last one.
+	 * 
+	 * @param {List<byte[]>} headers
+	 * @param {Peer}         peer
+	 * @param {List<byte[]>} following filled with any signatures peer has already sent us after the common block
+	 * @return {Block} Last common block with peer.
+	 * @throws {Exception} Thrown if peer fails to respond OR has no common block.
+	 */
+	private Block findLastCommonBlock(List<byte[]> headers, final Peer peer, final List<byte[]> following) throws Exception {
+		final Controller controller = Controller.getInstance();
+
+		// If headers is empty then peer has NO common block, not even genesis block
+		if (headers.size() == 0) {
+			throw new Exception("Peer has no common block - not even genesis block");
+		}
+
+		// Best match should be from our own locator
+		if (controller.getMainChainHeight(headers.get(0)) == -1) {
+			throw new Exception("Peer matched block that isn't on our chain");
+		}
+
+		while (true) {
+			// Work forward until we find a block we don't have
+			int i = 1;
+			while (i < headers.size() && controller.getMainChainHeight(headers.get(i)) != -1) {
+				++i;
+			}
+
+			final byte[] lastCommonSignature = headers.get(i - 1);
+
+			// Peer's chain diverges inside this chunk, or peer has no more blocks
+			if (i < headers.size() || headers.size() == 1) {
+				following.addAll(headers.subList(i, headers.size()));
+				return QoraDb.getInstance().getBlockMap().get(lastCommonSignature);
+			}
+
+			// We have all of them, so carry on from last
+			headers = this.getBlockSignatures(lastCommonSignature, peer);
+			headers.add(0, lastCommonSignature);
+		}
+	}
+
+	/**
+	 * Find last common block with peer by requesting signatures from further and further back.
+	 * 
+	 * @param {Peer}         peer
+	 * @param {List<byte[]>} following filled with any signatures peer has already sent us after the common block
 	 * @return {Block} Last common block with peer.
 	 * @throws {Exception} Thrown if peer fails to respond OR has no common block.
 	 * 
 	 * @see Synchronizer#getBlockSignatures(byte[], Peer)
 	 */
-	private Block findLastCommonBlock(final Peer peer) throws Exception {
+	private Block findLastCommonBlockByWalking(final Peer peer, final List<byte[]> following) throws Exception {
+		final QoraDb db = QoraDb.getInstance();
+
 		// Start with our last known block / blockchain tip.
-		Block block = QoraDb.getInstance().getBlockMap().getLastBlock();
+		Block block = db.getBlockMap().getLastBlock();
+		int height = block.getHeight();
 
 		// Request headers until common block is found or all blocks have been checked.
-		// TODO: might be good to check block heights match too?
 
 		// Request a chunk of headers
 		List<byte[]> headers = this.getBlockSignatures(block.getSignature(), peer);
@@ -60,11 +151,10 @@ public final class Synchronizer {
 		}
 
 		// NB: empty headers means peer is unaware of the block signature we sent
-		while (headers.size() == 0 && block.getHeight() > 1) {
-			// Go back a chunk of blocks, or until we hit genesis block
-			for (int i = 0; i < Blockchain.MAX_SIGNATURES && block.getHeight() > 1; ++i) {
-				block = block.getParent();
-			}
+		while (headers.size() == 0 && height > 1) {
+			// Go back a chunk of blocks, or until we hit genesis block, using height index
+			height = Math.max(1, height - Blockchain.MAX_SIGNATURES);
+			block = db.getBlockMap().get(db.getHeightMap().getBlockByHeight(height));
 
 			// Request chunk of headers from this further back block
 			headers = this.getBlockSignatures(block.getSignature(), peer);
@@ -79,73 +169,201 @@ public final class Synchronizer {
 		// Work back from peer's signature list to find common block
 		for (int i = headers.size() - 1; i >= 0; --i) {
 			// If we have this block too then it's the common block so return it
-			final Block foundBlock = QoraDb.getInstance().getBlockMap().get(headers.get(i));
-			if (foundBlock != null) {
-				return foundBlock;
+			if (db.getBlockMap().contains(headers.get(i))) {
+				following.addAll(headers.subList(i + 1, headers.size()));
+				return db.getBlockMap().get(headers.get(i));
 			}
 		}
 
 		// We didn't find any common blocks from peer's signature list but at least the
 		// block we requested is common, so return that.
+		following.addAll(headers);
 		return block;
 	}
 
+	private boolean isLegacyPeer(final Peer peer) {
+		synchronized (this.legacyPeers) {
+			final Long since = this.legacyPeers.get(peer);
+			if (since == null) {
+				return false;
+			}
+
+			// Peer may have been upgraded, or was only slow, so give locators another go now and then
+			if (System.currentTimeMillis() - since > LEGACY_PEER_TIMEOUT) {
+				this.legacyPeers.remove(peer);
+				return false;
+			}
+
+			return true;
+		}
+	}
+
 	/**
-	 * Request block from peer using block signature.
+	 * Forget what we know about <code>peer</code> once it's disconnected.
 	 * 
-	 * @param {byte[]} signature
-	 * @param {Peer}   peer
-	 * @return {BlockMessage} Block and height from peer.
-	 * @throws {Exception} Thrown if peer doesn't respond OR send invalid block
-	 *                     (based on received signature).
+	 * @param {Peer} peer
 	 */
-	private BlockMessage getBlock(final byte[] signature, final Peer peer) throws Exception {
-		// Create message
-		final Message message = MessageFactory.getInstance().createGetBlockMessage(signature);
+	public void onDisconnect(final Peer peer) {
+		synchronized (this.legacyPeers) {
+			this.legacyPeers.remove(peer);
+		}
+	}
 
-		// Send to peer and await response
-		final BlockMessage response = (BlockMessage) peer.getResponse(message);
+	/**
+	 * Request signatures from peer using our block locator.
+	 * 
+	 * @param {Peer} peer
+	 * @return {List<byte[]>} Best match from locator followed by next block signatures, or <code>null</code> if peer
+	 *         didn't reply.
+	 */
+	private List<byte[]> getLocatorSignatures(final Peer peer) {
+		final Message message = MessageFactory.getInstance().createGetLocatorSignaturesMessage(Controller.getInstance().getBlockLocator());
 
+		final SignaturesMessage response = (SignaturesMessage) peer.getResponse(message);
 		if (response == null) {
-			throw new Exception("Peer didn't respond with block");
+			return null;
+		}
+
+		return response.getSignatures();
+	}
+
+	/**
+	 * Headers-first: check chain of headers for <code>signatures</code> follows on from <code>lastCommonBlock</code>
+	 * before downloading whole blocks.
+	 * <p>
+	 * Checks linkage, generator signatures, timestamps and checkpoints. The rest of each block is checked once it arrives.
+	 * Skipped for peers that don't serve headers.
+	 * 
+	 * @param {Block}        lastCommonBlock
+	 * @param {List<byte[]>} signatures
+	 * @param {Peer}         peer
+	 * @throws {Exception} Thrown if peer fails to respond OR header chain is invalid.
+	 */
+	private void checkHeaders(final Block lastCommonBlock, final List<byte[]> signatures, final Peer peer) throws Exception {
+		if (!Settings.getInstance().isHeadersFirstSync() || this.isLegacyPeer(peer)) {
+			return;
+		}
+
+		byte[] previousSignature = lastCommonBlock.getSignature();
+		long previousTimestamp = lastCommonBlock.getTimestamp();
+		int height = lastCommonBlock.getHeight();
+
+		for (int start = 0; start < signatures.size(); start += Blockchain.MAX_SIGNATURES) {
+			final List<byte[]> chunk = signatures.subList(start, Math.min(signatures.size(), start + Blockchain.MAX_SIGNATURES));
+
+			final Message message = MessageFactory.getInstance().createGetBlockHeadersMessage(new ArrayList<byte[]>(chunk));
+			final BlockHeadersMessage response = (BlockHeadersMessage) peer.getResponse(message);
+			if (response == null) {
+				throw new Exception("Peer didn't respond with block headers");
+			}
+
+			final List<Block> headers = response.getHeaders();
+			if (headers.size() != chunk.size()) {
+				throw new Exception("Peer sent " + headers.size() + " block headers, we expected " + chunk.size());
+			}
+
+			for (int i = 0; i < headers.size(); ++i) {
+				final Block header = headers.get(i);
+				++height;
+
+				if (!Arrays.equals(header.getSignature(), chunk.get(i))) {
+					throw new Exception("Peer sent header for wrong block at height " + height);
+				}
+
+				if (!Arrays.equals(header.getReference(), previousSignature)) {
+					throw new Exception("Peer sent header that doesn't follow on at height " + height);
+				}
+
+				if (header.getTimestamp() <= previousTimestamp) {
+					throw new Exception("Peer sent header with out-of-order timestamp at height " + height);
+				}
+
+				if (!Blockchain.passesCheckpoint(height, header.getSignature())) {
+					throw new Exception("Peer sent header that doesn't pass checkpoint at height " + height);
+				}
+
+				if (!header.isGeneratorSignatureValid()) {
+					throw new Exception("Peer sent header with invalid generator signature at height " + height);
+				}
+
+				previousSignature = header.getSignature();
+				previousTimestamp = header.getTimestamp();
+			}
 		}
 
-		// Deserialize block prior to checking and returning
-		final Block block = response.getBlock();
+		LOGGER.debug("Checked " + signatures.size() + " block headers from " + peer.getAddress().getHostAddress());
+	}
 
-		// Check block signature
-		if (!block.isSignatureValid()) {
+	/**
+	 * Check block received from peer before we try to use it.
+	 * 
+	 * @param {BlockBuffer} blockBuffer
+	 * @param {int}         index
+	 * @param {Block}       block
+	 * @throws {Exception} Thrown if block has invalid signature or fails
+	 *                     checkpoints.
+	 */
+	private void checkBlock(final BlockBuffer blockBuffer, final int index, final Block block) throws Exception {
+		// Check block signature (already verifying in background)
+		if (!blockBuffer.isSignatureValid(index)) {
 			throw new Exception("Invalid block signature");
 		}
-		
+
 		// Check if block passes checkpoints
 		if (!block.passesCheckpoints()) {
 			throw new Exception("Block doesn't pass checkpoints");
 		}
+	}
+
+	/**
+	 * Peers to download blocks from: <code>peer</code> first, followed by any
+	 * other peers that claim to have at least <code>minimumHeight</code> blocks.
+	 * 
+	 * @param {Peer} peer
+	 * @param {int}  minimumHeight
+	 * @return {List<Peer>} Download peers, never empty.
+	 */
+	private List<Peer> getDownloadPeers(final Peer peer, final int minimumHeight) {
+		final List<Peer> peers = new ArrayList<Peer>();
+		peers.add(peer);
+
+		for (final Peer otherPeer : Controller.getInstance().getPeersWithHeight(minimumHeight)) {
+			if (otherPeer != peer) {
+				peers.add(otherPeer);
+			}
+		}
 
-		// Block has valid signature - return it
-		return response;
+		return peers;
 	}
 
 	/**
-	 * Given list of block signatures, request corresponding blocks from peer
+	 * Given list of block signatures, request corresponding blocks from peers
 	 * 
 	 * @param {List<byte[]>} signatures
-	 * @param {Peer}         peer
-	 * @return {List<BlockMessage>} Blocks and heights from peer.
-	 * @throws {Exception} Thrown if peer doesn't respond.
+	 * @param {List<Peer>}   peers
+	 * @return {List<BlockMessage>} Blocks and heights from peers.
+	 * @throws {Exception} Thrown if peers don't respond OR send invalid block.
 	 */
-	private List<BlockMessage> getBlocks(final List<byte[]> signatures, final Peer peer) throws Exception {
+	private List<BlockMessage> getBlocks(final List<byte[]> signatures, final List<Peer> peers) throws Exception {
 		final List<BlockMessage> blockMessages = new ArrayList<BlockMessage>();
-		for (byte[] signature : signatures) {
-			// Request block and add to list
-			final BlockMessage blockMessage = this.getBlock(signature, peer);
-			if (blockMessage == null) {
-				break;
-			}
+		final BlockBuffer blockBuffer = new BlockBuffer(signatures, peers);
 
-			blockMessages.add(blockMessage);
+		try {
+			for (int i = 0; i < signatures.size(); ++i) {
+				final BlockMessage blockMessage = blockBuffer.getBlock(i);
+				if (blockMessage == null) {
+					throw new Exception("Peer didn't respond with block");
+				}
+
+				this.checkBlock(blockBuffer, i, blockMessage.getBlock());
+
+				blockMessages.add(blockMessage);
+			}
+		} finally {
+			blockBuffer.stopThread();
+			this.blocksPerSecond = blockBuffer.getBlocksPerSecond();
 		}
+
 		return blockMessages;
 	}
 
@@ -155,22 +373,27 @@ public final class Synchronizer {
 	 * <p>
 	 * Can return fewer than <code>minimumAmount</code> signatures if peer doesn't
 	 * have enough. Can return more then <code>minimumAmount<code> signatures as
-	 * they are requested in chunks.
+	 * they are requested in chunks. Signatures peer has already sent us are only
+	 * requested again if there are none.
 	 * 
-	 * @param {Block} start
-	 * @param {int}   minimumAmount
-	 * @param {Peer}  peer
+	 * @param {Block}        start
+	 * @param {List<byte[]>} known signatures peer has already sent us after <code>start</code>
+	 * @param {int}          minimumAmount
+	 * @param {Peer}         peer
 	 * @return {List<byte[]>} List of block signatures from peer.
 	 * @throws {Exception} Thrown if peer fails to respond.
 	 * 
 	 * @see Synchronizer#getBlockSignatures(byte[], Peer)
 	 */
-	private List<byte[]> getBlockSignatures(final Block start, final int minimumAmount, final Peer peer) throws Exception {
+	private List<byte[]> getBlockSignatures(final Block start, final List<byte[]> known, final int minimumAmount, final Peer peer)
+			throws Exception {
 		// NB: "headers" refers to block signatures
-		LOGGER.trace("Requesting " + minimumAmount + " block signatures after height " + start.getHeight());
+		LOGGER.trace("Requesting " + minimumAmount + " block signatures after height " + start.getHeight() + ", "
+				+ known.size() + " already known");
 
-		// Request chunk of next block signatures after "start" block from peer
-		final List<byte[]> headers = this.getBlockSignatures(start.getSignature(), peer);
+		// Request chunk of next block signatures after "start" block from peer, unless we have some already
+		final List<byte[]> headers = known.isEmpty() ? this.getBlockSignatures(start.getSignature(), peer)
+				: new ArrayList<byte[]>(known);
 
 		// We didn't even manage to get any response from peer!
 		if (headers == null) {
@@ -210,7 +433,7 @@ public final class Synchronizer {
 	 * @return {List<byte[]>} List of block signatures from peer.
 	 * @throws {Exception} Thrown if peer fails to respond.
 	 * 
-	 * @see Synchronizer#getBlockSignatures(Block, int, Peer)
+	 * @see Synchronizer#getBlockSignatures(Block, List, int, Peer)
 	 */
 	private List<byte[]> getBlockSignatures(final byte[] header, final Peer peer) throws Exception {
 		// NB: "headers" refers to block signatures
@@ -230,8 +453,10 @@ public final class Synchronizer {
 	/**
 	 * Repeatedly orphan blocks back to at least <code>lastCommonBlock</code>.
 	 * <p>
-	 * In some cases this method can orphan further back than
-	 * <code>lastCommonBlock</code> to the next AT state storage block.
+	 * AT states are rolled back exactly to <code>lastCommonBlock</code>. Only
+	 * below states that were compacted or imported from an older database, which
+	 * are kept per AT state storage distance, can this method orphan further back
+	 * than <code>lastCommonBlock</code>, see {@link database.ATStateMap#getRollbackHeight(int)}.
 	 * 
 	 * @param {DBSet}             dbOrFork
 	 * @param {Block}             lastCommonBlock
@@ -251,12 +476,11 @@ public final class Synchronizer {
 			return;
 		}
 
-		// Get AT states to rollback
-		final Map<String, byte[]> states = dbOrFork.getATStateMap().getStates(lastCommonBlock.getHeight());
+		// Height AT states can be rolled back to, usually last common block itself
+		final int height = dbOrFork.getATStateMap().getRollbackHeight(lastCommonBlock.getHeight());
 
-		// Nearest AT state storage block below last common block
-		final int height = (int) (Math.floor(lastCommonBlock.getHeight() / AT_Constants.STATE_STORE_DISTANCE))
-				* AT_Constants.STATE_STORE_DISTANCE;
+		// Get AT states to rollback
+		final Map<String, byte[]> states = dbOrFork.getATStateMap().getStates(height);
 
 		// Start with last known block
 		Block lastBlock = dbOrFork.getBlockMap().getLastBlock();
@@ -272,7 +496,7 @@ public final class Synchronizer {
 			lastBlock = dbOrFork.getBlockMap().getLastBlock();
 		}
 
-		while (lastBlock.getHeight() >= height && lastBlock.getHeight() > 1) {
+		while (lastBlock.getHeight() > height && lastBlock.getHeight() > 1) {
 			// Optionally save orphaned transactions if caller has provided
 			// storage
 			if (orphanedTransactions != null) {
@@ -331,19 +555,61 @@ public final class Synchronizer {
 
 		// Block good to go
 
-		// Set/unset "processing" flag so if client crashes during process we know to
-		// rollback and recover.
-		// (See Controller.start() for this test).
-		QoraDb.getInstance().getBlockMap().setProcessing(true);
+		// Process block as one unit of work so DB is never committed part-way through a block.
+		// If processing fails, everything since last commit is rolled back.
+		final QoraDb db = QoraDb.getInstance();
+		db.beginBlock();
+		try {
+			block.process();
+		} catch (RuntimeException e) {
+			this.abortBlock(db);
+			throw e;
+		}
+		db.endBlock();
+
+		return true;
+	}
+
+	/**
+	 * Process a valid block within the unit of work the caller holds. The caller aborts that if this fails.
+	 *
+	 * @return <code>true</code> if block was valid and processed
+	 */
+	private synchronized boolean processInUnit(final Block block) {
+		if (!block.isValid()) {
+			return false;
+		}
+
 		block.process();
-		QoraDb.getInstance().getBlockMap().setProcessing(false);
 		return true;
 	}
 
+	/**
+	 * Abandon unit of work after a failure. If that leaves database needing rebuilding, e.g. in bulk sync mode, stop
+	 * processing blocks rather than building more on top of a partly written one.
+	 */
+	private void abortBlock(final QoraDb db) {
+		db.abortBlock();
+
+		if (db.isRecoveryNeeded()) {
+			LOGGER.error("Database needs rebuilding - no longer synchronizing");
+			this.stop();
+		}
+	}
+
 	public void stop() {
 		this.running = false;
 	}
 
+	/**
+	 * Download rate achieved by the most recent block download.
+	 * 
+	 * @return {double} blocks per second
+	 */
+	public double getBlocksPerSecond() {
+		return this.blocksPerSecond;
+	}
+
 	/**
 	 * Synchronize our blockchain using <code>newBlocks</code> from peer that start
 	 * from <code>lastCommonBlock</code>.
@@ -354,7 +620,8 @@ public final class Synchronizer {
 	 * @param {DBSet}       db
 	 * @param {Block}       lastCommonBlock
 	 * @param {List<Block>} newBlocks
-	 * @return {List<Transaction>} Transactions orphaned during synchronization.
+	 * @return {List<Transaction>} Transactions orphaned during synchronization, or
+	 *         null if shutting down stopped it, leaving our blockchain as it was.
 	 * @throws {Exception} <code>newBlocks</code> from peer must validate.
 	 */
 	public List<Transaction> synchronize(final QoraDb db, final Block lastCommonBlock, final List<BlockMessage> newBlockMessages)
@@ -446,28 +713,41 @@ public final class Synchronizer {
 		// We keep a list of orphaned transactions to return to caller.
 		final List<Transaction> orphanedTransactions = new ArrayList<Transaction>();
 		orphanedBlocks.clear();
-		this.orphanBackToCommonBlock(db, lastCommonBlock, orphanedBlocks, orphanedTransactions);
 
-		// Reapply orphaned blocks
-		for (final Block block : orphanedBlocks) {
-			// Early bail-out if shutting down
-			if (!this.running) {
-				return orphanedTransactions;
+		// Whole reorganization is one unit of work so DB is never committed with only some blocks orphaned.
+		// Blocks are processed within it, so only this level aborts on failure.
+		db.beginBlock();
+		try {
+			this.orphanBackToCommonBlock(db, lastCommonBlock, orphanedBlocks, orphanedTransactions);
+
+			// Reapply orphaned blocks
+			for (final Block block : orphanedBlocks) {
+				// Early bail-out if shutting down, undoing reorganization so far
+				if (!this.running) {
+					this.abortBlock(db);
+					return null;
+				}
+
+				this.processInUnit(block); // Synchronized
 			}
 
-			this.process(block); // Synchronized
-		}
+			// Apply new blocks
+			for (final BlockMessage blockMessage : newBlockMessages) {
+				// Early bail-out if shutting down, undoing reorganization so far
+				if (!this.running) {
+					this.abortBlock(db);
+					return null;
+				}
 
-		// Apply new blocks
-		for (final BlockMessage blockMessage : newBlockMessages) {
-			// Early bail-out if shutting down
-			if (!this.running) {
-				return orphanedTransactions;
+				this.processInUnit(blockMessage.getBlock()); // Synchronized
 			}
-
-			this.process(blockMessage.getBlock()); // Synchronized
+		} catch (RuntimeException e) {
+			this.abortBlock(db);
+			throw e;
 		}
 
+		db.endBlock();
+
 		// Some of these transactions might have been reapplied above.
 		return orphanedTransactions;
 	}
@@ -484,13 +764,14 @@ public final class Synchronizer {
 	 * @param {Peer} peer
 	 * @throws {Exception} Throws if peer sends invalid block.
 	 * 
-	 * @see Synchronizer#findLastCommonBlock(Peer)
-	 * @see Synchronizer#getBlockSignatures(Block, int, Peer)
+	 * @see Synchronizer#findLastCommonBlock(Peer, List)
+	 * @see Synchronizer#getBlockSignatures(Block, List, int, Peer)
 	 * @see BlockBuffer
 	 */
 	public void synchronize(final Peer peer) throws Exception {
-		// Find last common block with peer
-		final Block lastCommonBlock = findLastCommonBlock(peer);
+		// Find last common block with peer, keeping any signatures after it that peer sent along the way
+		final List<byte[]> following = new ArrayList<byte[]>();
+		final Block lastCommonBlock = findLastCommonBlock(peer, following);
 
 		// Didn't get any response from peer
 		if (lastCommonBlock == null) {
@@ -506,7 +787,7 @@ public final class Synchronizer {
 					+ peer.getAddress().getHostAddress());
 
 			// Request next chunk of block signatures from peer
-			final List<byte[]> signatures = this.getBlockSignatures(lastCommonBlock, Blockchain.MAX_SIGNATURES, peer);
+			final List<byte[]> signatures = this.getBlockSignatures(lastCommonBlock, following, Blockchain.MAX_SIGNATURES, peer);
 
 			// We didn't get any response for signatures since lastCommonBlock
 			if (signatures == null) {
@@ -517,46 +798,62 @@ public final class Synchronizer {
 				throw new Exception("Received no block signatures from peer");
 			}
 
-			// Create block buffer to request blocks from peer
-			final BlockBuffer blockBuffer = new BlockBuffer(signatures, peer);
+			this.checkHeaders(lastCommonBlock, signatures, peer);
+
+			// Create block buffer to request blocks from peer and any others that have them
+			final List<Peer> peers = this.getDownloadPeers(peer, lastBlock.getHeight() + signatures.size());
+			final BlockBuffer blockBuffer = new BlockBuffer(signatures, peers);
 
 			int expectedBlockHeight = lastBlock.getHeight() + 1;
 
-			// Process block-by-block as they arrive into block buffer
-			for (final byte[] signature : signatures) {
-				// Wait for block to arrive from peer into block buffer
-				final Block block = blockBuffer.getBlock(signature);
+			try {
+				// Process block-by-block, in order, as they arrive into block buffer
+				for (int i = 0; i < signatures.size(); ++i) {
+					// Wait for block to arrive from peers into block buffer
+					final BlockMessage blockMessage = blockBuffer.getBlock(i);
 
-				if (block == null) {
-					throw new Exception("Timed out receiving block from peer");
-				}
+					if (blockMessage == null) {
+						throw new Exception("Timed out receiving block from peer");
+					}
 
-				// Check received block height matches our expectations
-				// A height of -1 means it's a new block (which is okay)
-				final int height = block.getHeight();
-				if (height != -1 && height != expectedBlockHeight) {
-					throw new Exception("Peer sent out-of-order block " + block.getHeight() + ", we expected block "
-							+ expectedBlockHeight);
-				}
+					final Block block = blockMessage.getBlock();
 
-				// Process block from peer
-				if (!process(block)) {
-					// Didn't process because we're shutting down?
-					if (!this.running) {
-						break;
+					// Wait for background signature verification
+					if (!blockBuffer.isSignatureValid(i)) {
+						throw new Exception("Peer sent block with invalid signature");
 					}
 
-					// Peer sent us an invalid block
-					LOGGER.debug("Couldn't validate peer's block " + block.getHeight());
-					throw new Exception("Peer sent invalid block");
-				}
+					// Check received block height matches our expectations
+					// A height of -1 means it's a new block (which is okay)
+					final int height = block.getHeight();
+					if (height != -1 && height != expectedBlockHeight) {
+						throw new Exception("Peer sent out-of-order block " + block.getHeight() + ", we expected block "
+								+ expectedBlockHeight);
+					}
+
+					// Process block from peer
+					if (!process(block)) {
+						// Didn't process because we're shutting down?
+						if (!this.running) {
+							break;
+						}
 
-				expectedBlockHeight++;
+						// Peer sent us an invalid block
+						LOGGER.debug("Couldn't validate peer's block " + block.getHeight());
+						throw new Exception("Peer sent invalid block");
+					}
+
+					expectedBlockHeight++;
+				}
+			} finally {
+				// Block buffer no longer needed: we've finished processing, failed or we're
+				// shutting down
+				blockBuffer.stopThread();
+				this.blocksPerSecond = blockBuffer.getBlocksPerSecond();
 			}
 
-			// Block buffer no longer needed: we've finished processing or we're shutting
-			// down
-			blockBuffer.stopThread();
+			LOGGER.info(String.format("Synchronized %d blocks using %d peers at %.2f blocks/sec",
+					blockBuffer.getDownloadedBlocks(), peers.size(), this.blocksPerSecond));
 		} else {
 			LOGGER.info(
 					"Synchronizing using peer " + peer.getAddress().getHostAddress() + " from last common block height "
@@ -565,7 +862,7 @@ public final class Synchronizer {
 			// Request signatures from peer covering from last common block height to our
 			// blockchain tip height
 			final int amount = Math.min(lastBlock.getHeight() - lastCommonBlock.getHeight(), Blockchain.MAX_SIGNATURES);
-			final List<byte[]> signatures = this.getBlockSignatures(lastCommonBlock, amount, peer);
+			final List<byte[]> signatures = this.getBlockSignatures(lastCommonBlock, following, amount, peer);
 
 			if (signatures == null) {
 				return;
@@ -575,8 +872,11 @@ public final class Synchronizer {
 				throw new Exception("Received no block signatures from peer");
 			}
 
+			this.checkHeaders(lastCommonBlock, signatures, peer);
+
 			// Request all the blocks using received signatures.
-			final List<BlockMessage> blockMessages = this.getBlocks(signatures, peer);
+			final List<Peer> peers = this.getDownloadPeers(peer, lastCommonBlock.getHeight() + signatures.size());
+			final List<BlockMessage> blockMessages = this.getBlocks(signatures, peers);
 
 			// Synchronize our blockchain using received blocks starting from
 			// lastCommonBlock
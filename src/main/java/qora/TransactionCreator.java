@@ -2,6 +2,7 @@ package qora;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -82,9 +83,10 @@ public class TransactionCreator {
 		 */
 
 		// First filter unconfirmed transactions, keeping those created by this wallet.
-		List<Account> accounts = Controller.getInstance().getAccounts();
-		List<Transaction> transactions = QoraDb.getInstance().getTransactionMap().getTransactions();
-		transactions.removeIf((Transaction transaction) -> !accounts.contains(transaction.getCreator()));
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		for (Account account : Controller.getInstance().getAccounts()) {
+			transactions.addAll(QoraDb.getInstance().getTransactionMap().getTransactionsBySender(account.getAddress()));
+		}
 
 		// Sort transactions chronologically
 		Collections.sort(transactions, new TransactionTimestampComparator());
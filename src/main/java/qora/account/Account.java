@@ -1,18 +1,12 @@
 package qora.account;
 
 import java.math.BigDecimal;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 
-import org.mapdb.Fun.Tuple2;
-
-import at.AT_Transaction;
 import controller.Controller;
 import qora.BlockGenerator;
-import qora.block.Block;
-import qora.transaction.Transaction;
+import qora.crypto.Base58;
 import utils.NumberAsString;
+import database.BalanceMap;
 import database.QoraDb;
 
 public class Account {
@@ -20,22 +14,86 @@ public class Account {
 	public static final int ADDRESS_LENGTH = 25;
 
 	protected String address;
-
-	private byte[] lastBlockSignature;
-	private BigDecimal generatingBalance;
+	private Address parsedAddress;
+	private byte[] addressBytes;
 
 	protected Account() {
-		this.generatingBalance = BigDecimal.ZERO.setScale(8);
 	}
 
 	public Account(String address) {
 		this.address = address;
 	}
 
+	public Account(Address address) {
+		this.setAddress(address);
+	}
+
+	protected void setAddress(Address address) {
+		this.address = address.toString();
+		this.parsedAddress = address.isValid() ? address : null;
+		this.addressBytes = address.getBytes();
+	}
+
 	public String getAddress() {
 		return address;
 	}
 
+	/**
+	 * @return interned address, or <code>null</code> if address isn't valid
+	 */
+	public Address toAddress() {
+		if (this.parsedAddress == null) {
+			this.parsedAddress = Address.parse(this.getAddress());
+		}
+
+		return this.parsedAddress;
+	}
+
+	public boolean isValidAddress() {
+		return this.toAddress() != null;
+	}
+
+	/**
+	 * @return raw address bytes, for serializing - don't modify. Invalid addresses are decoded as plain Base58 if
+	 *         possible, otherwise <code>null</code>.
+	 */
+	public byte[] getAddressBytes() {
+		if (this.addressBytes == null) {
+			final Address parsed = this.toAddress();
+			if (parsed != null) {
+				this.addressBytes = parsed.getBytes();
+			} else {
+				try {
+					this.addressBytes = Base58.decode(this.getAddress());
+				} catch (NumberFormatException e) {
+					return null;
+				}
+			}
+		}
+
+		return this.addressBytes;
+	}
+
+	/**
+	 * @param address
+	 *            Base58 address
+	 * @return {@link #ADDRESS_LENGTH} raw bytes, or <code>null</code> if address isn't valid Base58 of that length
+	 */
+	public static byte[] decodeAddress(final String address) {
+		if (address == null) {
+			return null;
+		}
+
+		final Address parsed = Address.parse(address);
+		if (parsed != null) {
+			return parsed.getBytes();
+		}
+
+		// Checksum doesn't matter here
+		final byte[] bytes = new byte[ADDRESS_LENGTH];
+		return Base58.decode(address, bytes) ? bytes : null;
+	}
+
 	// BALANCE
 
 	public BigDecimal getUnconfirmedBalance() {
@@ -51,7 +109,7 @@ public class Account {
 	}
 
 	public BigDecimal getConfirmedBalance(QoraDb db) {
-		return db.getBalanceMap().get(getAddress());
+		return db.getBalanceMap().get(this.getAddressBytes(), BalanceMap.QORA_KEY);
 	}
 
 	public BigDecimal getConfirmedBalance(long key) {
@@ -59,7 +117,7 @@ public class Account {
 	}
 
 	public BigDecimal getConfirmedBalance(long key, QoraDb db) {
-		return db.getBalanceMap().get(getAddress(), key);
+		return db.getBalanceMap().get(this.getAddressBytes(), key);
 	}
 
 	public void setConfirmedBalance(BigDecimal amount) {
@@ -68,7 +126,7 @@ public class Account {
 
 	public void setConfirmedBalance(BigDecimal amount, QoraDb db) {
 		// Actually update balance in DB
-		db.getBalanceMap().set(getAddress(), amount);
+		db.getBalanceMap().set(this.getAddressBytes(), BalanceMap.QORA_KEY, amount);
 	}
 
 	public void setConfirmedBalance(long key, BigDecimal amount) {
@@ -77,7 +135,7 @@ public class Account {
 
 	public void setConfirmedBalance(long key, BigDecimal amount, QoraDb db) {
 		// Actually update balance in DB
-		db.getBalanceMap().set(getAddress(), key, amount);
+		db.getBalanceMap().set(this.getAddressBytes(), key, amount);
 	}
 
 	public BigDecimal getBalance(int confirmations) {
@@ -93,43 +151,35 @@ public class Account {
 		if (confirmations == 1)
 			return this.getConfirmedBalance(db);
 
-		/*
-		 * For a balance with more confirmations work back from lastBlock, undoing transactions involving this account, until we have processed required number
-		 * of blocks.
-		 */
-		BigDecimal balance = this.getConfirmedBalance(db);
-		Block block = db.getBlockMap().getLastBlock();
-
-		// Note: "block.getHeight(db) > 1" to make sure we don't examine genesis block
-		for (int i = 1; i < confirmations && block != null && block.getHeight(db) > 1; ++i) {
-			for (Transaction transaction : block.getTransactions()) {
-				if (transaction.isInvolved(this))
-					balance = balance.subtract(transaction.getAmount(this));
-			}
-
-			// Also check AT transactions for amounts received to this account
-			LinkedHashMap<Tuple2<Integer, Integer>, AT_Transaction> atTxs = db.getATTransactionMap().getATTransactions(block.getHeight(db));
-			Iterator<AT_Transaction> iter = atTxs.values().iterator();
-			while (iter.hasNext()) {
-				AT_Transaction key = iter.next();
-
-				if (key.getRecipient().equals(this.getAddress()))
-					balance = balance.subtract(BigDecimal.valueOf(key.getAmount(), 8));
-			}
+		// Balance as of the block confirmations - 1 blocks before last block
+		final int lastHeight = getLastHeight(db);
+		return this.getBalanceAtHeight(Math.max(lastHeight - confirmations + 1, 1), lastHeight, db);
+	}
 
-			block = block.getParent(db);
-		}
+	/**
+	 * Returns confirmed balance as of block at <code>height</code>, by undoing the amounts of transactions involving this
+	 * account and AT payments to it in the blocks since.
+	 * <p>
+	 * Like {@link #getBalance(int)}, doesn't undo block fees or AT payments this account sent, and never undoes the genesis
+	 * block.
+	 */
+	public BigDecimal getBalanceAtHeight(int height, QoraDb db) {
+		return this.getBalanceAtHeight(Math.max(height, 1), getLastHeight(db), db);
+	}
 
-		// Return balance
-		return balance;
+	private BigDecimal getBalanceAtHeight(int height, int lastHeight, QoraDb db) {
+		return this.getConfirmedBalance(db).subtract(db.getBalanceHistoryMap().getChange(this.getAddress(), height, lastHeight));
 	}
 
-	private void updateGeneratingBalance(QoraDb db) {
-		// If our cached lastBlock has changed then we need to recalculate this account's generating balance
-		if (this.lastBlockSignature == null || !Arrays.equals(this.lastBlockSignature, db.getBlockMap().getLastBlockSignature())) {
-			this.lastBlockSignature = db.getBlockMap().getLastBlockSignature();
-			this.generatingBalance = calculateGeneratingBalance(db);
-		}
+	/**
+	 * Returns height of last block in <code>db</code>, or 0 if there's none.
+	 */
+	private static int getLastHeight(QoraDb db) {
+		final byte[] signature = db.getBlockMap().getLastBlockSignature();
+		if (signature == null || !db.getHeightMap().contains(signature))
+			return 0;
+
+		return db.getHeightMap().get(signature);
 	}
 
 	/**
@@ -139,32 +189,10 @@ public class Account {
 	 * 
 	 */
 	public BigDecimal calculateGeneratingBalance(QoraDb db) {
-		BigDecimal balance = this.getConfirmedBalance(db);
-
-		Block block = db.getBlockMap().getLastBlock();
-
-		for (int i = 1; i < BlockGenerator.RETARGET && block != null && block.getHeight(db) > 1; ++i) {
-			for (Transaction transaction : block.getTransactions()) {
-				if (transaction.isInvolved(this)) {
-					final BigDecimal amount = transaction.getAmount(this);
-
-					// Subtract positive amounts only
-					if (amount.compareTo(BigDecimal.ZERO) == 1)
-						balance = balance.subtract(amount);
-				}
-			}
-
-			LinkedHashMap<Tuple2<Integer, Integer>, AT_Transaction> atTxs = db.getATTransactionMap().getATTransactions(block.getHeight(db));
-			Iterator<AT_Transaction> iter = atTxs.values().iterator();
-			while (iter.hasNext()) {
-				AT_Transaction key = iter.next();
+		final int lastHeight = getLastHeight(db);
+		final int height = Math.max(lastHeight - BlockGenerator.RETARGET + 1, 1);
 
-				if (key.getRecipient().equals(this.getAddress()))
-					balance = balance.subtract(BigDecimal.valueOf(key.getAmount(), 8));
-			}
-
-			block = block.getParent(db);
-		}
+		BigDecimal balance = this.getConfirmedBalance(db).subtract(db.getBalanceHistoryMap().getReceived(this.getAddress(), height, lastHeight));
 
 		// Do not go below 0
 		// XXX: How would this even be possible?
@@ -178,12 +206,21 @@ public class Account {
 		return this.getGeneratingBalance(QoraDb.getInstance());
 	}
 
+	/**
+	 * Returns current generating balance, reusing the last one worked out for this address unless the last block or
+	 * confirmed balance changed since, see {@link GeneratingBalanceCache}.
+	 */
 	public BigDecimal getGeneratingBalance(QoraDb db) {
-		// Potentially update generating balance
-		updateGeneratingBalance(db);
+		final byte[] lastBlockSignature = db.getBlockMap().getLastBlockSignature();
+		final BigDecimal confirmedBalance = this.getConfirmedBalance(db);
+
+		BigDecimal generatingBalance = GeneratingBalanceCache.getInstance().get(this.getAddress(), lastBlockSignature, confirmedBalance);
+		if (generatingBalance == null) {
+			generatingBalance = this.calculateGeneratingBalance(db);
+			GeneratingBalanceCache.getInstance().put(this.getAddress(), lastBlockSignature, confirmedBalance, generatingBalance);
+		}
 
-		// Return generating balance
-		return this.generatingBalance;
+		return generatingBalance;
 	}
 
 	// REFERENCE
@@ -0,0 +1,166 @@
+package qora.account;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import qora.crypto.Base58;
+import qora.crypto.Crypto;
+
+/**
+ * Interned address, holding both its Base58 form and its {@link Account#ADDRESS_LENGTH} raw bytes.
+ * <p>
+ * Addresses are looked up by public key, raw bytes or Base58 string through bounded LRU caches, so the same address
+ * seen again (e.g. a busy recipient, or a sender with several transactions in a block) isn't hashed, decoded or
+ * checksummed again. Only valid addresses are cached, so junk from peers can't flush out real ones.
+ * <p>
+ * Immutable. {@link #getBytes()} returns the shared array, which callers must not modify.
+ */
+public final class Address {
+
+	private static final int MAX_CACHED_ADDRESSES = 65536;
+
+	private static final Map<ByteBuffer, Address> BY_PUBLIC_KEY = createCache();
+	private static final Map<ByteBuffer, Address> BY_BYTES = createCache();
+	private static final Map<String, Address> BY_STRING = createCache();
+
+	private final String address;
+	private final byte[] bytes;
+	private final boolean valid;
+
+	private Address(final String address, final byte[] bytes, final boolean valid) {
+		this.address = address;
+		this.bytes = bytes;
+		this.valid = valid;
+	}
+
+	private static <K> Map<K, Address> createCache() {
+		return Collections.synchronizedMap(new LinkedHashMap<K, Address>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, Address> eldest) {
+				return size() > MAX_CACHED_ADDRESSES;
+			}
+		});
+	}
+
+	/**
+	 * @param publicKey
+	 * @return address belonging to public key
+	 */
+	public static Address fromPublicKey(final byte[] publicKey) {
+		Address address = BY_PUBLIC_KEY.get(ByteBuffer.wrap(publicKey));
+		if (address == null) {
+			final byte[] bytes = Crypto.getInstance().getAddressBytes(publicKey);
+			address = intern(new Address(Base58.encode(bytes), bytes, true));
+			BY_PUBLIC_KEY.put(ByteBuffer.wrap(publicKey.clone()), address);
+		}
+
+		return address;
+	}
+
+	/**
+	 * @param bytes
+	 *            {@link Account#ADDRESS_LENGTH} raw address bytes, e.g. from a serialized transaction
+	 * @return address, which might not be valid
+	 * @throws IllegalArgumentException
+	 *             if <code>bytes</code> is the wrong length
+	 */
+	public static Address fromBytes(final byte[] bytes) {
+		if (bytes.length != Account.ADDRESS_LENGTH) {
+			throw new IllegalArgumentException("Address must be " + Account.ADDRESS_LENGTH + " bytes");
+		}
+
+		final Address address = BY_BYTES.get(ByteBuffer.wrap(bytes));
+		if (address != null) {
+			return address;
+		}
+
+		final byte[] copy = bytes.clone();
+		if (!Crypto.getInstance().isValidAddressBytes(copy)) {
+			// Not cached so junk input can't flush out real addresses
+			return new Address(Base58.encode(copy), copy, false);
+		}
+
+		return intern(new Address(Base58.encode(copy), copy, true));
+	}
+
+	/**
+	 * @param address
+	 *            Base58 address
+	 * @return valid address, or <code>null</code> if <code>address</code> isn't valid
+	 */
+	public static Address parse(final String address) {
+		if (address == null) {
+			return null;
+		}
+
+		final Address parsed = BY_STRING.get(address);
+		if (parsed != null) {
+			return parsed;
+		}
+
+		final byte[] bytes = new byte[Account.ADDRESS_LENGTH];
+		if (!Base58.decode(address, bytes) || !Crypto.getInstance().isValidAddressBytes(bytes)) {
+			// Not cached so junk input can't flush out real addresses
+			return null;
+		}
+
+		return intern(new Address(address, bytes, true));
+	}
+
+	/**
+	 * @param address
+	 *            Base58 address
+	 * @return <code>true</code> if address has a known version byte and correct checksum
+	 */
+	public static boolean isValid(final String address) {
+		return parse(address) != null;
+	}
+
+	private static Address intern(final Address address) {
+		BY_STRING.put(address.address, address);
+		BY_BYTES.put(ByteBuffer.wrap(address.bytes), address);
+		return address;
+	}
+
+	/**
+	 * @return raw address bytes - don't modify
+	 */
+	public byte[] getBytes() {
+		return this.bytes;
+	}
+
+	public boolean isValid() {
+		return this.valid;
+	}
+
+	@Override
+	public boolean equals(final Object other) {
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof Address)) {
+			return false;
+		}
+
+		return this.address.equals(((Address) other).address);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.address.hashCode();
+	}
+
+	/**
+	 * @return Base58 address
+	 */
+	@Override
+	public String toString() {
+		return this.address;
+	}
+
+}
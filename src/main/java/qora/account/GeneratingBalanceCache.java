@@ -0,0 +1,92 @@
+package qora.account;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Generating balances by address, shared by every {@link Account} instance for it.
+ * <p>
+ * Each entry remembers the last block and confirmed balance it was worked out from and is only used while both are
+ * unchanged. Processing or orphaning a block moves the last block, and AT payments made while validating the next block
+ * change confirmed balances, so either way the balance is worked out again. Least recently used entries are evicted once
+ * the cache is full.
+ */
+public final class GeneratingBalanceCache {
+
+	private static final int MAX_ENTRIES = 100000;
+
+	private static GeneratingBalanceCache instance;
+
+	private final Map<String, Entry> balances;
+
+	private static final class Entry {
+		private final byte[] lastBlockSignature;
+		private final BigDecimal confirmedBalance;
+		private final BigDecimal generatingBalance;
+
+		private Entry(final byte[] lastBlockSignature, final BigDecimal confirmedBalance, final BigDecimal generatingBalance) {
+			this.lastBlockSignature = lastBlockSignature;
+			this.confirmedBalance = confirmedBalance;
+			this.generatingBalance = generatingBalance;
+		}
+	}
+
+	public static synchronized GeneratingBalanceCache getInstance() {
+		if (instance == null) {
+			instance = new GeneratingBalanceCache();
+		}
+
+		return instance;
+	}
+
+	private GeneratingBalanceCache() {
+		this.balances = new LinkedHashMap<String, Entry>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+
+	/**
+	 * @return generating balance of <code>address</code> worked out after block <code>lastBlockSignature</code> with
+	 *         <code>confirmedBalance</code>, or <code>null</code> if there's none
+	 */
+	public BigDecimal get(final String address, final byte[] lastBlockSignature, final BigDecimal confirmedBalance) {
+		final Entry entry;
+		synchronized (this.balances) {
+			entry = this.balances.get(address);
+		}
+
+		if (entry == null || !Arrays.equals(entry.lastBlockSignature, lastBlockSignature)
+				|| entry.confirmedBalance.compareTo(confirmedBalance) != 0) {
+			return null;
+		}
+
+		return entry.generatingBalance;
+	}
+
+	/**
+	 * Remember <code>generatingBalance</code> of <code>address</code> after block <code>lastBlockSignature</code> with
+	 * <code>confirmedBalance</code>.
+	 */
+	public void put(final String address, final byte[] lastBlockSignature, final BigDecimal confirmedBalance,
+			final BigDecimal generatingBalance) {
+		final Entry entry = new Entry(lastBlockSignature, confirmedBalance, generatingBalance);
+
+		synchronized (this.balances) {
+			this.balances.put(address, entry);
+		}
+	}
+
+	public void clear() {
+		synchronized (this.balances) {
+			this.balances.clear();
+		}
+	}
+
+}
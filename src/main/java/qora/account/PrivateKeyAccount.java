@@ -12,7 +12,7 @@ public class PrivateKeyAccount extends PublicKeyAccount {
 		this.seed = seed;
 		this.keyPair = Crypto.getInstance().createKeyPair(seed);
 		this.publicKey = keyPair.getB();
-		this.address = Crypto.getInstance().getAddress(this.publicKey);
+		this.setAddress(Address.fromPublicKey(this.publicKey));
 	}
 
 	public byte[] getSeed() {
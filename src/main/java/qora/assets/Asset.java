@@ -12,6 +12,7 @@ import com.google.common.primitives.Longs;
 import controller.Controller;
 import database.QoraDb;
 import qora.account.Account;
+import qora.account.Address;
 import qora.crypto.Base58;
 import qora.transaction.Transaction;
 
@@ -84,7 +85,7 @@ public class Asset {
 		
 		//READ OWNER
 		byte[] ownerBytes = Arrays.copyOfRange(data, position, position + OWNER_LENGTH);
-		Account owner = new Account(Base58.encode(ownerBytes));
+		Account owner = new Account(Address.fromBytes(ownerBytes));
 		position += OWNER_LENGTH;
 		
 		//READ NAME
@@ -139,7 +140,7 @@ public class Asset {
 		//WRITE OWNER
 		try
 		{
-			data = Bytes.concat(data , Base58.decode(this.owner.getAddress()));
+			data = Bytes.concat(data , this.owner.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -0,0 +1,170 @@
+package qora.assets;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import org.json.simple.JSONObject;
+
+/**
+ * Open, high, low, close and volume of the trades in one asset pair during one interval.
+ * <p>
+ * Amounts are in terms of the pair's base asset, the one with the larger key, and prices are how much of the other (quote)
+ * asset one unit of base went for. Candles are immutable; adding a trade returns a new candle.
+ * <p>
+ * Trades sharing a timestamp (one order filling several others) have no order between them, so open takes the lowest and
+ * close the highest of their prices. That way a candle only depends on which trades it covers, not the order they were
+ * processed in, and rebuilding one after an orphan gives the same result.
+ */
+public final class Candle {
+
+	public static final int SCALE = 8;
+
+	private final long timestamp;
+	private final long trades;
+	private final BigDecimal open;
+	private final BigDecimal high;
+	private final BigDecimal low;
+	private final BigDecimal close;
+	private final BigDecimal volume;
+	private final BigDecimal quoteVolume;
+	private final long openTime;
+	private final long closeTime;
+
+	public Candle(final long timestamp, final long trades, final BigDecimal open, final BigDecimal high, final BigDecimal low,
+			final BigDecimal close, final BigDecimal volume, final BigDecimal quoteVolume, final long openTime,
+			final long closeTime) {
+		this.timestamp = timestamp;
+		this.trades = trades;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.quoteVolume = quoteVolume;
+		this.openTime = openTime;
+		this.closeTime = closeTime;
+	}
+
+	/**
+	 * Returns price of <code>volume</code> base traded for <code>quoteVolume</code>, or null if no base changed hands.
+	 */
+	public static BigDecimal getPrice(final BigDecimal volume, final BigDecimal quoteVolume) {
+		if (volume.signum() == 0) {
+			return null;
+		}
+
+		return quoteVolume.divide(volume, SCALE, RoundingMode.FLOOR);
+	}
+
+	/**
+	 * Returns candle starting at <code>timestamp</code> holding just one trade.
+	 */
+	public static Candle of(final long timestamp, final BigDecimal volume, final BigDecimal quoteVolume, final long time) {
+		final BigDecimal price = getPrice(volume, quoteVolume);
+		return new Candle(timestamp, 1, price, price, price, price, volume, quoteVolume, time, time);
+	}
+
+	/**
+	 * Returns this candle with another trade of <code>volume</code> base for <code>quoteVolume</code> at <code>time</code>.
+	 */
+	public Candle add(final BigDecimal volume, final BigDecimal quoteVolume, final long time) {
+		final BigDecimal price = getPrice(volume, quoteVolume);
+
+		BigDecimal open = this.open;
+		BigDecimal high = this.high;
+		BigDecimal low = this.low;
+		BigDecimal close = this.close;
+		long openTime = this.openTime;
+		long closeTime = this.closeTime;
+
+		if (price != null) {
+			if (open == null || time < openTime || (time == openTime && price.compareTo(open) < 0)) {
+				open = price;
+				openTime = time;
+			}
+
+			if (close == null || time > closeTime || (time == closeTime && price.compareTo(close) > 0)) {
+				close = price;
+				closeTime = time;
+			}
+
+			high = high == null ? price : high.max(price);
+			low = low == null ? price : low.min(price);
+		}
+
+		return new Candle(this.timestamp, this.trades + 1, open, high, low, close, this.volume.add(volume),
+				this.quoteVolume.add(quoteVolume), openTime, closeTime);
+	}
+
+	/**
+	 * Returns this candle without the volume of a trade. Prices are left alone, see {@link #isExtreme}.
+	 */
+	public Candle subtract(final BigDecimal volume, final BigDecimal quoteVolume) {
+		return new Candle(this.timestamp, this.trades - 1, this.open, this.high, this.low, this.close,
+				this.volume.subtract(volume), this.quoteVolume.subtract(quoteVolume), this.openTime, this.closeTime);
+	}
+
+	/**
+	 * Returns true if removing a trade at <code>price</code> and <code>time</code> could change any price of this candle.
+	 */
+	public boolean isExtreme(final BigDecimal price, final long time) {
+		return price != null && (time == this.openTime || time == this.closeTime || price.compareTo(this.high) >= 0
+				|| price.compareTo(this.low) <= 0);
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public long getTrades() {
+		return this.trades;
+	}
+
+	public BigDecimal getOpen() {
+		return this.open;
+	}
+
+	public BigDecimal getHigh() {
+		return this.high;
+	}
+
+	public BigDecimal getLow() {
+		return this.low;
+	}
+
+	public BigDecimal getClose() {
+		return this.close;
+	}
+
+	public BigDecimal getVolume() {
+		return this.volume;
+	}
+
+	public BigDecimal getQuoteVolume() {
+		return this.quoteVolume;
+	}
+
+	public long getOpenTime() {
+		return this.openTime;
+	}
+
+	public long getCloseTime() {
+		return this.closeTime;
+	}
+
+	@SuppressWarnings("unchecked")
+	public JSONObject toJson() {
+		final JSONObject candle = new JSONObject();
+
+		candle.put("timestamp", this.timestamp);
+		candle.put("trades", this.trades);
+		candle.put("open", this.open == null ? null : this.open.toPlainString());
+		candle.put("high", this.high == null ? null : this.high.toPlainString());
+		candle.put("low", this.low == null ? null : this.low.toPlainString());
+		candle.put("close", this.close == null ? null : this.close.toPlainString());
+		candle.put("volume", this.volume.toPlainString());
+		candle.put("quoteVolume", this.quoteVolume.toPlainString());
+
+		return candle;
+	}
+}
@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 import com.google.common.primitives.Bytes;
@@ -11,7 +12,7 @@ import com.google.common.primitives.Longs;
 
 import database.QoraDb;
 import qora.account.Account;
-import qora.crypto.Base58;
+import qora.account.Address;
 import qora.transaction.Transaction;
 
 public class Order implements Comparable<Order> {
@@ -170,7 +171,7 @@ public class Order implements Comparable<Order> {
 		
 		//READ CREATOR
 		byte[] creatorBytes = Arrays.copyOfRange(data, position, position + CREATOR_LENGTH);
-		Account creator = new Account(Base58.encode(creatorBytes));
+		Account creator = new Account(Address.fromBytes(creatorBytes));
 		position += CREATOR_LENGTH;
 		
 		//READ HAVE
@@ -219,7 +220,7 @@ public class Order implements Comparable<Order> {
 		//WRITE CREATOR
 		try
 		{
-			data = Bytes.concat(data , Base58.decode(this.creator.getAddress()));
+			data = Bytes.concat(data , this.creator.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -277,19 +278,22 @@ public class Order implements Comparable<Order> {
 		//ADD ORDER TO DATABASE
 		db.getOrderMap().add(this.copy());
 		
-		//GET ALL ORDERS(WANT, HAVE) LOWEST PRICE FIRST
-		List<Order> orders = db.getOrderMap().getOrders(this.want, this.have);
+		//GET ORDERS(WANT, HAVE) LOWEST PRICE FIRST, READING ONLY THOSE WE GET TO
+		Iterator<Order> orders = db.getOrderMap().getOrderBook(this.want, this.have);
+		
+		//DIVISIBILITY DOESN'T CHANGE WHILE MATCHING, SO LOOK IT UP ON FIRST MATCH ONLY
+		Boolean wantDivisible = null;
+		Boolean haveDivisible = null;
 		
 		//TRY AND COMPLETE ORDERS
 		boolean completedOrder = true;
-		int i = 0;
-		while(completedOrder && i < orders.size())
+		while(completedOrder && orders.hasNext())
 		{
 			//RESET COMPLETED
 			completedOrder = false;
 			
 			//GET ORDER
-			Order order = orders.get(i);
+			Order order = orders.next();
 			
 			//CALCULATE BUYING PRICE
 			BigDecimal buyingPrice = BigDecimal.ONE.setScale(8).divide(order.getPrice(), RoundingMode.DOWN);
@@ -307,7 +311,12 @@ public class Order implements Comparable<Order> {
 					if(amount.compareTo(BigDecimal.ZERO) > 0)
 					{
 						//CALCULATE THE INCREMENTS AT WHICH WE HAVE TO BUY
-						BigDecimal increment = this.calculateBuyIncrement(order, db);
+						if(wantDivisible == null)
+						{
+							wantDivisible = this.getWantAsset(db).isDivisible();
+							haveDivisible = this.getHaveAsset(db).isDivisible();
+						}
+						BigDecimal increment = calculateBuyIncrement(order, wantDivisible, haveDivisible);
 						
 						//CALCULATE THE AMOUNT WE CAN BUY
 						amount = amount.subtract(amount.remainder(increment));
@@ -328,9 +337,6 @@ public class Order implements Comparable<Order> {
 						completedOrder = true;
 					}
 				}
-			
-			//INCREMENT I
-			i++;
 		}	
 	}
 	
@@ -350,6 +356,11 @@ public class Order implements Comparable<Order> {
 	}
 	
 	public BigDecimal calculateBuyIncrement(Order order, QoraDb db)
+	{
+		return calculateBuyIncrement(order, this.getWantAsset(db).isDivisible(), this.getHaveAsset(db).isDivisible());
+	}
+	
+	private static BigDecimal calculateBuyIncrement(Order order, boolean wantDivisible, boolean haveDivisible)
 	{
 		BigInteger multiplier = BigInteger.valueOf(100000000l);
 		
@@ -361,11 +372,11 @@ public class Order implements Comparable<Order> {
 		priceAmount = priceAmount.divide(gcd);
 		
 		//CALCULATE GCD IN COMBINATION WITH DIVISIBILITY
-		if(this.getWantAsset(db).isDivisible())
+		if(wantDivisible)
 		{
 			haveAmount = haveAmount.multiply(multiplier);
 		}
-		if(this.getHaveAsset(db).isDivisible())
+		if(haveDivisible)
 		{
 			priceAmount = priceAmount.multiply(multiplier);
 		}
@@ -373,7 +384,7 @@ public class Order implements Comparable<Order> {
 		
 		//CALCULATE THE INCREMENT AT WHICH WE HAVE TO BUY
 		BigDecimal increment = new BigDecimal(haveAmount.divide(gcd));
-		if(this.getWantAsset(db).isDivisible())
+		if(wantDivisible)
 		{
 			increment = increment.divide(new BigDecimal(multiplier));
 		}
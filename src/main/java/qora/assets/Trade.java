@@ -167,6 +167,10 @@ public class Trade {
 		//ADD TRADE TO DATABASE
 		db.getTradeMap().add(this);
 		
+		//UPDATE MARKET DATA
+		db.getAssetStatsMap().addTrade(initiator);
+		db.getCandleMap().add(this, initiator);
+		
 		//UPDATE FULFILLED
 		initiator.setFulfilled(initiator.getFulfilled().add(this.price));
 		target.setFulfilled(target.getFulfilled().add(this.amount));
@@ -236,6 +240,10 @@ public class Trade {
 		
 		//REMOVE FROM DATABASE
 		db.getTradeMap().delete(this);
+		
+		//REVERSE MARKET DATA
+		db.getAssetStatsMap().removeTrade(initiator);
+		db.getCandleMap().remove(this, initiator, db);
 	}
 	
 	@Override 
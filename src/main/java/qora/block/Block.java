@@ -2,12 +2,15 @@ package qora.block;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import ntp.NTP;
 
@@ -26,7 +29,7 @@ import qora.crypto.Crypto;
 import qora.transaction.DeployATTransaction;
 import qora.transaction.GenesisTransaction;
 import qora.transaction.Transaction;
-import qora.transaction.TransactionFactory;
+import qora.transaction.TransactionView;
 import utils.Converter;
 import at.AT_API_Platform_Impl;
 import at.AT_Block;
@@ -40,6 +43,7 @@ import com.google.common.primitives.Bytes;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
 
+import database.BlockCache;
 import database.QoraDb;
 
 public class Block {
@@ -70,9 +74,21 @@ public class Block {
 	protected PublicKeyAccount generator;
 	protected byte[] generatorSignature;
 
-	private List<Transaction> transactions;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicReferenceFieldUpdater<Block, List> TRANSACTIONS_UPDATER = AtomicReferenceFieldUpdater
+			.newUpdater(Block.class, List.class, "transactions");
+
+	// PARSED ON FIRST USE, WITHOUT LOCKING
+	private volatile List<Transaction> transactions;
+	private volatile List<TransactionView> transactionViews;
 	private int transactionCount;
-	private byte[] rawTransactions;
+	private volatile byte[] rawTransactions;
+
+	// CANONICAL BYTES AS STORED, DROPPED ONCE TRANSACTIONS ARE HANDED OUT
+	private volatile byte[] rawBytes;
+
+	// SET ONCE ALL SIGNATURES ARE KNOWN TO BE VALID, DROPPED IF BLOCK IS MODIFIED
+	private volatile boolean signatureVerified;
 
 	protected byte[] transactionsSignature;
 
@@ -146,42 +162,90 @@ public class Block {
 	public void setTransactionData(int transactionCount, byte[] rawTransactions) {
 		this.transactionCount = transactionCount;
 		this.rawTransactions = rawTransactions;
+		this.transactionViews = null;
+		this.rawBytes = null;
+		this.signatureVerified = false;
+	}
+
+	/**
+	 * Keep the canonical serialized form of this block, so {@link #toBytes()} can return it without re-serializing.
+	 * <p>
+	 * Only for bytes known to be canonical, e.g. as written by {@link database.serializer.BlockSerializer}. Dropped as soon
+	 * as the block could be modified.
+	 *
+	 * @param rawBytes
+	 */
+	public void setRawBytes(byte[] rawBytes) {
+		this.rawBytes = rawBytes;
+	}
+
+	public boolean hasRawBytes() {
+		return this.rawBytes != null;
 	}
 
 	public int getTransactionCount() {
 		return this.transactionCount;
 	}
 
-	public synchronized List<Transaction> getTransactions() {
-		if (this.transactions == null) {
+	public List<Transaction> getTransactions() {
+		// CALLER MIGHT MODIFY LIST
+		this.rawBytes = null;
+		this.signatureVerified = false;
+
+		List<Transaction> transactions = this.transactions;
+		if (transactions == null) {
 			// LOAD TRANSACTIONS
-			this.transactions = new ArrayList<Transaction>();
+			transactions = new ArrayList<Transaction>();
 
 			try {
-				int position = 0;
-				for (int i = 0; i < transactionCount; i++) {
-					// GET TRANSACTION SIZE
-					byte[] transactionLengthBytes = Arrays.copyOfRange(this.rawTransactions, position,
-							position + TRANSACTION_SIZE_LENGTH);
-					int transactionLength = Ints.fromByteArray(transactionLengthBytes);
-
+				for (TransactionView view : this.getTransactionViews()) {
 					// PARSE TRANSACTION
-					byte[] transactionBytes = Arrays.copyOfRange(this.rawTransactions,
-							position + TRANSACTION_SIZE_LENGTH, position + TRANSACTION_SIZE_LENGTH + transactionLength);
-					Transaction transaction = TransactionFactory.getInstance().parse(transactionBytes);
-
-					// ADD TO TRANSACTIONS
-					this.transactions.add(transaction);
-
-					// ADD TO POSITION
-					position += TRANSACTION_SIZE_LENGTH + transactionLength;
+					transactions.add(view.getTransaction());
 				}
 			} catch (Exception e) {
 				// FAILED TO LOAD TRANSACTIONS
 			}
+
+			// IF ANOTHER THREAD GOT THERE FIRST, USE ITS LIST
+			if (!TRANSACTIONS_UPDATER.compareAndSet(this, null, transactions)) {
+				transactions = this.transactions;
+			}
 		}
 
-		return this.transactions;
+		return transactions;
+	}
+
+	/**
+	 * Transactions as views over the block's raw bytes, parsing only what callers ask for.
+	 * <p>
+	 * Once {@link #getTransactions()} has been called the list might have been changed, so views are then made from the
+	 * parsed transactions instead.
+	 *
+	 * @return unmodifiable views, in block order
+	 */
+	public List<TransactionView> getTransactionViews() {
+		final List<Transaction> transactions = this.transactions;
+		if (transactions != null) {
+			final List<TransactionView> views = new ArrayList<TransactionView>(transactions.size());
+			for (Transaction transaction : transactions) {
+				views.add(TransactionView.of(transaction));
+			}
+
+			return Collections.unmodifiableList(views);
+		}
+
+		List<TransactionView> views = this.transactionViews;
+		if (views == null) {
+			final byte[] rawTransactions = this.rawTransactions;
+			if (rawTransactions == null) {
+				return Collections.emptyList();
+			}
+
+			views = TransactionView.split(ByteBuffer.wrap(rawTransactions), this.transactionCount);
+			this.transactionViews = views;
+		}
+
+		return views;
 	}
 
 	public void addTransaction(Transaction transaction) {
@@ -192,6 +256,21 @@ public class Block {
 
 	public Transaction getTransaction(byte[] signature) {
 
+		if (this.transactions == null) {
+			// ONLY PARSE THE ONE WE WANT
+			for (TransactionView view : this.getTransactionViews()) {
+				if (Arrays.equals(view.getSignature(), signature)) {
+					try {
+						return view.getTransaction();
+					} catch (Exception e) {
+						return null;
+					}
+				}
+			}
+
+			return null;
+		}
+
 		for (Transaction transaction : this.getTransactions()) {
 			if (Arrays.equals(transaction.getSignature(), signature)) {
 				return transaction;
@@ -226,14 +305,38 @@ public class Block {
 	}
 
 	public int getHeight(QoraDb db) {
-		if (db.getHeightMap().contains(this.getSignature()))
-			return db.getHeightMap().get(this);
-		else
-			return -1;
+		// Height map returns -1 for blocks it doesn't have
+		return db.getHeightMap().get(this);
+	}
+
+	/**
+	 * Returns header of block <code>signature</code> in <code>db</code>, or <code>null</code> if it's not there. Headers
+	 * are cached, so walking back through blocks doesn't read and decode each one every time.
+	 */
+	public static BlockHeader getHeader(final QoraDb db, final byte[] signature) {
+		if (signature == null || !db.getBlockMap().contains(signature)) {
+			return null;
+		}
+
+		final BlockCache cache = BlockCache.getInstance();
+		BlockHeader header = cache.getHeader(signature);
+		if (header == null) {
+			final int height = db.getHeightMap().get(signature);
+			header = new BlockHeader(db.getBlockMap().get(signature), height);
+
+			// Height is set once block is processed
+			if (height > 0) {
+				cache.putHeader(header);
+			}
+		}
+
+		return header;
 	}
 
 	public void setTransactionsSignature(byte[] transactionsSignature) {
 		this.transactionsSignature = transactionsSignature;
+		this.rawBytes = null;
+		this.signatureVerified = false;
 	}
 
 	public byte[] getSignature() {
@@ -355,75 +458,104 @@ public class Block {
 	}
 
 	public byte[] toBytes() {
-		byte[] data = new byte[0];
+		// STORED BLOCKS ARE ALREADY SERIALIZED
+		final byte[] rawBytes = this.rawBytes;
+		if (rawBytes != null) {
+			return rawBytes;
+		}
+
+		// SIZE FROM FIELDS, PADDING SHORT ONES AS ensureCapacity DOES
+		final List<Transaction> transactions = this.getTransactions();
+		int length = VERSION_LENGTH + TIMESTAMP_LENGTH + Math.max(REFERENCE_LENGTH, this.reference.length) + GENERATING_BALANCE_LENGTH
+				+ Math.max(GENERATOR_LENGTH, this.generator.getPublicKey().length) + this.transactionsSignature.length
+				+ this.generatorSignature.length + TRANSACTIONS_COUNT_LENGTH;
+
+		if (this.version >= 2) {
+			length += AT_LENGTH;
+			if (this.atBytes != null) {
+				length += this.atBytes.length;
+			}
+		}
+
+		for (Transaction transaction : transactions) {
+			length += TRANSACTION_SIZE_LENGTH + transaction.getDataLength();
+		}
+
+		final ByteBuffer data = ByteBuffer.allocate(length);
 
 		// WRITE VERSION
-		byte[] versionBytes = Ints.toByteArray(this.version);
-		// versionBytes = Bytes.ensureCapacity(versionBytes, 4, 0);
-		data = Bytes.concat(data, versionBytes);
+		data.putInt(this.version);
 
 		// WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, 8, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.putLong(this.timestamp);
 
 		// WRITE REFERENCE
-		byte[] referenceBytes = Bytes.ensureCapacity(this.reference, REFERENCE_LENGTH, 0);
-		data = Bytes.concat(data, referenceBytes);
+		data.put(Bytes.ensureCapacity(this.reference, REFERENCE_LENGTH, 0));
 
 		// WRITE GENERATING BALANCE
-		byte[] baseTargetBytes = Longs.toByteArray(this.generatingBalance);
-		// baseTargetBytes = Bytes.ensureCapacity(baseTargetBytes, 8, 0);
-		data = Bytes.concat(data, baseTargetBytes);
+		data.putLong(this.generatingBalance);
 
 		// WRITE GENERATOR
-		byte[] generatorBytes = Bytes.ensureCapacity(this.generator.getPublicKey(), GENERATOR_LENGTH, 0);
-		data = Bytes.concat(data, generatorBytes);
+		data.put(Bytes.ensureCapacity(this.generator.getPublicKey(), GENERATOR_LENGTH, 0));
 
 		// WRITE TRANSACTIONS SIGNATURE
-		data = Bytes.concat(data, this.transactionsSignature);
+		data.put(this.transactionsSignature);
 
 		// WRITE GENERATOR SIGNATURE
-		data = Bytes.concat(data, this.generatorSignature);
+		data.put(this.generatorSignature);
 
 		// ADD ATs BYTES
 		if (this.version >= 2) {
 			if (atBytes != null) {
-				byte[] atBytesCount = Ints.toByteArray(atBytes.length);
-				data = Bytes.concat(data, atBytesCount);
-
-				data = Bytes.concat(data, atBytes);
-
-				byte[] atByteFees = Longs.toByteArray(atFees);
-				data = Bytes.concat(data, atByteFees);
+				data.putInt(atBytes.length);
+				data.put(atBytes);
+				data.putLong(atFees);
 			} else {
-				byte[] atBytesCount = Ints.toByteArray(0);
-				data = Bytes.concat(data, atBytesCount);
-				byte[] atByteFees = Longs.toByteArray(0L);
-				data = Bytes.concat(data, atByteFees);
+				data.putInt(0);
+				data.putLong(0L);
 			}
 		}
 
 		// WRITE TRANSACTION COUNT
-		byte[] transactionCountBytes = Ints.toByteArray(this.getTransactionCount());
-		// transactionCountBytes = Bytes.ensureCapacity(transactionCountBytes, 4, 0);
-		data = Bytes.concat(data, transactionCountBytes);
+		data.putInt(this.getTransactionCount());
 
-		for (Transaction transaction : this.getTransactions()) {
+		for (Transaction transaction : transactions) {
 			// WRITE TRANSACTION LENGTH
-			int transactionLength = transaction.getDataLength();
-			byte[] transactionLengthBytes = Ints.toByteArray(transactionLength);
-			// transactionLengthBytes = Bytes.ensureCapacity(transactionLengthBytes, 4, 0);
-			data = Bytes.concat(data, transactionLengthBytes);
+			data.putInt(transaction.getDataLength());
 
 			// WRITE TRANSACTION
-			data = Bytes.concat(data, transaction.toBytes());
+			transaction.writeTo(data);
+		}
+
+		final byte[] bytes = data.array();
+		return data.position() == bytes.length ? bytes : Arrays.copyOf(bytes, data.position());
+	}
+
+	/**
+	 * Serialized block up to and including its transaction count, i.e. without transactions.
+	 * <p>
+	 * Enough to check a chain of headers with {@link #parse(byte[])} before downloading whole blocks.
+	 * 
+	 * @return header bytes
+	 */
+	public byte[] getHeaderBytes() {
+		int length = BASE_LENGTH;
+
+		if (this.version >= 2) {
+			length += AT_LENGTH;
+			if (this.atBytes != null) {
+				length += atBytes.length;
+			}
 		}
 
-		return data;
+		return Arrays.copyOf(this.toBytes(), length);
 	}
 
 	public int getDataLength() {
+		final byte[] rawBytes = this.rawBytes;
+		if (rawBytes != null) {
+			return rawBytes.length;
+		}
 
 		int length = BASE_LENGTH;
 
@@ -446,15 +578,52 @@ public class Block {
 			return Crypto.getInstance().digest(this.generatorSignature);
 		} else {
 			// newSig = sha256(prevSig || pubKey)
-			final byte[] data = Bytes.concat(this.reference, generator.getPublicKey());
-			return Crypto.getInstance().digest(data);
+			return Crypto.getInstance().digestConcat(this.reference, generator.getPublicKey());
 		}
 	}
 
 	// VALIDATE
 
 	public boolean isSignatureValid() {
-		// VALIDATE BLOCK SIGNATURE
+		// ALREADY VERIFIED, E.G. IN THE BACKGROUND WHILE DOWNLOADING
+		if (this.signatureVerified) {
+			return true;
+		}
+
+		if (!this.isGeneratorSignatureValid()) {
+			return false;
+		}
+
+		for (final Transaction transaction : this.getTransactions()) {
+			// CHECK IF TRANSACTION SIGNATURE IS VALID
+			if (!transaction.hasValidSignature()) {
+				return false;
+			}
+		}
+
+		if (!this.isTransactionsSignatureValid()) {
+			return false;
+		}
+
+		this.signatureVerified = true;
+		return true;
+	}
+
+	/**
+	 * Record that all of this block's signatures have been found valid, e.g. by {@link qora.BlockSignatureVerifier}, so
+	 * {@link #isSignatureValid()} doesn't verify them again. Forgotten if the block is modified.
+	 */
+	public void setSignatureVerified() {
+		this.signatureVerified = true;
+	}
+
+	/**
+	 * Checks generator's signature over parent's generator signature, generating
+	 * balance and generator's public key.
+	 * 
+	 * @return <code>true</code> if generator signature is valid
+	 */
+	public boolean isGeneratorSignatureValid() {
 		byte[] data = new byte[0];
 
 		// WRITE PARENT GENERATOR SIGNATURE
@@ -469,27 +638,32 @@ public class Block {
 		final byte[] generatorBytes = Bytes.ensureCapacity(this.generator.getPublicKey(), GENERATOR_LENGTH, 0);
 		data = Bytes.concat(data, generatorBytes);
 
-		if (!Crypto.getInstance().verify(this.generator.getPublicKey(), this.generatorSignature, data)) {
-			return false;
-		}
+		return Crypto.getInstance().verify(this.generator.getPublicKey(), this.generatorSignature, data);
+	}
 
-		// VALIDATE TRANSACTIONS SIGNATURE
-		data = this.generatorSignature;
-		for (final Transaction transaction : this.getTransactions()) {
-			// CHECK IF TRANSACTION SIGNATURE IS VALID
-			if (!transaction.isSignatureValid()) {
-				return false;
-			}
+	/**
+	 * Checks generator's signature over the block's transaction signatures.
+	 * <p>
+	 * Doesn't check the transactions' own signatures.
+	 * 
+	 * @return <code>true</code> if transactions signature is valid
+	 */
+	public boolean isTransactionsSignatureValid() {
+		final List<Transaction> transactions = this.getTransactions();
 
-			// ADD SIGNATURE TO DATA
-			data = Bytes.concat(data, transaction.getSignature());
+		int length = this.generatorSignature.length;
+		for (final Transaction transaction : transactions) {
+			length += transaction.getSignature().length;
 		}
 
-		if (!Crypto.getInstance().verify(this.generator.getPublicKey(), this.transactionsSignature, data)) {
-			return false;
+		final ByteBuffer data = ByteBuffer.allocate(length);
+		data.put(this.generatorSignature);
+		for (final Transaction transaction : transactions) {
+			// ADD SIGNATURE TO DATA
+			data.put(transaction.getSignature());
 		}
 
-		return true;
+		return Crypto.getInstance().verify(this.generator.getPublicKey(), this.transactionsSignature, data.array());
 	}
 
 	// canonical definition of block version release schedule
@@ -509,33 +683,43 @@ public class Block {
 	}
 
 	public boolean isValid(final QoraDb db) {
+		final long start = System.nanoTime();
+		try {
+			return this.validate(db);
+		} finally {
+			BlockCache.getInstance().addValidation(System.nanoTime() - start);
+		}
+	}
+
+	private boolean validate(final QoraDb db) {
 		// CHECK IF PARENT EXISTS
-		if (this.reference == null || getParent(db) == null) {
+		final Block parent = this.reference == null ? null : getParent(db);
+		if (parent == null) {
 			return false;
 		}
 
 		// Check parent doesn't already have a child
-		if (getParent(db).getChild(db) != null) {
+		if (parent.getChild(db) != null) {
 			return false;
 		}
 
 		// CHECK IF TIMESTAMP IS VALID -500 MS ERROR MARGIN TIME
-		if (this.timestamp - 500 > NTP.getTime() || this.timestamp < getParent(db).timestamp) {
+		if (this.timestamp - 500 > NTP.getTime() || this.timestamp < parent.timestamp) {
 			return false;
 		}
 
 		// CHECK IF TIMESTAMP REST SAME AS PARENT TIMESTAMP REST
-		if (this.timestamp % 1000 != getParent(db).timestamp % 1000) {
+		if (this.timestamp % 1000 != parent.timestamp % 1000) {
 			return false;
 		}
 
 		// CHECK IF GENERATING BALANCE IS CORRECT
-		if (this.generatingBalance != BlockGenerator.getNextBlockGeneratingBalance(db, getParent(db))) {
+		if (this.generatingBalance != BlockGenerator.getNextBlockGeneratingBalance(db, parent)) {
 			return false;
 		}
 
 		// CHECK IF VERSION IS CORRECT
-		if (this.version != getParent(db).getNextBlockVersion(db)) {
+		if (this.version != parent.getNextBlockVersion(db)) {
 			return false;
 		}
 		
@@ -556,7 +740,7 @@ public class Block {
 		target = target.multiply(this.generator.getGeneratingBalance(db).toBigInteger());
 
 		// MULTIPLE TARGET BY GUESSES
-		final long guesses = (this.timestamp - this.getParent(db).getTimestamp()) / 1000;
+		final long guesses = (this.timestamp - parent.getTimestamp()) / 1000;
 		final BigInteger lowerTarget = target.multiply(BigInteger.valueOf(guesses - 1));
 		target = target.multiply(BigInteger.valueOf(guesses));
 
@@ -646,14 +830,6 @@ public class Block {
 			db.getTransactionMap().delete(transaction);
 		}
 
-		// DELETE CONFIRMED TRANSACTIONS FROM UNCONFIRMED TRANSACTIONS LIST
-		final List<Transaction> unconfirmedTransactions = new ArrayList<Transaction>(db.getTransactionMap().getValues());
-		for (final Transaction transaction : unconfirmedTransactions) {
-			if (db.getTransactionParentMap().contains(transaction.getSignature())) {
-				db.getTransactionMap().delete(transaction);
-			}
-		}
-
 		// PROCESS FEE
 		final BigDecimal blockFee = this.getTotalFee();
 		if (blockFee.compareTo(BigDecimal.ZERO) == 1) {
@@ -787,9 +963,6 @@ public class Block {
 	}
 
 	public boolean passesCheckpoints() {
-		if (Blockchain.CHECKPOINTS.containsKey(getHeight())) {
-			return Arrays.equals(Base58.decode(Blockchain.CHECKPOINTS.get(getHeight())), getSignature());
-		}
-		return true;
+		return Blockchain.passesCheckpoint(getHeight(), getSignature());
 	}
 }
@@ -0,0 +1,53 @@
+package qora.block;
+
+import database.QoraDb;
+
+/**
+ * Parts of a stored block needed to walk the chain: its signature, parent, height, generating balance and timestamp.
+ * <p>
+ * Headers are small enough to keep many more of than decoded blocks, so walking back through parents doesn't need any
+ * blocks read and decoded once their headers are cached.
+ *
+ * @see Block#getHeader(QoraDb, byte[])
+ */
+public final class BlockHeader {
+
+	private final byte[] signature;
+	private final byte[] reference;
+	private final int height;
+	private final long generatingBalance;
+	private final long timestamp;
+
+	public BlockHeader(final Block block, final int height) {
+		this.signature = block.getSignature();
+		this.reference = block.getReference();
+		this.height = height;
+		this.generatingBalance = block.getGeneratingBalance();
+		this.timestamp = block.getTimestamp();
+	}
+
+	public byte[] getSignature() {
+		return this.signature;
+	}
+
+	public byte[] getReference() {
+		return this.reference;
+	}
+
+	public int getHeight() {
+		return this.height;
+	}
+
+	public long getGeneratingBalance() {
+		return this.generatingBalance;
+	}
+
+	public long getTimestamp() {
+		return this.timestamp;
+	}
+
+	public BlockHeader getParent(final QoraDb db) {
+		return Block.getHeader(db, this.reference);
+	}
+
+}
@@ -5,6 +5,7 @@ import java.math.BigInteger;
 import java.math.RoundingMode;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -30,10 +31,13 @@ import at.AT;
 import at.AT_Transaction;
 import controller.Controller;
 import database.BalanceMap;
+import database.CandleMap;
 import database.QoraDb;
 import database.SortableList;
+import ntp.NTP;
 import qora.account.Account;
 import qora.assets.Asset;
+import qora.assets.Candle;
 import qora.assets.Order;
 import qora.assets.Trade;
 import qora.block.Block;
@@ -55,6 +59,7 @@ import qora.transaction.MultiPaymentTransaction;
 import qora.transaction.RegisterNameTransaction;
 import qora.transaction.SellNameTransaction;
 import qora.transaction.Transaction;
+import qora.transaction.TransactionView;
 import qora.transaction.TransferAssetTransaction;
 import qora.transaction.UpdateNameTransaction;
 import qora.transaction.VoteOnPollTransaction;
@@ -72,6 +77,7 @@ public class BlockExplorer
 {
 	
 	private static final Logger LOGGER = LogManager.getLogger(BlockExplorer.class);
+	private static final int MAX_TRADES = 50;
 	private static BlockExplorer blockExplorer;
 
 	public static BlockExplorer getInstance()
@@ -205,6 +211,11 @@ public class BlockExplorer
 					long want = Integer.valueOf(info.getQueryParameters().get("asset").get(1));
 
 					output.putAll(jsonQueryTrades(have, want));
+
+					if(info.getQueryParameters().containsKey("interval"))
+					{
+						output.put("candles", jsonQueryCandles(have, want, Long.valueOf(info.getQueryParameters().getFirst("interval"))));
+					}
 				}
 
 				output.put("queryTimeMs", stopwatchAll.elapsedTime());
@@ -680,10 +691,7 @@ public class BlockExplorer
 			assetJSON.put("quantity", asset.getQuantity());
 			assetJSON.put("isDivisible", asset.isDivisible());
 
-			List<Order> orders = QoraDb.getInstance().getOrderMap().getOrders(asset.getKey());
-			List<Trade> trades = QoraDb.getInstance().getTradeMap().getTrades(asset.getKey());
-
-			assetJSON.put("operations", orders.size() + trades.size());
+			assetJSON.put("operations", QoraDb.getInstance().getAssetStatsMap().getOperationsCount(asset.getKey()));
 
 			output.put(asset.getKey(), assetJSON);
 		}
@@ -1108,7 +1116,8 @@ public class BlockExplorer
 
 		//Collections.reverse(ordersWant); 
 
-		List<Trade> trades = QoraDb.getInstance().getTradeMap().getTrades(have, want);
+		//MOST RECENT TRADES ONLY, TOTALS COME FROM CANDLES
+		List<Trade> trades = getRecentTrades(have, want, MAX_TRADES);
 
 		Asset assetHave = Controller.getInstance().getAsset(have);
 		Asset assetWant = Controller.getInstance().getAsset(want);
@@ -1220,10 +1229,18 @@ public class BlockExplorer
 
 		Map tradesJSON = new LinkedHashMap();
 
-		output.put("tradesCount", trades.size());
+		Candle total = QoraDb.getInstance().getCandleMap().getTotal(have, want);
+
+		output.put("tradesCount", total == null ? 0 : total.getTrades());
 
+		//VOLUME IS OF LARGER ASSET KEY
 		BigDecimal tradeWantAmount = BigDecimal.ZERO.setScale(8);
 		BigDecimal tradeHaveAmount = BigDecimal.ZERO.setScale(8);
+		if(total != null)
+		{
+			tradeHaveAmount = have > want ? total.getVolume() : total.getQuoteVolume();
+			tradeWantAmount = have > want ? total.getQuoteVolume() : total.getVolume();
+		}
 
 		int i = 0;
 		for (Trade trade : trades) 	
@@ -1248,16 +1265,10 @@ public class BlockExplorer
 			if(orderInitiator.getHave() == have)
 			{
 				tradeJSON.put("type", "sell");
-				tradeWantAmount = tradeWantAmount.add(trade.getAmount());
-				tradeHaveAmount = tradeHaveAmount.add(trade.getPrice());
-
 			}
 			else
 			{
 				tradeJSON.put("type", "buy");
-
-				tradeWantAmount = tradeWantAmount.add(trade.getPrice());
-				tradeHaveAmount = tradeHaveAmount.add(trade.getAmount());
 			}	
 			tradeJSON.put("targetTxSignature", Base58.encode(orderTarget.getId()));
 			tradeJSON.put("targetCreator", orderTarget.getCreator().getAddress());
@@ -1273,6 +1284,81 @@ public class BlockExplorer
 		output.put("tradeWantAmount", tradeWantAmount.toPlainString());
 		output.put("tradeHaveAmount", tradeHaveAmount.toPlainString());
 
+		BigDecimal lastPrice = QoraDb.getInstance().getCandleMap().getLastPrice(have, want);
+		output.put("lastPrice", lastPrice == null ? null : lastPrice.toPlainString());
+
+		Candle day = QoraDb.getInstance().getCandleMap().getDay(have, want, NTP.getTime());
+		output.put("day", day == null ? null : day.toJson());
+
+		output.put("sellsDepth", jsonQueryDepth(have, want));
+		output.put("buysDepth", jsonQueryDepth(want, have));
+
+		return output;
+	}
+
+	/**
+	 * Returns up to <code>limit</code> most recent trades of pair <code>have</code>/<code>want</code>, newest first. Only
+	 * weeks with a candle, i.e. with trades, are read.
+	 */
+	private List<Trade> getRecentTrades(long have, long want, int limit)
+	{
+		QoraDb db = QoraDb.getInstance();
+		List<Candle> weeks = db.getCandleMap().getCandles(have, want, CandleMap.WEEK, 0, Long.MAX_VALUE);
+		List<Trade> trades = new ArrayList<Trade>();
+
+		for(int i = weeks.size() - 1; i >= 0 && trades.size() < limit; i--)
+		{
+			long start = weeks.get(i).getTimestamp();
+
+			List<Trade> week = new ArrayList<Trade>(db.getTradeMap().getTrades(have, want, start, start + CandleMap.WEEK - 1, db));
+			Collections.sort(week, (a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+
+			trades.addAll(week);
+		}
+
+		return trades.size() > limit ? trades.subList(0, limit) : trades;
+	}
+
+	public Map jsonQueryDepth(long have, long want)
+	{
+		Map output=new LinkedHashMap();
+
+		for(Map.Entry<BigDecimal, Tuple2<Long, BigDecimal>> level : QoraDb.getInstance().getDepthMap().getDepth(have, want).entrySet())
+		{
+			Map levelJSON = new LinkedHashMap();
+			levelJSON.put("ordersCount", level.getValue().a);
+			levelJSON.put("amount", level.getValue().b.toPlainString());
+
+			output.put(level.getKey().toPlainString(), levelJSON);
+		}
+
+		return output;
+	}
+
+	public Map jsonQueryCandles(long have, long want, long interval)
+	{
+		Map output=new LinkedHashMap();
+
+		boolean kept = false;
+		for(long candleInterval : CandleMap.INTERVALS)
+		{
+			kept = kept || candleInterval == interval;
+		}
+
+		if(!kept)
+		{
+			output.put("error", "Interval must be one of " + Arrays.toString(CandleMap.INTERVALS));
+			return output;
+		}
+
+		long now = NTP.getTime();
+		List<Candle> candles = QoraDb.getInstance().getCandleMap().getCandles(have, want, interval, now - 100 * interval, now);
+
+		for(Candle candle : candles)
+		{
+			output.put(candle.getTimestamp(), candle.toJson());
+		}
+
 		return output;
 	}
 
@@ -1387,25 +1473,16 @@ public class BlockExplorer
 		List<Tuple2<String, BigDecimal>> top100s = new ArrayList<Tuple2<String, BigDecimal>>();
 
 
-		Collection<Tuple2<String, Long>> addrs = QoraDb.getInstance().getBalanceMap().getKeys();
-		for (Tuple2<String, Long> addr : addrs) {
-			if(addr.b == key)
-			{
-				BigDecimal ball =  QoraDb.getInstance().getBalanceMap().get(addr);
-				all = all.add(ball);
+		SortableList<byte[], BigDecimal> assetBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(key);
+		for (Pair<byte[], BigDecimal> assetBalance : assetBalances) {
+			BigDecimal ball = assetBalance.getB();
+			all = all.add(ball);
 
-				top100s.add(Fun.t2(addr.a, ball));
-			}
+			top100s.add(Fun.t2(BalanceMap.getAddress(assetBalance.getA()), ball));
 		}
 
-		Collection<Order> orders = QoraDb.getInstance().getOrderMap().getValues();
+		alloreders = alloreders.add(QoraDb.getInstance().getAssetStatsMap().getAmountInOrders(key));
 
-		for (Order order : orders) {
-			if(order.getHave() == key)
-			{
-				alloreders = alloreders.add(order.getAmountLeft());
-			}
-		}
 		Collections.sort(top100s, new ReverseComparator(new BigDecimalComparator())); 
 
 		int couter = 0;
@@ -1763,8 +1840,26 @@ public class BlockExplorer
 		do
 		{
 			int seq = 1;
-			for(Transaction transaction: block.getTransactions())
+			for(TransactionView view: block.getTransactionViews())
 			{
+				//ONLY PARSE NAME TRANSACTIONS
+				int type = view.getType();
+				if(type < Transaction.REGISTER_NAME_TRANSACTION || type > Transaction.BUY_NAME_TRANSACTION)
+				{
+					seq ++;
+					continue;
+				}
+				
+				Transaction transaction;
+				try
+				{
+					transaction = view.getTransaction();
+				}
+				catch(Exception e)
+				{
+					break;
+				}
+				
 				if	(
 						(transaction.getType() == Transaction.REGISTER_NAME_TRANSACTION && ((RegisterNameTransaction)transaction).getName().toString().equals(name))
 						||(transaction.getType() == Transaction.UPDATE_NAME_TRANSACTION && ((UpdateNameTransaction)transaction).getName().toString().equals(name)) 
@@ -1875,16 +1970,16 @@ public class BlockExplorer
 			return output; 
 		}
 
-		SortableList<Tuple2<String, Long>, BigDecimal> assetsBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(new Account(address));
+		SortableList<byte[], BigDecimal> assetsBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(new Account(address));
 
-		for (Pair<Tuple2<String, Long>, BigDecimal> assetsBalance : assetsBalances) 	
+		for (Pair<byte[], BigDecimal> assetsBalance : assetsBalances) 	
 		{
 			Map assetBalance = new LinkedHashMap();
 
-			assetBalance.put("assetName", Controller.getInstance().getAsset(assetsBalance.getA().b).getName());
+			assetBalance.put("assetName", Controller.getInstance().getAsset(BalanceMap.getAssetKey(assetsBalance.getA())).getName());
 			assetBalance.put("amount", assetsBalance.getB().toPlainString());
 			
-			output.put(assetsBalance.getA().b, assetBalance);
+			output.put(BalanceMap.getAssetKey(assetsBalance.getA()), assetBalance);
 		}
 		
 		return output; 
@@ -1894,11 +1989,11 @@ public class BlockExplorer
 	{
 		Map<Long, BigDecimal> output = new LinkedHashMap();
 
-		SortableList<Tuple2<String, Long>, BigDecimal> assetsBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(new Account(address));
+		SortableList<byte[], BigDecimal> assetsBalances = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(new Account(address));
 
-		for (Pair<Tuple2<String, Long>, BigDecimal> assetsBalance : assetsBalances) 	
+		for (Pair<byte[], BigDecimal> assetsBalance : assetsBalances) 	
 		{
-			output.put(assetsBalance.getA().b, assetsBalance.getB());
+			output.put(BalanceMap.getAssetKey(assetsBalance.getA()), assetsBalance.getB());
 		}
 		
 		return output; 
@@ -1963,9 +2058,19 @@ public class BlockExplorer
 			Block block = Controller.getInstance().getBlockByHeight(at.getCreationBlockHeight());
 			long aTtimestamp = block.getTimestamp(); 
 			BigDecimal aTbalanceCreation = BigDecimal.ZERO.setScale(8); 
-			for (Transaction transaction : block.getTransactions()) {
-				if (transaction.getType() == Transaction.DEPLOY_AT_TRANSACTION )
+			for (TransactionView view : block.getTransactionViews()) {
+				if (view.getType() == Transaction.DEPLOY_AT_TRANSACTION )
 				{
+					Transaction transaction;
+					try
+					{
+						transaction = view.getTransaction();
+					}
+					catch(Exception e)
+					{
+						break;
+					}
+					
 					Account atAccount = ((DeployATTransaction)transaction).getATaccount();
 
 					if(atAccount.getAddress().equals(address))
@@ -2026,11 +2131,11 @@ public class BlockExplorer
 	
 			for(Map.Entry<Tuple2<BigInteger, BigInteger>, Trade> trade : trades.entrySet())
 			{
-				Transaction txInitiator = Controller.getInstance().getTransaction(trade.getValue().getInitiator().toByteArray());
+				Tuple2<Integer, Integer> initiator = QoraDb.getInstance().getTransactionFinalMap().getLocation(trade.getValue().getInitiator().toByteArray());
 				
-				Transaction txTarget = Controller.getInstance().getTransaction(trade.getValue().getTarget().toByteArray());
+				Tuple2<Integer, Integer> target = QoraDb.getInstance().getTransactionFinalMap().getLocation(trade.getValue().getTarget().toByteArray());
 				
-				all.add( new BlExpUnit(txInitiator.getParent().getHeight(), txTarget.getParent().getHeight(), txInitiator.getSeq(), txTarget.getSeq(), trade.getValue() ) );
+				all.add( new BlExpUnit(initiator.a, target.a, initiator.b, target.b, trade.getValue() ) );
 			}
 			
 			Set<BlExpUnit> atTransactions = QoraDb.getInstance().getATTransactionMap().getBlExpATTransactionsByRecipient(address);
@@ -2627,8 +2732,9 @@ public class BlockExplorer
 
 		for (int i = 0; i < signatures.length; i++) {
 			signatureBytes = Base58.decode(signatures[i]);
-			Transaction transaction = Controller.getInstance().getTransaction(signatureBytes);
-			all.add( new BlExpUnit( transaction.getParent().getHeight(), transaction.getSeq(), transaction));
+			Tuple2<Tuple2<Integer, Integer>, Transaction> found = QoraDb.getInstance().getTransactionFinalMap().findTransaction(signatureBytes);
+			Transaction transaction = found.b;
+			all.add( new BlExpUnit( found.a.a, found.a.b, transaction));
 
 			if(transaction instanceof CreateOrderTransaction)
 			{
@@ -2643,11 +2749,11 @@ public class BlockExplorer
 		
 		for(Map.Entry<Tuple2<BigInteger, BigInteger>, Trade> trade : trades.entrySet())
 		{
-			Transaction txInitiator = Controller.getInstance().getTransaction(trade.getValue().getInitiator().toByteArray());
+			Tuple2<Integer, Integer> initiator = QoraDb.getInstance().getTransactionFinalMap().getLocation(trade.getValue().getInitiator().toByteArray());
 			
-			Transaction txTarget = Controller.getInstance().getTransaction(trade.getValue().getTarget().toByteArray());
+			Tuple2<Integer, Integer> target = QoraDb.getInstance().getTransactionFinalMap().getLocation(trade.getValue().getTarget().toByteArray());
 			
-			all.add( new BlExpUnit(txInitiator.getParent().getHeight(), txTarget.getParent().getHeight(), txInitiator.getSeq(), txTarget.getSeq(), trade.getValue() ) );
+			all.add( new BlExpUnit(initiator.a, target.a, initiator.b, target.b, trade.getValue() ) );
 		}
 
 		int size = all.size();
@@ -16,8 +16,8 @@
  */
 package qora.crypto;
 
-import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
 /**
@@ -32,6 +32,12 @@ public class Base58 {
     private static final char[] ALPHABET =
     		ALPHABET_STR.toCharArray();
 
+    /** Longest string decoded using per-thread scratch space */
+    private static final int MAX_SCRATCH_LENGTH = 64;
+
+    /** Digits in first half, decoded bytes in second half */
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[MAX_SCRATCH_LENGTH * 2]);
+
     /** Lookup index for US-ASCII characters (code points 0-127) */
     private static final int[] INDEXES = new int[128];
     static {
@@ -90,14 +96,7 @@ public class Base58 {
         //
         // Create the return string from the encoded bytes
         //
-        String encodedResult;
-        try {
-            byte[] stringBytes = Arrays.copyOfRange(encoded, encodedOffset, encoded.length);
-            encodedResult = new String(stringBytes, "US-ASCII");
-        } catch (UnsupportedEncodingException exc) {
-            encodedResult = "";             // Should never happen
-        }
-        return encodedResult;
+        return new String(encoded, encodedOffset, encoded.length - encodedOffset, StandardCharsets.US_ASCII);
     }
 
     /**
@@ -159,6 +158,72 @@ public class Base58 {
         return output;
     }
 
+    /**
+     * Decodes a short Base58 string, such as an address, into a fixed-length array
+     * without allocating
+     *
+     * @param       string                  Encoded string
+     * @param       output                  Receives decoded bytes
+     * @return                              TRUE if string is valid and decodes to exactly output.length bytes
+     */
+    public static boolean decode(String string, byte[] output) {
+        int length = string.length();
+        if (length == 0)
+            return false;
+        //
+        // Longer strings take the normal path
+        //
+        if (length > MAX_SCRATCH_LENGTH) {
+            byte[] decoded;
+            try {
+                decoded = decode(string);
+            } catch (NumberFormatException exc) {
+                return false;
+            }
+            if (decoded.length != output.length)
+                return false;
+            System.arraycopy(decoded, 0, output, 0, output.length);
+            return true;
+        }
+        //
+        // Convert the input string to digits in the first half of the scratch buffer
+        //
+        byte[] scratch = SCRATCH.get();
+        for (int i=0; i<length; i++) {
+            char c = string.charAt(i);
+            int digit = c < INDEXES.length ? INDEXES[c] : -1;
+            if (digit < 0)
+                return false;
+            scratch[i] = (byte)digit;
+        }
+        int zeroCount = 0;
+        while (zeroCount < length && scratch[zeroCount] == 0)
+            zeroCount++;
+        //
+        // Convert from Base58 into the second half of the scratch buffer, working backwards
+        //
+        int decodedEnd = MAX_SCRATCH_LENGTH * 2;
+        int decodedOffset = decodedEnd;
+        int offset = zeroCount;
+        while (offset < length) {
+            byte mod = divMod256(scratch, offset, length);
+            if (scratch[offset] == 0)
+                offset++;
+            scratch[--decodedOffset] = mod;
+        }
+        while (decodedOffset < decodedEnd && scratch[decodedOffset] == 0)
+            decodedOffset++;
+        //
+        // Leading zero characters become leading zero bytes
+        //
+        int significant = decodedEnd - decodedOffset;
+        if (zeroCount + significant != output.length)
+            return false;
+        Arrays.fill(output, 0, zeroCount, (byte)0);
+        System.arraycopy(scratch, decodedOffset, output, zeroCount, significant);
+        return true;
+    }
+
     /**
      * Decode a Base58-encoded checksummed string and verify the checksum.  The
      * checksum will then be removed from the decoded value.
@@ -216,8 +281,12 @@ public class Base58 {
      * @return                      The remainder
      */
     private static byte divMod256(byte[] number, int offset) {
+        return divMod256(number, offset, number.length);
+    }
+
+    private static byte divMod256(byte[] number, int offset, int end) {
         int remainder = 0;
-        for (int i=offset; i<number.length; i++) {
+        for (int i=offset; i<end; i++) {
             int digit = (int)number[i]&0xff;
             int temp = remainder*58 + digit;
             number[i] = (byte)(temp/256);
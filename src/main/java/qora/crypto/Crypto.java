@@ -1,28 +1,36 @@
 package qora.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import qora.account.Account;
+import qora.account.Address;
 import qora.account.PrivateKeyAccount;
 import utils.Pair;
 
-import com.google.common.primitives.Bytes;
-
 public class Crypto {
 
 	public static final byte ADDRESS_VERSION = 58;
 	public static final byte AT_ADDRESS_VERSION = 23;
 	
+	private static final int ADDRESS_CHECKSUM_LENGTH = 4;
+	private static final int ADDRESS_CHECKSUM_OFFSET = Account.ADDRESS_LENGTH - ADDRESS_CHECKSUM_LENGTH;
+	
 	private static final Logger LOGGER = LogManager.getLogger(Crypto.class);
+	
+	//DIGESTS ARE REUSED PER THREAD AS GETTING NEW ONES IS SLOW
+	private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> getMessageDigest("SHA-256"));
+	private static final ThreadLocal<MessageDigest> MD5 = ThreadLocal.withInitial(() -> getMessageDigest("MD5"));
+	private static final ThreadLocal<RIPEMD160> RIPEMD160_DIGEST = ThreadLocal.withInitial(RIPEMD160::new);
+	
 	private static Crypto instance;
 	
+	private volatile SignatureVerifier signatureVerifier = new FastSignatureVerifier();
+	
 	public static Crypto getInstance()
 	{
 		if(instance == null)
@@ -38,18 +46,50 @@ public class Crypto {
 		
 	}
 	
-	public byte[] digest(byte[] input)
+	private static MessageDigest getMessageDigest(String algorithm)
 	{
-		try 
+		try
 		{
-			//SHA256
-			MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
-			return sha256.digest(input);
+			return MessageDigest.getInstance(algorithm);
 		}
 		catch (NoSuchAlgorithmException e)
 		{
-			return null;
+			//EVERY JAVA PLATFORM HAS TO SUPPORT THESE
+			throw new IllegalStateException(algorithm + " not available", e);
+		}
+	}
+	
+	public byte[] digest(byte[] input)
+	{
+		//SHA256
+		return SHA256.get().digest(input);
+	}
+	
+	public byte[] digest(byte[] input, int offset, int length)
+	{
+		//SHA256 OF SLICE, WITHOUT COPYING
+		MessageDigest sha256 = SHA256.get();
+		sha256.update(input, offset, length);
+		return sha256.digest();
+	}
+	
+	public byte[] digest(ByteBuffer input)
+	{
+		//SHA256 OF REMAINING BYTES, WITHOUT COPYING
+		MessageDigest sha256 = SHA256.get();
+		sha256.update(input);
+		return sha256.digest();
+	}
+	
+	public byte[] digestConcat(byte[]... inputs)
+	{
+		//SHA256 OF INPUTS ONE AFTER ANOTHER, WITHOUT CONCATENATING THEM FIRST
+		MessageDigest sha256 = SHA256.get();
+		for(byte[] input: inputs)
+		{
+			sha256.update(input);
 		}
+		return sha256.digest();
 	}
 	
 	public byte[] doubleDigest(byte[] input)
@@ -58,6 +98,29 @@ public class Crypto {
 		return this.digest(this.digest(input));
 	}
 	
+	public byte[] doubleDigest(byte[] input, int offset, int length)
+	{
+		//DOUBLE SHA256 OF SLICE
+		return this.digest(this.digest(input, offset, length));
+	}
+	
+	public byte[] ripemd160(byte[] input)
+	{
+		return this.ripemd160(input, 0, input.length);
+	}
+	
+	public byte[] ripemd160(byte[] input, int offset, int length)
+	{
+		RIPEMD160 ripEmd160 = RIPEMD160_DIGEST.get();
+		ripEmd160.reset();
+		return ripEmd160.digest(input, offset, length);
+	}
+	
+	public byte[] md5(byte[] input)
+	{
+		return MD5.get().digest(input);
+	}
+	
 	public Pair<byte[], byte[]> createKeyPair(byte[] seed)
 	{
 		try
@@ -74,145 +137,68 @@ public class Crypto {
 	
 	public String getAddress(byte[] publicKey)
 	{
-		//SHA256 PUBLICKEY FOR PROTECTION
-		byte[] publicKeyHash = this.digest(publicKey);
-		
-		//RIPEMD160 TO CREATE A SHORTER ADDRESS
-		RIPEMD160 ripEmd160 = new RIPEMD160();
-		publicKeyHash = ripEmd160.digest(publicKeyHash);
-		
-		//CONVERT TO LIST
-		List<Byte> addressList = new ArrayList<Byte>();
-		
-		//ADD VERSION BYTE
-		Byte versionByte = Byte.valueOf(ADDRESS_VERSION);
-		addressList.add(versionByte);
-		
-		addressList.addAll(Bytes.asList(publicKeyHash));
-		
-		//GENERATE CHECKSUM
-		byte[] checkSum = this.doubleDigest(Bytes.toArray(addressList));
-		
-		//ADD FIRST 4 BYTES OF CHECKSUM TO ADDRESS
-		addressList.add(checkSum[0]);
-		addressList.add(checkSum[1]);
-		addressList.add(checkSum[2]);
-		addressList.add(checkSum[3]);
-		
-		//BASE58 ENCODE ADDRESS
-		String address = Base58.encode(Bytes.toArray(addressList));
-		
-		return address;
+		//INTERNED, SO REPEAT LOOKUPS DON'T REHASH
+		return Address.fromPublicKey(publicKey).toString();
+	}
+	
+	public byte[] getAddressBytes(byte[] publicKey)
+	{
+		return this.buildAddress(ADDRESS_VERSION, publicKey);
 	}
 	
 	public String getATAddress(byte[] signature)
 	{
-		//SHA256 SIGNATURE TO CONVERT IT TO 32BYTE
-		byte[] publicKeyHash = this.digest(signature);
-		
-		//RIPEMD160 TO CREATE A SHORTER ADDRESS
-		RIPEMD160 ripEmd160 = new RIPEMD160();
-		publicKeyHash = ripEmd160.digest(publicKeyHash);
-		
-		//CONVERT TO LIST
-		List<Byte> addressList = new ArrayList<Byte>();
-		
-		//ADD VERSION BYTE
-		Byte versionByte = Byte.valueOf(AT_ADDRESS_VERSION);
-		addressList.add(versionByte);
-		
-		addressList.addAll(Bytes.asList(publicKeyHash));
-		
-		//GENERATE CHECKSUM
-		byte[] checkSum = this.doubleDigest(Bytes.toArray(addressList));
+		return Base58.encode(this.buildAddress(AT_ADDRESS_VERSION, signature));
+	}
+	
+	private byte[] buildAddress(byte version, byte[] input)
+	{
+		//SHA256 INPUT FOR PROTECTION, THEN RIPEMD160 TO CREATE A SHORTER ADDRESS
+		byte[] inputHash = this.ripemd160(this.digest(input));
 		
-		//ADD FIRST 4 BYTES OF CHECKSUM TO ADDRESS
-		addressList.add(checkSum[0]);
-		addressList.add(checkSum[1]);
-		addressList.add(checkSum[2]);
-		addressList.add(checkSum[3]);
+		//VERSION BYTE, HASH, THEN FIRST 4 BYTES OF CHECKSUM
+		byte[] addressBytes = new byte[Account.ADDRESS_LENGTH];
+		addressBytes[0] = version;
+		System.arraycopy(inputHash, 0, addressBytes, 1, inputHash.length);
 		
-		//BASE58 ENCODE ADDRESS
-		String address = Base58.encode(Bytes.toArray(addressList));
+		byte[] checkSum = this.doubleDigest(addressBytes, 0, ADDRESS_CHECKSUM_OFFSET);
+		System.arraycopy(checkSum, 0, addressBytes, ADDRESS_CHECKSUM_OFFSET, ADDRESS_CHECKSUM_LENGTH);
 		
-		return address;
+		return addressBytes;
 	}
 	
 	public boolean isValidAddress(String address)
 	{
-		try
+		//CACHED
+		return Address.isValid(address);
+	}
+	
+	public boolean isValidAddressBytes(byte[] addressBytes)
+	{
+		//CHECK BYTES
+		if(addressBytes == null || addressBytes.length != Account.ADDRESS_LENGTH)
 		{
-			//BASE 58 DECODE
-			byte[] addressBytes = Base58.decode(address);
-			
-			//CHECK BYTES
-			if(addressBytes.length != Account.ADDRESS_LENGTH)
-			{
-				return false;
-			}
-			
-			//CHECK VERSION
-			if(addressBytes[0] == ADDRESS_VERSION)
-			{	
-				//CONVERT TO LIST
-				List<Byte> addressList = new ArrayList<Byte>();
-				addressList.addAll(Bytes.asList(addressBytes));
-				
-				//REMOVE CHECKSUM
-				byte[] checkSum = new byte[4];
-				checkSum[3] = addressList.remove(addressList.size() - 1);
-				checkSum[2] = addressList.remove(addressList.size() - 1);
-				checkSum[1] = addressList.remove(addressList.size() - 1);
-				checkSum[0] = addressList.remove(addressList.size() - 1);
-				
-				//GENERATE ADDRESS CHECKSUM
-				byte[] digest = this.doubleDigest(Bytes.toArray(addressList));
-				byte[] checkSumTwo = new byte[4];
-				checkSumTwo[0] = digest[0];
-				checkSumTwo[1] = digest[1];
-				checkSumTwo[2] = digest[2];
-				checkSumTwo[3] = digest[3];
-				
-				//CHECK IF CHECKSUMS ARE THE SAME
-				return Arrays.equals(checkSum, checkSumTwo);
-			}
-			if(addressBytes[0] == AT_ADDRESS_VERSION)
-			{
-				//TODO CHECK IF AT WITH THAT ID EXISTS
-				//if (AT.getAT(addressBytes) != null)
-				//{
-					List<Byte> addressList = new ArrayList<Byte>();
-					
-					
-					addressList.addAll(Bytes.asList(addressBytes));
-					
-					//REMOVE CHECKSUM
-					byte[] checkSum = new byte[4];
-					checkSum[3] = addressList.remove(addressList.size() - 1);
-					checkSum[2] = addressList.remove(addressList.size() - 1);
-					checkSum[1] = addressList.remove(addressList.size() - 1);
-					checkSum[0] = addressList.remove(addressList.size() - 1);
-					
-					//GENERATE ADDRESS CHECKSUM
-					byte[] digest = this.doubleDigest(Bytes.toArray(addressList));
-					byte[] checkSumTwo = new byte[4];
-					checkSumTwo[0] = digest[0];
-					checkSumTwo[1] = digest[1];
-					checkSumTwo[2] = digest[2];
-					checkSumTwo[3] = digest[3];
-					
-					
-					return Arrays.equals(checkSum, checkSumTwo);
-				//}
-			}
-			
 			return false;
 		}
-		catch(Exception e)
+		
+		//CHECK VERSION
+		//TODO CHECK IF AT WITH THAT ID EXISTS
+		if(addressBytes[0] != ADDRESS_VERSION && addressBytes[0] != AT_ADDRESS_VERSION)
 		{
-			//ERROR DECODING
 			return false;
 		}
+		
+		//CHECK IF CHECKSUMS ARE THE SAME
+		byte[] digest = this.doubleDigest(addressBytes, 0, ADDRESS_CHECKSUM_OFFSET);
+		for(int i = 0; i < ADDRESS_CHECKSUM_LENGTH; i++)
+		{
+			if(digest[i] != addressBytes[ADDRESS_CHECKSUM_OFFSET + i])
+			{
+				return false;
+			}
+		}
+		
+		return true;
 	}
 	
 	public byte[] sign(PrivateKeyAccount account, byte[] message)
@@ -234,7 +220,7 @@ public class Crypto {
 		try 
 		{
 			//VERIFY SIGNATURE
-			return Ed25519.verify(signature, message, publicKey);	
+			return this.signatureVerifier.verify(publicKey, signature, message);
 		}
 		catch(Exception e)
 		{
@@ -243,4 +229,40 @@ public class Crypto {
 		}
 	}
 	
+	/**
+	 * Same as {@link #verify(byte[], byte[], byte[])} for <code>length</code> bytes of <code>message</code> from
+	 * <code>offset</code>, e.g. the signed prefix of a transaction's bytes.
+	 */
+	public boolean verify(byte[] publicKey, byte[] signature, byte[] message, int offset, int length)
+	{
+		try 
+		{
+			//VERIFY SIGNATURE
+			return this.signatureVerifier.verify(publicKey, signature, message, offset, length);
+		}
+		catch(Exception e)
+		{
+			LOGGER.error(e.getMessage(),e);
+			return false;
+		}
+	}
+	
+	/**
+	 * @see SignatureVerifier#verifyBatch(byte[][], byte[][], byte[][])
+	 */
+	public boolean verifyBatch(byte[][] publicKeys, byte[][] signatures, byte[][] messages)
+	{
+		return this.signatureVerifier.verifyBatch(publicKeys, signatures, messages);
+	}
+	
+	public SignatureVerifier getSignatureVerifier()
+	{
+		return this.signatureVerifier;
+	}
+	
+	public void setSignatureVerifier(SignatureVerifier signatureVerifier)
+	{
+		this.signatureVerifier = signatureVerifier;
+	}
+	
 }
@@ -0,0 +1,319 @@
+package qora.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.whispersystems.curve25519.java.fe_1;
+import org.whispersystems.curve25519.java.fe_invert;
+import org.whispersystems.curve25519.java.fe_mul;
+import org.whispersystems.curve25519.java.ge_add;
+import org.whispersystems.curve25519.java.ge_cached;
+import org.whispersystems.curve25519.java.ge_frombytes;
+import org.whispersystems.curve25519.java.ge_madd;
+import org.whispersystems.curve25519.java.ge_msub;
+import org.whispersystems.curve25519.java.ge_p1p1;
+import org.whispersystems.curve25519.java.ge_p1p1_to_p2;
+import org.whispersystems.curve25519.java.ge_p1p1_to_p3;
+import org.whispersystems.curve25519.java.ge_p2;
+import org.whispersystems.curve25519.java.ge_p2_0;
+import org.whispersystems.curve25519.java.ge_p2_dbl;
+import org.whispersystems.curve25519.java.ge_p3;
+import org.whispersystems.curve25519.java.ge_p3_dbl;
+import org.whispersystems.curve25519.java.ge_p3_to_cached;
+import org.whispersystems.curve25519.java.ge_precomp;
+import org.whispersystems.curve25519.java.ge_scalarmult_base;
+import org.whispersystems.curve25519.java.ge_sub;
+import org.whispersystems.curve25519.java.ge_tobytes;
+import org.whispersystems.curve25519.java.sc_reduce;
+
+/**
+ * Same checks as {@link ReferenceSignatureVerifier}, computing <code>R = h(-A) + sB</code> with the ref10 group
+ * operations, but:
+ * <ul>
+ * <li>base point multiples are precomputed for a 7-bit window, instead of ref10's 4-bit, so <code>sB</code> needs fewer
+ * additions</li>
+ * <li>decompressed public keys and their multiples are kept for recently seen keys, so a busy generator or sender's key
+ * isn't decompressed again for every signature</li>
+ * <li>hash and scratch state is reused per thread</li>
+ * </ul>
+ * The wider window only changes how <code>sB</code> is built up, not its value, so results are identical.
+ */
+public final class FastSignatureVerifier implements SignatureVerifier {
+
+	private static final int PUBLIC_KEY_LENGTH = 32;
+	private static final int SIGNATURE_LENGTH = 64;
+	private static final int SCALAR_BITS = 256;
+
+	/** Largest digit when recoding <code>h</code>, using odd multiples A, 3A .. 15A as in ref10 */
+	private static final int KEY_MAX_DIGIT = 15;
+	/** Largest digit when recoding <code>s</code>, using odd multiples B, 3B .. 127B */
+	private static final int BASE_MAX_DIGIT = 127;
+
+	private static final int MAX_CACHED_KEYS = 2048;
+
+	private static final ge_precomp[] BASE_MULTIPLES = createBaseMultiples();
+
+	private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+	/** Odd multiples of negated public key, by public key. Arrays are never modified once cached. */
+	private final Map<ByteBuffer, ge_cached[]> keyMultiples;
+
+	public FastSignatureVerifier() {
+		this.keyMultiples = Collections.synchronizedMap(new LinkedHashMap<ByteBuffer, ge_cached[]>(256, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, ge_cached[]> eldest) {
+				return size() > MAX_CACHED_KEYS;
+			}
+		});
+	}
+
+	private static final class State {
+		final MessageDigest sha512;
+		final byte[] h = new byte[64];
+		final byte[] s = new byte[32];
+		final byte[] hDigits = new byte[SCALAR_BITS];
+		final byte[] sDigits = new byte[SCALAR_BITS];
+		final byte[] checker = new byte[32];
+		final ge_p1p1 t = new ge_p1p1();
+		final ge_p3 u = new ge_p3();
+		final ge_p2 r = new ge_p2();
+
+		State() {
+			try {
+				this.sha512 = MessageDigest.getInstance("SHA-512");
+			} catch (final NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-512 not available", e);
+			}
+		}
+	}
+
+	@Override
+	public boolean verify(final byte[] publicKey, final byte[] signature, final byte[] message) {
+		return message != null && this.verify(publicKey, signature, message, 0, message.length);
+	}
+
+	@Override
+	public boolean verify(final byte[] publicKey, final byte[] signature, final byte[] message, final int offset, final int length) {
+		// Reference implementation only reads first 32/64 bytes, and rejects anything shorter
+		if (publicKey == null || publicKey.length < PUBLIC_KEY_LENGTH || signature == null || signature.length < SIGNATURE_LENGTH
+				|| message == null) {
+			return false;
+		}
+
+		if (offset < 0 || length < 0 || offset + length > message.length) {
+			throw new IndexOutOfBoundsException("Message part out of range");
+		}
+
+		if ((signature[63] & 224) != 0) {
+			return false;
+		}
+
+		final ge_cached[] multiples = this.getKeyMultiples(publicKey);
+		if (multiples == null) {
+			return false;
+		}
+
+		final State state = STATE.get();
+
+		final MessageDigest sha512 = state.sha512;
+		sha512.update(signature, 0, 32);
+		sha512.update(publicKey, 0, PUBLIC_KEY_LENGTH);
+		sha512.update(message, offset, length);
+		try {
+			sha512.digest(state.h, 0, state.h.length);
+		} catch (final DigestException e) {
+			throw new IllegalStateException(e);
+		}
+
+		sc_reduce.sc_reduce(state.h);
+		System.arraycopy(signature, 32, state.s, 0, 32);
+
+		slide(state.hDigits, state.h, KEY_MAX_DIGIT);
+		slide(state.sDigits, state.s, BASE_MAX_DIGIT);
+
+		doubleScalarMultiply(state, multiples);
+
+		ge_tobytes.ge_tobytes(state.checker, state.r);
+		return CryptoBytes.InternalConstantTimeEquals(state.checker, 0, signature, 0, 32);
+	}
+
+	/**
+	 * @return odd multiples of negated public key, or <code>null</code> if key isn't a curve point
+	 */
+	private ge_cached[] getKeyMultiples(final byte[] publicKey) {
+		final ByteBuffer key = ByteBuffer.wrap(publicKey, 0, PUBLIC_KEY_LENGTH).slice();
+
+		ge_cached[] multiples = this.keyMultiples.get(key);
+		if (multiples != null) {
+			return multiples;
+		}
+
+		final ge_p3 negatedKey = new ge_p3();
+		if (ge_frombytes.ge_frombytes_negate_vartime(negatedKey, publicKey) != 0) {
+			// Not cached so junk keys can't flush out real ones
+			return null;
+		}
+
+		multiples = createOddMultiples(negatedKey, (KEY_MAX_DIGIT + 1) / 2);
+		this.keyMultiples.put(ByteBuffer.wrap(Arrays.copyOf(publicKey, PUBLIC_KEY_LENGTH)), multiples);
+		return multiples;
+	}
+
+	/**
+	 * Sets <code>state.r</code> to <code>h(-A) + sB</code>, from recoded digits of <code>h</code> and <code>s</code>.
+	 */
+	private static void doubleScalarMultiply(final State state, final ge_cached[] keyMultiples) {
+		final byte[] hDigits = state.hDigits;
+		final byte[] sDigits = state.sDigits;
+		final ge_p1p1 t = state.t;
+		final ge_p3 u = state.u;
+		final ge_p2 r = state.r;
+
+		ge_p2_0.ge_p2_0(r);
+
+		int i = SCALAR_BITS - 1;
+		while (i >= 0 && hDigits[i] == 0 && sDigits[i] == 0) {
+			--i;
+		}
+
+		for (; i >= 0; --i) {
+			ge_p2_dbl.ge_p2_dbl(t, r);
+
+			if (hDigits[i] > 0) {
+				ge_p1p1_to_p3.ge_p1p1_to_p3(u, t);
+				ge_add.ge_add(t, u, keyMultiples[hDigits[i] / 2]);
+			} else if (hDigits[i] < 0) {
+				ge_p1p1_to_p3.ge_p1p1_to_p3(u, t);
+				ge_sub.ge_sub(t, u, keyMultiples[-hDigits[i] / 2]);
+			}
+
+			if (sDigits[i] > 0) {
+				ge_p1p1_to_p3.ge_p1p1_to_p3(u, t);
+				ge_madd.ge_madd(t, u, BASE_MULTIPLES[sDigits[i] / 2]);
+			} else if (sDigits[i] < 0) {
+				ge_p1p1_to_p3.ge_p1p1_to_p3(u, t);
+				ge_msub.ge_msub(t, u, BASE_MULTIPLES[-sDigits[i] / 2]);
+			}
+
+			ge_p1p1_to_p2.ge_p1p1_to_p2(r, t);
+		}
+	}
+
+	/**
+	 * Recode little-endian scalar <code>a</code> as signed odd digits no larger than <code>maxDigit</code>, mostly zero.
+	 * <p>
+	 * Same as ref10's <code>slide</code> when <code>maxDigit</code> is 15.
+	 */
+	private static void slide(final byte[] r, final byte[] a, final int maxDigit) {
+		for (int i = 0; i < SCALAR_BITS; ++i) {
+			r[i] = (byte) (1 & (a[i >> 3] >>> (i & 7)));
+		}
+
+		for (int i = 0; i < SCALAR_BITS; ++i) {
+			if (r[i] == 0) {
+				continue;
+			}
+
+			for (int b = 1; b <= 7 && i + b < SCALAR_BITS; ++b) {
+				if (r[i + b] == 0) {
+					continue;
+				}
+
+				if (r[i] + (r[i + b] << b) <= maxDigit) {
+					r[i] += r[i + b] << b;
+					r[i + b] = 0;
+				} else if (r[i] - (r[i + b] << b) >= -maxDigit) {
+					r[i] -= r[i + b] << b;
+					for (int k = i + b; k < SCALAR_BITS; ++k) {
+						if (r[k] == 0) {
+							r[k] = 1;
+							break;
+						}
+
+						r[k] = 0;
+					}
+				} else {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return P, 3P, 5P .. (2 * count - 1)P, ready for addition
+	 */
+	private static ge_cached[] createOddMultiples(final ge_p3 point, final int count) {
+		final ge_p3[] points = createOddMultiplePoints(point, count);
+
+		final ge_cached[] multiples = new ge_cached[count];
+		for (int i = 0; i < count; ++i) {
+			multiples[i] = new ge_cached();
+			ge_p3_to_cached.ge_p3_to_cached(multiples[i], points[i]);
+		}
+
+		return multiples;
+	}
+
+	private static ge_p3[] createOddMultiplePoints(final ge_p3 point, final int count) {
+		final ge_p1p1 t = new ge_p1p1();
+		final ge_p3 doubled = new ge_p3();
+		final ge_cached previous = new ge_cached();
+
+		ge_p3_dbl.ge_p3_dbl(t, point);
+		ge_p1p1_to_p3.ge_p1p1_to_p3(doubled, t);
+
+		final ge_p3[] points = new ge_p3[count];
+		points[0] = point;
+
+		for (int i = 1; i < count; ++i) {
+			ge_p3_to_cached.ge_p3_to_cached(previous, points[i - 1]);
+			ge_add.ge_add(t, doubled, previous);
+
+			points[i] = new ge_p3();
+			ge_p1p1_to_p3.ge_p1p1_to_p3(points[i], t);
+		}
+
+		return points;
+	}
+
+	/**
+	 * @return B, 3B, 5B .. 127B in affine form for mixed addition
+	 */
+	private static ge_precomp[] createBaseMultiples() {
+		final byte[] one = new byte[32];
+		one[0] = 1;
+
+		final ge_p3 base = new ge_p3();
+		ge_scalarmult_base.ge_scalarmult_base(base, one);
+
+		final ge_p3[] points = createOddMultiplePoints(base, (BASE_MAX_DIGIT + 1) / 2);
+
+		final ge_precomp[] multiples = new ge_precomp[points.length];
+		final ge_p3 affine = new ge_p3();
+		final ge_cached cached = new ge_cached();
+		final int[] recip = new int[10];
+
+		for (int i = 0; i < points.length; ++i) {
+			// Scale to Z = 1, where cached T2d is the xy2d that mixed addition wants
+			fe_invert.fe_invert(recip, points[i].Z);
+			fe_mul.fe_mul(affine.X, points[i].X, recip);
+			fe_mul.fe_mul(affine.Y, points[i].Y, recip);
+			fe_1.fe_1(affine.Z);
+			fe_mul.fe_mul(affine.T, affine.X, affine.Y);
+
+			ge_p3_to_cached.ge_p3_to_cached(cached, affine);
+			multiples[i] = new ge_precomp(cached.YplusX.clone(), cached.YminusX.clone(), cached.T2d.clone());
+		}
+
+		return multiples;
+	}
+
+}
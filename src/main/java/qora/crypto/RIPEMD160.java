@@ -1,5 +1,7 @@
 package qora.crypto;
 
+import java.util.Arrays;
+
 public class RIPEMD160 {
  
 	private static final int[][] ArgArray = {{11, 14, 15, 12, 5, 8, 7, 9, 11, 13, 14, 15, 6, 7, 9, 8,
@@ -37,13 +39,13 @@ public class RIPEMD160 {
 	}
  
 	public void reset() {
-		MDbuf = new int[5];
+		// Reuse buffers so pooled instances don't allocate
 		MDbuf[0] = 0x67452301;
 		MDbuf[1] = 0xefcdab89;
 		MDbuf[2] = 0x98badcfe;
 		MDbuf[3] = 0x10325476;
 		MDbuf[4] = 0xc3d2e1f0;
-		working = new int[16];
+		Arrays.fill(working, 0);
 		working_ptr = 0;
 		msglen = 0;
 	}
@@ -0,0 +1,20 @@
+package qora.crypto;
+
+/**
+ * Verifies signatures using the ref10 port in {@link Ed25519}, one at a time.
+ * <p>
+ * Slower than {@link FastSignatureVerifier} but kept as the definition of which signatures are valid.
+ */
+public final class ReferenceSignatureVerifier implements SignatureVerifier {
+
+	@Override
+	public boolean verify(final byte[] publicKey, final byte[] signature, final byte[] message) {
+		try {
+			return Ed25519.verify(signature, message, publicKey);
+		} catch (final Exception e) {
+			// Short or missing input
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,75 @@
+package qora.crypto;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded record of transactions whose signatures have already been verified.
+ * <p>
+ * Entries are keyed by the SHA-256 digest of the whole serialized transaction, not by the signature alone, so a peer can't
+ * reuse a known-good signature on altered transaction data. Least recently used entries are evicted once the cache is full.
+ */
+public final class SignatureCache {
+
+	private static final int MAX_ENTRIES = 100000;
+
+	private static SignatureCache instance;
+
+	private final Map<ByteBuffer, Boolean> verified;
+
+	public static synchronized SignatureCache getInstance() {
+		if (instance == null) {
+			instance = new SignatureCache();
+		}
+
+		return instance;
+	}
+
+	private SignatureCache() {
+		this.verified = new LinkedHashMap<ByteBuffer, Boolean>(1024, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<ByteBuffer, Boolean> eldest) {
+				return size() > MAX_ENTRIES;
+			}
+		};
+	}
+
+	/**
+	 * @param transactionBytes serialized transaction, including its signature
+	 * @return <code>true</code> if these exact bytes have previously passed signature verification
+	 */
+	public boolean isVerified(final byte[] transactionBytes) {
+		final ByteBuffer key = key(transactionBytes);
+
+		synchronized (this.verified) {
+			return this.verified.containsKey(key);
+		}
+	}
+
+	/**
+	 * Remember that <code>transactionBytes</code> passed signature verification.
+	 *
+	 * @param transactionBytes serialized transaction, including its signature
+	 */
+	public void setVerified(final byte[] transactionBytes) {
+		final ByteBuffer key = key(transactionBytes);
+
+		synchronized (this.verified) {
+			this.verified.put(key, Boolean.TRUE);
+		}
+	}
+
+	public void clear() {
+		synchronized (this.verified) {
+			this.verified.clear();
+		}
+	}
+
+	private static ByteBuffer key(final byte[] transactionBytes) {
+		return ByteBuffer.wrap(Crypto.getInstance().digest(transactionBytes));
+	}
+
+}
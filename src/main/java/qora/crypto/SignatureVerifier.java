@@ -0,0 +1,63 @@
+package qora.crypto;
+
+import java.util.Arrays;
+
+/**
+ * Ed25519 signature verification, as used by {@link Crypto#verify(byte[], byte[], byte[])}.
+ * <p>
+ * Implementations must accept and reject exactly the same signatures as {@link Ed25519#verify(byte[], byte[], byte[])},
+ * otherwise nodes using different implementations could disagree about which blocks are valid.
+ */
+public interface SignatureVerifier {
+
+	/**
+	 * @param publicKey
+	 * @param signature
+	 * @param message
+	 * @return <code>true</code> if <code>signature</code> is <code>publicKey</code>'s signature of <code>message</code>
+	 */
+	boolean verify(byte[] publicKey, byte[] signature, byte[] message);
+
+	/**
+	 * Verify signature of part of <code>message</code>. Default copies that part, implementations can hash it in place.
+	 *
+	 * @param publicKey
+	 * @param signature
+	 * @param message
+	 * @param offset
+	 * @param length
+	 * @return <code>true</code> if <code>signature</code> is <code>publicKey</code>'s signature of <code>length</code> bytes
+	 *         of <code>message</code> from <code>offset</code>
+	 */
+	default boolean verify(final byte[] publicKey, final byte[] signature, final byte[] message, final int offset, final int length) {
+		return this.verify(publicKey, signature, Arrays.copyOfRange(message, offset, offset + length));
+	}
+
+	/**
+	 * Verify several signatures, e.g. all those in a block.
+	 * <p>
+	 * Each signature is checked on its own. Random linear combination batch checks can pass signatures that fail the
+	 * single cofactorless check when points have small order components, so would break the guarantee above.
+	 *
+	 * @param publicKeys
+	 * @param signatures
+	 * @param messages
+	 * @return <code>true</code> if every signature is valid
+	 * @throws IllegalArgumentException
+	 *             if arrays are different lengths
+	 */
+	default boolean verifyBatch(final byte[][] publicKeys, final byte[][] signatures, final byte[][] messages) {
+		if (publicKeys.length != signatures.length || publicKeys.length != messages.length) {
+			throw new IllegalArgumentException("Batch needs a public key, signature and message for each entry");
+		}
+
+		for (int i = 0; i < publicKeys.length; ++i) {
+			if (!this.verify(publicKeys[i], signatures[i], messages[i])) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+}
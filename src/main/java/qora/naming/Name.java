@@ -6,7 +6,7 @@ import java.util.Arrays;
 import org.json.simple.JSONObject;
 
 import qora.account.Account;
-import qora.crypto.Base58;
+import qora.account.Address;
 import utils.NumberAsString;
 
 import com.google.common.primitives.Bytes;
@@ -71,7 +71,7 @@ public class Name {
 		
 		//READ OWNER
 		byte[] ownerBytes = Arrays.copyOfRange(data, position, position + OWNER_LENGTH);
-		Account owner = new Account(Base58.encode(ownerBytes));
+		Account owner = new Account(Address.fromBytes(ownerBytes));
 		position += OWNER_LENGTH;
 		
 		//READ NAME
@@ -126,7 +126,7 @@ public class Name {
 		//WRITE OWNER
 		try
 		{
-			data = Bytes.concat(data , Base58.decode(this.owner.getAddress()));
+			data = Bytes.concat(data , this.owner.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -11,8 +11,8 @@ import com.google.common.primitives.Longs;
 
 import database.QoraDb;
 import qora.account.Account;
+import qora.account.Address;
 import qora.account.PublicKeyAccount;
-import qora.crypto.Base58;
 
 public class Payment {
 
@@ -57,7 +57,7 @@ public class Payment {
 		
 		//READ RECIPIENT
 		byte[] recipientBytes = Arrays.copyOfRange(data, position, position + RECIPIENT_LENGTH);
-		Account recipient = new Account(Base58.encode(recipientBytes));
+		Account recipient = new Account(Address.fromBytes(recipientBytes));
 		position += RECIPIENT_LENGTH;
 		
 		//READ ASSET
@@ -92,7 +92,7 @@ public class Payment {
 		byte[] data = new byte[0];
 		
 		//WRITE RECIPIENT
-		data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
+		data = Bytes.concat(data, this.recipient.getAddressBytes());
 		
 		//WRITE ASSET
 		byte[] assetBytes = Longs.toByteArray(this.asset);
@@ -101,9 +101,6 @@ public abstract class ArbitraryTransaction extends Transaction {
 		return transaction;
 	}
 
-	@Override
-	public abstract byte[] toBytes();
-
 	@Override
 	public abstract int getDataLength();
 
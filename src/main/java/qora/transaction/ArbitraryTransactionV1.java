@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 
@@ -96,47 +97,43 @@ public class ArbitraryTransactionV1 extends ArbitraryTransaction {
 	}
 
 	@Override
-	public byte[] toBytes() {
-		byte[] data = new byte[0];
-
+	protected void serialize(ByteBuffer data){
 		// WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(ARBITRARY_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 
 		// WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH,
 				0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 
 		// WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 
 		// WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 
 		// WRITE SERVICE
 		byte[] serviceBytes = Ints.toByteArray(this.service);
-		data = Bytes.concat(data, serviceBytes);
+		data.put(serviceBytes);
 
 		// WRITE DATA SIZE
 		byte[] dataSizeBytes = Ints.toByteArray(this.data.length);
-		data = Bytes.concat(data, dataSizeBytes);
+		data.put(dataSizeBytes);
 
 		// WRITE DATA
-		data = Bytes.concat(data, this.data);
+		data.put(this.data);
 
 		// WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		// SIGNATURE
-		data = Bytes.concat(data, this.signature);
-
-		return data;
+		data.put(this.signature);
 	}
 
 	@Override
@@ -148,44 +145,7 @@ public class ArbitraryTransactionV1 extends ArbitraryTransaction {
 
 	@Override
 	public boolean isSignatureValid() {
-		byte[] data = new byte[0];
-
-		// WRITE TYPE
-		byte[] typeBytes = Ints.toByteArray(ARBITRARY_TRANSACTION);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
-
-		// WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH,
-				0);
-		data = Bytes.concat(data, timestampBytes);
-
-		// WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
-
-		// WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
-
-		// WRITE SERVICE
-		byte[] serviceBytes = Ints.toByteArray(this.service);
-		data = Bytes.concat(data, serviceBytes);
-
-		// WRITE DATA SIZE
-		byte[] dataSizeBytes = Ints.toByteArray(this.data.length);
-		data = Bytes.concat(data, dataSizeBytes);
-
-		// WRITE DATA
-		data = Bytes.concat(data, this.data);
-
-		// WRITE FEE
-		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
-		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
-		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
-
-		return Crypto.getInstance().verify(this.creator.getPublicKey(),
-				this.signature, data);
+		return this.isSignedPrefixValid(this.creator.getPublicKey());
 	}
 
 	@Override
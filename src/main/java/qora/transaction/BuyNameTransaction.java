@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -17,9 +18,9 @@ import com.google.common.primitives.Longs;
 import database.BalanceMap;
 import database.QoraDb;
 import qora.account.Account;
+import qora.account.Address;
 import qora.account.PrivateKeyAccount;
 import qora.account.PublicKeyAccount;
-import qora.crypto.Base58;
 import qora.crypto.Crypto;
 import qora.naming.Name;
 import qora.naming.NameSale;
@@ -94,7 +95,7 @@ public class BuyNameTransaction extends Transaction
 		
 		//READ SELLER
 		byte[] recipientBytes = Arrays.copyOfRange(data, position, position + SELLER_LENGTH);
-		Account seller = new Account(Base58.encode(recipientBytes));
+		Account seller = new Account(Address.fromBytes(recipientBytes));
 		position += SELLER_LENGTH;
 		
 		//READ FEE
@@ -125,42 +126,38 @@ public class BuyNameTransaction extends Transaction
 	}
 
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(BUY_NAME_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE BUYER
-		data = Bytes.concat(data, this.buyer.getPublicKey());
+		data.put(this.buyer.getPublicKey());
 		
 		//WRITE NAME SALE
-		data = Bytes.concat(data, this.nameSale.toBytes());
+		data.put(this.nameSale.toBytes());
 		
 		//WRITE SELLER
-		data = Bytes.concat(data, Base58.decode(this.seller.getAddress()));
+		data.put(this.seller.getAddressBytes());
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;	
+		data.put(this.signature);
 	}
 
 	@Override
@@ -174,37 +171,7 @@ public class BuyNameTransaction extends Transaction
 	@Override
 	public boolean isSignatureValid() 
 	{
-		byte[] data = new byte[0];
-		
-		//WRITE TYPE
-		byte[] typeBytes = Ints.toByteArray(BUY_NAME_TRANSACTION);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
-		
-		//WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
-		
-		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
-		
-		//WRITE BUYER
-		data = Bytes.concat(data, this.buyer.getPublicKey());
-		
-		//WRITE NAME SALE
-		data = Bytes.concat(data, this.nameSale.toBytes());
-		
-		//WRITE SELLER
-		data = Bytes.concat(data, Base58.decode(this.seller.getAddress()));
-		
-		//WRITE FEE
-		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
-		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
-		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
-		
-		return Crypto.getInstance().verify(this.buyer.getPublicKey(), this.signature, data);
+		return this.isSignedPrefixValid(this.buyer.getPublicKey());
 	}
 
 	@Override
@@ -413,7 +380,7 @@ public class BuyNameTransaction extends Transaction
 		data = Bytes.concat(data, nameSale.toBytes());
 		
 		//WRITE SELLER
-		data = Bytes.concat(data, Base58.decode(seller.getAddress()));
+		data = Bytes.concat(data, seller.getAddressBytes());
 		
 		//WRITE FEE
 		byte[] feeBytes = fee.unscaledValue().toByteArray();
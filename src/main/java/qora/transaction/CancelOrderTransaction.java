@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -105,42 +106,38 @@ public class CancelOrderTransaction extends Transaction
 	}
 
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(CANCEL_ORDER_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 		
 		//WRITE ORDER
 		byte[] orderBytes = this.order.toByteArray();
 		byte[] fill = new byte[ORDER_LENGTH - orderBytes.length];
 		orderBytes = Bytes.concat(fill, orderBytes);
-		data = Bytes.concat(data, orderBytes);
+		data.put(orderBytes);
 				
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;	
+		data.put(this.signature);
 	}
 
 	@Override
@@ -154,37 +151,7 @@ public class CancelOrderTransaction extends Transaction
 	@Override
 	public boolean isSignatureValid() 
 	{
-		byte[] data = new byte[0];
-		
-		//WRITE TYPE
-		byte[] typeBytes = Ints.toByteArray(CANCEL_ORDER_TRANSACTION);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
-		
-		//WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
-		
-		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
-		
-		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
-		
-		//WRITE ORDER
-		byte[] orderBytes = this.order.toByteArray();
-		byte[] fill = new byte[ORDER_LENGTH - orderBytes.length];
-		orderBytes = Bytes.concat(fill, orderBytes);
-		data = Bytes.concat(data, orderBytes);
-				
-		//WRITE FEE
-		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
-		fill = new byte[FEE_LENGTH - feeBytes.length];
-		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
-		
-		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data);
+		return this.isSignedPrefixValid(this.creator.getPublicKey());
 	}
 
 	@Override
@@ -198,7 +165,7 @@ public class CancelOrderTransaction extends Transaction
 		}
 		
 		//CHECK CREATOR
-		if(!Crypto.getInstance().isValidAddress(this.creator.getAddress()))
+		if(!this.creator.isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
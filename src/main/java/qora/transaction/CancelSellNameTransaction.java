@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -119,45 +120,41 @@ public class CancelSellNameTransaction extends Transaction
 	}
 
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(CANCEL_SELL_NAME_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE OWNER
-		data = Bytes.concat(data, this.owner.getPublicKey());
+		data.put(this.owner.getPublicKey());
 		
 		//WRITE NAME SIZE
 		byte[] nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
 		int nameLength = nameBytes.length;
 		byte[] nameLengthBytes = Ints.toByteArray(nameLength);
-		data = Bytes.concat(data, nameLengthBytes);
+		data.put(nameLengthBytes);
 				
 		//WRITE NAME
-		data = Bytes.concat(data, nameBytes);
+		data.put(nameBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;	
+		data.put(this.signature);
 	}
 
 	@Override
@@ -174,40 +171,7 @@ public class CancelSellNameTransaction extends Transaction
 	@Override
 	public boolean isSignatureValid() 
 	{
-		byte[] data = new byte[0];
-		
-		//WRITE TYPE
-		byte[] typeBytes = Ints.toByteArray(CANCEL_SELL_NAME_TRANSACTION);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
-		
-		//WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
-		
-		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
-		
-		//WRITE OWNER
-		data = Bytes.concat(data, this.owner.getPublicKey());
-		
-		//WRITE NAME SIZE
-		byte[] nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
-		int nameLength = nameBytes.length;
-		byte[] nameLengthBytes = Ints.toByteArray(nameLength);
-		data = Bytes.concat(data, nameLengthBytes);
-				
-		//WRITE NAME
-		data = Bytes.concat(data, nameBytes);
-		
-		//WRITE FEE
-		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
-		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
-		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
-		
-		return Crypto.getInstance().verify(this.owner.getPublicKey(), this.signature, data);
+		return this.isSignedPrefixValid(this.owner.getPublicKey());
 	}
 
 	@Override
@@ -228,7 +192,7 @@ public class CancelSellNameTransaction extends Transaction
 		}
 		
 		//CHECK OWNER
-		if(!Crypto.getInstance().isValidAddress(this.owner.getAddress()))
+		if(!this.owner.isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
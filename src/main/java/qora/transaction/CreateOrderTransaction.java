@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -131,58 +132,54 @@ public class CreateOrderTransaction extends Transaction
 	}
 	
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(CREATE_ORDER_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 		
 		//WRITE HAVE
 		byte[] haveBytes = Longs.toByteArray(this.order.getHave());
 		haveBytes = Bytes.ensureCapacity(haveBytes, HAVE_LENGTH, 0);
-		data = Bytes.concat(data, haveBytes);
+		data.put(haveBytes);
 		
 		//WRITE WANT
 		byte[] wantBytes = Longs.toByteArray(this.order.getWant());
 		wantBytes = Bytes.ensureCapacity(wantBytes, WANT_LENGTH, 0);
-		data = Bytes.concat(data, wantBytes);
+		data.put(wantBytes);
 		
 		//WRITE AMOUNT
 		byte[] amountBytes = this.order.getAmount().unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE PRICE
 		byte[] priceBytes = this.order.getPrice().unscaledValue().toByteArray();
 		fill = new byte[PRICE_LENGTH - priceBytes.length];
 		priceBytes = Bytes.concat(fill, priceBytes);
-		data = Bytes.concat(data, priceBytes);
+		data.put(priceBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;
+		data.put(this.signature);
 	}
 	
 	@Override
@@ -195,53 +192,53 @@ public class CreateOrderTransaction extends Transaction
 	
 	public boolean isSignatureValid()
 	{
-		byte[] data = new byte[0];
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(CREATE_ORDER_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 		
 		//WRITE HAVE
 		byte[] haveBytes = Longs.toByteArray(this.order.getHave());
 		haveBytes = Bytes.ensureCapacity(haveBytes, HAVE_LENGTH, 0);
-		data = Bytes.concat(data, haveBytes);
+		data.put(haveBytes);
 		
 		//WRITE WANT
 		byte[] wantBytes = Longs.toByteArray(this.order.getWant());
 		wantBytes = Bytes.ensureCapacity(wantBytes, WANT_LENGTH, 0);
-		data = Bytes.concat(data, wantBytes);
+		data.put(wantBytes);
 		
 		//WRITE AMOUNT
 		byte[] amountBytes = this.order.getAmount().unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE PRICE
 		byte[] priceBytes = this.order.getPrice().unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - priceBytes.length];
 		priceBytes = Bytes.concat(fill, priceBytes);
-		data = Bytes.concat(data, priceBytes);
+		data.put(priceBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 				
-		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data.array(), 0, data.position());
 	}
 	
 	@Override
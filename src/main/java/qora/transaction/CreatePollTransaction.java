@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -117,39 +118,35 @@ public class CreatePollTransaction extends Transaction
 	}
 	
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(CREATE_POLL_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 		
 		//WRITE POLL
-		data = Bytes.concat(data , this.poll.toBytes());
+		data.put(this.poll.toBytes());
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;
+		data.put(this.signature);
 	}
 	
 	@Override
@@ -162,34 +159,34 @@ public class CreatePollTransaction extends Transaction
 	
 	public boolean isSignatureValid()
 	{
-		byte[] data = new byte[0];
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(REGISTER_NAME_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 		
 		//WRITE POLL
-		data = Bytes.concat(data , this.poll.toBytes());
+		data.put(this.poll.toBytes());
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 				
-		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data.array(), 0, data.position());
 	}
 	
 	@Override
@@ -234,7 +231,7 @@ public class CreatePollTransaction extends Transaction
 		}
 		
 		//CHECK POLL CREATOR VALID ADDRESS
-		if(!Crypto.getInstance().isValidAddress(this.poll.getCreator().getAddress()))
+		if(!this.poll.getCreator().isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
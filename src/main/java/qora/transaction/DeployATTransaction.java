@@ -197,86 +197,82 @@ public class DeployATTransaction extends Transaction
 	}
 
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(DEPLOY_AT_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 
 		//WRITE NAME SIZE
 		byte[] nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
 		int nameLength = nameBytes.length;
 		byte[] nameLengthBytes = Ints.toByteArray(nameLength);
-		data = Bytes.concat(data, nameLengthBytes);
+		data.put(nameLengthBytes);
 
 		//WRITE NAME
-		data = Bytes.concat(data, nameBytes);
+		data.put(nameBytes);
 
 		//WRITE DESCRIPTION SIZE
 		byte[] descriptionBytes = this.description.getBytes(StandardCharsets.UTF_8);
 		int descriptionLength = descriptionBytes.length;
 		byte[] descriptionLengthBytes = Ints.toByteArray(descriptionLength);
-		data = Bytes.concat(data, descriptionLengthBytes);
+		data.put(descriptionLengthBytes);
 
 		//WRITE DESCRIPTION
-		data = Bytes.concat(data, descriptionBytes);
+		data.put(descriptionBytes);
 
 		//WRITE TYPE SIZE
 		byte[] typeATBytes = this.type.getBytes(StandardCharsets.UTF_8);
 		int typeLength = typeATBytes.length;
 		byte[] typeLengthBytes = Ints.toByteArray(typeLength);
-		data = Bytes.concat(data, typeLengthBytes);
+		data.put(typeLengthBytes);
 
 		//WRITE TYPE
-		data = Bytes.concat(data, typeATBytes);
+		data.put(typeATBytes);
 
 		//WRITE TAGS SIZE
 		byte[] tagsBytes = this.tags.getBytes(StandardCharsets.UTF_8);
 		int tagsLength = tagsBytes.length;
 		byte[] tagsLengthBytes = Ints.toByteArray(tagsLength);
-		data = Bytes.concat(data, tagsLengthBytes);
+		data.put(tagsLengthBytes);
 
 		//WRITE TAGS
-		data = Bytes.concat(data, tagsBytes);
+		data.put(tagsBytes);
 
 		//WRITE CREATIONBYTES SIZE
 		int creationBytesLength = this.creationBytes.length;
 		byte[] creationLengthBytes = Ints.toByteArray(creationBytesLength);
-		data = Bytes.concat(data, creationLengthBytes);
+		data.put(creationLengthBytes);
 
 		//WRITE DESCRIPTION
-		data = Bytes.concat(data, this.creationBytes);
+		data.put(this.creationBytes);
 
 		//WRITE AMOUNT
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fillAmount = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fillAmount, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-
-		return data;
+		data.put(this.signature);
 	}
 
 	@Override
@@ -295,63 +291,63 @@ public class DeployATTransaction extends Transaction
 	@Override
 	public boolean isSignatureValid() 
 	{
-		byte[] data = new byte[0];
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(DEPLOY_AT_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 
 		//WRITE NAME SIZE
 		byte[] nameBytes = this.name.getBytes(StandardCharsets.UTF_8);
 		int nameLength = nameBytes.length;
 		byte[] nameLengthBytes = Ints.toByteArray(nameLength);
-		data = Bytes.concat(data, nameLengthBytes);
+		data.put(nameLengthBytes);
 
 		//WRITE NAME
-		data = Bytes.concat(data, nameBytes);
+		data.put(nameBytes);
 
 		//WRITE DESCRIPTION SIZE
 		byte[] descriptionBytes = this.description.getBytes(StandardCharsets.UTF_8);
 		int descriptionLength = descriptionBytes.length;
 		byte[] descriptionLengthBytes = Ints.toByteArray(descriptionLength);
-		data = Bytes.concat(data, descriptionLengthBytes);
+		data.put(descriptionLengthBytes);
 
 		//WRITE DESCRIPTION
-		data = Bytes.concat(data, descriptionBytes);
+		data.put(descriptionBytes);
 
 		//WRITE CREATIONBYTES SIZE
 		int creationBytesLength = this.creationBytes.length;
 		byte[] creationLengthBytes = Ints.toByteArray(creationBytesLength);
-		data = Bytes.concat(data, creationLengthBytes);
+		data.put(creationLengthBytes);
 
 		//WRITE DESCRIPTION
-		data = Bytes.concat(data, this.creationBytes);
+		data.put(this.creationBytes);
 
 		//WRITE FEE
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fillAmount = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fillAmount, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
-		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data.array(), 0, data.position());
 	}
 
 	@Override
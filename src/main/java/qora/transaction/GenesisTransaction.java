@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -16,8 +17,8 @@ import com.google.common.primitives.Longs;
 import database.BalanceMap;
 import database.QoraDb;
 import qora.account.Account;
+import qora.account.Address;
 import qora.account.PublicKeyAccount;
-import qora.crypto.Base58;
 import qora.crypto.Crypto;
 
 public class GenesisTransaction extends Transaction {
@@ -74,7 +75,7 @@ public class GenesisTransaction extends Transaction {
 		
 		//READ RECIPIENT
 		byte[] recipientBytes = Arrays.copyOfRange(data, position, position + RECIPIENT_LENGTH);
-		Account recipient = new Account(Base58.encode(recipientBytes));
+		Account recipient = new Account(Address.fromBytes(recipientBytes));
 		position += RECIPIENT_LENGTH;
 		
 		//READ AMOUNT
@@ -99,30 +100,26 @@ public class GenesisTransaction extends Transaction {
 	}
 	
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(GENESIS_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE RECIPIENT
-		data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
+		data.put(this.recipient.getAddressBytes());
 		
 		//WRITE AMOUNT
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
-		
-		return data;
+		data.put(amountBytes);
 	}
 
 	@Override
@@ -135,29 +132,8 @@ public class GenesisTransaction extends Transaction {
 	
 	public boolean isSignatureValid()
 	{
-		byte[] data = new byte[0];
-		
-		//WRITE TYPE
-		byte[] typeBytes = Ints.toByteArray(GENESIS_TRANSACTION);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
-		
-		//WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
-		
-		//WRITE RECIPIENT
-		data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
-				
-		//WRITE AMOUNT
-		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
-		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
-		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
-		
 		//DIGEST
-		byte[] digest = Crypto.getInstance().digest(data);
+		byte[] digest = Crypto.getInstance().digest(this.getBytes());
 		digest = Bytes.concat(digest, digest);
 				
 		//CHECK IF EQUAL
@@ -174,7 +150,7 @@ public class GenesisTransaction extends Transaction {
 		}
 		
 		//CHECK IF ADDRESS IS VALID
-		if(!Crypto.getInstance().isValidAddress(this.recipient.getAddress()))
+		if(!this.recipient.isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
@@ -222,7 +198,7 @@ public class GenesisTransaction extends Transaction {
 		data = Bytes.concat(data, timestampBytes);
 				
 		//WRITE RECIPIENT
-		data = Bytes.concat(data, Base58.decode(recipient.getAddress()));
+		data = Bytes.concat(data, recipient.getAddressBytes());
 				
 		//WRITE AMOUNT
 		byte[] amountBytes = amount.unscaledValue().toByteArray();
@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -113,39 +114,35 @@ public class IssueAssetTransaction extends Transaction
 	}
 	
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(ISSUE_ASSET_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE ISSUER
-		data = Bytes.concat(data, this.issuer.getPublicKey());
+		data.put(this.issuer.getPublicKey());
 		
 		//WRITE ASSET
-		data = Bytes.concat(data , this.asset.toBytes(true));
+		data.put(this.asset.toBytes(true));
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;
+		data.put(this.signature);
 	}
 	
 	@Override
@@ -158,34 +155,34 @@ public class IssueAssetTransaction extends Transaction
 	
 	public boolean isSignatureValid()
 	{
-		byte[] data = new byte[0];
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(ISSUE_ASSET_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE ISSUER
-		data = Bytes.concat(data, this.issuer.getPublicKey());
+		data.put(this.issuer.getPublicKey());
 		
 		//WRITE ASSET
-		data = Bytes.concat(data , this.asset.toBytes(false));
+		data.put(this.asset.toBytes(false));
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 				
-		return Crypto.getInstance().verify(this.issuer.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.issuer.getPublicKey(), this.signature, data.array(), 0, data.position());
 	}
 	
 	@Override
@@ -219,7 +216,7 @@ public class IssueAssetTransaction extends Transaction
 		}
 		
 		//CHECK ISSUER
-		if(!Crypto.getInstance().isValidAddress(this.asset.getOwner().getAddress()))
+		if(!this.asset.getOwner().isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
@@ -131,9 +131,6 @@ public abstract class MessageTransaction extends Transaction {
 		return false;
 	}
 
-	@Override
-	public abstract byte[] toBytes();
-
 	@Override
 	public abstract int getDataLength();
 
@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import com.google.common.primitives.Bytes;
@@ -11,9 +12,9 @@ import com.google.common.primitives.Longs;
 import database.BalanceMap;
 import database.QoraDb;
 import qora.account.Account;
+import qora.account.Address;
 import qora.account.PrivateKeyAccount;
 import qora.account.PublicKeyAccount;
-import qora.crypto.Base58;
 import qora.crypto.Crypto;
 
 
@@ -70,7 +71,7 @@ public class MessageTransactionV3 extends MessageTransaction {
 
 		//READ SENDER
 		byte[] recipientBytes = Arrays.copyOfRange(data, position, position + RECIPIENT_LENGTH);
-		Account recipient = new Account(Base58.encode(recipientBytes));
+		Account recipient = new Account(Address.fromBytes(recipientBytes));
 		position += RECIPIENT_LENGTH;
 
 		//READ KEY
@@ -112,63 +113,59 @@ public class MessageTransactionV3 extends MessageTransaction {
 	}
 
 	@Override
-	public byte[] toBytes() {
-
-		byte[] data = new byte[0];
+	protected void serialize(ByteBuffer data){
 
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(MESSAGE_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 
 		//WRITE RECIPIENT
-		data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
+		data.put(this.recipient.getAddressBytes());
 
 		//WRITE KEY
 		byte[] keyBytes = Longs.toByteArray(this.key);
 		keyBytes = Bytes.ensureCapacity(keyBytes, KEY_LENGTH, 0);
-		data = Bytes.concat(data, keyBytes);
+		data.put(keyBytes);
 		
 		//WRITE AMOUNT
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 
 		//WRITE DATA SIZE
 		byte[] dataSizeBytes = Ints.toByteArray(this.data.length);
-		data = Bytes.concat(data, dataSizeBytes);
+		data.put(dataSizeBytes);
 
 		//WRITE DATA
-		data = Bytes.concat(data, this.data);
+		data.put(this.data);
 		
 		//WRITE ENCRYPTED
-		data = Bytes.concat(data, this.encrypted);
+		data.put(this.encrypted);
 		
 		//WRITE ISTEXT
-		data = Bytes.concat(data, this.isText);
+		data.put(this.isText);
 
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-
-		return data;	
+		data.put(this.signature);
 	}
 
 	@Override
@@ -178,28 +175,34 @@ public class MessageTransactionV3 extends MessageTransaction {
 
 	@Override
 	public boolean isSignatureValid() {
-		byte[] data = new byte[0];
+		//SIGNED DATA IS EVERYTHING BEFORE THE SIGNATURE, UNLESS RECIPIENT CAN'T BE DECODED
+		if(this.recipient.getAddressBytes() != null)
+		{
+			return this.isSignedPrefixValid(this.creator.getPublicKey());
+		}
+		
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(MESSAGE_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE CREATOR
-		data = Bytes.concat(data, this.creator.getPublicKey());
+		data.put(this.creator.getPublicKey());
 		
 		try
 		{
 			//WRITE RECIPIENT
-			data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
+			data.put(this.recipient.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -210,34 +213,34 @@ public class MessageTransactionV3 extends MessageTransaction {
 		//WRITE KEY
 		byte[] keyBytes = Longs.toByteArray(this.key);
 		keyBytes = Bytes.ensureCapacity(keyBytes, KEY_LENGTH, 0);
-		data = Bytes.concat(data, keyBytes);
+		data.put(keyBytes);
 		
 		//WRITE AMOUNT
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE DATA SIZE
 		byte[] dataSizeBytes = Ints.toByteArray(this.data.length);
-		data = Bytes.concat(data, dataSizeBytes);
+		data.put(dataSizeBytes);
 		
 		//WRITE DATA
-		data = Bytes.concat(data, this.data);
+		data.put(this.data);
 		
 		//WRITE ENCRYPTED
-		data = Bytes.concat(data, this.encrypted);
+		data.put(this.encrypted);
 		
 		//WRITE ISTEXT
-		data = Bytes.concat(data, this.isText );
+		data.put(this.isText );
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 		
-		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.creator.getPublicKey(), this.signature, data.array(), 0, data.position());
 	
 	}
 
@@ -261,7 +264,7 @@ public class MessageTransactionV3 extends MessageTransaction {
 		}
 	
 		//CHECK IF RECIPIENT IS VALID ADDRESS
-		if(!Crypto.getInstance().isValidAddress(this.recipient.getAddress()))
+		if(!this.recipient.isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
@@ -376,7 +379,7 @@ public class MessageTransactionV3 extends MessageTransaction {
 		try
 		{
 			//WRITE RECIPIENT
-			data = Bytes.concat(data, Base58.decode(recipient.getAddress()));
+			data = Bytes.concat(data, recipient.getAddressBytes());
 		}
 		catch(Exception e)
 		{
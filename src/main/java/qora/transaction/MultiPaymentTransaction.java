@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -135,47 +136,43 @@ public class MultiPaymentTransaction extends Transaction {
 	}
 	
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(MULTI_PAYMENT_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE SENDER
-		data = Bytes.concat(data , this.sender.getPublicKey());
+		data.put(this.sender.getPublicKey());
 	
 		//WRITE PAYMENTS SIZE
 		int paymentsLength = this.payments.size();
 		byte[] paymentsLengthBytes = Ints.toByteArray(paymentsLength);
-		data = Bytes.concat(data, paymentsLengthBytes);
+		data.put(paymentsLengthBytes);
 		
 		//WRITE PAYMENTS
 		for(Payment payment: this.payments)
 		{
-			data = Bytes.concat(data, payment.toBytes());
+			data.put(payment.toBytes());
 		}
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;
+		data.put(this.signature);
 	}
 
 	@Override
@@ -194,42 +191,44 @@ public class MultiPaymentTransaction extends Transaction {
 	
 	public boolean isSignatureValid()
 	{
-		byte[] data = new byte[0];
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(MULTI_PAYMENT_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE SENDER
-		data = Bytes.concat(data , this.sender.getPublicKey());
+		data.put(this.sender.getPublicKey());
 	
 		//WRITE PAYMENTS SIZE
 		int paymentsLength = this.payments.size();
 		byte[] paymentsLengthBytes = Ints.toByteArray(paymentsLength);
-		data = Bytes.concat(data, paymentsLengthBytes);
+		data.put(paymentsLengthBytes);
 		
 		//WRITE PAYMENTS
 		for(Payment payment: this.payments)
 		{
-			data = Bytes.concat(payment.toBytes());
+			//ONLY THE LAST PAYMENT IS SIGNED, ALONG WITH WHAT FOLLOWS
+			data.clear();
+			data.put(payment.toBytes());
 		}
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 				
-		return Crypto.getInstance().verify(this.sender.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.sender.getPublicKey(), this.signature, data.array(), 0, data.position());
 	}
 	
 	@Override
@@ -264,7 +263,7 @@ public class MultiPaymentTransaction extends Transaction {
 		for(Payment payment: this.payments)
 		{	
 			//CHECK IF RECIPIENT IS VALID ADDRESS
-			if(!Crypto.getInstance().isValidAddress(payment.getRecipient().getAddress()))
+			if(!payment.getRecipient().isValidAddress())
 			{
 				return INVALID_ADDRESS;
 			}
@@ -1,7 +1,7 @@
 package qora.transaction;
 
 import java.math.BigDecimal;
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -16,9 +16,9 @@ import com.google.common.primitives.Longs;
 import database.BalanceMap;
 import database.QoraDb;
 import qora.account.Account;
+import qora.account.Address;
 import qora.account.PrivateKeyAccount;
 import qora.account.PublicKeyAccount;
-import qora.crypto.Base58;
 import qora.crypto.Crypto;
 
 public class PaymentTransaction extends Transaction {
@@ -70,45 +70,48 @@ public class PaymentTransaction extends Transaction {
 	
 	public static Transaction Parse(byte[] data) throws Exception{
 		
+		return Parse(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Parse from position to limit of <code>data</code>, which starts at the timestamp, reading fixed-size fields in place.
+	 */
+	public static Transaction Parse(ByteBuffer data) throws Exception{
+		
 		//CHECK IF WE MATCH BLOCK LENGTH
-		if(data.length < BASE_LENGTH)
+		if(data.remaining() < BASE_LENGTH)
 		{
 			throw new Exception("Data does not match block length");
 		}
 		
-		int position = 0;
+		ByteBuffer buffer = data.duplicate();
 		
 		//READ TIMESTAMP
-		byte[] timestampBytes = Arrays.copyOfRange(data, position, position + TIMESTAMP_LENGTH);
-		long timestamp = Longs.fromByteArray(timestampBytes);	
-		position += TIMESTAMP_LENGTH;
+		long timestamp = buffer.getLong();
 		
 		//READ REFERENCE
-		byte[] reference = Arrays.copyOfRange(data, position, position + REFERENCE_LENGTH);
-		position += REFERENCE_LENGTH;
+		byte[] reference = new byte[REFERENCE_LENGTH];
+		buffer.get(reference);
 		
 		//READ SENDER
-		byte[] senderBytes = Arrays.copyOfRange(data, position, position + SENDER_LENGTH);
+		byte[] senderBytes = new byte[SENDER_LENGTH];
+		buffer.get(senderBytes);
 		PublicKeyAccount sender = new PublicKeyAccount(senderBytes);
-		position += SENDER_LENGTH;
 		
 		//READ RECIPIENT
-		byte[] recipientBytes = Arrays.copyOfRange(data, position, position + RECIPIENT_LENGTH);
-		Account recipient = new Account(Base58.encode(recipientBytes));
-		position += RECIPIENT_LENGTH;
+		byte[] recipientBytes = new byte[RECIPIENT_LENGTH];
+		buffer.get(recipientBytes);
+		Account recipient = new Account(Address.fromBytes(recipientBytes));
 		
 		//READ AMOUNT
-		byte[] amountBytes = Arrays.copyOfRange(data, position, position + AMOUNT_LENGTH);
-		BigDecimal amount = new BigDecimal(new BigInteger(amountBytes), 8);
-		position += AMOUNT_LENGTH;
+		BigDecimal amount = BigDecimal.valueOf(buffer.getLong(), 8);
 		
 		//READ FEE
-		byte[] feeBytes = Arrays.copyOfRange(data, position, position + FEE_LENGTH);
-		BigDecimal fee = new BigDecimal(new BigInteger(feeBytes), 8);
-		position += FEE_LENGTH;		
+		BigDecimal fee = BigDecimal.valueOf(buffer.getLong(), 8);
 		
 		//READ SIGNATURE
-		byte[] signatureBytes = Arrays.copyOfRange(data, position, position + SIGNATURE_LENGTH);
+		byte[] signatureBytes = new byte[SIGNATURE_LENGTH];
+		buffer.get(signatureBytes);
 		
 		return new PaymentTransaction(sender, recipient, amount, fee, timestamp, reference, signatureBytes);	
 	}	
@@ -129,45 +132,41 @@ public class PaymentTransaction extends Transaction {
 	}
 	
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(PAYMENT_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE SENDER
-		data = Bytes.concat(data , this.sender.getPublicKey());
+		data.put(this.sender.getPublicKey());
 		
 		//WRITE RECIPIENT
-		data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
+		data.put(this.recipient.getAddressBytes());
 		
 		//WRITE AMOUNT
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;
+		data.put(this.signature);
 	}
 
 	@Override
@@ -181,28 +180,34 @@ public class PaymentTransaction extends Transaction {
 	public boolean isSignatureValid()
 	{
 		//CHECK SIGNATURE
-		byte[] data = new byte[0];
+		//SIGNED DATA IS EVERYTHING BEFORE THE SIGNATURE, UNLESS RECIPIENT CAN'T BE DECODED
+		if(this.recipient.getAddressBytes() != null)
+		{
+			return this.isSignedPrefixValid(this.sender.getPublicKey());
+		}
+		
+		ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
 		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(PAYMENT_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE SENDER
-		data = Bytes.concat(data , this.sender.getPublicKey());
+		data.put(this.sender.getPublicKey());
 		
 		try
 		{
 			//WRITE RECIPIENT
-			data = Bytes.concat(data, Base58.decode(this.recipient.getAddress()));
+			data.put(this.recipient.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -213,22 +218,22 @@ public class PaymentTransaction extends Transaction {
 		byte[] amountBytes = this.amount.unscaledValue().toByteArray();
 		byte[] fill = new byte[AMOUNT_LENGTH - amountBytes.length];
 		amountBytes = Bytes.concat(fill, amountBytes);
-		data = Bytes.concat(data, amountBytes);
+		data.put(amountBytes);
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 				
-		return Crypto.getInstance().verify(this.sender.getPublicKey(), this.signature, data);
+		return Crypto.getInstance().verify(this.sender.getPublicKey(), this.signature, data.array(), 0, data.position());
 	}
 	
 	@Override
 	public int isValid(QoraDb db) 
 	{
 		//CHECK IF RECIPIENT IS VALID ADDRESS
-		if(!Crypto.getInstance().isValidAddress(this.recipient.getAddress()))
+		if(!this.recipient.isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
@@ -404,7 +409,7 @@ public class PaymentTransaction extends Transaction {
 		try
 		{
 			//WRITE RECIPIENT
-			data = Bytes.concat(data, Base58.decode(recipient.getAddress()));
+			data = Bytes.concat(data, recipient.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -2,6 +2,7 @@ package qora.transaction;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -110,39 +111,35 @@ public class SellNameTransaction extends Transaction
 	}
 
 	@Override
-	public byte[] toBytes() 
+	protected void serialize(ByteBuffer data)
 	{
-		byte[] data = new byte[0];
-		
 		//WRITE TYPE
 		byte[] typeBytes = Ints.toByteArray(SELL_NAME_TRANSACTION);
 		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
+		data.put(typeBytes);
 		
 		//WRITE TIMESTAMP
 		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
 		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
+		data.put(timestampBytes);
 		
 		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
+		data.put(this.reference);
 		
 		//WRITE OWNER
-		data = Bytes.concat(data, this.owner.getPublicKey());
+		data.put(this.owner.getPublicKey());
 		
 		//WRITE NAMESALE
-		data = Bytes.concat(data, this.nameSale.toBytes());
+		data.put(this.nameSale.toBytes());
 		
 		//WRITE FEE
 		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
 		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
 		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
+		data.put(feeBytes);
 
 		//SIGNATURE
-		data = Bytes.concat(data, this.signature);
-		
-		return data;	
+		data.put(this.signature);
 	}
 
 	@Override
@@ -156,34 +153,7 @@ public class SellNameTransaction extends Transaction
 	@Override
 	public boolean isSignatureValid() 
 	{
-		byte[] data = new byte[0];
-		
-		//WRITE TYPE
-		byte[] typeBytes = Ints.toByteArray(SELL_NAME_TRANSACTION);
-		typeBytes = Bytes.ensureCapacity(typeBytes, TYPE_LENGTH, 0);
-		data = Bytes.concat(data, typeBytes);
-		
-		//WRITE TIMESTAMP
-		byte[] timestampBytes = Longs.toByteArray(this.timestamp);
-		timestampBytes = Bytes.ensureCapacity(timestampBytes, TIMESTAMP_LENGTH, 0);
-		data = Bytes.concat(data, timestampBytes);
-		
-		//WRITE REFERENCE
-		data = Bytes.concat(data, this.reference);
-		
-		//WRITE OWNER
-		data = Bytes.concat(data, this.owner.getPublicKey());
-		
-		//WRITE NAMESALE
-		data = Bytes.concat(data, this.nameSale.toBytes());
-		
-		//WRITE FEE
-		byte[] feeBytes = this.fee.unscaledValue().toByteArray();
-		byte[] fill = new byte[FEE_LENGTH - feeBytes.length];
-		feeBytes = Bytes.concat(fill, feeBytes);
-		data = Bytes.concat(data, feeBytes);
-
-		return Crypto.getInstance().verify(this.owner.getPublicKey(), this.signature, data);
+		return this.isSignedPrefixValid(this.owner.getPublicKey());
 	}
 
 	@Override
@@ -204,7 +174,7 @@ public class SellNameTransaction extends Transaction
 		}
 				
 		//CHECK OWNER
-		if(!Crypto.getInstance().isValidAddress(name.getOwner().getAddress()))
+		if(!name.getOwner().isValidAddress())
 		{
 			return INVALID_ADDRESS;
 		}
@@ -1,7 +1,10 @@
 package qora.transaction;
 
+import java.io.DataOutput;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.MathContext;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -10,6 +13,7 @@ import java.util.Map;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.json.simple.JSONObject;
+import org.mapdb.Fun.Tuple2;
 
 import controller.Controller;
 import database.QoraDb;
@@ -17,6 +21,8 @@ import qora.account.Account;
 import qora.account.PublicKeyAccount;
 import qora.block.Block;
 import qora.crypto.Base58;
+import qora.crypto.Crypto;
+import qora.crypto.SignatureCache;
 import settings.Settings;
 
 public abstract class Transaction {
@@ -165,6 +171,8 @@ public abstract class Transaction {
 	protected byte[] signature;
 	protected long timestamp;
 	
+	private volatile byte[] bytes;
+	
 	protected Transaction(int type, BigDecimal fee, long timestamp, byte[] reference, byte[] signature)
 	{
 		this.fee = fee;
@@ -266,7 +274,55 @@ public abstract class Transaction {
 	
 	public abstract JSONObject toJson();
 	
-	public abstract byte[] toBytes();
+	/**
+	 * Write this transaction's bytes, as sent over the network and stored in blocks.
+	 * 
+	 * @param data buffer with at least {@link #getDataLength()} bytes remaining
+	 */
+	protected abstract void serialize(ByteBuffer data);
+	
+	public byte[] toBytes()
+	{
+		return this.getBytes().clone();
+	}
+	
+	/**
+	 * Write this transaction's bytes to <code>buffer</code>, without the copy {@link #toBytes()} makes.
+	 */
+	public void writeTo(ByteBuffer buffer)
+	{
+		buffer.put(this.getBytes());
+	}
+	
+	public void writeTo(DataOutput out) throws IOException
+	{
+		out.write(this.getBytes());
+	}
+	
+	/**
+	 * @return this transaction's bytes, serialized once into a buffer sized by {@link #getDataLength()} and then kept.
+	 * Transactions don't change once created. Callers must not modify the result.
+	 */
+	byte[] getBytes()
+	{
+		byte[] bytes = this.bytes;
+		if(bytes == null)
+		{
+			ByteBuffer data = ByteBuffer.allocate(this.getDataLength());
+			this.serialize(data);
+			
+			bytes = data.array();
+			if(data.position() != bytes.length)
+			{
+				bytes = Arrays.copyOf(bytes, data.position());
+			}
+			
+			//RACING THREADS WRITE THE SAME BYTES
+			this.bytes = bytes;
+		}
+		
+		return bytes;
+	}
 	
 	public abstract int getDataLength();
 	
@@ -274,6 +330,38 @@ public abstract class Transaction {
 	
 	public abstract boolean isSignatureValid();
 	
+	/**
+	 * For transaction types whose signed data is their bytes up to the signature: check the signature against that
+	 * prefix of {@link #getBytes()}, instead of serializing the fields again.
+	 */
+	protected boolean isSignedPrefixValid(byte[] publicKey)
+	{
+		byte[] bytes = this.getBytes();
+		return Crypto.getInstance().verify(publicKey, this.signature, bytes, 0, bytes.length - this.signature.length);
+	}
+
+	/**
+	 * Same as {@link #isSignatureValid()} but skips the Ed25519 check if these exact transaction bytes
+	 * have already been verified, e.g. when the transaction arrived unconfirmed and later again in a block.
+	 */
+	public boolean hasValidSignature()
+	{
+		byte[] transactionBytes = this.getBytes();
+
+		if(SignatureCache.getInstance().isVerified(transactionBytes))
+		{
+			return true;
+		}
+
+		if(!this.isSignatureValid())
+		{
+			return false;
+		}
+
+		SignatureCache.getInstance().setVerified(transactionBytes);
+		return true;
+	}
+
 	public int isValid()
 	{
 		return this.isValid(QoraDb.getInstance());
@@ -311,9 +399,10 @@ public abstract class Transaction {
 	
 	public int getSeq()
 	{
-		if(this.isConfirmed())
+		Tuple2<Integer, Integer> location = QoraDb.getInstance().getTransactionFinalMap().getLocation(this.signature);
+		if(location != null)
 		{
-			return this.getParent().getTransactionSeq(this.signature);
+			return location.b;
 		}
 		return -1;
 	}
@@ -1,9 +1,6 @@
 package qora.transaction;
 
-import java.util.Arrays;
-
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
+import java.nio.ByteBuffer;
 
 public class TransactionFactory {
 
@@ -25,114 +22,126 @@ public class TransactionFactory {
 	}
 	
 	public Transaction parse(byte[] data) throws Exception
+	{
+		return this.parse(ByteBuffer.wrap(data));
+	}
+	
+	/**
+	 * Parse transaction from position to limit of <code>data</code>, e.g. a slice of a block's transactions, without
+	 * copying it first. Doesn't move <code>data</code>'s position.
+	 */
+	public Transaction parse(ByteBuffer data) throws Exception
 	{
 		//READ TYPE
-		byte[] typeBytes = Arrays.copyOfRange(data, 0, Transaction.TYPE_LENGTH);
-		int type = Ints.fromByteArray(typeBytes);
+		int type = data.getInt(data.position());
 		
-		byte[] timeStampBytes = Arrays.copyOfRange(data, 4, 4 + Transaction.TIMESTAMP_LENGTH);
-		long timeStamp = Longs.fromByteArray(timeStampBytes);
+		long timeStamp = data.getLong(data.position() + Transaction.TYPE_LENGTH);
+		
+		//EVERYTHING AFTER TYPE
+		ByteBuffer body = data.duplicate();
+		body.position(data.position() + Transaction.TYPE_LENGTH);
+		body = body.slice();
 		
 		switch(type)
 		{
 		case Transaction.GENESIS_TRANSACTION:
 					
 			//PARSE GENESIS TRANSACTION
-			return GenesisTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return GenesisTransaction.Parse(toArray(body));
 			
 		case Transaction.PAYMENT_TRANSACTION:
 			
 			//PARSE PAYMENT TRANSACTION
-			return PaymentTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return PaymentTransaction.Parse(body);
 		
 		case Transaction.REGISTER_NAME_TRANSACTION:
 			
 			//PARSE REGISTER NAME TRANSACTION
-			return RegisterNameTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return RegisterNameTransaction.Parse(toArray(body));
 			
 		case Transaction.UPDATE_NAME_TRANSACTION:
 			
 			//PARSE UPDATE NAME TRANSACTION
-			return UpdateNameTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return UpdateNameTransaction.Parse(toArray(body));
 			
 		case Transaction.SELL_NAME_TRANSACTION:
 			
 			//PARSE SELL NAME TRANSACTION
-			return SellNameTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return SellNameTransaction.Parse(toArray(body));
 			
 		case Transaction.CANCEL_SELL_NAME_TRANSACTION:
 			
 			//PARSE CANCEL SELL NAME TRANSACTION
-			return CancelSellNameTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return CancelSellNameTransaction.Parse(toArray(body));
 			
 		case Transaction.BUY_NAME_TRANSACTION:
 			
 			//PARSE CANCEL SELL NAME TRANSACTION
-			return BuyNameTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));	
+			return BuyNameTransaction.Parse(toArray(body));	
 			
 		case Transaction.CREATE_POLL_TRANSACTION:
 			
 			//PARSE CREATE POLL TRANSACTION
-			return CreatePollTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));	
+			return CreatePollTransaction.Parse(toArray(body));	
 			
 		case Transaction.VOTE_ON_POLL_TRANSACTION:
 			
 			//PARSE CREATE POLL VOTE
-			return VoteOnPollTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));		
+			return VoteOnPollTransaction.Parse(toArray(body));		
 			
 		case Transaction.ARBITRARY_TRANSACTION:
 			
 			if(timeStamp < Transaction.getPOWFIX_RELEASE())
 			{
 				//PARSE ARBITRARY TRANSACTION V1
-				return ArbitraryTransactionV1.Parse(Arrays.copyOfRange(data, 4, data.length));			
+				return ArbitraryTransactionV1.Parse(toArray(body));			
 
 			}
 			else
 			{
 				//PARSE ARBITRARY TRANSACTION V3
-				return ArbitraryTransactionV3.Parse(Arrays.copyOfRange(data, 4, data.length));			
+				return ArbitraryTransactionV3.Parse(toArray(body));			
 			}
 			
 		case Transaction.ISSUE_ASSET_TRANSACTION:
 			
 			//PARSE ISSUE ASSET TRANSACTION
-			return IssueAssetTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));
+			return IssueAssetTransaction.Parse(toArray(body));
 			
 		case Transaction.TRANSFER_ASSET_TRANSACTION:
 			
 			//PARSE TRANSFER ASSET TRANSACTION
-			return TransferAssetTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));	
+			return TransferAssetTransaction.Parse(toArray(body));	
 		
 		case Transaction.CREATE_ORDER_TRANSACTION:
 			
 			//PARSE ORDER CREATION TRANSACTION
-			return CreateOrderTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));	
+			return CreateOrderTransaction.Parse(toArray(body));	
 			
 		case Transaction.CANCEL_ORDER_TRANSACTION:
 			
 			//PARSE ORDER CANCEL
-			return CancelOrderTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));	
+			return CancelOrderTransaction.Parse(toArray(body));	
 			
 		case Transaction.MULTI_PAYMENT_TRANSACTION:
 			
 			//PARSE MULTI PAYMENT
-			return MultiPaymentTransaction.Parse(Arrays.copyOfRange(data, 4, data.length));		
+			return MultiPaymentTransaction.Parse(toArray(body));		
 		
 		case Transaction.DEPLOY_AT_TRANSACTION:
-			return DeployATTransaction.Parse( Arrays.copyOfRange(data, 4 , data.length));
+			return DeployATTransaction.Parse( toArray(body));
 
 		case Transaction.MESSAGE_TRANSACTION:
 
 			if(timeStamp < Transaction.getPOWFIX_RELEASE())
 			{
 				// PARSE MESSAGE TRANSACTION V1
-				return MessageTransactionV1.Parse(Arrays.copyOfRange(data, 4, data.length));
+				return MessageTransactionV1.Parse(toArray(body));
 			}
 			else
 			{
 				// PARSE MESSAGE TRANSACTION V3
-				return MessageTransactionV3.Parse(Arrays.copyOfRange(data, 4, data.length));
+				return MessageTransactionV3.Parse(toArray(body));
 			}
 			
 		}
@@ -140,4 +149,11 @@ public class TransactionFactory {
 		throw new Exception("Invalid transaction type");
 	}
 	
+	private static byte[] toArray(ByteBuffer body)
+	{
+		byte[] bytes = new byte[body.remaining()];
+		body.duplicate().get(bytes);
+		return bytes;
+	}
+	
 }
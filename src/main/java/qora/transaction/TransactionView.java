@@ -0,0 +1,203 @@
+package qora.transaction;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only view of a serialized transaction, e.g. inside a block's raw transaction data.
+ * <p>
+ * Type, timestamp, reference, creator and signature are read straight from the bytes, so callers that only need these
+ * (or want to filter on type first) don't pay for a full parse. {@link #getTransaction()} parses the whole transaction the
+ * first time it's called and keeps the result.
+ * <p>
+ * Every transaction type except genesis starts with type, timestamp, reference and creator's public key, and ends with
+ * its signature. Genesis transactions have no reference or creator, and their signature is derived from their contents.
+ */
+public final class TransactionView {
+
+	private static final int LENGTH_LENGTH = 4;
+	private static final int TIMESTAMP_OFFSET = Transaction.TYPE_LENGTH;
+	private static final int REFERENCE_OFFSET = TIMESTAMP_OFFSET + Transaction.TIMESTAMP_LENGTH;
+	private static final int CREATOR_OFFSET = REFERENCE_OFFSET + Transaction.REFERENCE_LENGTH;
+	private static final int CREATOR_LENGTH = 32;
+	private static final int SIGNATURE_LENGTH = 64;
+	/** Shortest a non-genesis transaction can be: header fields followed by signature */
+	private static final int MIN_LENGTH = CREATOR_OFFSET + CREATOR_LENGTH + SIGNATURE_LENGTH;
+
+	/** Position 0 to limit covers exactly one transaction. Never modified, only read with absolute gets. */
+	private final ByteBuffer data;
+
+	private volatile Transaction transaction;
+
+	private TransactionView(final ByteBuffer data, final Transaction transaction) {
+		this.data = data;
+		this.transaction = transaction;
+	}
+
+	/**
+	 * @param data
+	 *            serialized transaction, from position to limit
+	 * @return view sharing <code>data</code>'s content
+	 */
+	public static TransactionView wrap(final ByteBuffer data) {
+		return new TransactionView(data.slice(), null);
+	}
+
+	/**
+	 * @param transaction
+	 * @return view of already parsed <code>transaction</code>
+	 */
+	public static TransactionView of(final Transaction transaction) {
+		return new TransactionView(ByteBuffer.wrap(transaction.getBytes()).asReadOnlyBuffer(), transaction);
+	}
+
+	/**
+	 * Split length-prefixed transactions, as in a block, without parsing them.
+	 * <p>
+	 * Matches how blocks have always been read: an entry running past the end of <code>data</code> is zero-padded, and
+	 * splitting stops at the first entry that doesn't start within <code>data</code> or has a negative length.
+	 *
+	 * @param data
+	 *            transactions, each preceded by its 4-byte length
+	 * @param count
+	 *            number of transactions
+	 * @return views, in order, possibly fewer than <code>count</code>
+	 */
+	public static List<TransactionView> split(final ByteBuffer data, final int count) {
+		final List<TransactionView> views = new ArrayList<TransactionView>(count);
+		final int limit = data.limit();
+
+		int position = data.position();
+		for (int i = 0; i < count && position <= limit; ++i) {
+			final int length = getPaddedInt(data, position);
+			final int start = position + LENGTH_LENGTH;
+			final int end = start + length;
+
+			if (start > limit || end < start) {
+				break;
+			}
+
+			if (end <= limit) {
+				final ByteBuffer slice = data.duplicate();
+				slice.position(start);
+				slice.limit(end);
+				views.add(wrap(slice));
+			} else {
+				final byte[] padded = new byte[length];
+				final ByteBuffer available = data.duplicate();
+				available.position(start);
+				available.get(padded, 0, limit - start);
+				views.add(wrap(ByteBuffer.wrap(padded)));
+			}
+
+			position = end;
+		}
+
+		return Collections.unmodifiableList(views);
+	}
+
+	private static int getPaddedInt(final ByteBuffer data, final int position) {
+		int value = 0;
+		for (int i = position; i < position + LENGTH_LENGTH; ++i) {
+			value = (value << 8) | (i < data.limit() ? data.get(i) & 0xff : 0);
+		}
+
+		return value;
+	}
+
+	public int getType() {
+		return this.data.getInt(0);
+	}
+
+	public long getTimestamp() {
+		return this.data.getLong(TIMESTAMP_OFFSET);
+	}
+
+	/**
+	 * @return reference, or <code>null</code> for genesis transactions
+	 */
+	public byte[] getReference() {
+		if (this.isGenesis()) {
+			return null;
+		}
+
+		return this.copy(REFERENCE_OFFSET, Transaction.REFERENCE_LENGTH);
+	}
+
+	/**
+	 * @return creator's public key, or <code>null</code> for genesis transactions
+	 */
+	public byte[] getCreatorPublicKey() {
+		if (this.isGenesis()) {
+			return null;
+		}
+
+		return this.copy(CREATOR_OFFSET, CREATOR_LENGTH);
+	}
+
+	/**
+	 * @return signature, or <code>null</code> if entry is too short to be a transaction or genesis transaction can't be
+	 *         parsed
+	 */
+	public byte[] getSignature() {
+		if (this.data.limit() < Transaction.TYPE_LENGTH) {
+			return null;
+		}
+
+		if (this.isGenesis()) {
+			try {
+				return this.getTransaction().getSignature();
+			} catch (final Exception e) {
+				return null;
+			}
+		}
+
+		if (this.data.limit() < MIN_LENGTH) {
+			return null;
+		}
+
+		return this.copy(this.data.limit() - SIGNATURE_LENGTH, SIGNATURE_LENGTH);
+	}
+
+	public int getDataLength() {
+		return this.data.limit();
+	}
+
+	/**
+	 * @return copy of serialized transaction
+	 */
+	public byte[] toBytes() {
+		return this.copy(0, this.data.limit());
+	}
+
+	/**
+	 * @return transaction, parsed on first call
+	 * @throws Exception
+	 *             if bytes aren't a valid transaction
+	 */
+	public Transaction getTransaction() throws Exception {
+		Transaction transaction = this.transaction;
+		if (transaction == null) {
+			// Racing threads might both parse, but either result will do
+			transaction = TransactionFactory.getInstance().parse(this.data.duplicate());
+			this.transaction = transaction;
+		}
+
+		return transaction;
+	}
+
+	private boolean isGenesis() {
+		return this.getType() == Transaction.GENESIS_TRANSACTION;
+	}
+
+	private byte[] copy(final int offset, final int length) {
+		final byte[] bytes = new byte[length];
+		final ByteBuffer source = this.data.duplicate();
+		source.position(offset);
+		source.get(bytes);
+		return bytes;
+	}
+
+}
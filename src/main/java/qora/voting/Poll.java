@@ -14,7 +14,7 @@ import com.google.common.primitives.Ints;
 
 import database.QoraDb;
 import qora.account.Account;
-import qora.crypto.Base58;
+import qora.account.Address;
 import utils.Pair;
 
 public class Poll 
@@ -146,7 +146,7 @@ public class Poll
 		
 		//READ CREATOR
 		byte[] creatorBytes = Arrays.copyOfRange(data, position, position + CREATOR_LENGTH);
-		Account creator = new Account(Base58.encode(creatorBytes));
+		Account creator = new Account(Address.fromBytes(creatorBytes));
 		position += CREATOR_LENGTH;
 		
 		//READ NAME SIZE
@@ -229,7 +229,7 @@ public class Poll
 		//WRITE CREATOR
 		try
 		{
-			data = Bytes.concat(data , Base58.decode(this.creator.getAddress()));
+			data = Bytes.concat(data , this.creator.getAddressBytes());
 		}
 		catch(Exception e)
 		{
@@ -180,7 +180,7 @@ public class PollOption {
 		//WRITE VOTERS
 		for(Account voter: this.voters)
 		{
-			data = Bytes.concat(data, Base58.decode(voter.getAddress()));
+			data = Bytes.concat(data, voter.getAddressBytes());
 		}
 		
 		return data;
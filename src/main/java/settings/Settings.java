@@ -41,6 +41,8 @@ public class Settings {
 	private static final int DEFAULT_CONNECTION_TIMEOUT = 10000;
 	private static final int DEFAULT_PING_INTERVAL = 30000;
 	private static final boolean DEFAULT_TRYING_CONNECT_TO_BAD_PEERS = true;
+	private static final int DEFAULT_NETWORK_WORKER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+	private static final boolean DEFAULT_HEADERS_FIRST_SYNC = true;
 
 	// TESTNET
 	public static final long DEFAULT_MAINNET_STAMP = 1400247274336L; // QORA RELEASE
@@ -69,6 +71,14 @@ public class Settings {
 	private static final boolean DEFAULT_GENERATOR_KEY_CACHING = false;
 	private static final boolean DEFAULT_CHECKPOINTING = true;
 
+	private static final String DEFAULT_DB_COMMIT_MODE = "blocks";
+	private static final int DEFAULT_DB_COMMIT_BLOCKS = 100;
+	private static final int DEFAULT_DB_COMMIT_INTERVAL = 60000;
+	private static final boolean DEFAULT_DB_BULK_SYNC = false;
+	private static final int DEFAULT_BLOCK_CACHE_SIZE = 32;
+
+	private static final int DEFAULT_MAX_UNCONFIRMED_TRANSACTIONS = 50000;
+
 	private static final boolean DEFAULT_SOUND_RECEIVE_COIN = true;
 	private static final boolean DEFAULT_SOUND_MESSAGE = true;
 	private static final boolean DEFAULT_SOUND_NEW_TRANSACTION = true;
@@ -557,6 +567,22 @@ public class Settings {
 		return DEFAULT_FORGING_ENABLED;
 	}
 
+	public int getNetworkWorkerThreads() {
+		if (this.settingsJSON.containsKey("networkworkerthreads")) {
+			return ((Long) this.settingsJSON.get("networkworkerthreads")).intValue();
+		}
+
+		return DEFAULT_NETWORK_WORKER_THREADS;
+	}
+
+	public boolean isHeadersFirstSync() {
+		if (this.settingsJSON.containsKey("headersfirstsync")) {
+			return ((Boolean) this.settingsJSON.get("headersfirstsync")).booleanValue();
+		}
+
+		return DEFAULT_HEADERS_FIRST_SYNC;
+	}
+
 	public int getPingInterval() {
 		if (this.settingsJSON.containsKey("pinginterval")) {
 			return ((Long) this.settingsJSON.get("pinginterval")).intValue();
@@ -581,6 +607,54 @@ public class Settings {
 		return DEFAULT_CHECKPOINTING;
 	}
 
+	public String getDbCommitMode() {
+		if (this.settingsJSON.containsKey("dbcommitmode")) {
+			return (String) this.settingsJSON.get("dbcommitmode");
+		}
+
+		return DEFAULT_DB_COMMIT_MODE;
+	}
+
+	public int getDbCommitBlocks() {
+		if (this.settingsJSON.containsKey("dbcommitblocks")) {
+			return ((Long) this.settingsJSON.get("dbcommitblocks")).intValue();
+		}
+
+		return DEFAULT_DB_COMMIT_BLOCKS;
+	}
+
+	public int getDbCommitInterval() {
+		if (this.settingsJSON.containsKey("dbcommitinterval")) {
+			return ((Long) this.settingsJSON.get("dbcommitinterval")).intValue();
+		}
+
+		return DEFAULT_DB_COMMIT_INTERVAL;
+	}
+
+	public boolean isDbBulkSyncEnabled() {
+		if (this.settingsJSON.containsKey("dbbulksync")) {
+			return ((Boolean) this.settingsJSON.get("dbbulksync")).booleanValue();
+		}
+
+		return DEFAULT_DB_BULK_SYNC;
+	}
+
+	public int getBlockCacheSize() {
+		if (this.settingsJSON.containsKey("blockcachesize")) {
+			return ((Long) this.settingsJSON.get("blockcachesize")).intValue();
+		}
+
+		return DEFAULT_BLOCK_CACHE_SIZE;
+	}
+
+	public int getMaxUnconfirmedTransactions() {
+		if (this.settingsJSON.containsKey("maxunconfirmedtransactions")) {
+			return ((Long) this.settingsJSON.get("maxunconfirmedtransactions")).intValue();
+		}
+
+		return DEFAULT_MAX_UNCONFIRMED_TRANSACTIONS;
+	}
+
 	public boolean isSoundReceivePaymentEnabled() {
 		if (this.settingsJSON.containsKey("soundreceivepayment")) {
 			return ((Boolean) this.settingsJSON.get("soundreceivepayment")).booleanValue();
@@ -6,9 +6,8 @@ import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
 
-import org.mapdb.Fun.Tuple2;
-
 import controller.Controller;
+import database.BalanceMap;
 import database.QoraDb;
 import database.SortableList;
 import gui.Gui;
@@ -66,12 +65,12 @@ public class AssetsFavorites implements Observer{
 			favoritesUpadate.add(0L);
 			
 			for (Account account : Controller.getInstance().getAccounts()) {
-				SortableList<Tuple2<String, Long>, BigDecimal> balancesList = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(account);
+				SortableList<byte[], BigDecimal> balancesList = QoraDb.getInstance().getBalanceMap().getBalancesSortableList(account);
 				
-				for (Pair<Tuple2<String, Long>, BigDecimal> balance : balancesList) {
+				for (Pair<byte[], BigDecimal> balance : balancesList) {
 					if(balance.getB().compareTo(BigDecimal.ZERO) > 0) {
-						if(!favoritesUpadate.contains(balance.getA().b)){
-							favoritesUpadate.add(balance.getA().b);
+						if(!favoritesUpadate.contains(BalanceMap.getAssetKey(balance.getA()))){
+							favoritesUpadate.add(BalanceMap.getAssetKey(balance.getA()));
 						}
 					}
 				}
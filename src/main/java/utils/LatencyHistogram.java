@@ -0,0 +1,79 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets.
+ * <p>
+ * Bucket <tt>i</tt> counts latencies below <tt>2<sup>i</sup></tt> microseconds (and at least <tt>2<sup>i-1</sup></tt>), so
+ * percentiles are upper bounds accurate to within a factor of two.
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	/**
+	 * @param nanos
+	 *            latency in nanoseconds
+	 */
+	public void record(final long nanos) {
+		final long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+
+		final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+		this.buckets.incrementAndGet(bucket);
+		this.count.increment();
+		this.totalMicros.add(micros);
+		this.maxMicros.accumulateAndGet(micros, Math::max);
+	}
+
+	public long getCount() {
+		return this.count.sum();
+	}
+
+	public long getMeanMicros() {
+		final long count = this.count.sum();
+		return count == 0 ? 0 : this.totalMicros.sum() / count;
+	}
+
+	public long getMaxMicros() {
+		return this.maxMicros.get();
+	}
+
+	/**
+	 * @param percentile
+	 *            e.g. 99.0
+	 * @return upper bound, in microseconds, of latency below which <tt>percentile</tt>% of recorded latencies fall
+	 */
+	public long getPercentileMicros(final double percentile) {
+		final long count = this.count.sum();
+		if (count == 0) {
+			return 0;
+		}
+
+		final long threshold = (long) Math.ceil(count * percentile / 100.0);
+		long seen = 0;
+		for (int bucket = 0; bucket < BUCKETS; ++bucket) {
+			seen += this.buckets.get(bucket);
+			if (seen >= threshold) {
+				return Math.min(1L << bucket, this.getMaxMicros());
+			}
+		}
+
+		return this.getMaxMicros();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%dus p50=%dus p90=%dus p99=%dus max=%dus", this.getCount(), this.getMeanMicros(), this.getPercentileMicros(50),
+				this.getPercentileMicros(90), this.getPercentileMicros(99), this.getMaxMicros());
+	}
+
+}
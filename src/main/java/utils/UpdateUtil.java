@@ -13,6 +13,7 @@ import qora.block.GenesisBlock;
 import qora.crypto.Base58;
 import qora.transaction.ArbitraryTransaction;
 import qora.transaction.Transaction;
+import qora.transaction.TransactionView;
 import api.BlogPostResource;
 import database.BlockMap;
 import database.QoraDb;
@@ -33,12 +34,12 @@ public class UpdateUtil {
 		Block block = new GenesisBlock();
 		do {
 			if (block.getHeight() >= height) {
-				List<Transaction> txs = block.getTransactions();
-				for (Transaction tx : txs) {
-					if (!(tx instanceof ArbitraryTransaction))
+				// Only parse arbitrary transactions
+				for (TransactionView view : block.getTransactionViews()) {
+					if (view.getType() != Transaction.ARBITRARY_TRANSACTION)
 						continue;
 
-					ArbitraryTransaction arbTx = (ArbitraryTransaction) tx;
+					ArbitraryTransaction arbTx = (ArbitraryTransaction) view.getTransaction();
 
 					int service = arbTx.getService();
 
@@ -84,7 +85,7 @@ public class UpdateUtil {
 
 	public static void repopulateTransactionFinalMap() {
 		QoraDb.getInstance().getTransactionFinalMap().reset();
-		QoraDb.getInstance().commit();
+		QoraDb.getInstance().flush();
 		Block block = new GenesisBlock();
 
 		do {
@@ -98,7 +99,7 @@ public class UpdateUtil {
 
 			if (block.getHeight() % 2000 == 0) {
 				LOGGER.info("UpdateUtil - Repopulating TransactionMap : " + block.getHeight());
-				QoraDb.getInstance().commit();
+				QoraDb.getInstance().flush();
 			}
 
 			block = block.getChild();
@@ -107,7 +108,7 @@ public class UpdateUtil {
 
 	public static void repopulateCommentPostMap() {
 		QoraDb.getInstance().getPostCommentMap().reset();
-		QoraDb.getInstance().commit();
+		QoraDb.getInstance().flush();
 		Block block = new GenesisBlock();
 
 		do {
@@ -124,7 +125,7 @@ public class UpdateUtil {
 
 			if (block.getHeight() % 2000 == 0) {
 				LOGGER.info("UpdateUtil - Repopulating CommentPostMap : " + block.getHeight());
-				QoraDb.getInstance().commit();
+				QoraDb.getInstance().flush();
 			}
 
 			block = block.getChild();
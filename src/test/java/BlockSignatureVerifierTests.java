@@ -0,0 +1,94 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import qora.BlockSignatureVerifier;
+import qora.account.Account;
+import qora.block.Block;
+import qora.crypto.Crypto;
+import qora.crypto.SignatureCache;
+import qora.crypto.SignatureVerifier;
+import qora.transaction.PaymentTransaction;
+import qora.transaction.Transaction;
+
+public class BlockSignatureVerifierTests extends TestUtils {
+
+	private Block generateBlock(int transactionCount) {
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		Account recipient = TestUtils.createTestAccount();
+		long timestamp = block.getTimestamp();
+		for (int i = 0; i < transactionCount; ++i) {
+			BigDecimal amount = BigDecimal.valueOf(100 + i).setScale(8);
+			byte[] signature = PaymentTransaction.generateSignature(databaseSet, generator, recipient, amount, BigDecimal.valueOf(1).setScale(8), timestamp);
+			block.addTransaction(new PaymentTransaction(generator, recipient, amount, BigDecimal.valueOf(1).setScale(8), timestamp,
+					generator.getLastReference(databaseSet), signature));
+		}
+
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+		return block;
+	}
+
+	@Test
+	public void verifyMatchesSerial() {
+		SignatureCache.getInstance().clear();
+
+		// Valid block with enough transactions to be split across tasks
+		Block block = generateBlock(50);
+		assertTrue("block with valid signatures should be valid", BlockSignatureVerifier.getInstance().verify(block));
+		assertTrue("serial check should agree", block.isSignatureValid());
+
+		// Invalid transactions signature
+		block.setTransactionsSignature(new byte[64]);
+		assertFalse("block with invalid transactions signature should be invalid", BlockSignatureVerifier.getInstance().verify(block));
+		assertFalse("serial check should agree", block.isSignatureValid());
+
+		// Invalid transaction: reuse a good signature (already in cache) on a different amount
+		block = generateBlock(50);
+		assertTrue("block with valid signatures should be valid", BlockSignatureVerifier.getInstance().verify(block));
+
+		Transaction original = block.getTransactions().get(25);
+		Transaction forged = new PaymentTransaction(generator, ((PaymentTransaction) original).getRecipient(), BigDecimal.valueOf(999).setScale(8),
+				original.getFee(), original.getTimestamp(), original.getReference(), original.getSignature());
+		block.getTransactions().set(25, forged);
+
+		assertFalse("cached signature shouldn't validate altered transaction", forged.hasValidSignature());
+		assertFalse("block with invalid transaction should be invalid", BlockSignatureVerifier.getInstance().verify(block));
+		assertFalse("serial check should agree", block.isSignatureValid());
+	}
+
+	@Test
+	public void verifiedBlockIsntCheckedAgain() {
+		Block block = generateBlock(10);
+
+		// Count signature checks from here on
+		final SignatureVerifier verifier = Crypto.getInstance().getSignatureVerifier();
+		final AtomicInteger verifies = new AtomicInteger();
+		Crypto.getInstance().setSignatureVerifier(new SignatureVerifier() {
+			@Override
+			public boolean verify(byte[] publicKey, byte[] signature, byte[] message) {
+				verifies.incrementAndGet();
+				return verifier.verify(publicKey, signature, message);
+			}
+		});
+
+		try {
+			assertTrue("block with valid signatures should be valid", BlockSignatureVerifier.getInstance().verify(block));
+
+			// Result is passed on with the block
+			verifies.set(0);
+			assertTrue(block.isSignatureValid());
+			assertEquals(0, verifies.get());
+
+			// Modified blocks are checked again
+			block.setTransactionsSignature(new byte[64]);
+			assertFalse(block.isSignatureValid());
+			assertTrue(verifies.get() > 0);
+		} finally {
+			Crypto.getInstance().setSignatureVerifier(verifier);
+		}
+	}
+
+}
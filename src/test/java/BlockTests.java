@@ -3,22 +3,39 @@
 import static org.junit.Assert.*;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import ntp.NTP;
 
+import org.mapdb.DBMaker;
+import org.mapdb.Fun.Tuple2;
+
 import com.google.common.primitives.Bytes;
 
+import database.BlockCache;
 import database.QoraDb;
+import database.serializer.BlockSerializer;
+import qora.BlockTemplate;
 import qora.account.Account;
+import qora.account.PrivateKeyAccount;
 import qora.block.Block;
 import qora.block.BlockFactory;
+import qora.block.BlockHeader;
 import qora.block.GenesisBlock;
 import qora.crypto.Crypto;
 import qora.transaction.GenesisTransaction;
 import qora.transaction.PaymentTransaction;
 import qora.transaction.Transaction;
+import qora.transaction.TransactionView;
 
 public class BlockTests extends TestUtils {
 	@Test
@@ -272,6 +289,189 @@ public class BlockTests extends TestUtils {
 		assertFalse("non-genesis block with invalid genesis transaction should be invalid", invalidBlock.isValid(databaseSet));
 	}
 
+	@Test
+	public void validateFullBlockOnFork() {
+		// Validate a block filled with payments, which is done on a fork of the DB
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		// Scratch fork so each payment can refer to the previous one
+		QoraDb fork = databaseSet.fork();
+
+		Account recipient = TestUtils.createTestAccount();
+		long timestamp = block.getTimestamp();
+		int totalBytes = 0;
+		while (true) {
+			byte[] signature = PaymentTransaction.generateSignature(fork, generator, recipient, BigDecimal.valueOf(1).setScale(8),
+					BigDecimal.valueOf(1).setScale(8), timestamp);
+			Transaction payment = new PaymentTransaction(generator, recipient, BigDecimal.valueOf(1).setScale(8), BigDecimal.valueOf(1).setScale(8),
+					timestamp, generator.getLastReference(fork), signature);
+
+			if (totalBytes + payment.getDataLength() > Block.MAX_TRANSACTION_BYTES)
+				break;
+
+			payment.process(fork);
+			block.addTransaction(payment);
+			totalBytes += payment.getDataLength();
+		}
+
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+
+		assertTrue("full block should be valid", block.isValid(databaseSet));
+	}
+
+	@Test
+	public void transactionBySignature() {
+		// Find each transaction of a full block via signature index
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		QoraDb fork = databaseSet.fork();
+		Account recipient = TestUtils.createTestAccount();
+		long timestamp = block.getTimestamp();
+		int totalBytes = 0;
+		while (true) {
+			byte[] signature = PaymentTransaction.generateSignature(fork, generator, recipient, BigDecimal.valueOf(1).setScale(8),
+					BigDecimal.valueOf(1).setScale(8), timestamp);
+			Transaction payment = new PaymentTransaction(generator, recipient, BigDecimal.valueOf(1).setScale(8), BigDecimal.valueOf(1).setScale(8),
+					timestamp, generator.getLastReference(fork), signature);
+
+			if (totalBytes + payment.getDataLength() > Block.MAX_TRANSACTION_BYTES)
+				break;
+
+			payment.process(fork);
+			block.addTransaction(payment);
+			totalBytes += payment.getDataLength();
+		}
+
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+		block.process(databaseSet);
+
+		List<Transaction> transactions = block.getTransactions();
+		for (int seq = 1; seq <= transactions.size(); seq++) {
+			byte[] signature = transactions.get(seq - 1).getSignature();
+			assertEquals(transactions.get(seq - 1), databaseSet.getTransactionFinalMap().getTransaction(signature));
+			assertEquals(new Tuple2<Integer, Integer>(2, seq), databaseSet.getTransactionFinalMap().getLocation(signature));
+		}
+
+		// Orphaned on fork only
+		QoraDb orphanFork = databaseSet.fork();
+		block.orphan(orphanFork);
+		assertNull(orphanFork.getTransactionFinalMap().getTransaction(transactions.get(0).getSignature()));
+		assertNotNull(databaseSet.getTransactionFinalMap().getTransaction(transactions.get(0).getSignature()));
+		assertNull(databaseSet.getTransactionFinalMap().getTransaction(new byte[64]));
+
+		// Found the same via its block
+		for (Transaction transaction : transactions) {
+			byte[] signature = transaction.getSignature();
+			assertEquals(transaction, databaseSet.getTransactionParentMap().getParent(signature).getTransaction(signature));
+		}
+	}
+
+	@Test
+	public void blockTemplate() {
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		// Two chained payments from same sender
+		QoraDb fork = databaseSet.fork();
+		long timestamp = block.getTimestamp();
+		Transaction[] payments = new Transaction[2];
+		for (int i = 0; i < payments.length; ++i) {
+			byte[] signature = PaymentTransaction.generateSignature(fork, generator, recipient, BigDecimal.valueOf(100).setScale(8),
+					BigDecimal.valueOf(1).setScale(8), timestamp);
+			payments[i] = new PaymentTransaction(generator, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp,
+					generator.getLastReference(fork), signature);
+			payments[i].process(fork);
+			databaseSet.getTransactionMap().add(payments[i]);
+		}
+
+		// Offer 2nd before 1st: 2nd is deferred until 1st is included
+		BlockTemplate template = new BlockTemplate(databaseSet);
+		template.offer(payments[1], timestamp);
+		assertTrue(template.getTransactions().isEmpty());
+		template.offer(payments[0], timestamp);
+		assertEquals(Arrays.asList(payments[0], payments[1]), template.getTransactions());
+
+		assertTrue("template should suit block", template.isUsableFor(block, databaseSet.getTransactionMap()));
+
+		// Payment from new account waits on payment to it from another sender
+		PrivateKeyAccount spender = createTestAccount();
+		byte[] signature = PaymentTransaction.generateSignature(fork, generator, spender, BigDecimal.valueOf(100).setScale(8),
+				BigDecimal.valueOf(1).setScale(8), timestamp);
+		Transaction funding = new PaymentTransaction(generator, spender, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8),
+				timestamp, generator.getLastReference(fork), signature);
+		funding.process(fork);
+		signature = PaymentTransaction.generateSignature(fork, spender, recipient, BigDecimal.valueOf(10).setScale(8),
+				BigDecimal.valueOf(1).setScale(8), timestamp);
+		Transaction spending = new PaymentTransaction(spender, recipient, BigDecimal.valueOf(10).setScale(8), BigDecimal.valueOf(1).setScale(8),
+				timestamp, spender.getLastReference(fork), signature);
+
+		BlockTemplate funded = new BlockTemplate(databaseSet);
+		funded.offer(payments[0], timestamp);
+		funded.offer(payments[1], timestamp);
+		funded.offer(spending, timestamp);
+		assertEquals(2, funded.getTransactions().size());
+		funded.offer(funding, timestamp);
+		assertEquals(Arrays.asList(payments[0], payments[1], funding, spending), funded.getTransactions());
+
+		// Transactions from after template's timestamp are held until it reaches them
+		BlockTemplate early = new BlockTemplate(databaseSet);
+		early.offerAll(Arrays.asList(payments), timestamp - 1);
+		assertTrue(early.getTransactions().isEmpty());
+		early.advanceTo(timestamp);
+		assertEquals(Arrays.asList(payments[0], payments[1]), early.getTransactions());
+
+		// Template no longer usable once a transaction leaves unconfirmed pool
+		databaseSet.getTransactionMap().delete(payments[1]);
+		assertFalse("template with confirmed transaction shouldn't be usable", template.isUsableFor(block, databaseSet.getTransactionMap()));
+
+		// Building from scratch gives valid block
+		blockGenerator.addUnconfirmedTransactions(databaseSet, block);
+		assertEquals(1, block.getTransactionCount());
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+		assertTrue("block from template should be valid", block.isValid(databaseSet));
+	}
+
+	@Test
+	public void blockTemplateNeverValid() {
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+		long timestamp = block.getTimestamp();
+		BlockTemplate template = new BlockTemplate(databaseSet);
+
+		// Payments from accounts nobody funds never become valid
+		final int[] validations = new int[1];
+		QoraDb fork = databaseSet.fork();
+		for (int i = 0; i < 200; ++i) {
+			PrivateKeyAccount sender = createTestAccount();
+			byte[] signature = PaymentTransaction.generateSignature(fork, sender, recipient, BigDecimal.valueOf(10).setScale(8),
+					BigDecimal.valueOf(1).setScale(8), timestamp);
+			template.offer(new PaymentTransaction(sender, recipient, BigDecimal.valueOf(10).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp,
+					sender.getLastReference(fork), signature) {
+				@Override
+				public int isValid(QoraDb db) {
+					++validations[0];
+					return super.isValid(db);
+				}
+			}, timestamp);
+		}
+
+		// Chain of payments from generator, offered last first
+		List<Transaction> payments = new ArrayList<Transaction>();
+		for (int i = 0; i < 50; ++i) {
+			byte[] signature = PaymentTransaction.generateSignature(fork, generator, recipient, BigDecimal.valueOf(100).setScale(8),
+					BigDecimal.valueOf(1).setScale(8), timestamp);
+			Transaction payment = new PaymentTransaction(generator, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8),
+					timestamp, generator.getLastReference(fork), signature);
+			payment.process(fork);
+			payments.add(0, payment);
+		}
+		template.offerAll(payments, timestamp);
+
+		Collections.reverse(payments);
+		assertEquals(payments, template.getTransactions());
+
+		// Including the chain shouldn't revalidate unrelated deferred transactions
+		assertEquals(200, validations[0]);
+	}
+
 	@Test
 	public void parseBlock() {
 		// Use inherited TestUtils.setup()
@@ -437,6 +637,61 @@ public class BlockTests extends TestUtils {
 		assertTrue("block should be last block on blockchain", Arrays.equals(block.getSignature(), databaseSet.getBlockMap().getLastBlock().getSignature()));
 	}
 
+	@Test
+	public void storedBlockBytes() throws Exception {
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		long timestamp = block.getTimestamp();
+		byte[] signature = PaymentTransaction.generateSignature(databaseSet, generator, recipient, BigDecimal.valueOf(100).setScale(8),
+				BigDecimal.valueOf(1).setScale(8), timestamp);
+		block.addTransaction(new PaymentTransaction(generator, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp,
+				generator.getLastReference(databaseSet), signature));
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+		assertFalse("freshly built block shouldn't have stored bytes", block.hasRawBytes());
+
+		byte[] expected = block.toBytes();
+
+		// Round trip through DB serializer
+		BlockSerializer serializer = new BlockSerializer();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		serializer.serialize(new DataOutputStream(out), block);
+		byte[] serialized = out.toByteArray();
+
+		// Loaded block serves stored bytes without parsing transactions
+		Block stored = serializer.deserialize(new DataInputStream(new ByteArrayInputStream(serialized)), serialized.length);
+		assertTrue("loaded block should keep stored bytes", stored.hasRawBytes());
+		assertArrayEquals(expected, stored.toBytes());
+		assertEquals(expected.length, stored.getDataLength());
+
+		// Handing out transactions drops stored bytes as list could be modified
+		assertEquals(1, stored.getTransactions().size());
+		assertFalse("stored bytes should be dropped", stored.hasRawBytes());
+		assertArrayEquals(expected, stored.toBytes());
+	}
+
+	@Test
+	public void parseBlockHeader() throws Exception {
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		long timestamp = block.getTimestamp();
+		byte[] signature = PaymentTransaction.generateSignature(databaseSet, generator, recipient, BigDecimal.valueOf(100).setScale(8),
+				BigDecimal.valueOf(1).setScale(8), timestamp);
+		block.addTransaction(new PaymentTransaction(generator, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp,
+				generator.getLastReference(databaseSet), signature));
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+
+		// Header is block without transactions, and still parses
+		byte[] headerBytes = block.getHeaderBytes();
+		assertTrue("header should be shorter than block", headerBytes.length < block.getDataLength());
+
+		Block header = BlockFactory.getInstance().parse(headerBytes);
+		assertArrayEquals(block.getSignature(), header.getSignature());
+		assertArrayEquals(block.getReference(), header.getReference());
+		assertEquals(block.getTimestamp(), header.getTimestamp());
+		assertEquals(1, header.getTransactionCount());
+		assertTrue("header's generator signature should be valid", header.isGeneratorSignatureValid());
+	}
+
 	@Test
 	public void orphanBlock() {
 		// Use inherited TestUtils.setup()
@@ -507,4 +762,185 @@ public class BlockTests extends TestUtils {
 		assertTrue("last block on blockchain should be back to genesis block",
 				Arrays.equals(genesisBlock.getSignature(), databaseSet.getBlockMap().getLastBlock().getSignature()));
 	}
+
+	@Test
+	public void transactionViews() throws Exception {
+		Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+
+		long timestamp = block.getTimestamp();
+		for (int i = 0; i < 5; ++i) {
+			BigDecimal amount = BigDecimal.valueOf(100 + i).setScale(8);
+			byte[] signature = PaymentTransaction.generateSignature(databaseSet, generator, recipient, amount, BigDecimal.valueOf(1).setScale(8), timestamp);
+			block.addTransaction(new PaymentTransaction(generator, recipient, amount, BigDecimal.valueOf(1).setScale(8), timestamp,
+					generator.getLastReference(databaseSet), signature));
+		}
+		block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+
+		// Views read fields without parsing
+		Block parsedBlock = BlockFactory.getInstance().parse(block.toBytes());
+		List<TransactionView> views = parsedBlock.getTransactionViews();
+		assertEquals(5, views.size());
+		for (int i = 0; i < views.size(); ++i) {
+			Transaction transaction = block.getTransactions().get(i);
+			TransactionView view = views.get(i);
+			assertEquals(Transaction.PAYMENT_TRANSACTION, view.getType());
+			assertEquals(transaction.getTimestamp(), view.getTimestamp());
+			assertArrayEquals(transaction.getReference(), view.getReference());
+			assertArrayEquals(transaction.getCreator().getPublicKey(), view.getCreatorPublicKey());
+			assertArrayEquals(transaction.getSignature(), view.getSignature());
+			assertArrayEquals(transaction.toBytes(), view.toBytes());
+		}
+
+		// Single lookup parses only that transaction, and full list reuses it
+		Transaction found = parsedBlock.getTransaction(block.getTransactions().get(3).getSignature());
+		assertArrayEquals(block.getTransactions().get(3).toBytes(), found.toBytes());
+		assertSame(found, parsedBlock.getTransactions().get(3));
+		assertSame(parsedBlock.getTransactions(), parsedBlock.getTransactions());
+
+		// Genesis transactions have no reference or creator, and derived signatures
+		Block parsedGenesis = BlockFactory.getInstance().parse(genesisBlock.toBytes());
+		TransactionView genesisView = parsedGenesis.getTransactionViews().get(0);
+		assertEquals(Transaction.GENESIS_TRANSACTION, genesisView.getType());
+		assertNull(genesisView.getCreatorPublicKey());
+		assertArrayEquals(genesisBlock.getTransactions().get(0).getSignature(), genesisView.getSignature());
+
+		// Truncated transaction data is zero-padded, as before, leaving last transaction with a bad signature
+		byte[] raw = block.toBytes();
+		Block truncated = BlockFactory.getInstance().parse(Arrays.copyOf(raw, raw.length - 10));
+		assertEquals(5, truncated.getTransactionViews().size());
+		assertEquals(5, truncated.getTransactions().size());
+		assertArrayEquals(new byte[10], Arrays.copyOfRange(truncated.getTransactions().get(4).getSignature(), 54, 64));
+		assertFalse(truncated.getTransactions().get(4).isSignatureValid());
+
+		// Entries too short to be a transaction have no signature
+		assertNull(TransactionView.wrap(ByteBuffer.wrap(new byte[2])).getSignature());
+		byte[] shortPayment = Arrays.copyOf(block.getTransactions().get(0).toBytes(), 80);
+		assertNull(TransactionView.wrap(ByteBuffer.wrap(shortPayment)).getSignature());
+
+		// ...so looking up a transaction in a block holding one finds nothing instead of failing
+		byte[] first = block.getTransactions().get(0).toBytes();
+		int lengthOffset = Bytes.indexOf(raw, first) - 4;
+		ByteBuffer.wrap(raw).putInt(lengthOffset, 10);
+		Block shortEntry = BlockFactory.getInstance().parse(raw);
+		assertNull(shortEntry.getTransaction(block.getTransactions().get(0).getSignature()));
+	}
+
+	@Test
+	public void blockCache() {
+		List<Block> blocks = generateBlocks(10);
+		BlockCache cache = BlockCache.getInstance();
+		cache.clear();
+
+		// Decoded once, then shared
+		Block block = blocks.get(5);
+		Block stored = databaseSet.getBlockMap().get(block.getSignature());
+		assertArrayEquals(block.toBytes(), stored.toBytes());
+		assertSame(stored, databaseSet.getBlockMap().get(block.getSignature()));
+		assertEquals(0.5, cache.getBlockHitRate(), 0);
+
+		// Header matches its block and leads to its parent
+		BlockHeader header = Block.getHeader(databaseSet, block.getSignature());
+		assertArrayEquals(block.getSignature(), header.getSignature());
+		assertEquals(block.getHeight(databaseSet), header.getHeight());
+		assertEquals(block.getTimestamp(), header.getTimestamp());
+		assertEquals(block.getGeneratingBalance(), header.getGeneratingBalance());
+		assertArrayEquals(blocks.get(4).getSignature(), header.getParent(databaseSet).getSignature());
+		assertSame(header, Block.getHeader(databaseSet, block.getSignature()));
+
+		// Orphaning on a fork hides cached block from the fork only
+		Block lastBlock = blocks.get(blocks.size() - 1);
+		assertNotNull(databaseSet.getBlockMap().get(lastBlock.getSignature()));
+		assertNotNull(Block.getHeader(databaseSet, lastBlock.getSignature()));
+
+		QoraDb fork = databaseSet.fork();
+		lastBlock.orphan(fork);
+		assertNull(fork.getBlockMap().get(lastBlock.getSignature()));
+		assertNull(Block.getHeader(fork, lastBlock.getSignature()));
+		assertNull(blocks.get(blocks.size() - 2).getChild(fork));
+		assertNotNull(databaseSet.getBlockMap().get(lastBlock.getSignature()));
+		assertNotNull(blocks.get(blocks.size() - 2).getChild(databaseSet));
+
+		// Orphaning on the main database forgets it
+		lastBlock.orphan(databaseSet);
+		assertNull(cache.getBlock(lastBlock.getSignature()));
+		assertNull(databaseSet.getBlockMap().get(lastBlock.getSignature()));
+		assertNull(Block.getHeader(databaseSet, lastBlock.getSignature()));
+
+		// Other databases don't see blocks cached from this one
+		QoraDb other = QoraDb.createMemoryDatabase();
+		assertNotNull(cache.getBlock(block.getSignature()));
+		assertNull(other.getBlockMap().get(block.getSignature()));
+		assertNull(Block.getHeader(other, block.getSignature()));
+	}
+
+	@Test
+	public void resyncWithBlockCache() {
+		// Store cached like the node's own database, rather than the default for in-memory ones
+		databaseSet = new QoraDb(DBMaker.newMemoryDB().cacheSize(2048).cacheLRUEnable().make());
+		genesisBlock.process(databaseSet);
+		transaction.process(databaseSet);
+
+		List<Block> blocks = generateBlocks(10, 5);
+		List<Block> resynced = blocks.subList(blocks.size() - 5, blocks.size());
+		BlockCache cache = BlockCache.getInstance();
+		cache.clear();
+
+		// Walking back through parents reaches genesis block
+		int walked = 0;
+		Block block = databaseSet.getBlockMap().getLastBlock();
+		while (block.getParent(databaseSet) != null) {
+			block = block.getParent(databaseSet);
+			walked++;
+		}
+		assertArrayEquals(genesisBlock.getSignature(), block.getSignature());
+		assertEquals(blocks.size(), walked);
+
+		// Blocks orphaned on a fork, as when synchronizing, are still valid from cache and counted
+		QoraDb fork = databaseSet.fork();
+		for (int i = resynced.size() - 1; i >= 0; i--) {
+			resynced.get(i).orphan(fork);
+		}
+
+		for (Block resync : resynced) {
+			assertTrue("block should be valid again", resync.isValid(fork));
+			resync.process(fork);
+		}
+		assertEquals(resynced.size(), cache.getValidationCount());
+		assertTrue(cache.getBlockHitRate() > 0);
+		assertArrayEquals(blocks.get(blocks.size() - 1).getSignature(), fork.getBlockMap().getLastBlock().getSignature());
+	}
+
+	private List<Block> generateBlocks(int count) {
+		return generateBlocks(count, 0);
+	}
+
+	private List<Block> generateBlocks(int count, int payments) {
+		List<Block> blocks = new ArrayList<Block>();
+
+		Block lastBlock = genesisBlock;
+		for (int i = 0; i < count; ++i) {
+			Block newBlock = blockGenerator.generateNextBlock(databaseSet, generator, lastBlock);
+
+			// Scratch fork so each payment can refer to the previous one
+			QoraDb fork = databaseSet.fork();
+			for (int p = 0; p < payments; ++p) {
+				byte[] signature = PaymentTransaction.generateSignature(fork, generator, recipient, BigDecimal.valueOf(1).setScale(8),
+						BigDecimal.valueOf(1).setScale(8), newBlock.getTimestamp());
+				Transaction payment = new PaymentTransaction(generator, recipient, BigDecimal.valueOf(1).setScale(8), BigDecimal.valueOf(1).setScale(8),
+						newBlock.getTimestamp(), generator.getLastReference(fork), signature);
+				payment.process(fork);
+				newBlock.addTransaction(payment);
+			}
+
+			newBlock.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(newBlock, generator));
+			assertTrue("block should be valid", newBlock.isValid(databaseSet));
+			newBlock.process(databaseSet);
+
+			blocks.add(newBlock);
+			lastBlock = newBlock;
+		}
+
+		return blocks;
+	}
+
 }
@@ -1,10 +1,35 @@
 
 
+import static org.junit.Assert.*;
+
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
+import database.QoraDb;
+import ntp.NTP;
+import qora.account.Account;
+import qora.account.Address;
+import qora.account.PrivateKeyAccount;
+import qora.account.PublicKeyAccount;
+import qora.crypto.Base58;
+import qora.crypto.Crypto;
 import qora.crypto.RIPEMD160;
+import qora.transaction.GenesisTransaction;
+import qora.transaction.PaymentTransaction;
+import qora.transaction.Transaction;
+import qora.transaction.TransactionFactory;
 import utils.Converter;
 
 public class CryptoTests {
@@ -33,4 +58,133 @@ public class CryptoTests {
 		System.out.println(Converter.toHex(output));
 	}
 
+	@Test
+	public void addresses() {
+		byte[] publicKey = Crypto.getInstance().digest("address".getBytes());
+
+		Address address = Address.fromPublicKey(publicKey);
+		assertTrue(address.isValid());
+		assertEquals(Account.ADDRESS_LENGTH, address.getBytes().length);
+		assertArrayEquals(Base58.decode(address.toString()), address.getBytes());
+
+		// Interned
+		assertSame(address, Address.fromPublicKey(publicKey.clone()));
+		assertSame(address, Address.parse(address.toString()));
+		assertSame(address, Address.fromBytes(address.getBytes().clone()));
+		assertEquals(address.toString(), new PublicKeyAccount(publicKey).getAddress());
+
+		// Known good address
+		assertTrue(Crypto.getInstance().isValidAddress("QgcphUTiVHHfHg8e1LVgg5jujVES7ZDUTr"));
+
+		// Bad checksum, bad characters, wrong length
+		byte[] badChecksum = address.getBytes().clone();
+		badChecksum[Account.ADDRESS_LENGTH - 1] ^= 1;
+		assertFalse(Crypto.getInstance().isValidAddress(Base58.encode(badChecksum)));
+		assertFalse(Address.fromBytes(badChecksum).isValid());
+		// Invalid addresses aren't interned
+		assertFalse(Address.fromBytes(badChecksum) == Address.fromBytes(badChecksum));
+		assertNull(Address.parse(Base58.encode(badChecksum)));
+		assertFalse(Crypto.getInstance().isValidAddress("test0"));
+		assertFalse(Crypto.getInstance().isValidAddress("test"));
+		assertFalse(Crypto.getInstance().isValidAddress(""));
+
+		// Decoding into fixed-length array
+		byte[] output = new byte[Account.ADDRESS_LENGTH];
+		assertTrue(Base58.decode(address.toString(), output));
+		assertArrayEquals(address.getBytes(), output);
+		assertFalse(Base58.decode("test", output));
+
+		byte[] leadingZeros = new byte[] { 0, 0, 1, 2, 3 };
+		output = new byte[leadingZeros.length];
+		assertTrue(Base58.decode(Base58.encode(leadingZeros), output));
+		assertArrayEquals(leadingZeros, output);
+	}
+
+	@Test
+	public void validatePayments() throws Exception {
+		// Parse and validate a block's worth of payments to different recipients
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+
+		byte[] seed = Crypto.getInstance().digest("test".getBytes());
+		PrivateKeyAccount sender = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+		new GenesisTransaction(sender, BigDecimal.valueOf(1000000).setScale(8), NTP.getTime()).process(databaseSet);
+
+		Random random = new Random(0);
+		long timestamp = NTP.getTime();
+		List<byte[]> payments = new ArrayList<byte[]>();
+		for (int i = 0; i < 1000; ++i) {
+			byte[] recipientKey = new byte[32];
+			random.nextBytes(recipientKey);
+			Account recipient = new Account(Base58.encode(Crypto.getInstance().getAddressBytes(recipientKey)));
+
+			payments.add(new PaymentTransaction(sender, recipient, BigDecimal.ONE.setScale(8), BigDecimal.ONE.setScale(8), timestamp,
+					sender.getLastReference(databaseSet), new byte[64]).toBytes());
+		}
+
+		for (byte[] payment : payments) {
+			Transaction transaction = TransactionFactory.getInstance().parse(payment);
+			assertEquals(Transaction.VALIDATE_OK, transaction.isValid(databaseSet));
+		}
+	}
+
+	@Test
+	public void pooledDigests() throws Exception {
+		byte[] input = new byte[300];
+		new Random(1).nextBytes(input);
+		Crypto crypto = Crypto.getInstance();
+
+		MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+		assertArrayEquals(sha256.digest(input), crypto.digest(input));
+		assertArrayEquals(sha256.digest(sha256.digest(input)), crypto.doubleDigest(input));
+
+		// Slices and buffers hash the same as copies
+		byte[] slice = Arrays.copyOfRange(input, 10, 110);
+		assertArrayEquals(sha256.digest(slice), crypto.digest(input, 10, 100));
+		assertArrayEquals(sha256.digest(sha256.digest(slice)), crypto.doubleDigest(input, 10, 100));
+		assertArrayEquals(sha256.digest(slice), crypto.digest(ByteBuffer.wrap(input, 10, 100)));
+		assertArrayEquals(sha256.digest(input), crypto.digestConcat(Arrays.copyOfRange(input, 0, 7), Arrays.copyOfRange(input, 7, input.length)));
+
+		// Reused instances give same results as fresh ones
+		for (int i = 0; i < 3; ++i) {
+			assertArrayEquals(new RIPEMD160().digest(input), crypto.ripemd160(input));
+			assertArrayEquals(new RIPEMD160().digest(slice), crypto.ripemd160(input, 10, 100));
+			assertArrayEquals(MessageDigest.getInstance("MD5").digest(input), crypto.md5(input));
+		}
+	}
+
+	@Test
+	public void pooledDigestsAcrossThreads() throws Exception {
+		// Each thread has its own digests, so concurrent hashing gives same results as fresh instances
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+			for (int t = 0; t < 8; ++t) {
+				final int seed = t;
+				results.add(executor.submit(new Callable<Boolean>() {
+					@Override
+					public Boolean call() throws Exception {
+						Random random = new Random(seed);
+						Crypto crypto = Crypto.getInstance();
+						for (int i = 0; i < 1000; ++i) {
+							byte[] input = new byte[random.nextInt(200)];
+							random.nextBytes(input);
+
+							if (!Arrays.equals(MessageDigest.getInstance("SHA-256").digest(input), crypto.digest(input))
+									|| !Arrays.equals(new RIPEMD160().digest(input), crypto.ripemd160(input))
+									|| !Arrays.equals(MessageDigest.getInstance("MD5").digest(input), crypto.md5(input)))
+								return false;
+						}
+						return true;
+					}
+				}));
+			}
+
+			for (Future<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 }
@@ -3,12 +3,40 @@
 import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
 
 import org.junit.Test;
-
+import org.mapdb.DBMaker;
+import org.mapdb.DataInput2;
+import org.mapdb.DataOutput2;
+import org.mapdb.Fun.Tuple2;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+
+import at.AT_Constants;
+import at.AT_Transaction;
+import database.ATStateMap;
+import database.BalanceHistoryMap;
+import database.BalanceMap;
+import database.Mempool;
 import database.QoraDb;
+import database.SortableList;
+import database.TransactionFinalMap;
+import database.serializer.BalanceSerializer;
+import qora.account.Account;
+import qora.account.PublicKeyAccount;
+import qora.crypto.Base58;
+import qora.transaction.PaymentTransaction;
+import qora.transaction.Transaction;
 import qora.web.OrphanNameStorageHelperMap;
 import utils.ByteArrayUtils;
 
@@ -16,6 +44,8 @@ public class DatabaseTests {
 
 	@Test
 	public void databaseFork() {
+		final String address = "QgcphUTiVHHfHg8e1LVgg5jujVES7ZDUTr";
+
 		// Create in-memory DB
 		QoraDb databaseSet = QoraDb.createMemoryDatabase();
 
@@ -25,24 +55,24 @@ public class DatabaseTests {
 		// TEST CHANGE TO MAIN DB INHERITED BY FORK (when no forked value exists)
 		
 		// Set balance in main DB
-		databaseSet.getBalanceMap().set("test", BigDecimal.ONE);
+		databaseSet.getBalanceMap().set(address, BigDecimal.ONE.setScale(8));
 
 		// Check balance in main DB
-		assertEquals(BigDecimal.ONE, databaseSet.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.ONE.setScale(8), databaseSet.getBalanceMap().get(address));
 
 		// Check balance in fork
-		assertEquals(BigDecimal.ONE, fork.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.ONE.setScale(8), fork.getBalanceMap().get(address));
 
 		// TEST CHANGE IN FORK DOESN'T BACK-PROPAGATE TO MAIN DB
 		
 		// Set balance in fork
-		fork.getBalanceMap().set("test", BigDecimal.TEN);
+		fork.getBalanceMap().set(address, BigDecimal.TEN.setScale(8));
 
 		// Check balance in main DB
-		assertEquals(BigDecimal.ONE, databaseSet.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.ONE.setScale(8), databaseSet.getBalanceMap().get(address));
 
 		// Check balance in fork
-		assertEquals(BigDecimal.TEN, fork.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.TEN.setScale(8), fork.getBalanceMap().get(address));
 
 		// TEST NESTED FORKS
 		
@@ -50,32 +80,109 @@ public class DatabaseTests {
 		QoraDb fork2 = fork.fork();
 
 		// Set balance in 2nd fork
-		fork2.getBalanceMap().set("test", BigDecimal.ZERO);
+		fork2.getBalanceMap().set(address, BigDecimal.ZERO.setScale(8));
 
 		// Check balance in main DB
-		assertEquals(BigDecimal.ONE, databaseSet.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.ONE.setScale(8), databaseSet.getBalanceMap().get(address));
 
 		// Check balance in 1st fork
-		assertEquals(BigDecimal.TEN, fork.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.TEN.setScale(8), fork.getBalanceMap().get(address));
 
 		// Check balance in 2nd fork
-		assertEquals(BigDecimal.ZERO, fork2.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.ZERO.setScale(8), fork2.getBalanceMap().get(address));
 		
 		// TEST CHANGE TO MAIN DB DOESN'T PROPAGATE TO ALL FORKS
 		
-		final BigDecimal someValue = BigDecimal.valueOf(2L);
+		final BigDecimal someValue = BigDecimal.valueOf(2L).setScale(8);
 		
 		// Set balance in main DB
-		databaseSet.getBalanceMap().set("test", someValue);
+		databaseSet.getBalanceMap().set(address, someValue);
 
 		// Check balance in main DB
-		assertEquals(someValue, databaseSet.getBalanceMap().get("test"));
+		assertEquals(someValue, databaseSet.getBalanceMap().get(address));
 
 		// Check balance in 1st fork
-		assertEquals(BigDecimal.TEN, fork.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.TEN.setScale(8), fork.getBalanceMap().get(address));
 
 		// Check balance in 2nd fork
-		assertEquals(BigDecimal.ZERO, fork2.getBalanceMap().get("test"));
+		assertEquals(BigDecimal.ZERO.setScale(8), fork2.getBalanceMap().get(address));
+	}
+
+	@Test
+	public void balancesByAsset() throws Exception {
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		BalanceMap balanceMap = databaseSet.getBalanceMap();
+
+		Account small = new PublicKeyAccount(new byte[] { 1 });
+		Account large = new PublicKeyAccount(new byte[] { 2 });
+		Account huge = new PublicKeyAccount(new byte[] { 3 });
+
+		// Indivisible asset quantities can be too big for a long of 1e-8 units
+		BigDecimal hugeAmount = new BigDecimal("1000000000000000000").setScale(8);
+
+		small.setConfirmedBalance(1L, BigDecimal.valueOf(5L).setScale(8), databaseSet);
+		large.setConfirmedBalance(1L, new BigDecimal("5.00000001"), databaseSet);
+		huge.setConfirmedBalance(1L, hugeAmount, databaseSet);
+		small.setConfirmedBalance(2L, BigDecimal.TEN.setScale(8), databaseSet);
+
+		assertEquals(hugeAmount, huge.getConfirmedBalance(1L, databaseSet));
+		assertEquals(BigDecimal.ZERO.setScale(8), huge.getConfirmedBalance(2L, databaseSet));
+
+		// Largest first
+		SortableList<byte[], BigDecimal> balances = balanceMap.getBalancesSortableList(1L);
+		assertEquals(3, balances.size());
+		assertEquals(huge.getAddress(), BalanceMap.getAddress(balances.get(0).getA()));
+		assertEquals(large.getAddress(), BalanceMap.getAddress(balances.get(1).getA()));
+		assertEquals(small.getAddress(), BalanceMap.getAddress(balances.get(2).getA()));
+
+		// Index entry moves when balance changes
+		small.setConfirmedBalance(1L, BigDecimal.valueOf(6L).setScale(8), databaseSet);
+		balances = balanceMap.getBalancesSortableList(1L);
+		assertEquals(3, balances.size());
+		assertEquals(small.getAddress(), BalanceMap.getAddress(balances.get(1).getA()));
+
+		// By account
+		balances = balanceMap.getBalancesSortableList(small);
+		assertEquals(2, balances.size());
+		assertEquals(1L, BalanceMap.getAssetKey(balances.get(0).getA()));
+		assertEquals(2L, BalanceMap.getAssetKey(balances.get(1).getA()));
+
+		// Store and fork overlay keep scale that was set, including once serialized
+		QoraDb fork = databaseSet.fork();
+		balanceMap.set(small.getAddress(), BigDecimal.ONE);
+		fork.getBalanceMap().set(large.getAddress(), BigDecimal.ONE);
+		assertEquals(BigDecimal.ONE, balanceMap.get(small.getAddress()));
+		assertEquals(BigDecimal.ONE, fork.getBalanceMap().get(large.getAddress()));
+
+		// Fork lists its own balances merged with its parent's
+		balanceMap.set(small.getAddress(), 1L, BigDecimal.valueOf(6L).setScale(8));
+		balanceMap.set(huge.getAddress(), 1L, hugeAmount);
+		balanceMap.set(large.getAddress(), 1L, new BigDecimal("5.00000001"));
+		QoraDb balanceFork = databaseSet.fork();
+		assertEquals(3, balanceFork.getBalanceMap().getBalancesSortableList(1L).size());
+		balanceFork.getBalanceMap().set(large.getAddress(), 1L, BigDecimal.valueOf(7L).setScale(8));
+		balanceFork.getBalanceMap().delete(BalanceMap.getKey(Account.decodeAddress(huge.getAddress()), 1L));
+		balances = balanceFork.getBalanceMap().getBalancesSortableList(1L);
+		assertEquals(2, balances.size());
+		assertEquals(large.getAddress(), BalanceMap.getAddress(balances.get(0).getA()));
+		assertEquals(small.getAddress(), BalanceMap.getAddress(balances.get(1).getA()));
+		assertEquals(3, balanceMap.getBalancesSortableList(1L).size());
+		balances = balanceFork.getBalanceMap().getBalancesSortableList(small);
+		assertEquals(3, balances.size());
+		assertEquals(BalanceMap.QORA_KEY, BalanceMap.getAssetKey(balances.get(0).getA()));
+		assertEquals(2L, BalanceMap.getAssetKey(balances.get(2).getA()));
+
+		BalanceSerializer serializer = new BalanceSerializer();
+		for (BigDecimal value : new BigDecimal[] { BigDecimal.ZERO, BigDecimal.ONE.negate(), BigDecimal.valueOf(12345, 2),
+				BigDecimal.valueOf(1000).setScale(8), BigDecimal.valueOf(-5, 8), BigDecimal.valueOf(1, 12), new BigDecimal("1E+30") }) {
+			DataOutput2 out = new DataOutput2();
+			serializer.serialize(out, value);
+			assertEquals(value, serializer.deserialize(new DataInput2(out.copyBytes()), -1));
+		}
+
+		// Balances for invalid addresses are ignored
+		balanceMap.set("test", BigDecimal.ONE);
+		assertEquals(BigDecimal.ZERO.setScale(8), balanceMap.get("test"));
 	}
 
 	@Test
@@ -349,4 +456,494 @@ public class DatabaseTests {
 		assertEquals(1, forkSigs.size()); // Should only be one entry
 		assertTrue(ByteArrayUtils.contains(forkSigs, anotherSignature));
 	}
+
+	@Test
+	public void unitOfWork() {
+		final String address = "QgcphUTiVHHfHg8e1LVgg5jujVES7ZDUTr";
+
+		// Create in-memory DB
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+
+		// Committed unit of work survives
+		databaseSet.beginBlock();
+		databaseSet.getBalanceMap().set(address, BigDecimal.ONE.setScale(8));
+		assertTrue(databaseSet.getBlockMap().isProcessing());
+		databaseSet.endBlock();
+		assertFalse(databaseSet.getBlockMap().isProcessing());
+
+		databaseSet.flush();
+		assertEquals(1, databaseSet.getCommitCount());
+		assertEquals(0, databaseSet.getPendingActions());
+
+		// Nested units don't commit until outermost unit ends
+		databaseSet.beginBlock();
+		databaseSet.beginBlock();
+		databaseSet.getBalanceMap().set(address, BigDecimal.TEN.setScale(8));
+		databaseSet.endBlock();
+		assertTrue(databaseSet.getBlockMap().isProcessing());
+
+		// Aborting rolls back to last commit
+		databaseSet.abortBlock();
+		assertFalse(databaseSet.getBlockMap().isProcessing());
+		assertEquals(BigDecimal.ONE.setScale(8), databaseSet.getBalanceMap().get(address));
+
+		// Stray end after abort is harmless
+		databaseSet.endBlock();
+		assertEquals(1, databaseSet.getCommitCount());
+	}
+
+	@Test
+	public void forkDeletedKeys() {
+		// Create in-memory DB
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+
+		byte[] key = new byte[] { 1, 2, 3 };
+		byte[] value = new byte[] { 4, 5, 6 };
+		databaseSet.getTransactionParentMap().set(key, value);
+
+		// Delete in fork using a different array with same content
+		QoraDb fork = databaseSet.fork();
+		fork.getTransactionParentMap().delete(Arrays.copyOf(key, key.length));
+
+		// Deleted in fork, but not in main DB
+		assertNull(fork.getTransactionParentMap().get(key));
+		assertFalse(fork.getTransactionParentMap().contains(key));
+		assertArrayEquals(value, databaseSet.getTransactionParentMap().get(key));
+
+		// Nested fork also sees deletion
+		QoraDb fork2 = fork.fork();
+		assertNull(fork2.getTransactionParentMap().get(Arrays.copyOf(key, key.length)));
+
+		// Setting again in fork undoes deletion
+		fork.getTransactionParentMap().set(Arrays.copyOf(key, key.length), value);
+		assertArrayEquals(value, fork.getTransactionParentMap().get(key));
+		assertArrayEquals(value, fork2.getTransactionParentMap().get(key));
+	}
+
+	@Test
+	public void forkIndexesBeforeFirstWrite() {
+		// Create in-memory DB
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		Account recipient = TestUtils.createTestAccount();
+		addATPayment(databaseSet, 5, recipient);
+
+		// Forks that haven't been written to share empty indexes, which must stay empty
+		QoraDb fork = databaseSet.fork();
+		QoraDb otherFork = databaseSet.fork();
+		assertTrue(otherFork.getATTransactionMap().getATTransactions(5).isEmpty());
+		assertTrue(otherFork.getATTransactionMap().getATTransactionsByRecipient(recipient.getAddress()).isEmpty());
+		assertNotNull(otherFork.getATTransactionMap().get(new Tuple2<Integer, Integer>(5, 0)));
+
+		addATPayment(fork, 6, recipient);
+		assertEquals(1, fork.getATTransactionMap().getATTransactions(6).size());
+		assertEquals(1, fork.getATTransactionMap().getATTransactionsByRecipient(recipient.getAddress()).size());
+
+		// Other fork doesn't see first fork's write
+		assertTrue(otherFork.getATTransactionMap().getATTransactions(6).isEmpty());
+		assertTrue(otherFork.getATTransactionMap().getATTransactionsByRecipient(recipient.getAddress()).isEmpty());
+		assertNull(otherFork.getATTransactionMap().get(new Tuple2<Integer, Integer>(6, 0)));
+		assertTrue(databaseSet.fork().getATTransactionMap().getATTransactions(6).isEmpty());
+	}
+
+	private static Transaction createPayment(Account sender, int fee, long timestamp, int id) {
+		byte[] signature = new byte[64];
+		signature[0] = (byte) id;
+		return new PaymentTransaction((PublicKeyAccount) sender, TestUtils.createTestAccount(), BigDecimal.ONE.setScale(8), BigDecimal.valueOf(fee).setScale(8),
+				timestamp, new byte[64], signature);
+	}
+
+	@Test
+	public void atStateRollback() {
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		ATStateMap states = databaseSet.getATStateMap();
+
+		Random random = new Random(1);
+		List<byte[]> ids = createATIds(5);
+		List<Map<String, byte[]>> expected = runATs(states, ids, 1, 1200, new HashMap<String, byte[]>(), random);
+
+		// Every state comes back exactly, not just once per store distance
+		for (int height = 1; height <= 1200; height++) {
+			for (byte[] id : ids) {
+				String key = Base58.encode(id);
+				assertArrayEquals(expected.get(height - 1).get(key), states.getState(key, height));
+			}
+		}
+
+		assertEquals(1150, states.getRollbackHeight(1150));
+
+		Map<String, byte[]> rollback = states.getStates(1150);
+		for (Map.Entry<String, byte[]> entry : rollback.entrySet()) {
+			assertArrayEquals(expected.get(1150 - 1).get(entry.getKey()), entry.getValue());
+		}
+
+		// Reorganize on fork, leaving parent as it was
+		QoraDb fork = databaseSet.fork();
+		ATStateMap forkStates = fork.getATStateMap();
+		forkStates.deleteStatesAfter(980);
+		List<Map<String, byte[]>> forked = runATs(forkStates, ids, 981, 1010, expected.get(980 - 1), random);
+
+		for (byte[] id : ids) {
+			String key = Base58.encode(id);
+
+			for (int height = 960; height <= 980; height++) {
+				assertArrayEquals(expected.get(height - 1).get(key), forkStates.getState(key, height));
+			}
+
+			for (int height = 981; height <= 1010; height++) {
+				assertArrayEquals(forked.get(height - 981).get(key), forkStates.getState(key, height));
+				assertArrayEquals(expected.get(height - 1).get(key), states.getState(key, height));
+			}
+
+			assertArrayEquals(forked.get(1010 - 981).get(key), forkStates.getState(key, 1200));
+		}
+	}
+
+	@Test
+	public void atStateCompaction() {
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		ATStateMap states = databaseSet.getATStateMap();
+
+		final int last = 2000 + ATStateMap.EXACT_ROLLBACK_DEPTH;
+		List<byte[]> ids = createATIds(10);
+		List<Map<String, byte[]>> expected = runATs(states, ids, 1, last, new HashMap<String, byte[]>(), new Random(2));
+
+		// Recent states come back exactly, older ones at the end of each store distance
+		assertEquals(2000, states.getRollbackHeight(2000));
+		assertEquals(1499, states.getRollbackHeight(1700));
+
+		for (byte[] id : ids) {
+			String key = Base58.encode(id);
+
+			for (int height = 2000; height <= last; height++) {
+				assertArrayEquals(expected.get(height - 1).get(key), states.getState(key, height));
+			}
+
+			for (int height = AT_Constants.STATE_STORE_DISTANCE - 1; height < 2000; height += AT_Constants.STATE_STORE_DISTANCE) {
+				assertArrayEquals(expected.get(height - 1).get(key), states.getState(key, height));
+			}
+		}
+
+		// Stored bytes vs a full state per run and the last state per store distance only
+		long storedBytes = 0;
+		for (byte[] record : states.getValues()) {
+			storedBytes += record.length;
+		}
+
+		long fullBytes = 0;
+		long bucketBytes = 0;
+		for (int height = 1; height <= last; height++) {
+			for (byte[] state : expected.get(height - 1).values()) {
+				fullBytes += state.length;
+
+				if (height % AT_Constants.STATE_STORE_DISTANCE == 0) {
+					bucketBytes += state.length;
+				}
+			}
+		}
+
+		assertTrue(storedBytes * 10 < fullBytes);
+		assertTrue(storedBytes < 30 * bucketBytes);
+
+		// Rolling back below compacted states stores them in full again from there
+		states.deleteStatesAfter(1499);
+		assertEquals(1500, states.getRollbackHeight(1500));
+		List<Map<String, byte[]>> rerun = runATs(states, ids, 1500, 1600, expected.get(1499 - 1), new Random(3));
+		for (byte[] id : ids) {
+			String key = Base58.encode(id);
+			assertArrayEquals(rerun.get(1550 - 1500).get(key), states.getState(key, 1550));
+		}
+	}
+
+	private static List<byte[]> createATIds(int count) {
+		List<byte[]> ids = new ArrayList<byte[]>();
+		for (int i = 0; i < count; i++) {
+			byte[] id = new byte[AT_Constants.AT_ID_SIZE];
+			id[0] = (byte) (i + 1);
+			ids.add(id);
+		}
+
+		return ids;
+	}
+
+	/**
+	 * Runs each AT in most blocks from <code>from</code> to <code>to</code>, changing registers, balances, height and a few
+	 * data cells of a 1KB data segment, mostly among the first 16, and returns every AT's state after each block.
+	 */
+	private static List<Map<String, byte[]>> runATs(ATStateMap states, List<byte[]> ids, int from, int to,
+			Map<String, byte[]> initial, Random random) {
+		List<Map<String, byte[]>> result = new ArrayList<Map<String, byte[]>>();
+		Map<String, byte[]> current = new HashMap<String, byte[]>(initial);
+
+		for (int height = from; height <= to; height++) {
+			for (byte[] id : ids) {
+				String key = Base58.encode(id);
+				byte[] state = current.get(key);
+
+				if (state == null) {
+					state = new byte[86 + 8 + 8 + 4 + 4 + 1 + 1024];
+				} else if (random.nextInt(4) == 0) {
+					continue;
+				} else {
+					state = state.clone();
+				}
+
+				// Registers, balances and height
+				for (int i = 0; i < 8; i++) {
+					state[random.nextInt(106)] = (byte) random.nextInt();
+				}
+
+				// A couple of data cells, mostly the same few
+				for (int i = 0; i < 2; i++) {
+					int cell = random.nextInt(8) == 0 ? random.nextInt(128) : random.nextInt(16);
+					state[111 + 8 * cell] = (byte) random.nextInt();
+				}
+
+				states.addOrUpdate(height, id, state);
+				current.put(key, state);
+			}
+
+			result.add(new HashMap<String, byte[]>(current));
+		}
+
+		return result;
+	}
+
+	@Test
+	public void transactionQueries() {
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		TransactionFinalMap transactions = databaseSet.getTransactionFinalMap();
+
+		PublicKeyAccount address = (PublicKeyAccount) TestUtils.createTestAccount();
+		PublicKeyAccount other = (PublicKeyAccount) TestUtils.createTestAccount();
+		addPayments(transactions, address, other, 1, 30);
+
+		// Sent and received, oldest first
+		List<Tuple2<Integer, Integer>> all = Lists.newArrayList(transactions.findTransactionsKeys(address.getAddress(), null,
+				null, 0, 0, 0, -1, false, 0, 0));
+		assertEquals(90, all.size());
+		assertEquals(Ordering.natural().sortedCopy(all), all);
+
+		// Newest first, within heights
+		List<Tuple2<Integer, Integer>> recent = Lists.newArrayList(transactions.findTransactionsKeys(address.getAddress(), null,
+				null, 10, 20, 0, -1, true, 0, 0));
+		assertEquals(33, recent.size());
+		assertEquals(new Tuple2<Integer, Integer>(20, 2), recent.get(0));
+		assertEquals(new Tuple2<Integer, Integer>(10, 0), recent.get(32));
+
+		// Both sender and recipient
+		assertEquals(30, Iterables.size(transactions.findTransactionsKeys(null, address.getAddress(), other.getAddress(), 0, 0, 0,
+				-1, false, 0, 0)));
+
+		// Resuming from cursor gives same pages as offset
+		for (boolean desc : new boolean[] { false, true }) {
+			Tuple2<Integer, Integer> after = null;
+			for (int offset = 0; offset < 90; offset += 7) {
+				List<Tuple2<Integer, Integer>> page = Lists.newArrayList(transactions.findTransactionsKeys(address.getAddress(),
+						null, null, 0, 0, 0, -1, desc, offset, 7));
+				assertEquals(page, Lists.newArrayList(transactions.findTransactionsKeys(address.getAddress(), null, null, 0, 0,
+						0, -1, after == null ? null : TransactionFinalMap.fromCursor(TransactionFinalMap.toCursor(after)), desc,
+						0, 7)));
+				after = page.get(page.size() - 1);
+			}
+		}
+
+		// Counts follow transactions removed on orphaning
+		assertEquals(90, transactions.findTransactionsCount(address.getAddress(), null, null, 0, 0, 0, -1, false, 0, 0));
+		assertEquals(10, transactions.findTransactionsCount(address.getAddress(), null, null, 0, 0, 0, -1, false, 80, 20));
+		transactions.delete(30);
+		assertEquals(87, transactions.getTransactionsByAddressCount(address.getAddress()));
+		assertEquals(87, transactions.findTransactionsCount(address.getAddress(), null, null, 0, 0, Transaction.PAYMENT_TRANSACTION,
+				-1, false, 0, 0));
+	}
+
+	@Test
+	public void transactionQueryPages() {
+		// Pages from merged iterators match pages of sets built from whole indexes
+		QoraDb databaseSet = new QoraDb(DBMaker.newMemoryDB().transactionDisable().make());
+		TransactionFinalMap transactions = databaseSet.getTransactionFinalMap();
+
+		PublicKeyAccount address = (PublicKeyAccount) TestUtils.createTestAccount();
+		PublicKeyAccount other = (PublicKeyAccount) TestUtils.createTestAccount();
+		addPayments(transactions, address, other, 1, 400);
+		String busy = address.getAddress();
+
+		TreeSet<Tuple2<Integer, Integer>> keys = Sets.newTreeSet(transactions.findTransactionsKeys(null, busy, null, 0, 0, 0, -1,
+				false, 0, 0));
+		keys.addAll(Sets.newTreeSet(transactions.findTransactionsKeys(null, null, busy, 0, 0, 0, -1, false, 0, 0)));
+		assertEquals(1200, keys.size());
+
+		Tuple2<Integer, Integer> after = null;
+		for (int page = 0; page < 10; page++) {
+			List<Tuple2<Integer, Integer>> expected = Lists.newArrayList(Iterables.limit(Iterables.skip(keys.descendingSet(),
+					page * 20), 20));
+			List<Tuple2<Integer, Integer>> cursor = Lists.newArrayList(transactions.findTransactionsKeys(busy, null, null, 0, 0, 0,
+					-1, after, true, 0, 20));
+			assertEquals(expected, cursor);
+			after = cursor.get(19);
+		}
+
+		assertEquals(1200, transactions.findTransactionsCount(busy, null, null, 0, 0, 0, -1, false, 0, 0));
+	}
+
+	/**
+	 * Adds three payments per block from <code>from</code> to <code>to</code>: <code>address</code> to <code>other</code>,
+	 * <code>other</code> to <code>address</code> and <code>address</code> to a third account.
+	 */
+	private static void addPayments(TransactionFinalMap transactions, PublicKeyAccount address, PublicKeyAccount other, int from,
+			int to) {
+		Account third = TestUtils.createTestAccount();
+
+		for (int height = from; height <= to; height++) {
+			transactions.add(height, 0, createPayment(address, other, height));
+			transactions.add(height, 1, createPayment(other, address, height));
+			transactions.add(height, 2, createPayment(address, third, height));
+		}
+	}
+
+	private static Transaction createPayment(PublicKeyAccount sender, Account recipient, long timestamp) {
+		return new PaymentTransaction(sender, recipient, BigDecimal.ONE.setScale(8), BigDecimal.ONE.setScale(8), timestamp,
+				new byte[64], new byte[64]);
+	}
+
+	@Test
+	public void balanceHistory() {
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		TransactionFinalMap transactions = databaseSet.getTransactionFinalMap();
+		BalanceHistoryMap history = databaseSet.getBalanceHistoryMap();
+
+		PublicKeyAccount address = (PublicKeyAccount) TestUtils.createTestAccount();
+		PublicKeyAccount other = (PublicKeyAccount) TestUtils.createTestAccount();
+		addPayments(transactions, address, other, 1, 29);
+		int size = history.size();
+
+		addPayments(transactions, address, other, 30, 30);
+
+		// AT payments, some below heights that already have entries
+		addATPayment(databaseSet, 25, address);
+		addATPayment(databaseSet, 5, address);
+		addATPayment(databaseSet, 12, other);
+
+		int[][] ranges = { { 1, 30 }, { 0, 30 }, { 20, 30 }, { 4, 5 }, { 11, 25 }, { 29, 30 }, { 30, 30 } };
+		for (Account account : new Account[] { address, other }) {
+			for (int[] range : ranges) {
+				BigDecimal[] expected = walkBlocks(databaseSet, account, range[0], range[1]);
+				assertEquals(0, expected[0].compareTo(history.getChange(account.getAddress(), range[0], range[1])));
+				assertEquals(0, expected[1].compareTo(history.getReceived(account.getAddress(), range[0], range[1])));
+			}
+		}
+
+		// Orphaning on a fork leaves parent alone. Fork's own AT payments map only has its own, so stay above them
+		BigDecimal change = history.getChange(address.getAddress(), 25, 30);
+		QoraDb fork = databaseSet.fork();
+		fork.getTransactionFinalMap().delete(30);
+		fork.getTransactionFinalMap().delete(29);
+		assertEquals(0, walkBlocks(fork, address, 25, 30)[0].compareTo(fork.getBalanceHistoryMap().getChange(address.getAddress(), 25, 30)));
+		assertEquals(0, fork.getBalanceHistoryMap().getChange(address.getAddress(), 28, 30).signum());
+		assertEquals(0, change.compareTo(history.getChange(address.getAddress(), 25, 30)));
+
+		// Orphaning removes entries again
+		databaseSet.getATTransactionMap().delete(25);
+		databaseSet.getATTransactionMap().delete(12);
+		databaseSet.getATTransactionMap().delete(5);
+		transactions.delete(30);
+		assertEquals(size, history.size());
+		assertEquals(0, history.getChange(address.getAddress(), 29, 30).signum());
+	}
+
+	@Test
+	public void balanceHistoryATOrphanOnFork() {
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		Account recipient = TestUtils.createTestAccount();
+		addATPayment(databaseSet, 5, recipient);
+		BigDecimal amount = BigDecimal.valueOf(250000000L, 8);
+
+		// Orphaning parent's AT payments on a fork removes them from fork's balance history
+		QoraDb fork = databaseSet.fork();
+		fork.getATTransactionMap().delete(5);
+		assertNull(fork.getATTransactionMap().get(new Tuple2<Integer, Integer>(5, 0)));
+		assertEquals(0, fork.getBalanceHistoryMap().getReceived(recipient.getAddress(), 4, 5).signum());
+
+		fork = databaseSet.fork();
+		fork.getATTransactionMap().deleteAllAfterHeight(3);
+		assertNull(fork.getATTransactionMap().get(new Tuple2<Integer, Integer>(5, 0)));
+		assertEquals(0, fork.getBalanceHistoryMap().getReceived(recipient.getAddress(), 0, 5).signum());
+
+		// Parent keeps them
+		assertNotNull(databaseSet.getATTransactionMap().get(new Tuple2<Integer, Integer>(5, 0)));
+		assertEquals(0, amount.compareTo(databaseSet.getBalanceHistoryMap().getReceived(recipient.getAddress(), 4, 5)));
+	}
+
+	/**
+	 * Returns what <code>account</code>'s balance changed by and what it received in blocks after <code>from</code> up to
+	 * <code>to</code>, undoing transactions one by one like balances used to be worked out.
+	 */
+	private static BigDecimal[] walkBlocks(QoraDb databaseSet, Account account, int from, int to) {
+		BigDecimal change = BigDecimal.ZERO.setScale(8);
+		BigDecimal received = BigDecimal.ZERO.setScale(8);
+
+		for (int height = to; height > from; height--) {
+			for (int seq = 0; seq < 3; seq++) {
+				Transaction transaction = databaseSet.getTransactionFinalMap().get(new Tuple2<Integer, Integer>(height, seq));
+				if (transaction != null && transaction.isInvolved(account)) {
+					BigDecimal amount = transaction.getAmount(account);
+					change = change.add(amount);
+					if (amount.signum() > 0)
+						received = received.add(amount);
+				}
+			}
+
+			for (AT_Transaction atTx : databaseSet.getATTransactionMap().getATTransactions(height).values()) {
+				if (atTx.getRecipient().equals(account.getAddress())) {
+					change = change.add(BigDecimal.valueOf(atTx.getAmount(), 8));
+					received = received.add(BigDecimal.valueOf(atTx.getAmount(), 8));
+				}
+			}
+		}
+
+		return new BigDecimal[] { change, received };
+	}
+
+	private static void addATPayment(QoraDb databaseSet, int height, Account recipient) {
+		byte[] sender = new byte[AT_Constants.AT_ID_SIZE];
+		databaseSet.getATTransactionMap().add(height, 0,
+				new AT_Transaction(height, 0, sender, Base58.decode(recipient.getAddress()), 250000000L, null));
+	}
+
+	@Test
+	public void mempoolIndexes() {
+		Account senderA = TestUtils.createTestAccount();
+		Account senderB = TestUtils.createTestAccount();
+
+		Transaction cheap = createPayment(senderA, 1, 1000L, 1);
+		Transaction middle = createPayment(senderB, 2, 3000L, 2);
+		Transaction dear = createPayment(senderA, 3, 2000L, 3);
+
+		Mempool mempool = new Mempool(3);
+		assertNull(mempool.add(cheap));
+		assertNull(mempool.add(middle));
+		assertNull(mempool.add(dear));
+
+		// Highest fee per byte first
+		assertEquals(Arrays.asList(dear, middle, cheap), mempool.getTransactionsByFee());
+
+		// Oldest first per sender
+		assertEquals(Arrays.asList(cheap, dear), mempool.getTransactionsBySender(senderA.getAddress()));
+		assertEquals(Arrays.asList(middle), mempool.getTransactionsBySender(senderB.getAddress()));
+
+		// Earliest deadline first
+		assertEquals(Arrays.asList(cheap, dear), mempool.getExpired(dear.getDeadline() + 1));
+
+		// Full: adding better transaction evicts cheapest, adding worse transaction is refused
+		Transaction dearest = createPayment(senderB, 4, 4000L, 4);
+		assertEquals(cheap, mempool.add(dearest));
+		Transaction cheapest = createPayment(senderB, 1, 5000L, 5);
+		assertEquals(cheapest, mempool.add(cheapest));
+		assertEquals(3, mempool.size());
+		assertFalse(mempool.contains(cheap.getSignature()));
+
+		// Removal updates all indexes
+		assertEquals(dear, mempool.remove(dear.getSignature()));
+		assertTrue(mempool.getTransactionsBySender(senderA.getAddress()).isEmpty());
+		assertEquals(Arrays.asList(dearest, middle), mempool.getTransactionsByFee());
+	}
 }
@@ -3,12 +3,15 @@
 import static org.junit.Assert.*;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 import ntp.NTP;
 
 import org.junit.Before;
 import org.junit.Test;
 
+import qora.BlockGenerator;
 import qora.block.Block;
 import qora.crypto.Crypto;
 import qora.transaction.PaymentTransaction;
@@ -175,5 +178,52 @@ public class GeneratorTests extends TestUtils {
 		assertTrue("new block with valid transactions should be valid", newBlock.isValid(databaseSet));
 	}
 
+	@Test
+	public void generatingBalanceCaches() {
+		List<Block> blocks = generateBlocks(29);
+		Block lastBlock = blocks.get(blocks.size() - 1);
+		assertEquals(0, lastBlock.getHeight(databaseSet) % BlockGenerator.RETARGET);
+
+		// Remembered results match working them out again
+		for (Block block : blocks) {
+			assertEquals(BlockGenerator.calculateNextBlockGeneratingBalance(databaseSet, block),
+					BlockGenerator.getNextBlockGeneratingBalance(databaseSet, block));
+			assertEquals(BlockGenerator.calculateNextBlockGeneratingBalance(databaseSet, block),
+					BlockGenerator.getNextBlockGeneratingBalance(databaseSet, block));
+		}
+
+		assertEquals(0, generator.calculateGeneratingBalance(databaseSet).compareTo(generator.getGeneratingBalance(databaseSet)));
+
+		// Balance changing without a new block, like AT payments made while validating the next block
+		recipient.setConfirmedBalance(BigDecimal.valueOf(50).setScale(8), databaseSet);
+		assertEquals(0, BigDecimal.valueOf(50).compareTo(recipient.getGeneratingBalance(databaseSet)));
+		recipient.setConfirmedBalance(BigDecimal.valueOf(70).setScale(8), databaseSet);
+		assertEquals(0, BigDecimal.valueOf(70).compareTo(recipient.getGeneratingBalance(databaseSet)));
+
+		// Orphaning moves last block back
+		BigDecimal before = generator.getGeneratingBalance(databaseSet);
+		lastBlock.orphan(databaseSet);
+		assertEquals(0, generator.calculateGeneratingBalance(databaseSet).compareTo(generator.getGeneratingBalance(databaseSet)));
+		lastBlock.process(databaseSet);
+		assertEquals(0, before.compareTo(generator.getGeneratingBalance(databaseSet)));
+	}
+
+	private List<Block> generateBlocks(int count) {
+		List<Block> blocks = new ArrayList<Block>();
+
+		Block lastBlock = genesisBlock;
+		for (int i = 0; i < count; ++i) {
+			Block newBlock = blockGenerator.generateNextBlock(databaseSet, generator, lastBlock);
+			newBlock.setTransactionsSignature(Crypto.getInstance().sign(generator, newBlock.getGeneratorSignature()));
+			assertTrue("block should be valid", newBlock.isValid(databaseSet));
+			newBlock.process(databaseSet);
+
+			blocks.add(newBlock);
+			lastBlock = newBlock;
+		}
+
+		return blocks;
+	}
+
 	// TODO CALCULATETRANSACTIONSIGNATURE
 }
@@ -1,11 +1,18 @@
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import ntp.NTP;
 
@@ -14,6 +21,7 @@ import org.junit.Test;
 
 import qora.account.PrivateKeyAccount;
 import qora.assets.Asset;
+import qora.assets.Candle;
 import qora.assets.Order;
 import qora.assets.Trade;
 import qora.block.GenesisBlock;
@@ -23,6 +31,7 @@ import qora.transaction.GenesisTransaction;
 import qora.transaction.IssueAssetTransaction;
 import qora.transaction.Transaction;
 import qora.transaction.TransactionFactory;
+import database.CandleMap;
 import database.QoraDb;
 
 public class OrderTests 
@@ -826,4 +835,192 @@ public class OrderTests
 		Assert.assertEquals(false, fork2.getOrderMap().contains(new BigInteger(new byte[]{1, 2})));
 		Assert.assertEquals(false, fork2.getCompletedOrderMap().contains(new BigInteger(new byte[]{1, 2})));
 	}
+	
+	private static Order restingOrder(PrivateKeyAccount account, int i, BigDecimal price)
+	{
+		return new Order(BigInteger.valueOf(1000000 + i), account, 1l, 2l, BigDecimal.valueOf(10).setScale(8), price, 1000l + i);
+	}
+	
+	@Test
+	public void testOrderBookForks()
+	{
+		QoraDb dbSet = QoraDb.createMemoryDatabase();
+		
+		byte[] seed = Crypto.getInstance().digest("test".getBytes());
+		PrivateKeyAccount account = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+		
+		//RESTING ORDERS, SEVERAL AT EACH PRICE
+		List<Order> expected = new ArrayList<Order>();
+		for(int i = 0; i < 200; i++)
+		{
+			Order order = restingOrder(account, i, BigDecimal.valueOf(1 + (i * 7) % 50).setScale(8));
+			dbSet.getOrderMap().add(order);
+			expected.add(order);
+		}
+		
+		//FORK CHANGES, DELETES AND ADDS ORDERS
+		QoraDb fork = dbSet.fork();
+		Order changed = expected.get(10).copy();
+		changed.setFulfilled(BigDecimal.ONE.setScale(8));
+		fork.getOrderMap().add(changed);
+		expected.set(10, changed);
+		
+		fork.getOrderMap().delete(expected.get(20));
+		expected.remove(20);
+		
+		for(int i = 200; i < 220; i++)
+		{
+			Order order = restingOrder(account, i, BigDecimal.valueOf(1 + (i * 7) % 50).setScale(8));
+			fork.getOrderMap().add(order);
+			expected.add(order);
+		}
+		
+		//FORK OF FORK SEES BOTH
+		QoraDb fork2 = fork.fork();
+		fork2.getOrderMap().delete(expected.get(0));
+		expected.remove(0);
+		
+		//LOWEST PRICE FIRST, THEN BY ID
+		Collections.sort(expected, (a, b) -> a.getPrice().compareTo(b.getPrice()) != 0 ? a.getPrice().compareTo(b.getPrice()) : a.getId().compareTo(b.getId()));
+		
+		List<Order> book = fork2.getOrderMap().getOrders(1l, 2l);
+		assertEquals(expected.size(), book.size());
+		for(int i = 0; i < expected.size(); i++)
+		{
+			assertEquals(expected.get(i).getId(), book.get(i).getId());
+			assertEquals(0, expected.get(i).getFulfilled().compareTo(book.get(i).getFulfilled()));
+		}
+		
+		//PARENT UNCHANGED
+		assertEquals(200, dbSet.getOrderMap().getOrders(1l, 2l).size());
+		assertEquals(0, dbSet.getOrderMap().get(changed.getId()).getFulfilled().compareTo(BigDecimal.ZERO));
+	}
+	
+	@Test
+	public void testMarketDataRollback()
+	{
+		QoraDb dbSet = QoraDb.createMemoryDatabase();
+		
+		//CREATE ASSETS A AND B
+		byte[] seed = Crypto.getInstance().digest("test".getBytes());
+		PrivateKeyAccount accountA = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+		new GenesisTransaction(accountA, BigDecimal.valueOf(1000).setScale(8), NTP.getTime()).process(dbSet);
+		new IssueAssetTransaction(accountA, new Asset(accountA, "a", "a", 50000l, true, new byte[64]), BigDecimal.ONE.setScale(8), System.currentTimeMillis(), accountA.getLastReference(dbSet), new byte[64]).process(dbSet);
+		
+		seed = Crypto.getInstance().digest("testb".getBytes());
+		PrivateKeyAccount accountB = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+		new GenesisTransaction(accountB, BigDecimal.valueOf(1000).setScale(8), NTP.getTime()).process(dbSet);
+		new IssueAssetTransaction(accountB, new Asset(accountB, "b", "b", 50000l, true, new byte[64]), BigDecimal.ONE.setScale(8), System.currentTimeMillis(), accountB.getLastReference(dbSet), new byte[64]).process(dbSet);
+		
+		//ALL ORDERS WITHIN ONE HOUR
+		long hour = CandleMap.getCandleStart(System.currentTimeMillis(), CandleMap.HOUR);
+		
+		//SELLING 1000 A FOR B AT 0.10 AND 1000 A FOR B AT 0.20
+		new CreateOrderTransaction(accountA, 1l, 2l, BigDecimal.valueOf(1000).setScale(8), BigDecimal.valueOf(0.1).setScale(8), BigDecimal.ONE.setScale(8), hour + 1000, accountA.getLastReference(dbSet), new byte[]{5, 6}).process(dbSet);
+		new CreateOrderTransaction(accountA, 1l, 2l, BigDecimal.valueOf(1000).setScale(8), BigDecimal.valueOf(0.2).setScale(8), BigDecimal.ONE.setScale(8), hour + 2000, accountA.getLastReference(dbSet), new byte[]{1, 2}).process(dbSet);
+		
+		assertEquals(2, dbSet.getAssetStatsMap().getOpenOrdersCount(1l));
+		assertEquals(0, dbSet.getAssetStatsMap().getAmountInOrders(1l).compareTo(BigDecimal.valueOf(2000)));
+		assertEquals(2, dbSet.getDepthMap().getDepth(1l, 2l).size());
+		
+		//SELLING 150 B FOR A AT 5, FILLS FIRST ORDER AND A QUARTER OF SECOND
+		CreateOrderTransaction orderC = new CreateOrderTransaction(accountB, 2l, 1l, BigDecimal.valueOf(150).setScale(8), BigDecimal.valueOf(5).setScale(8), BigDecimal.ONE.setScale(8), hour + 3000, accountB.getLastReference(dbSet), new byte[]{3, 4});
+		orderC.process(dbSet);
+		
+		assertEquals(1, dbSet.getAssetStatsMap().getOpenOrdersCount(1l));
+		assertEquals(1, dbSet.getAssetStatsMap().getOpenOrdersCount(2l));
+		assertEquals(2, dbSet.getAssetStatsMap().getTradesCount(1l));
+		assertEquals(3, dbSet.getAssetStatsMap().getOperationsCount(2l));
+		assertEquals(0, dbSet.getAssetStatsMap().getAmountInOrders(1l).compareTo(BigDecimal.valueOf(750)));
+		assertEquals(0, dbSet.getDepthMap().getDepth(1l, 2l).get(BigDecimal.valueOf(0.2).setScale(8)).b.compareTo(BigDecimal.valueOf(750)));
+		
+		//100 B FOR 1000 A THEN 50 B FOR 250 A, SAME TIMESTAMP
+		List<Candle> candles = dbSet.getCandleMap().getCandles(1l, 2l, CandleMap.HOUR, hour, hour);
+		assertEquals(1, candles.size());
+		Candle candle = candles.get(0);
+		assertEquals(2, candle.getTrades());
+		assertEquals(0, candle.getVolume().compareTo(BigDecimal.valueOf(150)));
+		assertEquals(0, candle.getQuoteVolume().compareTo(BigDecimal.valueOf(1250)));
+		assertEquals(0, candle.getOpen().compareTo(BigDecimal.valueOf(5)));
+		assertEquals(0, candle.getHigh().compareTo(BigDecimal.valueOf(10)));
+		assertEquals(0, candle.getLow().compareTo(BigDecimal.valueOf(5)));
+		assertEquals(0, candle.getClose().compareTo(BigDecimal.valueOf(10)));
+		assertEquals(0, dbSet.getCandleMap().getLastPrice(2l, 1l).compareTo(BigDecimal.valueOf(10)));
+		assertEquals(1, dbSet.getCandleMap().getCandles(1l, 2l, CandleMap.WEEK, hour, hour).size());
+		assertEquals(2, dbSet.getCandleMap().getTotal(2l, 1l).getTrades());
+		assertEquals(0, dbSet.getCandleMap().getTotal(1l, 2l).getQuoteVolume().compareTo(BigDecimal.valueOf(1250)));
+		
+		//WEEKS START ON MONDAY
+		long week = CandleMap.getCandleStart(hour, CandleMap.WEEK);
+		assertEquals(DayOfWeek.MONDAY, Instant.ofEpochMilli(week).atZone(ZoneOffset.UTC).getDayOfWeek());
+		assertEquals(0, Instant.ofEpochMilli(week).atZone(ZoneOffset.UTC).toLocalTime().toSecondOfDay());
+		assertTrue(week <= hour && hour < week + CandleMap.WEEK);
+		
+		//SELLING 10 B FOR A AT 5 LATER ON, THEN ORPHANING IT REBUILDS CANDLE
+		CreateOrderTransaction orderD = new CreateOrderTransaction(accountB, 2l, 1l, BigDecimal.valueOf(10).setScale(8), BigDecimal.valueOf(5).setScale(8), BigDecimal.ONE.setScale(8), hour + 4000, accountB.getLastReference(dbSet), new byte[]{7, 8});
+		orderD.process(dbSet);
+		assertEquals(3, dbSet.getCandleMap().getCandles(1l, 2l, CandleMap.HOUR, hour, hour).get(0).getTrades());
+		assertEquals(0, dbSet.getCandleMap().getLastPrice(1l, 2l).compareTo(BigDecimal.valueOf(5)));
+		
+		orderD.orphan(dbSet);
+		candle = dbSet.getCandleMap().getCandles(1l, 2l, CandleMap.HOUR, hour, hour).get(0);
+		assertEquals(2, candle.getTrades());
+		assertEquals(0, candle.getVolume().compareTo(BigDecimal.valueOf(150)));
+		assertEquals(0, candle.getLow().compareTo(BigDecimal.valueOf(5)));
+		assertEquals(0, candle.getClose().compareTo(BigDecimal.valueOf(10)));
+		assertEquals(0, dbSet.getAssetStatsMap().getAmountInOrders(1l).compareTo(BigDecimal.valueOf(750)));
+		
+		//ORPHANING TRADES IN A FORK LEAVES PARENT ALONE
+		QoraDb fork = dbSet.fork();
+		orderC.orphan(fork);
+		
+		assertEquals(2, fork.getAssetStatsMap().getOpenOrdersCount(1l));
+		assertEquals(0, fork.getAssetStatsMap().getTradesCount(1l));
+		assertEquals(0, fork.getAssetStatsMap().getAmountInOrders(1l).compareTo(BigDecimal.valueOf(2000)));
+		assertEquals(0, fork.getDepthMap().getDepth(1l, 2l).get(BigDecimal.valueOf(0.2).setScale(8)).b.compareTo(BigDecimal.valueOf(1000)));
+		assertEquals(0, fork.getDepthMap().getDepth(2l, 1l).size());
+		assertEquals(0, fork.getCandleMap().getCandles(1l, 2l, CandleMap.HOUR, hour, hour).size());
+		assertEquals(null, fork.getCandleMap().getLastPrice(1l, 2l));
+		
+		assertEquals(2, dbSet.getAssetStatsMap().getTradesCount(1l));
+		assertEquals(1, dbSet.getCandleMap().getCandles(1l, 2l, CandleMap.HOUR, hour, hour).size());
+	}
+	
+	@Test
+	public void matchAgainstRestingOrders()
+	{
+		//MATCHING AGAINST MANY RESTING ORDERS ONLY TAKES THOSE THAT MEET OUR PRICE
+		final int resting = 1000;
+		QoraDb dbSet = QoraDb.createMemoryDatabase();
+		
+		byte[] seed = Crypto.getInstance().digest("test".getBytes());
+		PrivateKeyAccount accountA = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+		new GenesisTransaction(accountA, BigDecimal.valueOf(1000).setScale(8), NTP.getTime()).process(dbSet);
+		new IssueAssetTransaction(accountA, new Asset(accountA, "a", "a", 50000000l, true, new byte[64]), BigDecimal.ONE.setScale(8), System.currentTimeMillis(), accountA.getLastReference(dbSet), new byte[64]).process(dbSet);
+		
+		seed = Crypto.getInstance().digest("testb".getBytes());
+		PrivateKeyAccount accountB = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+		new GenesisTransaction(accountB, BigDecimal.valueOf(1000).setScale(8), NTP.getTime()).process(dbSet);
+		new IssueAssetTransaction(accountB, new Asset(accountB, "b", "b", 50000000l, true, new byte[64]), BigDecimal.ONE.setScale(8), System.currentTimeMillis(), accountB.getLastReference(dbSet), new byte[64]).process(dbSet);
+		
+		//RESTING ORDERS SELLING A FOR B, CHEAPEST AT 0.10
+		accountA.setConfirmedBalance(1l, accountA.getConfirmedBalance(1l, dbSet).subtract(BigDecimal.valueOf(10L * resting)), dbSet);
+		for(int i = 0; i < resting; i++)
+		{
+			dbSet.getOrderMap().add(restingOrder(accountA, i, BigDecimal.valueOf(10 + i, 2).setScale(8)));
+		}
+		
+		assertEquals(resting, dbSet.getOrderMap().getOrders(1l, 2l).size());
+		
+		//BUY THE THREE CHEAPEST ORDERS, WHICH ARE ALL THAT MEET OUR PRICE, IN A FORK AS WHEN VALIDATING A BLOCK
+		QoraDb fork = dbSet.fork();
+		CreateOrderTransaction createOrderTransaction = new CreateOrderTransaction(accountB, 2l, 1l, BigDecimal.valueOf(3.4).setScale(8), BigDecimal.valueOf(8).setScale(8), BigDecimal.ONE.setScale(8), System.currentTimeMillis(), accountB.getLastReference(fork), new byte[]{7, 8});
+		createOrderTransaction.process(fork);
+		
+		Order buy = fork.getOrderMap().get(new BigInteger(new byte[]{7, 8}));
+		assertEquals(3, buy.getInitiatedTrades(fork).size());
+		assertEquals(0, buy.getFulfilled().compareTo(BigDecimal.valueOf(3.3)));
+		assertEquals(resting - 3, fork.getOrderMap().getOrders(1l, 2l).size());
+		assertEquals(resting, dbSet.getOrderMap().getOrders(1l, 2l).size());
+	}
 }
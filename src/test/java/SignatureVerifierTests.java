@@ -0,0 +1,155 @@
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import qora.account.Account;
+import qora.account.PrivateKeyAccount;
+import qora.block.Block;
+import qora.crypto.Crypto;
+import qora.crypto.FastSignatureVerifier;
+import qora.crypto.ReferenceSignatureVerifier;
+import qora.crypto.SignatureCache;
+import qora.crypto.SignatureVerifier;
+import qora.transaction.PaymentTransaction;
+
+public class SignatureVerifierTests extends TestUtils {
+
+	private static final class Entry {
+		final byte[] publicKey;
+		final byte[] signature;
+		final byte[] message;
+
+		Entry(byte[] publicKey, byte[] signature, byte[] message) {
+			this.publicKey = publicKey;
+			this.signature = signature;
+			this.message = message;
+		}
+	}
+
+	/** Collects the signatures checked while validating blocks and transactions like those in other tests */
+	private List<Entry> collectCorpus() {
+		final List<Entry> corpus = new ArrayList<Entry>();
+		SignatureVerifier previous = Crypto.getInstance().getSignatureVerifier();
+		final SignatureVerifier reference = new ReferenceSignatureVerifier();
+
+		Crypto.getInstance().setSignatureVerifier((publicKey, signature, message) -> {
+			corpus.add(new Entry(publicKey.clone(), signature.clone(), message.clone()));
+			return reference.verify(publicKey, signature, message);
+		});
+
+		try {
+			SignatureCache.getInstance().clear();
+
+			// As in TransactionTests
+			byte[] seed = Crypto.getInstance().digest("test".getBytes());
+			PrivateKeyAccount sender = new PrivateKeyAccount(Crypto.getInstance().createKeyPair(seed).getA());
+			Account recipient = new Account("QgcphUTiVHHfHg8e1LVgg5jujVES7ZDUTr");
+			long timestamp = 1417356000000L;
+			byte[] signature = PaymentTransaction.generateSignature(databaseSet, sender, recipient, BigDecimal.valueOf(100).setScale(8),
+					BigDecimal.valueOf(1).setScale(8), timestamp);
+			assertTrue(new PaymentTransaction(sender, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp,
+					sender.getLastReference(databaseSet), signature).isSignatureValid());
+
+			// As in BlockTests
+			for (int b = 0; b < 3; ++b) {
+				Block block = blockGenerator.generateNextBlock(databaseSet, generator, genesisBlock);
+				for (int i = 0; i < 10; ++i) {
+					BigDecimal amount = BigDecimal.valueOf(10 + i).setScale(8);
+					signature = PaymentTransaction.generateSignature(databaseSet, generator, this.recipient, amount, BigDecimal.valueOf(1).setScale(8),
+							block.getTimestamp() + b);
+					block.addTransaction(new PaymentTransaction(generator, this.recipient, amount, BigDecimal.valueOf(1).setScale(8),
+							block.getTimestamp() + b, generator.getLastReference(databaseSet), signature));
+				}
+				block.setTransactionsSignature(blockGenerator.calculateTransactionsSignature(block, generator));
+				assertTrue(block.isSignatureValid());
+			}
+		} finally {
+			Crypto.getInstance().setSignatureVerifier(previous);
+		}
+
+		return corpus;
+	}
+
+	@Test
+	public void matchesReference() {
+		SignatureVerifier reference = new ReferenceSignatureVerifier();
+		SignatureVerifier fast = new FastSignatureVerifier();
+		Random random = new Random(14);
+
+		List<Entry> corpus = collectCorpus();
+		assertTrue("corpus should cover transactions and blocks", corpus.size() > 30);
+
+		int valid = 0;
+		for (Entry entry : corpus) {
+			assertTrue("corpus signature should be valid", fast.verify(entry.publicKey, entry.signature, entry.message));
+			++valid;
+
+			// Corrupt each part in turn
+			for (int i = 0; i < 8; ++i) {
+				byte[] signature = entry.signature.clone();
+				signature[random.nextInt(signature.length)] ^= 1 << random.nextInt(8);
+				assertAgree(reference, fast, entry.publicKey, signature, entry.message);
+
+				byte[] message = entry.message.clone();
+				message[random.nextInt(message.length)] ^= 1 << random.nextInt(8);
+				assertAgree(reference, fast, entry.publicKey, entry.signature, message);
+
+				// Random keys, about half of which aren't curve points
+				byte[] publicKey = new byte[32];
+				random.nextBytes(publicKey);
+				assertAgree(reference, fast, publicKey, entry.signature, entry.message);
+			}
+
+			// Scalar with high bits set
+			byte[] signature = entry.signature.clone();
+			signature[63] |= 0x80;
+			assertAgree(reference, fast, entry.publicKey, signature, entry.message);
+
+			// Short and long input
+			assertAgree(reference, fast, entry.publicKey, Arrays.copyOf(entry.signature, 63), entry.message);
+			assertAgree(reference, fast, Arrays.copyOf(entry.publicKey, 33), entry.signature, entry.message);
+			assertAgree(reference, fast, entry.publicKey, entry.signature, new byte[0]);
+		}
+
+		// Random scalars exercise recoding edge cases
+		Entry entry = corpus.get(0);
+		for (int i = 0; i < 200; ++i) {
+			byte[] signature = new byte[64];
+			random.nextBytes(signature);
+			signature[63] &= 0x1f;
+			assertAgree(reference, fast, entry.publicKey, signature, entry.message);
+		}
+
+		assertEquals(corpus.size(), valid);
+	}
+
+	@Test
+	public void verifyBatch() {
+		SignatureVerifier fast = new FastSignatureVerifier();
+		List<Entry> corpus = collectCorpus();
+
+		byte[][] publicKeys = new byte[corpus.size()][];
+		byte[][] signatures = new byte[corpus.size()][];
+		byte[][] messages = new byte[corpus.size()][];
+		for (int i = 0; i < corpus.size(); ++i) {
+			publicKeys[i] = corpus.get(i).publicKey;
+			signatures[i] = corpus.get(i).signature;
+			messages[i] = corpus.get(i).message;
+		}
+
+		assertTrue("batch of valid signatures should pass", fast.verifyBatch(publicKeys, signatures, messages));
+
+		messages[corpus.size() / 2] = new byte[] { 1, 2, 3 };
+		assertFalse("batch with one invalid signature should fail", fast.verifyBatch(publicKeys, signatures, messages));
+	}
+
+	private static void assertAgree(SignatureVerifier reference, SignatureVerifier fast, byte[] publicKey, byte[] signature, byte[] message) {
+		assertEquals("verifiers should agree", reference.verify(publicKey, signature, message), fast.verify(publicKey, signature, message));
+	}
+
+}
@@ -3961,4 +3961,69 @@ public class TransactionTests {
 		assertEquals(false, Arrays.equals(multiPayment.getSignature(), new Account("Qc454HfRSVbrdLmhD1d9nmmMe45NbQmRnG").getLastReference(dbSet)));
 		assertEquals(false, Arrays.equals(multiPayment.getSignature(), new Account("QXNz5kBknsgNYtRKit4jCDNVm7YYoXLZdB").getLastReference(dbSet)));
 	}
+	
+	//SERIALIZATION
+	
+	@Test
+	public void serializeToDataLength() throws Exception
+	{
+		//CREATE EMPTY MEMORY DATABASE
+		QoraDb databaseSet = QoraDb.createMemoryDatabase();
+		
+		//CREATE KNOWN ACCOUNT
+		byte[] seed = Crypto.getInstance().digest("test".getBytes());
+		byte[] privateKey = Crypto.getInstance().createKeyPair(seed).getA();
+		PrivateKeyAccount sender = new PrivateKeyAccount(privateKey);
+		
+		//PROCESS GENESIS TRANSACTION TO MAKE SURE SENDER HAS FUNDS
+		Transaction genesis = new GenesisTransaction(sender, BigDecimal.valueOf(1000).setScale(8), NTP.getTime());
+		genesis.process(databaseSet);
+		
+		long timestamp = NTP.getTime();
+		List<Transaction> transactions = new ArrayList<Transaction>();
+		transactions.add(genesis);
+		
+		//PAYMENT
+		Account recipient = new Account("QgcphUTiVHHfHg8e1LVgg5jujVES7ZDUTr");
+		byte[] signature = PaymentTransaction.generateSignature(databaseSet, sender, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp);
+		transactions.add(new PaymentTransaction(sender, recipient, BigDecimal.valueOf(100).setScale(8), BigDecimal.valueOf(1).setScale(8), timestamp, sender.getLastReference(databaseSet), signature));
+		
+		//NAME REGISTRATION
+		Name name = new Name(sender, "test", "this is the value");
+		signature = RegisterNameTransaction.generateSignature(databaseSet, sender, name, BigDecimal.valueOf(1).setScale(8), timestamp);
+		transactions.add(new RegisterNameTransaction(sender, name, BigDecimal.ONE.setScale(8), timestamp, sender.getLastReference(databaseSet), signature));
+		
+		//MULTI PAYMENT, WHERE ONLY PART OF THE BYTES IS SIGNED
+		List<Payment> payments = new ArrayList<Payment>();
+		payments.add(new Payment(new Account("Qc454HfRSVbrdLmhD1d9nmmMe45NbQmRnG"), 0l, BigDecimal.ZERO));
+		payments.add(new Payment(new Account("QXNz5kBknsgNYtRKit4jCDNVm7YYoXLZdB"), 0l, BigDecimal.ZERO));
+		signature = MultiPaymentTransaction.generateSignature(databaseSet, sender, payments, BigDecimal.valueOf(1).setScale(8), timestamp);
+		transactions.add(new MultiPaymentTransaction(sender, payments, BigDecimal.valueOf(1).setScale(8), timestamp, sender.getLastReference(databaseSet), signature));
+		
+		for(Transaction transaction: transactions)
+		{
+			byte[] raw = transaction.toBytes();
+			
+			//CHECK LENGTH
+			assertEquals(transaction.getDataLength(), raw.length);
+			
+			//CHECK CALLER GETS A COPY
+			raw[0] ^= 1;
+			assertFalse(Arrays.equals(raw, transaction.toBytes()));
+			raw[0] ^= 1;
+			
+			//CHECK ROUND TRIP
+			Transaction parsed = TransactionFactory.getInstance().parse(raw);
+			assertTrue(Arrays.equals(raw, parsed.toBytes()));
+			assertTrue(parsed.isSignatureValid());
+			
+			//CHECK SIGNED BYTES STILL COVER THE FEE
+			if(transaction.getType() != Transaction.GENESIS_TRANSACTION)
+			{
+				raw[raw.length - 65] ^= 1;
+				assertFalse(TransactionFactory.getInstance().parse(raw).isSignatureValid());
+			}
+		}
+	}
+	
 }
@@ -0,0 +1,341 @@
+package at;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ATProgramTests {
+
+	private static final int HEIGHT = 1000;
+	private static final int CSIZE = 256;
+	private static final int DSIZE = 256;
+	private static final int STACK_BYTES = 256;
+
+	// API functions that only touch the A and B registers
+	private static final short[] FUNCS = { 256, 257, 258, 259, 260, 261, 262, 263, 288, 289, 290, 291, 292, 293, 294, 295,
+			296, 297, 298, 299, 300, 301, 302 };
+	private static final short[] FUNCS_1 = { 272, 273, 274, 275, 278, 279, 280, 281 };
+	private static final short[] FUNCS_2 = { 276, 277, 282, 283 };
+
+	/** How runSteps ran an AT before its code was decoded once, disassembling the code before every run */
+	private static int runLegacy(AT_Machine_State state, int height) {
+		AT_Controller.listCode(state, true, true);
+
+		state.getMachineState().stopped = false;
+		state.getMachineState().finished = false;
+		state.getMachineState().steps = 0;
+		state.getMachineState().dead = false;
+
+		AT_Machine_Processor processor = new AT_Machine_Processor(state);
+		state.setFreeze(false);
+
+		long stepFee = AT_Constants.getInstance().STEP_FEE(height);
+		int numSteps = 0;
+
+		while (state.getMachineState().steps
+				+ (numSteps = AT_Controller.getNumSteps(state.getAp_code().get(state.getMachineState().pc), height))
+				<= AT_Constants.getInstance().MAX_STEPS(height)) {
+			if (state.getG_balance() < stepFee * numSteps) {
+				state.setFreeze(true);
+				return 3;
+			}
+
+			state.setG_balance(state.getG_balance() - (stepFee * numSteps));
+			state.getMachineState().steps += numSteps;
+			int rc = processor.processOp(false, false);
+
+			if (rc >= 0) {
+				if (state.getMachineState().stopped) {
+					state.getMachineState().running = false;
+					return 2;
+				} else if (state.getMachineState().finished) {
+					state.getMachineState().running = false;
+					return 1;
+				}
+			} else {
+				if (state.getMachineState().jumps.contains(state.getMachineState().err)) {
+					state.getMachineState().pc = state.getMachineState().err;
+				} else {
+					state.getMachineState().dead = true;
+					state.getMachineState().running = false;
+					return 0;
+				}
+			}
+		}
+		return 5;
+	}
+
+	private static AT_Machine_State createState(byte[] code, byte[] data, long balance) {
+		ByteBuffer state = ByteBuffer.allocate(86 + 8 + 8 + 4 + 4 + 1 + DSIZE + STACK_BYTES * 2);
+		state.order(ByteOrder.LITTLE_ENDIAN);
+
+		// Machine state: flags, pc, pcs, cs, us, err and registers
+		state.position(2 + 4 * 4);
+		state.putInt(-1);
+		state.position(86);
+		state.putLong(balance);
+		state.putLong(balance);
+		state.putInt(HEIGHT);
+		state.putInt(0);
+		state.put((byte) 0);
+		state.put(data);
+
+		return new AT_Machine_State(new byte[AT_Constants.AT_ID_SIZE], new byte[AT_Constants.AT_ID_SIZE], (short) 1,
+				state.array(), CSIZE, DSIZE, STACK_BYTES, STACK_BYTES, 1, 0, 0L, code);
+	}
+
+	/** Runs both interpreters on copies of the same AT a few times over, as if over several blocks */
+	private static void assertSameRuns(String name, byte[] code, byte[] data, long balance) {
+		AT_Machine_State legacy = createState(code, data, balance);
+		AT_Machine_State decoded = createState(code, data, balance);
+
+		for (int run = 0; run < 3; ++run) {
+			String expected;
+			try {
+				expected = "rc " + runLegacy(legacy, HEIGHT);
+			} catch (Exception e) {
+				expected = e.getClass().getSimpleName();
+			}
+
+			String actual;
+			try {
+				actual = "rc " + AT_Controller.runSteps(decoded, HEIGHT);
+			} catch (IndexOutOfBoundsException e) {
+				actual = "IndexOutOfBoundsException";
+			} catch (Exception e) {
+				actual = e.getClass().getSimpleName();
+			}
+
+			if (expected.equals("ArrayIndexOutOfBoundsException")) {
+				expected = "IndexOutOfBoundsException";
+			}
+
+			assertEquals(name + " run " + run, expected, actual);
+			assertEquals(name + " run " + run, legacy.getMachineState().getSteps(), decoded.getMachineState().getSteps());
+			assertEquals(name + " run " + run, legacy.getWaitForNumberOfBlocks(), decoded.getWaitForNumberOfBlocks());
+			assertTrue(name + " run " + run, Arrays.equals(legacy.getState(), decoded.getState()));
+
+			if (!expected.startsWith("rc")) {
+				break;
+			}
+		}
+	}
+
+	private static final class Assembler {
+		final ByteBuffer code = ByteBuffer.allocate(CSIZE + 32).order(ByteOrder.LITTLE_ENDIAN);
+		final List<Integer> starts = new ArrayList<Integer>();
+
+		Assembler op(int op) {
+			starts.add(code.position());
+			code.put((byte) op);
+			return this;
+		}
+
+		Assembler addr(int addr) {
+			code.putInt(addr);
+			return this;
+		}
+
+		Assembler val(long val) {
+			code.putLong(val);
+			return this;
+		}
+
+		Assembler off(int target) {
+			code.put((byte) (target - starts.get(starts.size() - 1)));
+			return this;
+		}
+
+		Assembler fun(short fun) {
+			code.putShort(fun);
+			return this;
+		}
+
+		int here() {
+			return code.position();
+		}
+
+		byte[] toCode() {
+			return Arrays.copyOf(code.array(), CSIZE);
+		}
+	}
+
+	@Test
+	public void runSampleProgram() {
+		// Sums 1..10 through a subroutine, pushes the total, divides by zero into the error handler, then finishes
+		Assembler asm = new Assembler();
+		asm.op(0x2b).addr(0); // ERR_ADR, patched below
+		asm.op(0x01).addr(0).val(0); // SET_VAL @0 #0 (counter)
+		asm.op(0x01).addr(1).val(0); // SET_VAL @1 #0 (total)
+		asm.op(0x01).addr(2).val(10); // SET_VAL @2 #10
+		int loop = asm.here();
+		asm.op(0x04).addr(0); // INC @0
+		asm.op(0x12).addr(0); // JMP_SUB, patched below
+		int jmpSub = asm.here() - 4;
+		asm.op(0x20).addr(0).addr(2).off(loop); // BLT @0 @2 loop
+		asm.op(0x10).addr(1); // PSH @1
+		asm.op(0x35).fun((short) 256).addr(3); // EXT_FUN_RET get_A1 into @3
+		asm.op(0x09).addr(1).addr(4); // DIV @1 @4, @4 is zero
+		int handler = asm.here();
+		asm.op(0x11).addr(5); // POP @5
+		asm.op(0x28); // FIN
+		int sub = asm.here();
+		asm.op(0x06).addr(1).addr(0); // ADD @1 @0
+		asm.op(0x13); // RET
+
+		asm.code.putInt(1, handler);
+		asm.code.putInt(jmpSub, sub);
+
+		byte[] code = asm.toCode();
+		byte[] data = new byte[DSIZE + STACK_BYTES * 2];
+
+		AT_Machine_State state = createState(code, data, 1000000000000L);
+		assertEquals(1, AT_Controller.runSteps(state, HEIGHT));
+		assertEquals(55L, state.getAp_data().getLong(5 * 8));
+		assertEquals(handler, state.getMachineState().err);
+
+		assertSameRuns("sample", code, data, 1000000000000L);
+		// Running out of balance half way
+		assertSameRuns("sample, low balance", code, data, 30 * AT_Constants.getInstance().STEP_FEE(HEIGHT));
+	}
+
+	private static int address(Random random) {
+		int roll = random.nextInt(20);
+		if (roll == 0)
+			return -1;
+		if (roll == 1)
+			return DSIZE / 8 + random.nextInt(4);
+		if (roll == 2)
+			return random.nextInt();
+		return random.nextInt(DSIZE / 8);
+	}
+
+	private static int codeAddress(Random random, Assembler asm) {
+		if (random.nextInt(10) == 0)
+			return random.nextInt(CSIZE + 4) - 2;
+		if (random.nextBoolean())
+			return asm.starts.get(random.nextInt(asm.starts.size()));
+		return random.nextInt(CSIZE);
+	}
+
+	/** Random mix of every op, operands mostly valid, ending wherever the code runs out */
+	private static byte[] randomCode(Random random) {
+		Assembler asm = new Assembler();
+		int length = 8 + random.nextInt(CSIZE);
+
+		while (asm.here() < length) {
+			switch (random.nextInt(14)) {
+			case 0:
+				asm.op(new int[] { 0x7f, 0x13, 0x28, 0x29, 0x2a, 0x30 }[random.nextInt(6)]);
+				break;
+			case 1:
+				asm.op(new int[] { 0x03, 0x04, 0x05, 0x0d, 0x10, 0x11, 0x26, 0x27 }[random.nextInt(8)]).addr(address(random));
+				break;
+			case 2:
+				asm.op(new int[] { 0x12, 0x1a, 0x25, 0x2b }[random.nextInt(4)]).addr(codeAddress(random, asm));
+				break;
+			case 3:
+			case 4:
+				asm.op(new int[] { 0x02, 0x06, 0x07, 0x08, 0x09, 0x0a, 0x0b, 0x0c, 0x0e, 0x14, 0x16, 0x17, 0x18 }[random.nextInt(13)])
+						.addr(address(random)).addr(address(random));
+				break;
+			case 5:
+				asm.op(0x01).addr(address(random)).val(random.nextBoolean() ? random.nextInt(40) : random.nextLong());
+				break;
+			case 6:
+				asm.op(random.nextBoolean() ? 0x15 : 0x0f).addr(address(random)).addr(address(random)).addr(address(random));
+				break;
+			case 7:
+				asm.op(random.nextBoolean() ? 0x1b : 0x1e).addr(address(random)).off(codeAddress(random, asm));
+				break;
+			case 8:
+				asm.op(0x1f + random.nextInt(6)).addr(address(random)).addr(address(random)).off(codeAddress(random, asm));
+				break;
+			case 9:
+				asm.op(0x32).fun(FUNCS[random.nextInt(FUNCS.length)]);
+				break;
+			case 10:
+				if (random.nextBoolean())
+					asm.op(0x33).fun(FUNCS_1[random.nextInt(FUNCS_1.length)]).addr(address(random));
+				else
+					asm.op(0x35).fun(FUNCS[random.nextInt(FUNCS.length)]).addr(address(random));
+				break;
+			case 11:
+				if (random.nextBoolean())
+					asm.op(0x34).fun(FUNCS_2[random.nextInt(FUNCS_2.length)]).addr(address(random)).addr(address(random));
+				else
+					asm.op(0x36).fun(FUNCS_1[random.nextInt(FUNCS_1.length)]).addr(address(random)).addr(address(random));
+				break;
+			case 12:
+				asm.op(0x37).fun(FUNCS_2[random.nextInt(FUNCS_2.length)]).addr(address(random)).addr(address(random))
+						.addr(address(random));
+				break;
+			default:
+				// Junk
+				asm.code.put((byte) random.nextInt(256));
+				break;
+			}
+		}
+
+		return asm.toCode();
+	}
+
+	@Test
+	public void matchLegacyOnRandomPrograms() {
+		Random random = new Random(20141017L);
+
+		// Both interpreters report on every stop, which is just noise here
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+
+		try {
+			for (int i = 0; i < 3000; ++i) {
+				byte[] code = randomCode(random);
+				ByteBuffer data = ByteBuffer.allocate(DSIZE + STACK_BYTES * 2).order(ByteOrder.LITTLE_ENDIAN);
+				for (int slot = 0; slot < DSIZE / 8; ++slot) {
+					data.putLong(random.nextInt(4) == 0 ? random.nextLong() : random.nextInt(40) - 4);
+				}
+
+				long balance = random.nextInt(8) == 0 ? random.nextInt(200) * AT_Constants.getInstance().STEP_FEE(HEIGHT)
+						: 1000000000000L;
+				assertSameRuns("program " + i, code, data.array(), balance);
+			}
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	@Test
+	public void runFullStepBudget() {
+		// Counting loop runs for its full step budget each time, leaving same state in both interpreters
+		Assembler asm = new Assembler();
+		asm.op(0x30); // SET_PCS
+		int loop = asm.here();
+		asm.op(0x04).addr(0); // INC @0
+		asm.op(0x06).addr(1).addr(0); // ADD @1 @0
+		asm.op(0x1a).addr(loop); // JMP_ADR loop
+		byte[] code = asm.toCode();
+		byte[] data = new byte[DSIZE + STACK_BYTES * 2];
+
+		int runs = 100;
+		AT_Machine_State legacy = createState(code, data, Long.MAX_VALUE / 2);
+		AT_Machine_State decoded = createState(code, data, Long.MAX_VALUE / 2);
+		for (int i = 0; i < runs; ++i) {
+			assertEquals(5, runLegacy(legacy, HEIGHT));
+			assertEquals(5, AT_Controller.runSteps(decoded, HEIGHT));
+			assertTrue(Arrays.equals(legacy.getState(), decoded.getState()));
+		}
+	}
+}